@@ -34,6 +34,25 @@ tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
 
+// Java 11+ section of the multi-release JAR (JDK Flight Recorder events, see ParseEvents).
+// Building requires JDK 11+, but the JAR still runs on Java 8.
+
+val java11: SourceSet by sourceSets.creating {
+    java.srcDir("src-java11")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java11.compileJavaTaskName) {
+    sourceCompatibility = "11"
+    targetCompatibility = "11"
+    options.release.set(11)
+}
+
+tasks.jar.get().apply {
+    into("META-INF/versions/11") { from(java11.output) }
+    manifest.attributes("Multi-Release" to "true")
+}
+
 tasks.test.get().useTestNG()
 
 tasks.javadoc.get().options {
@@ -69,7 +69,7 @@ public final class SimpleXML extends Grammar
         .collect($ -> $.apply(() -> {
             $.data(tag_stack).push($.str());
             return () -> $.data(tag_stack).pop();
-        }));
+        }), REQUIRED);
 
     public rule close_identifier =
         rule(new CloseTag(identifier.getParser()));
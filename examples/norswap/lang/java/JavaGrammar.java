@@ -473,7 +473,7 @@ public final class JavaGrammar extends Grammar
         lambda, par_expr, array_ctor_call, ctor_call, type_suffix_expr, iden_or_method_expr,
         this_expr, super_expr, literal);
 
-    // Expression - Postfix & Prefix ------------------------------------------
+    // Expression - Prefix ----------------------------------------------------
 
     public rule prefix_op = choice(
         PLUSPLUS    .as_val(PREFIX_INCREMENT),
@@ -483,34 +483,6 @@ public final class JavaGrammar extends Grammar
         TILDE       .as_val(BITWISE_COMPLEMENT),
         BANG        .as_val(LOGICAL_COMPLEMENT));
 
-    public rule postfix_expr = left_expression()
-        .left(primary_expr)
-        .suffix(seq(DOT, opt_type_args, iden, args),
-            $ -> MethodCall.mk($.$0(), $.$1(), $.$2(), $.$3()))
-        .suffix(seq(DOT, iden),
-            $ -> DotIden.mk($.$0(), $.$1()))
-        .suffix(seq(DOT, _this),
-            $ -> UnaryExpression.mk(DOT_THIS, $.$0()))
-        .suffix(seq(DOT, _super),
-            $ -> UnaryExpression.mk(DOT_SUPER, $.$0()))
-        .suffix(seq(DOT, ctor_call),
-            $ -> DotNew.mk($.$0(), $.$1()))
-        .suffix(seq(LBRACKET, _expr, RBRACKET),
-            $ -> ArrayAccess.mk($.$0(), $.$1()))
-        .suffix(PLUSPLUS,
-            $ -> UnaryExpression.mk(POSTFIX_INCREMENT, $.$0()))
-        .suffix(SUBSUB,
-            $ -> UnaryExpression.mk(POSTFIX_DECREMENT, $.$0()))
-        .suffix(seq(COLCOL, opt_type_args, iden),
-            $ -> BoundMethodReference.mk($.$0(), $.$1(), $.$2()));
-
-    public rule prefix_expr = right_expression()
-        .right(postfix_expr)
-        .prefix(prefix_op,
-            $ -> UnaryExpression.mk($.$0(), $.$1()))
-        .prefix(seq(LPAREN, type_union, RPAREN),
-            $ -> Cast.mk($.$0(), $.$1()));
-
     // Expression - Binary ----------------------------------------------------
 
     StackPush binary_push =
@@ -554,52 +526,59 @@ public final class JavaGrammar extends Grammar
         CARETEQ     .as_val(XOR_ASSIGNMENT),
         BAREQ       .as_val(OR_ASSIGNMENT));
 
-    public rule mult_expr = left_expression()
-        .operand(prefix_expr)
-        .infix(mult_op, binary_push);
-
-    public rule add_expr = left_expression()
-        .operand(mult_expr)
-        .infix(add_op, binary_push);
-
-    public rule shift_expr = left_expression()
-        .operand(add_expr)
-        .infix(shift_op, binary_push);
-
-    public rule order_expr = left_expression()
-        .operand(shift_expr)
-        .suffix(seq(_instanceof, type),
-            $ -> InstanceOf.mk($.$0(), $.$1()))
-        .infix(order_op, binary_push);
-
-    public rule eq_expr = left_expression()
-        .operand(order_expr)
-        .infix(eq_op, binary_push);
-
-    public rule binary_and_expr = left_expression()
-        .operand(eq_expr)
-        .infix(AMP.as_val(AND), binary_push);
-
-    public rule xor_expr = left_expression()
-        .operand(binary_and_expr)
-        .infix(CARET.as_val(XOR), binary_push);
-
-    public rule binary_or_expr = left_expression()
-        .operand(xor_expr)
-        .infix(BAR.as_val(OR), binary_push);
-
-    public rule conditional_and_expr = left_expression()
-        .operand(binary_or_expr)
-        .infix(AMPAMP.as_val(CONDITIONAL_AND), binary_push);
-
-    public rule conditional_or_expr = left_expression()
-        .operand(conditional_and_expr)
-        .infix(BARBAR.as_val(CONDITIONAL_OR), binary_push);
-
-    public rule ternary_expr = right_expression()
-        .operand(conditional_or_expr)
-        .infix(seq(QUES, _expr, COL),
-            $ -> TernaryExpression.mk($.$0(), $.$1(), $.$2()));
+    // Expression - Operators ------------------------------------------------
+
+    public rule ternary_expr = operator_table()
+        .operand(primary_expr)
+        .left_assoc()
+            .suffix(seq(DOT, opt_type_args, iden, args),
+                $ -> MethodCall.mk($.$0(), $.$1(), $.$2(), $.$3()))
+            .suffix(seq(DOT, iden),
+                $ -> DotIden.mk($.$0(), $.$1()))
+            .suffix(seq(DOT, _this),
+                $ -> UnaryExpression.mk(DOT_THIS, $.$0()))
+            .suffix(seq(DOT, _super),
+                $ -> UnaryExpression.mk(DOT_SUPER, $.$0()))
+            .suffix(seq(DOT, ctor_call),
+                $ -> DotNew.mk($.$0(), $.$1()))
+            .suffix(seq(LBRACKET, _expr, RBRACKET),
+                $ -> ArrayAccess.mk($.$0(), $.$1()))
+            .suffix(PLUSPLUS,
+                $ -> UnaryExpression.mk(POSTFIX_INCREMENT, $.$0()))
+            .suffix(SUBSUB,
+                $ -> UnaryExpression.mk(POSTFIX_DECREMENT, $.$0()))
+            .suffix(seq(COLCOL, opt_type_args, iden),
+                $ -> BoundMethodReference.mk($.$0(), $.$1(), $.$2()))
+        .right_assoc()
+            .prefix(prefix_op,
+                $ -> UnaryExpression.mk($.$0(), $.$1()))
+            .prefix(seq(LPAREN, type_union, RPAREN),
+                $ -> Cast.mk($.$0(), $.$1()))
+        .left_assoc()
+            .infix(mult_op, binary_push)
+        .left_assoc()
+            .infix(add_op, binary_push)
+        .left_assoc()
+            .infix(shift_op, binary_push)
+        .left_assoc()
+            .suffix(seq(_instanceof, type),
+                $ -> InstanceOf.mk($.$0(), $.$1()))
+            .infix(order_op, binary_push)
+        .left_assoc()
+            .infix(eq_op, binary_push)
+        .left_assoc()
+            .infix(AMP.as_val(AND), binary_push)
+        .left_assoc()
+            .infix(CARET.as_val(XOR), binary_push)
+        .left_assoc()
+            .infix(BAR.as_val(OR), binary_push)
+        .left_assoc()
+            .infix(AMPAMP.as_val(CONDITIONAL_AND), binary_push)
+        .left_assoc()
+            .infix(BARBAR.as_val(CONDITIONAL_OR), binary_push)
+        .right_assoc()
+            .ternary(QUES, _expr, COL,
+                $ -> TernaryExpression.mk($.$0(), $.$1(), $.$2()));
 
     public rule expr = right_expression()
         .operand(ternary_expr)
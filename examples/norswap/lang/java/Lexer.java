@@ -1,8 +1,11 @@
 package norswap.lang.java;
 
+import norswap.autumn.ChunkedLexer;
+import norswap.autumn.positions.TokenSource;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A self-contained lexer for Java8, adapted from the Javac lexer.
@@ -14,7 +17,8 @@ import java.util.List;
  *
  * <p>https://github.com/dmlloyd/openjdk/blob/jdk8u/jdk8u/langtools/src/share/classes/com/sun/tools/javac/parser/JavaTokenizer.java
  *
- * Retrieve tokens one by one through {@link #next()} or all at once through {@link #lex()}.
+ * Retrieve tokens one by one through {@link #next()} or all at once through {@link #lex()}. Large
+ * inputs can be lexed concurrently through {@link #lex(ForkJoinPool)}.
  *
  * Errors are handled in two ways. For lexical errors where the intent is clear, such as
  * underscore in illegal locations, the error is reported as warning in {@link #warnings}.
@@ -42,7 +46,7 @@ import java.util.List;
  *     currently generates "unclosed char literal".</li>
  * </ul>
  */
-public final class Lexer
+public final class Lexer implements TokenSource<Token>
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -88,6 +92,18 @@ public final class Lexer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Creates a lexer that starts lexing at position {@code start} of {@code string}, an array of
+     * code points that may be shared with other lexers.
+     */
+    public Lexer (int[] string, int start)
+    {
+        this.string = string;
+        this.i = start;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /** Input position. */
     private int i;
 
@@ -283,7 +299,7 @@ public final class Lexer
     /**
      * Skips past and emits the next token.
      */
-    public Token next()
+    @Override public Token next()
     {
         int c, old;
         while (true) {
@@ -912,6 +928,51 @@ public final class Lexer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Same as {@link #lex()}, but lexes chunks of about {@code chunk_size} code points concurrently
+     * on {@code pool}, using a {@link ChunkedLexer}. The warnings of the chunk lexers are added to
+     * {@link #warnings}.
+     *
+     * <p>This lexer must not have emitted any tokens yet.
+     */
+    public Token[] lex (ForkJoinPool pool, int chunk_size)
+    {
+        ArrayList<Lexer> lexers = new ArrayList<>();
+        List<Token> tokens = ChunkedLexer.lex(string, start -> {
+            Lexer lexer = new Lexer(string, start);
+            lexer.support_surrogate_pairs = support_surrogate_pairs;
+            synchronized (lexers) { lexers.add(lexer); }
+            return lexer;
+        }, chunk_size, pool);
+
+        ArrayList<Warning> merged = new ArrayList<>();
+        for (Lexer lexer: lexers)
+            merged.addAll(lexer.warnings);
+        merged.sort((a, b) -> Integer.compare(a.position, b.position));
+        warnings.addAll(merged);
+        return tokens.toArray(new Token[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #lex(ForkJoinPool, int)} with {@link ChunkedLexer#DEFAULT_CHUNK_SIZE}.
+     */
+    public Token[] lex (ForkJoinPool pool) {
+        return lex(pool, ChunkedLexer.DEFAULT_CHUNK_SIZE);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Discards the warnings outside of {@code [from, to)}.
+     */
+    @Override public void retain (int from, int to) {
+        warnings.removeIf(w -> w.position < from || w.position >= to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Adds a warning to the list of warnings with the given position.
      */
@@ -0,0 +1,38 @@
+package norswap.autumn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * Periodic JDK Flight Recorder event with the memoization statistics of the parses that completed
+ * since the previous event (see {@link ParseEvents}).
+ */
+@Name("norswap.autumn.MemoStatistics")
+@Label("Memo Statistics")
+@Category("Autumn")
+@Description("Memoization statistics of the parses completed during the period.")
+@Period("1 s")
+@StackTrace(false)
+final class MemoStatisticsEvent extends Event
+{
+    @Label("Parses")
+    long parses;
+
+    @Label("Lookups")
+    long lookups;
+
+    @Label("Hits")
+    long hits;
+
+    @Label("Stores")
+    long stores;
+
+    @Label("Evictions")
+    @Description("Number of memoizers cleared to enforce the memo budget.")
+    long evictions;
+}
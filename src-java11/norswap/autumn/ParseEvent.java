@@ -0,0 +1,34 @@
+package norswap.autumn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder event for a parse (see {@link ParseEvents}).
+ */
+@Name("norswap.autumn.Parse")
+@Label("Parse")
+@Category("Autumn")
+@Description("A parse run through Autumn.")
+@StackTrace(false)
+final class ParseEvent extends Event
+{
+    @Label("Parser")
+    String parser;
+
+    @Label("Input Length")
+    @Description("Length of the input in code points (or tokens), -1 if unknown.")
+    int inputLength;
+
+    @Label("Success")
+    @Description("Whether the parser matched the whole input.")
+    boolean success;
+
+    @Label("Error Offset")
+    @Description("Offset of the furthest error, -1 if successful.")
+    int errorOffset;
+}
@@ -0,0 +1,138 @@
+package norswap.autumn;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hooks through which parses report JDK Flight Recorder events.
+ *
+ * <p>This is the Java 11+ version of the class, from the multi-release section of the Autumn JAR
+ * (the Java 8 version does nothing). It emits three events: {@link ParseEvent}, {@link
+ * SlowRuleEvent} and {@link MemoStatisticsEvent}.
+ *
+ * <p>When the events are not enabled in the running recording (or when no recording is running),
+ * the hooks reduce to a check, except for the invocation of rules, which are only checked when the
+ * {@code SlowRule} event was enabled when the parse started ({@link Parse#ruleEvents}). If the
+ * {@code jdk.jfr} module is not available, the hooks do nothing.
+ */
+final class ParseEvents
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseEvents() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final boolean AVAILABLE = Jfr.init();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Isolates the references to {@code jdk.jfr}, so that they are only resolved if the module is
+     * available.
+     */
+    private static final class Jfr
+    {
+        static EventType slowRule;
+        static EventType memoStatistics;
+
+        static final LongAdder parses = new LongAdder();
+        static final LongAdder lookups = new LongAdder();
+        static final LongAdder hits = new LongAdder();
+        static final LongAdder stores = new LongAdder();
+        static final LongAdder evictions = new LongAdder();
+
+        static boolean init()
+        {
+            try {
+                slowRule = EventType.getEventType(SlowRuleEvent.class);
+                memoStatistics = EventType.getEventType(MemoStatisticsEvent.class);
+                FlightRecorder.addPeriodicEvent(MemoStatisticsEvent.class, Jfr::emit);
+                return true;
+            } catch (Throwable t) { // LinkageError without jdk.jfr, SecurityException, ...
+                return false;
+            }
+        }
+
+        static void emit()
+        {
+            MemoStatisticsEvent event = new MemoStatisticsEvent();
+            event.parses = parses.sumThenReset();
+            event.lookups = lookups.sumThenReset();
+            event.hits = hits.sumThenReset();
+            event.stores = stores.sumThenReset();
+            event.evictions = evictions.sumThenReset();
+            event.commit();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Object beginParse()
+    {
+        if (!AVAILABLE) return null;
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static void endParse (Object event, Parser parser, int inputLength, boolean success,
+                          int errorOffset)
+    {
+        ParseEvent e = (ParseEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.parser = parser.rule() != null ? parser.rule() : parser.getClass().getSimpleName();
+        e.inputLength = inputLength;
+        e.success = success;
+        e.errorOffset = errorOffset;
+        e.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static boolean ruleEventsEnabled() {
+        return AVAILABLE && Jfr.slowRule.isEnabled();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static Object beginRule()
+    {
+        SlowRuleEvent event = new SlowRuleEvent();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static void endRule (Object event, Parser parser, int start, int end, boolean success)
+    {
+        SlowRuleEvent e = (SlowRuleEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.rule = parser.rule();
+        e.start = start;
+        e.end = success ? end : -1;
+        e.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    static void memoStatistics (int lookups, int hits, int stores, int evictions)
+    {
+        if (!AVAILABLE || !Jfr.memoStatistics.isEnabled()) return;
+        Jfr.parses.increment();
+        Jfr.lookups.add(lookups);
+        Jfr.hits.add(hits);
+        Jfr.stores.add(stores);
+        Jfr.evictions.add(evictions);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
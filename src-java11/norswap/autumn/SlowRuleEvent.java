@@ -0,0 +1,33 @@
+package norswap.autumn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder event for an invocation of a named rule that took longer than the event's
+ * threshold (see {@link ParseEvents}).
+ */
+@Name("norswap.autumn.SlowRule")
+@Label("Slow Rule")
+@Category("Autumn")
+@Description("An invocation of a named rule that exceeded the threshold.")
+@Threshold("10 ms")
+@StackTrace(false)
+final class SlowRuleEvent extends Event
+{
+    @Label("Rule")
+    String rule;
+
+    @Label("Start")
+    @Description("Input position at which the rule was invoked.")
+    int start;
+
+    @Label("End")
+    @Description("Input position at which the rule's match ended, -1 if it failed.")
+    int end;
+}
@@ -1,6 +1,15 @@
 package norswap.autumn;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
 
 import static java.util.Objects.requireNonNull;
 
@@ -133,4 +142,180 @@ public final class Autumn
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses each of {@code inputs} with {@code rule} and the given parse options, concurrently,
+     * by running one task per input on {@code executor}. Returns the results in input order.
+     *
+     * <p>The grammar of the rule is {@link Grammar#freeze() frozen} first (as well as the parsers
+     * reachable from the rule), and the well-formedness check ({@link
+     * ParseOptions#wellFormednessCheck}), if enabled, is performed once for all inputs.
+     *
+     * <p>If {@code onResult} is non-null, it is called with each result and the index of its input
+     * as soon as the result is available, on the thread that performed the parse.
+     *
+     * <p>Blocks until all inputs have been parsed. If a task throws (e.g. {@code onResult} throws,
+     * or the stack overflows), the exception is rethrown once all tasks have completed.
+     *
+     * <p>Throws an {@link IllegalArgumentException} if the options specify a {@link
+     * ParseOptions#traceExporter}, as it cannot be shared by concurrent parses.
+     */
+    public static List<ParseResult> parseAll (
+        Grammar.rule rule, Iterable<String> inputs, ParseOptions options, Executor executor,
+        ObjIntConsumer<ParseResult> onResult)
+    {
+        requireNonNull(rule,     "Rule cannot be null.");
+        requireNonNull(inputs,   "Inputs cannot be null.");
+        requireNonNull(options,  "Parse options cannot be null.");
+        requireNonNull(executor, "Executor cannot be null.");
+        requireNoExporter(options);
+
+        rule.grammar().freeze();
+        Parser parser = rule.getParser();
+        Grammar.freeze(parser);
+        if (options.wellFormednessCheck)
+            Parse.checkWellFormed(parser);
+
+        ArrayList<String> strings = new ArrayList<>();
+        for (String input: inputs)
+            strings.add(requireNonNull(input, "Input string cannot be null."));
+
+        ParseResult[] results = new ParseResult[strings.size()];
+        CountDownLatch done = new CountDownLatch(results.length);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int i = 0; i < results.length; ++i) {
+            int index = i;
+            String input = strings.get(i);
+            executor.execute(() -> {
+                try {
+                    results[index] = Parse.runUnchecked(parser, input, null, options);
+                    if (onResult != null)
+                        onResult.accept(results[index], index);
+                }
+                catch (StackOverflowError e) {
+                    failure.compareAndSet(null, new PotentiallyMalformedGrammarError(e));
+                }
+                catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try { done.await(); break; }
+            catch (InterruptedException e) { interrupted = true; }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException) throw (RuntimeException) thrown;
+        if (thrown instanceof Error) throw (Error) thrown;
+        if (thrown != null) throw new RuntimeException(thrown);
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #parseAll(Grammar.rule, Iterable, ParseOptions, Executor, ObjIntConsumer)},
+     * without completion callback.
+     */
+    public static List<ParseResult> parseAll (
+        Grammar.rule rule, Iterable<String> inputs, ParseOptions options, Executor executor)
+    {
+        return parseAll(rule, inputs, options, executor, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code input}, which is made of independent records separated by the code points
+     * matching {@code delimiter} (e.g. {@code c -> c == '\n'} for newline-delimited formats), by
+     * parsing each record with {@code rule} in parallel on {@code pool}.
+     *
+     * <p>Delimiters are not part of the records (so records cannot contain the delimiter), and
+     * empty records are skipped. Each record is parsed as a separate parse, which must match the
+     * whole record for the record to count as a success. Errors are reported as offsets into the
+     * whole input. See {@link RecordParseResult} for how the results are merged.
+     *
+     * <p>The grammar is {@link Grammar#freeze() frozen} before the parse. {@link
+     * ParseOptions#speculation} is not used for the records. Throws an {@link
+     * IllegalArgumentException} if the options specify a {@link ParseOptions#traceExporter}, as it
+     * cannot be shared by the concurrent parses of the records.
+     */
+    public static RecordParseResult parseRecords (
+        Grammar.rule rule, String input, IntPredicate delimiter, ParseOptions options,
+        ForkJoinPool pool)
+    {
+        requireNonNull(delimiter, "Delimiter cannot be null.");
+        RecordParser parser = recordParser(rule, input, options, pool);
+        try {
+            return parser.run(delimiter, pool);
+        } catch (StackOverflowError e) {
+            throw new PotentiallyMalformedGrammarError(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #parseRecords(Grammar.rule, String, IntPredicate, ParseOptions,
+     * ForkJoinPool)}, but the records are delimited by successive matches of {@code splitter},
+     * which should be a cheap approximation of a record, including any separator (e.g. a line).
+     * If the splitter fails or matches nothing, the rest of the input is the last record.
+     *
+     * <p>The splitter is run sequentially over the whole input before the records are parsed in
+     * parallel. {@code rule} must match the whole extent of the records, including separators.
+     */
+    public static RecordParseResult parseRecords (
+        Grammar.rule rule, String input, Grammar.rule splitter, ParseOptions options,
+        ForkJoinPool pool)
+    {
+        requireNonNull(splitter, "Splitter cannot be null.");
+        RecordParser parser = recordParser(rule, input, options, pool);
+        Parser split = splitter.getParser();
+        Grammar.freeze(split);
+        try {
+            return parser.run(split, pool);
+        } catch (StackOverflowError e) {
+            throw new PotentiallyMalformedGrammarError(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static RecordParser recordParser (
+        Grammar.rule rule, String input, ParseOptions options, ForkJoinPool pool)
+    {
+        requireNonNull(rule,    "Rule cannot be null.");
+        requireNonNull(input,   "Input string cannot be null.");
+        requireNonNull(options, "Parse options cannot be null.");
+        requireNonNull(pool,    "Pool cannot be null.");
+        requireNoExporter(options);
+
+        rule.grammar().freeze();
+        Parser parser = rule.getParser();
+        Grammar.freeze(parser);
+        if (options.wellFormednessCheck)
+            Parse.checkWellFormed(parser);
+        return new RecordParser(parser, input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void requireNoExporter (ParseOptions options)
+    {
+        if (options.traceExporter != null)
+            throw new IllegalArgumentException(
+                "A trace exporter cannot be used by concurrent parses.");
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package norswap.autumn;
+
+import norswap.autumn.parsers.Longest;
+import norswap.autumn.positions.LineMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Measures the work discarded by backtracking during a parse, collected when the {@link
+ * ParseOptions#trackWaste} option is set, and available as {@link ParseResult#backtrackWaste}.
+ *
+ * <p>Whenever a parser fails, {@link Parser#parse} resets the position and rolls back the side
+ * effects of its sub-parsers, discarding the matches they made. For each parser, this records how
+ * much input (in code points, or tokens for a list input) its discarded matches spanned ({@link
+ * #wasted(Parser)}) and how many such matches there were ({@link #discarded(Parser)}). Only the
+ * outermost discarded matches are attributed: when a parser succeeds, the matches of its
+ * sub-parsers are folded into its own, as they can no longer be discarded separately: if {@code A}
+ * matches after {@code B} matched inside it, and the caller of {@code A} then fails, only {@code A}
+ * is charged. This keeps the pending matches to the successful children of the parsers being run,
+ * and only the totals per parser are retained once the parse ends.
+ *
+ * <p>For each input position, this also records how many times the position was part of
+ * discarded work, and hence had to be scanned again ({@link #rescans(int)}). These counts can be
+ * aggregated per line ({@link #heatmap(LineMap)}).
+ *
+ * <p>The report ({@link #toString()}) ranks the parsers by wasted input: these are the
+ * candidates for memoization ({@link Grammar.rule#memo()}) or for a grammar refactoring.
+ *
+ * <p>Only work discarded by a failure is accounted for, not the matches discarded by parsers that
+ * reset the position after a success (e.g. lookaheads, or {@link Longest} for its shorter
+ * matches). When a memoized result is reused, the memoized parser is not run, and the matches of
+ * its sub-parsers are not recorded again. The auxiliary parses run ahead of the main parse for
+ * {@link ParseOptions#speculation} and {@link ParseOptions#refinement} are not tracked.
+ */
+public final class BacktrackWaste
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The parsers of the matches that could still be discarded, in order of completion. This and
+     * {@link #spans} are released at the end of the parse ({@link #finish()}).
+     */
+    private Parser[] parsers = new Parser[256];
+
+    /** The start and end position of each match in {@link #parsers}. */
+    private int[] spans = new int[512];
+
+    /** Number of matches in {@link #parsers}. */
+    private int size;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Parsers indexed by {@link Parser#id}, for the parsers that had a match discarded. */
+    private Parser[] byId = new Parser[0];
+    private long[] wasted = new long[0];
+    private long[] discarded = new long[0];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of times each position (offset by {@link #start}) was part of discarded work. Grown
+     * as needed, up to the furthest end of a discarded match.
+     */
+    private int[] rescans = new int[64];
+
+    /** The position at which the parse starts (non-zero for the parse of a record). */
+    private final int start;
+
+    /** The end of the parsed input, or {@link Integer#MAX_VALUE} if unknown. */
+    private final int length;
+
+    /** Furthest end of a discarded match. */
+    private int furthest;
+
+    // ---------------------------------------------------------------------------------------------
+
+    BacktrackWaste (int start, int end)
+    {
+        this.start = start;
+        this.length = end;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a mark to pass to {@link #discard} if the parser about to be invoked fails.
+     */
+    int mark() {
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that {@code parser} matched {@code [start, end)}, folding the matches made since
+     * {@code mark} (those of its sub-parsers) into this one.
+     */
+    void matched (Parser parser, int mark, int start, int end)
+    {
+        size = mark;
+        if (size == parsers.length) {
+            parsers = Arrays.copyOf(parsers, size * 2);
+            spans = Arrays.copyOf(spans, size * 4);
+        }
+        parsers[size] = parser;
+        spans[2 * size] = start;
+        spans[2 * size + 1] = end;
+        ++size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that the matches made since {@code mark} were discarded by the failure of a parser
+     * invoked at {@code pos0}.
+     */
+    void discard (int mark, int pos0)
+    {
+        if (size == mark) return;
+        int end = pos0;
+
+        for (int i = mark; i < size; ++i) {
+            Parser parser = parsers[i];
+            int id = parser.id;
+            if (id >= byId.length) {
+                int length = Math.max(Parser.maxId(), id + 1);
+                byId = Arrays.copyOf(byId, length);
+                wasted = Arrays.copyOf(wasted, length);
+                discarded = Arrays.copyOf(discarded, length);
+            }
+            byId[id] = parser;
+            wasted[id] += spans[2 * i + 1] - spans[2 * i];
+            ++ discarded[id];
+            end = Math.max(end, spans[2 * i + 1]);
+            parsers[i] = null;
+        }
+
+        furthest = Math.max(furthest, end);
+        if (end - start > rescans.length)
+            rescans = Arrays.copyOf(rescans, Math.max(end - start, rescans.length * 2));
+        for (int i = pos0 - start; i < end - start; ++i)
+            ++ rescans[i];
+
+        size = mark;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Releases the matches that are still pending at the end of the parse (they can't be discarded
+     * anymore).
+     */
+    void finish()
+    {
+        parsers = null;
+        spans = null;
+        size = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the amount of input (in code points or tokens) spanned by the discarded matches of
+     * {@code parser}.
+     */
+    public long wasted (Parser parser) {
+        return parser.id < wasted.length ? wasted[parser.id] : 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of discarded matches of {@code parser}.
+     */
+    public long discarded (Parser parser) {
+        return parser.id < discarded.length ? discarded[parser.id] : 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of times the given input position was part of discarded work.
+     */
+    public int rescans (int position) {
+        int i = position - start;
+        return i >= 0 && i < rescans.length ? rescans[i] : 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the parsers that had matches discarded, by decreasing amount of wasted input.
+     */
+    public ArrayList<Parser> ranking()
+    {
+        ArrayList<Parser> parsers = new ArrayList<>();
+        for (Parser parser: byId)
+            if (parser != null) parsers.add(parser);
+        parsers.sort(Comparator.comparingLong(this::wasted).reversed());
+        return parsers;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a per-line heatmap of the rescans, in CSV format: one row per line of the input
+     * (as given by {@code map}) with the line index, the sum of the {@link #rescans(int)} of its
+     * positions, and the maximum number of rescans of any of its positions.
+     */
+    public String heatmap (LineMap map)
+    {
+        StringBuilder b = new StringBuilder("line,rescans,max\n");
+        int lines = map.lineFrom(length != Integer.MAX_VALUE ? length : furthest);
+        for (int line = 1; line <= lines; ++line) {
+            long sum = 0;
+            int max = 0;
+            int end = map.endOffsetFor(line);
+            for (int i = map.offsetFor(line); i <= end; ++i) {
+                int n = rescans(i);
+                sum += n;
+                max = Math.max(max, n);
+            }
+            b.append(line).append(',').append(sum).append(',').append(max).append('\n');
+        }
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        StringBuilder b = new StringBuilder(String.format("%40s | %-16s | %s\n",
+            "PARSER", "WASTED INPUT", "DISCARDED MATCHES"));
+        for (Parser parser: ranking())
+            b.append(String.format("%40s | %,-16d | %,d\n",
+                parser, wasted(parser), discarded(parser)));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
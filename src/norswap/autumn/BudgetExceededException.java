@@ -0,0 +1,51 @@
+package norswap.autumn;
+
+/**
+ * Thrown to end a parse that exceeded its {@link ParseOptions#budget}, and reported as {@link
+ * ParseResult#budgetExceeded}.
+ *
+ * <p>The exception carries no stack trace, as it would only point to the parser that happened to
+ * be running: see {@link #hottestParser} and {@link #hottestPosition} instead.
+ */
+public final class BudgetExceededException extends RuntimeException
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The limit that was exceeded (or {@link ParseBudget.Limit#CANCELLED}). */
+    public final ParseBudget.Limit limit;
+
+    /**
+     * The rule that was invoked the most often during the parse, or if no rule was invoked, the
+     * parser that was invoked the most often.
+     */
+    public final Parser hottestParser;
+
+    /** The input position at which parsers were invoked the most often. */
+    public final int hottestPosition;
+
+    /** The furthest input position at which a parser was invoked. */
+    public final int furthestPosition;
+
+    /**
+     * The number of parser invocations made by the parse, including those of its auxiliary parses
+     * as far as they were accounted for (see {@link ParseBudget}).
+     */
+    public final long invocations;
+
+    // ---------------------------------------------------------------------------------------------
+
+    BudgetExceededException (ParseBudget.Limit limit, Parser hottestParser, int hottestPosition,
+        int furthestPosition, long invocations)
+    {
+        super("parse budget exceeded (" + limit + ") after " + invocations + " invocations, "
+            + "hottest parser: " + hottestParser + ", hottest position: " + hottestPosition
+            + ", furthest position: " + furthestPosition, null, false, false);
+        this.limit = limit;
+        this.hottestParser = hottestParser;
+        this.hottestPosition = hottestPosition;
+        this.furthestPosition = furthestPosition;
+        this.invocations = invocations;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
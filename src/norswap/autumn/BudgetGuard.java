@@ -0,0 +1,189 @@
+package norswap.autumn;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces a {@link ParseBudget} for a single parse ({@link Parse#guard}), by being notified of
+ * each parser invocation ({@link #invoked}).
+ *
+ * <p>The auxiliary parses started by a parse (the recognition pass and fine parses of its {@link
+ * Refiner}, the worker parses of its {@link Speculator}) get a child guard, which shares the
+ * deadline and the total number of invocations of its parent. Each guard adds its invocations to
+ * the total when checking the limits.
+ */
+final class BudgetGuard
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parse parse;
+    private final ParseBudget budget;
+    private final long start;
+    private final boolean root;
+
+    /** Number of invocations of all the guards sharing this guard's deadline. */
+    private final AtomicLong total;
+
+    private long invocations;
+    private long flushed;
+    private int countdown = ParseBudget.CHECK_INTERVAL;
+    private int furthest;
+    private int reported = -1;
+
+    /** The invoked parsers, and their number of invocations, indexed by {@link Parser#id}. */
+    private Parser[] parsers = new Parser[Parser.maxId()];
+    private long[] parserCounts = new long[Parser.maxId()];
+
+    /** Number of invocations at each input position, from {@link #origin}. */
+    private int[] positionCounts;
+
+    /**
+     * The initial position of the parse. For child guards, the position of the first invocation,
+     * as the parse is positioned after its creation.
+     */
+    private int origin;
+
+    // ---------------------------------------------------------------------------------------------
+
+    BudgetGuard (Parse parse, ParseBudget budget)
+    {
+        this.parse = parse;
+        this.budget = budget;
+        this.start = System.nanoTime();
+        this.root = true;
+        this.total = new AtomicLong();
+        this.origin = parse.pos;
+        int end = parse.endOfInput;
+        positionCounts = new int[end == Integer.MAX_VALUE ? 1024 : end - origin + 1];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a guard for {@code parse}, an auxiliary parse of the parse guarded by {@code parent}.
+     */
+    BudgetGuard (Parse parse, BudgetGuard parent)
+    {
+        this.parse = parse;
+        this.budget = parent.budget;
+        this.start = parent.start;
+        this.root = false;
+        this.total = parent.total;
+        this.positionCounts = new int[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that {@code parser} is invoked at {@code pos}, and throws a {@link
+     * BudgetExceededException} if the budget is exceeded.
+     */
+    void invoked (Parser parser, int pos)
+    {
+        int id = parser.id;
+        if (id >= parsers.length) {
+            int length = Math.max(Parser.maxId(), id + 1);
+            parsers = Arrays.copyOf(parsers, length);
+            parserCounts = Arrays.copyOf(parserCounts, length);
+        }
+        parsers[id] = parser;
+        ++ parserCounts[id];
+
+        int index = Math.max(pos - origin, 0);
+        if (index >= positionCounts.length)
+            index = grow(index, pos);
+        if (pos > furthest)
+            furthest = pos;
+
+        if (++ invocations > budget.maxInvocations)
+            throw exceeded(ParseBudget.Limit.INVOCATIONS);
+        if (++ positionCounts[index] > budget.maxInvocationsPerPosition)
+            throw exceeded(ParseBudget.Limit.INVOCATIONS_PER_POSITION);
+        if (-- countdown == 0)
+            check();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Grows {@link #positionCounts} to hold {@code index}, or allocates it for the first invocation
+     * of a child guard, and returns the index of {@code pos}.
+     */
+    private int grow (int index, int pos)
+    {
+        if (positionCounts.length == 0) {
+            origin = pos;
+            positionCounts = new int[1024];
+            return 0;
+        }
+        positionCounts = Arrays.copyOf(positionCounts,
+            Math.max(index + 1, positionCounts.length * 2));
+        return index;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the invocations since the last call to {@link #total}, and returns the new total.
+     */
+    private long flush()
+    {
+        long total = this.total.addAndGet(invocations - flushed);
+        flushed = invocations;
+        return total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Checks the limits that are not checked at each invocation, and reports progress (for the
+     * root guard only, as the callback is called on the parsing thread).
+     */
+    private void check()
+    {
+        countdown = ParseBudget.CHECK_INTERVAL;
+
+        if (budget.cancellation != null && budget.cancellation.cancelled())
+            throw exceeded(ParseBudget.Limit.CANCELLED);
+        if (budget.timeout != Long.MAX_VALUE && System.nanoTime() - start > budget.timeout)
+            throw exceeded(ParseBudget.Limit.DEADLINE);
+        if (flush() > budget.maxInvocations)
+            throw exceeded(ParseBudget.Limit.INVOCATIONS);
+        if (parse.log.size() > budget.maxLogSize)
+            throw exceeded(ParseBudget.Limit.LOG_SIZE);
+        if (parse.memoEntries > budget.maxMemoEntries)
+            throw exceeded(ParseBudget.Limit.MEMO_ENTRIES);
+
+        if (root && budget.progress != null && furthest > reported) {
+            reported = furthest;
+            budget.progress.accept(furthest);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private BudgetExceededException exceeded (ParseBudget.Limit limit)
+    {
+        Parser hottest = null;
+        Parser hottestRule = null;
+        for (Parser parser: parsers) {
+            if (parser == null) continue;
+            long count = parserCounts[parser.id];
+            if (hottest == null || count > parserCounts[hottest.id])
+                hottest = parser;
+            if (parser.rule() != null
+                    && (hottestRule == null || count > parserCounts[hottestRule.id]))
+                hottestRule = parser;
+        }
+
+        int hottestPosition = 0;
+        for (int i = 1; i < positionCounts.length; ++i)
+            if (positionCounts[i] > positionCounts[hottestPosition])
+                hottestPosition = i;
+
+        return new BudgetExceededException(limit, hottestRule != null ? hottestRule : hottest,
+            origin + hottestPosition, furthest, flush());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
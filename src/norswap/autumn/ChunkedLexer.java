@@ -0,0 +1,186 @@
+package norswap.autumn;
+
+import norswap.autumn.positions.Token;
+import norswap.autumn.positions.TokenSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Lexes an input concurrently, by splitting it in chunks that are lexed by separate lexers ({@link
+ * TokenSource}), and stitching the resulting tokens back together.
+ *
+ * <p>Chunks start after a line feed, which is usually a point where a lexer can start afresh. This
+ * is not always true (e.g. inside a multi-line comment), so the tokens are verified by a
+ * sequential fix-up pass: the lexer of each chunk is run past the end of its chunk until it emits
+ * a token that starts at the same position as a token of the next chunk. The lexer of the next
+ * chunk then takes over after this token. If that never happens within the next chunk, its tokens
+ * are discarded and the check continues with the chunk after it.
+ *
+ * <p>This is only correct if the token a lexer emits at a position, and the tokens after it,
+ * depend only on the input from that position. A token can carry information from before its start
+ * (e.g. preceding comments): when both lexers emit a token at the same position, the token of the
+ * earlier lexer is the one retained.
+ *
+ * <p>Token offsets are positions in the whole input: lexers share the input and start at the
+ * beginning of their chunk, so no offset correction is required.
+ */
+public final class ChunkedLexer
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ChunkedLexer() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value for the approximate size of chunks, in code points. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Chunk<T extends Token>
+    {
+        final int start, end;
+        TokenSource<T> source;
+        final ArrayList<T> tokens = new ArrayList<>();
+
+        /** First token emitted past the end of the chunk, or null at the end of the input. */
+        T overflow;
+
+        Chunk (int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void lex (IntFunction<? extends TokenSource<T>> sources)
+        {
+            source = sources.apply(start);
+            T token;
+            while ((token = source.next()) != null && token.start() < end)
+                tokens.add(token);
+            overflow = token;
+        }
+
+        /** Index of the token starting at {@code pos}, or -1 if there is none. */
+        int indexOf (int pos)
+        {
+            int lo = 0, hi = tokens.size() - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int start = tokens.get(mid).start();
+                if (start < pos) lo = mid + 1;
+                else if (start > pos) hi = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Lexes {@code input} (an array of code points, as in {@link Parse#string}) in chunks of
+     * about {@code chunkSize} code points, lexed concurrently on {@code pool}.
+     *
+     * <p>{@code sources} must return a lexer that starts at the given position in {@code input}.
+     */
+    public static <T extends Token> List<T> lex (
+        int[] input, IntFunction<? extends TokenSource<T>> sources, int chunkSize,
+        ForkJoinPool pool)
+    {
+        ArrayList<Chunk<T>> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < input.length) {
+            int end = Math.min(start + chunkSize, input.length);
+            while (end < input.length && input[end - 1] != '\n') ++end;
+            chunks.add(new Chunk<>(start, end));
+            start = end;
+        }
+        if (chunks.isEmpty())
+            chunks.add(new Chunk<>(0, 0));
+
+        pool.invoke(new LexTask<>(chunks, sources, 0, chunks.size()));
+
+        Chunk<T> current = chunks.get(0);
+        ArrayList<T> tokens = new ArrayList<>(current.tokens);
+        T next = current.overflow;
+        int from = 0;
+
+        for (int k = 1; k < chunks.size(); ++k) {
+            Chunk<T> chunk = chunks.get(k);
+            int index = -1;
+            while (next != null && next.start() < chunk.end
+                    && (index = chunk.indexOf(next.start())) < 0) {
+                tokens.add(next);
+                next = current.source.next();
+            }
+
+            if (index < 0) { // not synchronized within the chunk
+                chunk.source.retain(from, from);
+                continue;
+            }
+
+            tokens.add(next);
+            current.source.retain(from, next.end());
+            from = next.end();
+            tokens.addAll(chunk.tokens.subList(index + 1, chunk.tokens.size()));
+            current = chunk;
+            next = chunk.overflow;
+        }
+
+        while (next != null) {
+            tokens.add(next);
+            next = current.source.next();
+        }
+        current.source.retain(from, input.length);
+        return tokens;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #lex(int[], IntFunction, int, ForkJoinPool)} with {@link #DEFAULT_CHUNK_SIZE}.
+     */
+    public static <T extends Token> List<T> lex (
+        int[] input, IntFunction<? extends TokenSource<T>> sources, ForkJoinPool pool)
+    {
+        return lex(input, sources, DEFAULT_CHUNK_SIZE, pool);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Lexes the chunks {@code lo} (inclusive) to {@code hi} (exclusive).
+     */
+    private static final class LexTask<T extends Token> extends RecursiveAction
+    {
+        private final List<Chunk<T>> chunks;
+        private final IntFunction<? extends TokenSource<T>> sources;
+        private final int lo, hi;
+
+        LexTask (List<Chunk<T>> chunks, IntFunction<? extends TokenSource<T>> sources,
+                 int lo, int hi)
+        {
+            this.chunks = chunks;
+            this.sources = sources;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override protected void compute()
+        {
+            if (hi - lo == 1) {
+                chunks.get(lo).lex(sources);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(
+                new LexTask<>(chunks, sources, lo, mid),
+                new LexTask<>(chunks, sources, mid, hi));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -3,6 +3,7 @@ package norswap.autumn;
 import norswap.autumn.actions.*;
 import norswap.autumn.memo.*;
 import norswap.autumn.parsers.*;
+import norswap.autumn.visitors.RegexCompiler;
 import norswap.utils.NArrays;
 import norswap.utils.data.wrappers.Slot;
 import norswap.utils.reflection.Subtyping;
@@ -12,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
 import java.util.function.Predicate;
@@ -66,6 +68,7 @@ public abstract class Grammar
      * Type of options to build {@link Collect} parsers, to be passed to {@link rule#collect}.
      * @see #PEEK_ONLY
      * @see #ACTION_ON_FAIL
+     * @see #REQUIRED
      * @see #LOOKBACK(int)
      */
     public static class CollectOption {
@@ -94,6 +97,16 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Indicates that the action of the {@link Collect} parser must run even in recognition-only
+     * mode ({@link ParseOptions#recognizeOnly}), because it influences the success of the parse.
+     * This is implied for {@link StackAction actions} whose {@link StackAction#required()} method
+     * returns true, such as {@link rule#filter filters}.
+     */
+    public static final CollectOption REQUIRED = new CollectOption(0);
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Indicates that the {@link Collect} sparser hould apply the given lookback before calling the
      * action (i.e. pass (and potentially pop) this many more items from the stack (compared to the
@@ -158,6 +171,14 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Table of the reserved words, used to match them (and check that identifiers are not reserved
+     * words) in constant time. See {@link #reservedWordTable()}.
+     */
+    private ReservedWord.Table reservedWordTable;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * This lazy rule is used by parser returned by {@link #identifier(Object)}.
      */
@@ -190,7 +211,14 @@ public abstract class Grammar
                 noPrefixCopy.add(word);
             }
 
-            return seq(new StringChoice(noPrefixCopy.toArray(new String[0])), id_part.not());
+            rule choice = seq(
+                new StringChoice(noPrefixCopy.toArray(new String[0])),
+                new Not(id_part.getParser(), this.cachePredicates));
+
+            if (reservedWordTable != null && reservedWordTable.containsAll(reservedWords))
+                choice.getParser().setSubstitute(new ReservedWord(reservedWordTable, null, null));
+
+            return choice;
         });
 
     // ---------------------------------------------------------------------------------------------
@@ -203,6 +231,16 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the negations used by {@link #reserved(String)} and {@link #identifier(Object)}
+     * cache their results for each input position ({@link Not#cached}). False by default.
+     *
+     * <p>As for {@link #ws}, set this before calling these methods.
+     */
+    public boolean cachePredicates = false;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Whether to assign names to parsers (based on the field names)
      * when calling {@link Autumn#parse} with a grammar or with a rule.
@@ -219,6 +257,13 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether {@link #freeze()} has been called.
+     */
+    private volatile boolean frozen = false;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the main entry point into the grammar. Used when calling {@link Autumn#parse(Grammar,
      * String, ParseOptions)} as well as its {@link Autumn#parse(Grammar.rule, List, ParseOptions)
@@ -271,7 +316,7 @@ public abstract class Grammar
      * <p>This is called automatically by {@link Autumn#parse} when called with a grammar or with
      * a rule.
      */
-    void makeRuleNames()
+    synchronized void makeRuleNames()
     {
         if (makeRuleNames && !ruleNamesMade) {
             makeRuleNames(this.getClass());
@@ -294,11 +339,25 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    private void makeRuleNames (Field[] fields)
+    {
+        forEachParserField(fields, (name, parser) -> {
+            if (parser.rule() == null)
+                parser.setRule(name);
+        });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls {@code consumer} with the name and parser of each field in {@code fields} that is of
+     * type {@link rule} or {@link Parser} and is not null.
+     */
     // Note: supresses warning on `f.isAccessible()` deprecated after Java 8 in favor of
     // `f.canAccess(this)`. Language level 8 with a later JDK will yield a warning while we
     // can't use `canAccess` yet.
     @SuppressWarnings({"deprecation", "RedundantSuppression"})
-    private void makeRuleNames (Field[] fields)
+    private void forEachParserField (Field[] fields, BiConsumer<String, Parser> consumer)
     {
         try {
             for (Field f : fields) {
@@ -308,15 +367,12 @@ public abstract class Grammar
                 if (Subtyping.check(f.getType(), rule.class)) {
                     rule w = (rule) f.get(this);
                     if (w == null) continue;
-                    Parser p = w.getParser();
-                    if (p.rule() == null)
-                        p.setRule(f.getName());
+                    consumer.accept(f.getName(), w.getParser());
                 }
                 else if (Subtyping.check(f.getType(), Parser.class)) {
                     Parser p = (Parser) f.get(this);
                     if (p == null) continue;
-                    if (p.rule() == null)
-                        p.setRule(f.getName());
+                    consumer.accept(f.getName(), p);
                 }
             }
         }
@@ -332,6 +388,88 @@ public abstract class Grammar
         }
     }
 
+    // endregion
+    // =============================================================================================
+    // region [Optimization]
+    // =============================================================================================
+
+    /**
+     * Compiles the regular parts of the grammar reachable from {@link #root()} (typically, lexical
+     * rules) to deterministic automata, using a {@link RegexCompiler}, which is returned so that
+     * its report can be inspected.
+     *
+     * <p>This assigns rule names first (see {@link #makeRuleNames()}), so that the report is
+     * legible. It should be called once the grammar is complete, before parsing.
+     */
+    public RegexCompiler compileRegularRules()
+    {
+        makeRuleNames();
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.compile(root().getParser());
+        return compiler;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Makes the grammar safe to share between threads. This assigns rule names (see {@link
+     * #makeRuleNames()}), then {@link Parser#freeze() freezes} all the parsers reachable from the
+     * fields of type {@link rule} or {@link Parser} declared by the subclasses of {@link Grammar}
+     * (as well as their substitutes): lazily-initialized state is computed, and rule names and
+     * substitutes can no longer change. A parse never mutates a frozen parser.
+     *
+     * <p>This should be the last step of the construction of the grammar (after e.g. {@link
+     * #compileRegularRules()}). The grammar can then be handed over to other threads (through any
+     * happens-before edge, such as submitting a task to an executor) and used by concurrent
+     * parses. Calling this method more than once has no effect.
+     *
+     * <p>Called by {@link Autumn#parseAll}.
+     */
+    public synchronized void freeze()
+    {
+        if (frozen) return;
+        makeRuleNames();
+        Freezer freezer = new Freezer();
+        // Pre-defined rules that are not used may not be valid (e.g. any_reserved_word).
+        for (Class<?> klass = getClass(); klass != Grammar.class; klass = klass.getSuperclass())
+            forEachParserField(klass.getDeclaredFields(), (name, parser) -> freezer.walk(parser));
+        frozen = true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@link #freeze()} has been called.
+     */
+    public boolean frozen() {
+        return frozen;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Freezes all the parsers reachable from {@code parser}, as well as their substitutes.
+     */
+    static void freeze (Parser parser) {
+        new Freezer().walk(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Freezes the parsers it walks, as well as their substitutes.
+     */
+    private static final class Freezer extends ParserWalker
+    {
+        @Override protected void work (Parser parser, State state)
+        {
+            if (state != State.BEFORE) return;
+            parser.freeze();
+            if (parser.substitute() != null)
+                walk(parser.substitute());
+        }
+    }
+
     // endregion
     // =============================================================================================
     // region [Pre-Defined Rules]
@@ -458,6 +596,9 @@ public abstract class Grammar
      *
      * <p>For this to work, you must have defined {@link #id_part} to a parser that matches
      * any single character that may occur within an identifier.
+     *
+     * <p>If {@link #id_part} is a {@link CharPredicate}, the returned parser is implemented by a
+     * {@link ReservedWord} parser (see {@link Parser#setSubstitute(Parser)}).
      */
     public rule reserved (String string) {
         if (id_part == null)
@@ -465,7 +606,30 @@ public abstract class Grammar
                 "Grammar#id_part, which should match any single character that can occur " +
                 "within identifiers.");
         reservedWords.add(string);
-        return seq(string, id_part.not()).word();
+        rule word = seq(string, new Not(id_part.getParser(), cachePredicates)).word();
+        ReservedWord.Table table = reservedWordTable();
+        if (table != null && table.add(string))
+            word.getParser().setSubstitute(new ReservedWord(table, string,
+                ((TrailingWhitespace) word.getParser()).whitespace));
+        return word;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the table used to classify reserved words, creating it if necessary, or null if
+     * {@link #id_part} isn't a {@link CharPredicate} (or matches the end-of-input marker 0), in
+     * which case reserved words and identifiers are matched without the help of {@link
+     * ReservedWord}.
+     */
+    private ReservedWord.Table reservedWordTable()
+    {
+        if (reservedWordTable != null)
+            return reservedWordTable;
+        Parser idPart = id_part.getParser();
+        if (!(idPart instanceof CharPredicate) || ((CharPredicate) idPart).predicate.test(0))
+            return null;
+        return reservedWordTable = new ReservedWord.Table(((CharPredicate) idPart).predicate);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -486,7 +650,7 @@ public abstract class Grammar
                 "Grammar#id_part, which should match any single character that can occur " +
                 "within identifiers.");
 
-        return seq(any_reserved_word.not(), parser).word();
+        return seq(new Not(any_reserved_word.getParser(), cachePredicates), parser).word();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -536,6 +700,28 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a {@link Regex} parser that matches the longest prefix of the input matching
+     * the given regular expression (see {@link norswap.autumn.regex.RegexSyntax} for the syntax).
+     */
+    public rule regex (String pattern) {
+        return new rule(new Regex(pattern, false));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link Regex} parser that matches the given regular expression (see {@link
+     * norswap.autumn.regex.RegexSyntax} for the syntax) with PEG semantics: alternatives are
+     * ordered and repetitions are possessive, just like with {@link #choice} and {@link
+     * rule#at_least}.
+     */
+    public rule regex_peg (String pattern) {
+        return new rule(new Regex(pattern, true));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns an {@link ObjectPredicate} parser with name "opred".
      */
@@ -576,6 +762,30 @@ public abstract class Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a negation ({@link Not}) of the parser, which caches its result for each input
+     * position.
+     *
+     * <p>Prefer using {@link rule#cached_not()} if the parser has type {@link rule}.
+     */
+    public rule cached_not (Object parser) {
+        return new rule(new Not(compile(parser), true));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a lookahead version ({@link Lookahead}) of the parser, which caches its result for
+     * each input position.
+     *
+     * <p>Prefer using {@link rule#cached_ahead()} if the parser has type {@link rule}.
+     */
+    public rule cached_ahead (Object parser) {
+        return new rule(new Lookahead(compile(parser), true));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns an optional version ({@link Optional}) of the parser.
      *
@@ -607,6 +817,17 @@ public abstract class Grammar
         return new RightExpressionBuilder();
     }
 
+    // -----------------------------------------------------------------------------------------
+
+    /**
+     * Returns an {@link OperatorTableBuilder} that helps build an {@link OperatorTable} parser,
+     * which can replace a whole hierarchy of nested {@link #left_expression()} and {@link
+     * #right_expression()} parsers.
+     */
+    public OperatorTableBuilder operator_table() {
+        return new OperatorTableBuilder(null, new OperatorTable.Level[0]);
+    }
+
     // endregion
     // =============================================================================================
     // region [Lazy, Recursive and Associative Parsers]
@@ -733,6 +954,39 @@ public abstract class Grammar
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Returns a negation ({@link Not}) of the parser, which caches its result for each input
+         * position. Only use this if the result of the parser only depends on the input (and not
+         * e.g. on the value stack).
+         */
+        public rule cached_not() {
+            return new rule(new Not(getParser(), true));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Returns a lookahead version ({@link Lookahead}) of the parser, which caches its result
+         * for each input position when this doesn't affect the outcome of the parse. Only use this
+         * if the result of the parser only depends on the input (and not e.g. on the value stack).
+         */
+        public rule cached_ahead() {
+            return new rule(new Lookahead(getParser(), true));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Returns a version of the parser that runs in recognition-only mode ({@link Recognize}),
+         * without building any value. Typically used as {@code recognize().not()} or {@code
+         * recognize().ahead()}.
+         */
+        public rule recognize() {
+            return new rule(new Recognize(getParser()));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
         /**
          * Returns an optional version ({@link Optional}) of the parser.
          */
@@ -820,9 +1074,10 @@ public abstract class Grammar
             int lookback = Arrays.stream(options).mapToInt(it -> it.lookback).reduce(0, Math::max);
             boolean actionOnFail = NArrays.contains(options, ACTION_ON_FAIL);
             boolean peekOnly = NArrays.contains(options, PEEK_ONLY);
+            boolean required = action.required() || NArrays.contains(options, REQUIRED);
 
-            return new rule (
-                new Collect(name, getParser(), lookback, actionOnFail, !peekOnly, action));
+            return new rule (new Collect(
+                name, getParser(), lookback, actionOnFail, !peekOnly, required, action));
         }
 
         // -----------------------------------------------------------------------------------------
@@ -865,7 +1120,7 @@ public abstract class Grammar
          */
         public <T> rule as_list (Class<T> klass, CollectOption... options) {
             return collect("as_list",
-                (StackPush) $ -> $.<T>$list(),
+                (TransientPush) $ -> $.<T>$list(),
                 options);
         }
 
@@ -878,7 +1133,7 @@ public abstract class Grammar
          */
         public <T> rule as_array (T[] witness, CollectOption... options) {
             return collect("as_list",
-                (StackPush) $ -> $.$array(witness),
+                (TransientPush) $ -> $.$array(witness),
                 options);
         }
 
@@ -892,7 +1147,7 @@ public abstract class Grammar
         public rule as_bool()
         {
             return new rule(new Collect("as_bool", new Optional(getParser()), 0, true, false,
-                (StackPush) $ -> $.success()));
+                (LightPush) $ -> $.success()));
         }
 
         // -----------------------------------------------------------------------------------------
@@ -904,7 +1159,7 @@ public abstract class Grammar
         public rule as_val (Object value)
         {
             return new rule(new Collect("as_val", getParser(), 0, false, false,
-                (StackPush) $ -> value));
+                (LightPush) $ -> value));
         }
 
         // -----------------------------------------------------------------------------------------
@@ -917,7 +1172,7 @@ public abstract class Grammar
         public rule or_push_null()
         {
             return new rule(new Collect("or_push_null", getParser(), 0, true, false,
-                (StackConsumer) $ -> { if (!$.success()) $.push(null); }));
+                (LightConsumer) $ -> { if (!$.success()) $.push(null); }));
         }
 
         // endregion
@@ -938,14 +1193,15 @@ public abstract class Grammar
         /**
          * Returns a new context-sensitive {@link Memo} parser wrapping the parser. The parse
          * results will be memoized in a {@link MemoTable}. {@code extractor} will be used to
-         * extract and compare the relevant context (see {@link Memo} for details).
+         * extract and compare the relevant context (see {@link Memo} for details). If it is null,
+         * failures are recorded in a {@link FailureBitmap} instead (see {@link Memo#failureBitmap}).
          */
         public rule memo (Function<Parse, Object> extractor)
         {
             ParseState<Memoizer> memoizer
                 = new ParseState<>(new Slot<>(getParser()), () -> new MemoTable(false));
 
-            return new rule(new Memo(getParser(), memoizer, extractor));
+            return new rule(new Memo(getParser(), memoizer, extractor, extractor == null));
         }
 
         // -----------------------------------------------------------------------------------------
@@ -964,7 +1220,8 @@ public abstract class Grammar
          * Returns a new context-sensitive {@link Memo} parser wrapping the parser. The parse
          * results will be memoized in a {@link MemoCache} with {@code n} slots (must be strictly
          * positive). {@code extractor} will be used to extract and compare the relevant context
-         * (see {@link Memo} for details).
+         * (see {@link Memo} for details). If it is null, failures are recorded in a {@link
+         * FailureBitmap} instead, and do not take up slots (see {@link Memo#failureBitmap}).
          */
         public rule memo (int n, Function<Parse, Object> extractor)
         {
@@ -974,11 +1231,49 @@ public abstract class Grammar
             ParseState<Memoizer> memoizer
                 = new ParseState<>(new Slot<>(getParser()), () -> new MemoCache(n, false));
 
-            return new rule(new Memo(getParser(), memoizer, extractor));
+            return new rule(new Memo(getParser(), memoizer, extractor, extractor == null));
         }
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Returns a new {@link Memo} parser wrapping the parser. The parse results will be memoized
+         * in a {@link MemoTable}, wrapped in an {@link AdaptiveMemoizer} that switches memoization
+         * off whenever the fraction of invocations that could reuse a result falls below {@link
+         * AdaptiveMemoizer#DEFAULT_THRESHOLD}. The decision carries over from one parse to the
+         * next.
+         */
+        public rule adaptive_memo()
+        {
+            AdaptiveMemoizer.Session session = new AdaptiveMemoizer.Session();
+            ParseState<Memoizer> memoizer = new ParseState<>(new Slot<>(getParser()),
+                () -> new AdaptiveMemoizer(new MemoTable(false), session,
+                    AdaptiveMemoizer.DEFAULT_THRESHOLD));
+
+            return new rule(new Memo(getParser(), memoizer, null));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Returns a new {@link Memo} parser wrapping the parser. The parse results will be memoized
+         * in a {@link MemoCache} with {@code n} slots (must be strictly positive), wrapped in an
+         * {@link AdaptiveMemoizer} (see {@link #adaptive_memo()}).
+         */
+        public rule adaptive_memo (int n)
+        {
+            if (n <= 0) throw new IllegalArgumentException
+                ("A memo cache must have a strictly positive number of entries.");
+
+            AdaptiveMemoizer.Session session = new AdaptiveMemoizer.Session();
+            ParseState<Memoizer> memoizer = new ParseState<>(new Slot<>(getParser()),
+                () -> new AdaptiveMemoizer(new MemoCache(n, false), session,
+                    AdaptiveMemoizer.DEFAULT_THRESHOLD));
+
+            return new rule(new Memo(getParser(), memoizer, null));
+        }
+        // -----------------------------------------------------------------------------------------
+
         /**
          * Returns a new {@link Memo} wrapping the parser. The parse results will be memoized using
          * the supplied memoizer. This form is useful when you want to share a single memoizer
@@ -1007,7 +1302,26 @@ public abstract class Grammar
     // =============================================================================================
     // region [class ExpressionBuilder]
 
-    private final static StackConsumer PUSHBACK = $ -> $.pushAll($.$);
+    /** A {@link StackPush} that does not retain its context. */
+    private interface TransientPush extends StackPush {
+        @Override default boolean retainsContext() { return false; }
+    }
+
+    /** A {@link StackPush} that neither reads the collected items nor retains its context. */
+    private interface LightPush extends TransientPush {
+        @Override default boolean usesItems() { return false; }
+    }
+
+    /** A {@link StackConsumer} that neither reads the collected items nor retains its context. */
+    private interface LightConsumer extends StackConsumer {
+        @Override default boolean usesItems() { return false; }
+        @Override default boolean retainsContext() { return false; }
+    }
+
+    private final static StackConsumer PUSHBACK = new StackConsumer() {
+        @Override public void action (ActionContext $) { $.pushAll($.$); }
+        @Override public boolean retainsContext() { return false; }
+    };
 
     /**
      * Base class for {@link LeftExpressionBuilder} and {@link RightExpressionBuilder}.
@@ -1349,6 +1663,218 @@ public abstract class Grammar
         }
     }
 
+    // endregion
+    // =============================================================================================
+    // region [class OperatorTableBuilder]
+
+    /**
+     * Helps build an {@link OperatorTable} parser.
+     *
+     * <p>After defining the operand, call {@link #left_assoc()} or {@link #right_assoc()} to start
+     * a new precedence level, then define the operators of that level. Levels must be defined from
+     * the tightest-binding to the loosest-binding. For instance:
+     *
+     * <pre>{@code
+     * rule expr = operator_table()
+     *     .operand(integer)
+     *     .left_assoc()
+     *         .suffix(BANG, $ -> factorial($.$0()))
+     *     .right_assoc()
+     *         .prefix(MINUS, $ -> -(int) $.$0())
+     *     .left_assoc()
+     *         .infix(STAR, $ -> (int) $.$0() * (int) $.$1())
+     *         .infix(DIV,  $ -> (int) $.$0() / (int) $.$1())
+     *     .left_assoc()
+     *         .infix(PLUS, $ -> (int) $.$0() + (int) $.$1())
+     *     .right_assoc()
+     *         .ternary(QUES, lazy(() -> this.expr), COLON,
+     *             $ -> (int) $.$0() != 0 ? $.$1() : $.$2());
+     * }</pre>
+     */
+    public final class OperatorTableBuilder extends rule
+    {
+        // -----------------------------------------------------------------------------------------
+
+        final Parser operand;
+        final OperatorTable.Level[] levels;
+
+        // -----------------------------------------------------------------------------------------
+
+        OperatorTableBuilder (Parser operand, OperatorTable.Level[] levels) {
+            super(null);
+            this.operand = operand;
+            this.levels = levels;
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define the operand of the operators of the first level.
+         */
+        public OperatorTableBuilder operand (Object op)
+        {
+            if (this.operand != null)
+                throw new IllegalStateException("Trying to redefine the operand.");
+
+            return new OperatorTableBuilder(compile(op), levels);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder level (boolean leftAssociative)
+        {
+            return new OperatorTableBuilder(operand, NArrays.append(levels,
+                new OperatorTable.Level(leftAssociative,
+                    new Parser[0], new StackAction[0],
+                    new Parser[0], new StackAction[0])));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Start a new level of left-associative infix and suffix operators, which bind less
+         * tightly than the operators of the previous levels.
+         */
+        public OperatorTableBuilder left_assoc() {
+            return level(true);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Start a new level of right-associative infix and prefix operators, which bind less
+         * tightly than the operators of the previous levels.
+         */
+        public OperatorTableBuilder right_assoc() {
+            return level(false);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder operator (boolean infix, Object op, StackAction step)
+        {
+            if (levels.length == 0)
+                throw new IllegalStateException(
+                    "Trying to define an operator before calling left_assoc() or right_assoc().");
+
+            OperatorTable.Level last = levels[levels.length - 1];
+            OperatorTable.Level[] levels = this.levels.clone();
+            Parser parser = compile(op);
+
+            levels[levels.length - 1] = infix
+                ? new OperatorTable.Level(last.leftAssociative,
+                    NArrays.append(last.infixes, parser), NArrays.append(last.infixSteps, step),
+                    last.affixes, last.affixSteps)
+                : new OperatorTable.Level(last.leftAssociative,
+                    last.infixes, last.infixSteps,
+                    NArrays.append(last.affixes, parser), NArrays.append(last.affixSteps, step));
+
+            return new OperatorTableBuilder(operand, levels);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        private OperatorTableBuilder affix (boolean suffix, Object op, StackAction step)
+        {
+            if (levels.length > 0 && levels[levels.length - 1].leftAssociative != suffix)
+                throw new IllegalStateException(suffix
+                    ? "Trying to define a suffix operator on a right-associative level."
+                    : "Trying to define a prefix operator on a left-associative level.");
+
+            return operator(false, op, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define an infix operator on the current level, which leaves the stack untouched.
+         */
+        public OperatorTableBuilder infix (Object op) {
+            return operator(true, op, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define an infix operator on the current level, along with the corresponding step action.
+         */
+        public OperatorTableBuilder infix (Object op, StackPush step) {
+            return operator(true, op, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a ternary operator on the current level, along with the corresponding step
+         * action. This is the same as defining an infix operator made of {@code first}, {@code
+         * middle} and {@code second} in sequence: the values pushed by {@code middle} appear
+         * between the operands on the stack.
+         */
+        public OperatorTableBuilder ternary (
+            Object first, Object middle, Object second, StackPush step)
+        {
+            return operator(true, seq(first, middle, second), step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a prefix operator on the current (right-associative) level, which leaves the
+         * stack untouched.
+         */
+        public OperatorTableBuilder prefix (Object op) {
+            return affix(false, op, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a prefix operator on the current (right-associative) level, along with the
+         * corresponding step action.
+         */
+        public OperatorTableBuilder prefix (Object op, StackPush step) {
+            return affix(false, op, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a suffix operator on the current (left-associative) level, which leaves the
+         * stack untouched.
+         */
+        public OperatorTableBuilder suffix (Object op) {
+            return affix(true, op, PUSHBACK);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Define a suffix operator on the current (left-associative) level, along with the
+         * corresponding step action.
+         */
+        public OperatorTableBuilder suffix (Object op, StackPush step) {
+            return affix(true, op, step);
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        @Override public Parser getParser ()
+        {
+            if (parser != null)
+                return parser; // get() was called before
+
+            if (operand == null)
+                throw new IllegalStateException("No operand specified for an operator table.");
+
+            for (int i = 0; i < levels.length; ++i)
+                if (levels[i].infixes.length == 0 && levels[i].affixes.length == 0)
+                    throw new IllegalStateException(
+                        "No operator defined on level " + i + " of an operator table.");
+
+            return parser = new OperatorTable(operand, levels);
+        }
+    }
+
     // endregion
     // =============================================================================================
     // region [class BoundedParserBuilder]
@@ -1360,6 +1886,7 @@ public abstract class Grammar
 
         private final Parser coarse;
         private final Parser fine;
+        private boolean parallel;
 
         // -----------------------------------------------------------------------------------------
 
@@ -1370,20 +1897,31 @@ public abstract class Grammar
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Allows the fine parser to run ahead of time on another thread ({@link Bounded#parallel}).
+         * Only use this if the fine parser's result depends only on the input span it matches.
+         */
+        public BoundedParserBuilder parallel() {
+            this.parallel = true;
+            return this;
+        }
+
+        // -----------------------------------------------------------------------------------------
+
         public rule exact() {
-            return new rule(new Bounded(coarse, fine, p -> false));
+            return new rule(new Bounded(coarse, fine, p -> false, parallel));
         }
 
         // -----------------------------------------------------------------------------------------
 
         public rule permissive() {
-            return new rule(new Bounded(coarse, fine, p -> true));
+            return new rule(new Bounded(coarse, fine, p -> true, parallel));
         }
 
         // -----------------------------------------------------------------------------------------
 
         public rule fallback (Predicate<Parse> fallback) {
-            return new rule(new Bounded(coarse, fine, fallback));
+            return new rule(new Bounded(coarse, fine, fallback, parallel));
         }
     }
 
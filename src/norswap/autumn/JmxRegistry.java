@@ -0,0 +1,144 @@
+package norswap.autumn;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ParseStatistics.Registry} that publishes statistics as JMX MXBeans ({@link
+ * ParseStatisticsMXBean}), named {@code norswap.autumn:type=ParseStatistics,name=<name>}, where
+ * they can be read by JMX clients (e.g. JConsole, VisualVM) and by the JMX exporters of monitoring
+ * systems.
+ *
+ * <p>JMX errors (e.g. registering the same name twice) are rethrown as {@link
+ * IllegalStateException}s.
+ */
+public final class JmxRegistry implements ParseStatistics.Registry
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The attributes and operations of the MXBeans registered by {@link JmxRegistry}. Durations are
+     * in nanoseconds. See the corresponding methods of {@link ParseStatistics}.
+     */
+    public interface ParseStatisticsMXBean
+    {
+        long getParses();
+        long getFailures();
+        long getInputUnits();
+        long getParseTime();
+        double getThroughput();
+        long getMemoHighWaterMark();
+        long getLogHighWaterMark();
+        long getLatencyP50();
+        long getLatencyP99();
+        long getLatencyP999();
+
+        /**
+         * The percentiles of each input size bucket, keyed as e.g. {@code <10K.p99}.
+         */
+        Map<String, Long> getLatencyPercentilesBySize();
+
+        void reset();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Bean implements ParseStatisticsMXBean
+    {
+        final ParseStatistics s;
+
+        Bean (ParseStatistics statistics) {
+            this.s = statistics;
+        }
+
+        @Override public long getParses()            { return s.parses(); }
+        @Override public long getFailures()          { return s.failures(); }
+        @Override public long getInputUnits()        { return s.inputUnits(); }
+        @Override public long getParseTime()         { return s.parseTime(); }
+        @Override public double getThroughput()      { return s.throughput(); }
+        @Override public long getMemoHighWaterMark() { return s.memoHighWaterMark(); }
+        @Override public long getLogHighWaterMark()  { return s.logHighWaterMark(); }
+        @Override public long getLatencyP50()        { return s.latencies().percentile(50); }
+        @Override public long getLatencyP99()        { return s.latencies().percentile(99); }
+        @Override public long getLatencyP999()       { return s.latencies().percentile(99.9); }
+        @Override public void reset()                { s.reset(); }
+
+        @Override public Map<String, Long> getLatencyPercentilesBySize()
+        {
+            LinkedHashMap<String, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < s.sizeBuckets(); ++i) {
+                String label = s.sizeBucketLabel(i);
+                ParseStatistics.Histogram h = s.latencies(i);
+                map.put(label + ".p50", h.percentile(50));
+                map.put(label + ".p99", h.percentile(99));
+                map.put(label + ".p999", h.percentile(99.9));
+            }
+            return map;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final MBeanServer server;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a registry that publishes to the given MBean server.
+     */
+    public JmxRegistry (MBeanServer server) {
+        this.server = server;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a registry that publishes to the platform MBean server.
+     */
+    public JmxRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the JMX name under which statistics registered with {@code name} are published.
+     */
+    public static ObjectName objectName (String name)
+    {
+        try {
+            return new ObjectName(
+                "norswap.autumn:type=ParseStatistics,name=" + ObjectName.quote(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void register (String name, ParseStatistics statistics)
+    {
+        try {
+            server.registerMBean(new Bean(statistics), objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void unregister (String name)
+    {
+        try {
+            server.unregisterMBean(objectName(name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -22,12 +22,27 @@ public final class Log extends ArrayStack<SideEffect.Applied>
 
     // ---------------------------------------------------------------------------------------------
 
+    /** See {@link #highWaterMark()}. */
+    private int highWaterMark;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the highest size the log reached.
+     */
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Applies the given side-effect and adds it to the log of applied side effects.
      */
     public void apply (SideEffect effect)
     {
         add(effect.apply());
+        if (size() > highWaterMark) highWaterMark = size();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -2,12 +2,18 @@ package norswap.autumn;
 
 import norswap.autumn.actions.ActionContext;
 import norswap.autumn.actions.StackAction;
+import norswap.autumn.memo.MemoArbiter;
+import norswap.autumn.memo.Memoizer;
 import norswap.autumn.parsers.Bounded;
+import norswap.autumn.parsers.Collect;
+import norswap.autumn.parsers.Memo;
 import norswap.autumn.parsers.Not;
+import norswap.autumn.parsers.Recognize;
 import norswap.autumn.parsers.RightExpression;
 import norswap.autumn.parsers.StringMatch;
 import norswap.autumn.parsers.TrailingWhitespace;
 import norswap.autumn.positions.Span;
+import norswap.autumn.positions.TokenStream;
 import norswap.autumn.visitors.WellFormednessChecker;
 import norswap.utils.data.structures.ArrayListLong;
 import java.util.ArrayList;
@@ -51,7 +57,7 @@ public final class Parse
      * Start of the last parsed whitespace segment for {@link Span} creation. Must be modified via
      * side effects.
      */
-    private int whitespaceStart = 0;
+    int whitespaceStart = 0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -59,7 +65,7 @@ public final class Parse
      * End of the last parsed whitespace segment for {@link Span} creation. Must be modified via
      * side effects.
      */
-    private int whitespaceEnd = 0;
+    int whitespaceEnd = 0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -79,6 +85,28 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the parse is currently in recognition-only mode, in which {@link Collect} parsers
+     * and expression parsers skip the stack actions that are not {@link StackAction#required()
+     * required}.
+     *
+     * <p>Initialized from {@link #baseRecognizeOnly}, and toggled for subtrees by {@link
+     * Recognize} and by the {@link Collect} parsers with a required action. Parsers that change it
+     * must restore it before returning.
+     */
+    public boolean recognizeOnly;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The recognition mode the parse starts in: {@link ParseOptions#recognizeOnly}, except for the
+     * recognition pass of a {@link Refiner}, which is always in recognition-only mode. Memoized
+     * results are only valid in this mode (see {@link Memo}).
+     */
+    public final boolean baseRecognizeOnly;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The position one past the last input position.
      *
@@ -107,6 +135,14 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * {@link #list} if it is a {@link TokenStream}, whose tokens are lexed as the parse advances,
+     * null otherwise.
+     */
+    private final TokenStream<?> stream;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The parse options used to construct this parse object.
      */
@@ -114,6 +150,30 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Enforces {@link ParseOptions#memoBudget}, or null if there is no budget.
+     */
+    public final MemoArbiter memoArbiter;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs parsers ahead of this parse on other threads if {@link ParseOptions#speculation} is
+     * set, or null otherwise (and in the parses run by the speculator itself).
+     */
+    public final Speculator speculator;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the fine parsers of parallel {@link Bounded} parsers on other threads if {@link
+     * ParseOptions#refinement} is set, or null otherwise. Also set in the recognition pass run by
+     * the refiner, but not in the parses of the fine parsers.
+     */
+    public final Refiner refiner;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The list of side-effects that have been applied during this parse.
      */
@@ -140,11 +200,71 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /** Number of entries in {@link #stateCache}. */
+    static final int STATE_CACHE_SIZE = 64;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A direct-mapped cache of {@link #stateData}, holding pairs of {@link ParseState} and data,
+     * used by {@link ParseState#data(Parse)}.
+     */
+    final Object[] stateCache = new Object[2 * STATE_CACHE_SIZE];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Action contexts reused by {@link ActionContext#apply} for the stack actions that do not
+     * {@link StackAction#retainsContext() retain their context}, indexed by nesting depth.
+     */
+    public final ArrayList<ActionContext> actionContexts = new ArrayList<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Current nesting depth of action applications that reuse the contexts in {@link
+     * #actionContexts}.
+     */
+    public int actionDepth = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of lookups made by {@link Memo} parsers in their memoizer during this parse, reported
+     * to the JDK Flight Recorder (see {@link ParseEvents}).
+     */
+    public int memoLookups = 0;
+
+    /**
+     * Number of lookups in {@link #memoLookups} that returned an entry.
+     */
+    public int memoHits = 0;
+
+    /**
+     * Number of entries stored by {@link Memo} parsers in their memoizer during this parse,
+     * including those that replaced or were later evicted from another entry.
+     */
+    public int memoStores = 0;
+
+    /**
+     * Number of entries currently held by the memoizers of this parse, as reported by {@link
+     * Memoizer#size()} (memoizers that do not report their size are not accounted for).
+     */
+    public int memoEntries = 0;
+
+    /**
+     * Highest value reached by {@link #memoEntries} during this parse (see {@link
+     * ParseStatistics#memoHighWaterMark()}).
+     */
+    public int memoHighWaterMark = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
-     * List of {@link ParseState} used during this parse, i.e. parse states whose data
-     * are registered in {@link #stateData}.
+     * Whether the invocations of named rules are reported to the JDK Flight Recorder (see {@link
+     * ParseEvents}), decided when the parse is created.
      */
-    ArrayList<ParseState<?>> parseStates = new ArrayList<>();
+    final boolean ruleEvents = ParseEvents.ruleEventsEnabled();
 
     // ---------------------------------------------------------------------------------------------
 
@@ -181,25 +301,127 @@ public final class Parse
     /**
      * Maps parser names to a set of parser metrics.
      *
-     * <p>Can be reused accross parses using {@link ParseOptions#metrics}.
+     * <p>Can be reused accross parses using {@link ParseOptions#metrics}. The metrics of this parse
+     * are only merged into it at the end of the parse: see {@link #localMetrics(Parser)}.
      */
     final ParseMetrics parseMetrics;
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The stack of parsers sampled by {@link ParseOptions#profiler}, or null if there is no
+     * profiler or if {@link ParseOptions#trace} is set.
+     */
+    final SamplingProfiler.Stack samples;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records the work discarded by backtracking if {@link ParseOptions#trackWaste} is set, null
+     * otherwise. Only the main parse and the parses of records ({@link RecordParser}) track it, not
+     * the auxiliary parses of the {@link Refiner} and {@link Speculator}.
+     */
+    BacktrackWaste waste;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enforces {@link ParseOptions#budget} if set, null otherwise. The main parse and the parses
+     * of records ({@link RecordParser}) have their own guard, while the auxiliary parses of the
+     * {@link Refiner} and {@link Speculator} have a guard sharing the deadline and invocation count
+     * of their parent's guard (see {@link BudgetGuard}).
+     */
+    BudgetGuard guard;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The metrics of this parse, indexed by {@link Parser#id}, which are merged into {@link
+     * #parseMetrics} at the end of the parse (or null if {@link ParseOptions#trace} is false).
+     */
+    private ParserMetrics[] localMetrics;
+
+    // ---------------------------------------------------------------------------------------------
+
     private Parse (String string, List<?> list, ParseOptions options)
     {
+        this(string != null ? string.codePoints().toArray() : null, list,
+            options != null ? options : ParseOptions.get(), true, null, false);
         assert string != null && list == null || string == null && list != null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parse over the same input and with the same options as {@code parent}, used by
+     * the worker threads of a {@link Speculator} and for the fine parses of a {@link Refiner}.
+     */
+    Parse (Parse parent) {
+        this(parent.string, null, parent.options, false, null, false);
+        this.guard = parent.guard != null ? new BudgetGuard(this, parent.guard) : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parse over the same input and with the same options as {@code parent}, used for
+     * the recognition pass of {@code refiner}.
+     */
+    Parse (Parse parent, Refiner refiner) {
+        this(parent.string, null, parent.options, false, refiner, true);
+        this.guard = parent.guard != null ? new BudgetGuard(this, parent.guard) : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parse over the range {@code [start, end)} of {@code string}, used to parse the
+     * records of a larger input ({@link RecordParser}).
+     */
+    Parse (int[] string, ParseOptions options, int start, int end)
+    {
+        this(string, null, options, false, null, false);
+        this.pos = start;
+        this.endOfInput = end;
+        this.waste = options.trackWaste ? new BacktrackWaste(start, end) : null;
+        this.guard = options.budget != null ? new BudgetGuard(this, options.budget) : null;
+    }
 
-        options = options != null ? options : ParseOptions.get();
+    // ---------------------------------------------------------------------------------------------
 
-        this.string = string != null ? string.codePoints().toArray() : null;
+    private Parse (
+        int[] string, List<?> list, ParseOptions options, boolean root, Refiner refiner,
+        boolean recognizeOnly)
+    {
+        this.string = string;
         this.list = list;
-        this.endOfInput = this.string != null ? this.string.length : list.size();
+        this.stream = list instanceof TokenStream ? (TokenStream<?>) list : null;
+        this.endOfInput = string != null
+            ? string.length
+            : stream != null
+                ? Integer.MAX_VALUE
+                : list.size();
         this.options = options;
+        this.baseRecognizeOnly = recognizeOnly || options.recognizeOnly;
+        this.recognizeOnly = baseRecognizeOnly;
+        this.memoArbiter = options.memoBudget != Integer.MAX_VALUE
+            ? new MemoArbiter(options.memoBudget)
+            : null;
+        this.speculator = root && Speculator.applicable(options, string)
+            ? new Speculator(this, options.speculation)
+            : null;
+        this.refiner = root && Refiner.applicable(options, string)
+            ? new Refiner(this, options.refinement)
+            : refiner;
         this.callStack = options.recordCallStack ? new ParserCallStack() : null;
         this.traceTimings = options.trace ? new ArrayListLong(256) : null;
         this.parseMetrics = options.trace ? options.metrics.get() : null;
+        this.localMetrics = options.trace ? new ParserMetrics[Parser.maxId()] : null;
+        this.samples = options.profiler != null && !options.trace
+            ? new SamplingProfiler.Stack()
+            : null;
+        this.waste = root && options.trackWaste ? new BacktrackWaste(0, inputLength()) : null;
+        this.guard = root && options.budget != null ? new BudgetGuard(this, options.budget) : null;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -210,50 +432,100 @@ public final class Parse
     static ParseResult run (Parser parser, String string, List<?> list, ParseOptions options)
     {
         if (options.wellFormednessCheck)
-        {
-            WellFormednessChecker checker = new WellFormednessChecker();
+            checkWellFormed(parser);
+        return runUnchecked(parser, string, list, options);
+    }
 
-            if (!checker.wellFormed(parser))
-            {
-                StringBuilder b = new StringBuilder();
+    // ---------------------------------------------------------------------------------------------
 
-                for (Parser p: checker.leftRecursives) {
-                    b.append("\n- Left-recursive parser cycle detected, passing through parser: ");
+    /**
+     * Throws a {@link MalformedGrammarError} if the grammar reachable through {@code parser} is
+     * not well-formed ({@link ParseOptions#wellFormednessCheck}).
+     */
+    static void checkWellFormed (Parser parser)
+    {
+        WellFormednessChecker checker = new WellFormednessChecker();
 
-                    try { b.append(p); }
-                    catch(StackOverflowError e) {
-                        // Rules names weren't used and getting the parser name recurses infinitely.
-                        b.append(parser.getClass());
-                        b.append(" (infinite recursion in toString)");
-                    }
-                }
+        if (!checker.wellFormed(parser))
+        {
+            StringBuilder b = new StringBuilder();
 
-                for (Parser p: checker.nullableRepetitions)
-                    b   .append("\n- Nullable repetition detected: ")
-                        .append(p);
+            for (Parser p: checker.leftRecursives) {
+                b.append("\n- Left-recursive parser cycle detected, passing through parser: ");
 
-                throw new MalformedGrammarError(b.toString(), checker);
+                try { b.append(p); }
+                catch(StackOverflowError e) {
+                    // Rules names weren't used and getting the parser name recurses infinitely.
+                    b.append(parser.getClass());
+                    b.append(" (infinite recursion in toString)");
+                }
             }
+
+            for (Parser p: checker.nullableRepetitions)
+                b   .append("\n- Nullable repetition detected: ")
+                    .append(p);
+
+            throw new MalformedGrammarError(b.toString(), checker);
         }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Same as {@link #run}, but skips the well-formedness check.
+     */
+    static ParseResult runUnchecked (
+        Parser parser, String string, List<?> list, ParseOptions options)
+    {
+        return execute(parser, new Parse(string, list, options));
+    }
 
-        Parse parse = new Parse(string, list, options);
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs {@code parser} on {@code parse}, from its current position, and returns the result. The
+     * match is full if it extends to {@link #endOfInput}, and its size is counted from the initial
+     * position.
+     */
+    static ParseResult execute (Parser parser, Parse parse)
+    {
+        int start = parse.pos;
+        int end = parse.endOfInput;
         Throwable thrown = null;
         boolean success = false;
+        long t0 = parse.options.statistics != null ? System.nanoTime() : 0;
+        Object event = ParseEvents.beginParse();
+        if (parse.refiner != null)
+            parse.refiner.prepass(parser);
+        if (parse.speculator != null)
+            parse.speculator.start();
+        if (parse.samples != null)
+            parse.options.profiler.register(parse.samples);
         try { success = parser.parse(parse); }
         catch (StackOverflowError e) { throw e; } // (1)
         catch (Throwable t) { thrown = t; }
         finally {
-            for (ParseState<?> state: parse.parseStates)
-                state.discardCache(parse);
+            if (parse.speculator != null)
+                parse.speculator.stop();
+            if (parse.refiner != null)
+                parse.refiner.stop();
+            if (parse.parseMetrics != null)
+                parse.parseMetrics.merge(parse.localMetrics);
+            if (parse.samples != null)
+                parse.options.profiler.unregister(parse.samples);
+            if (parse.waste != null)
+                parse.waste.finish();
+            if (parse.options.trace && parse.options.traceExporter != null)
+                parse.options.traceExporter.endParse();
         }
 
         // (1) wrapped in PotentiallyMalformedGrammarError in Autumn#parse
 
         boolean fullMatch
-            = success && parse.pos == parse.inputLength();
+            = success && parse.atEnd(parse.pos, end);
 
         int matchSize
-            = success ? parse.pos : -1;
+            = success ? parse.pos - start : -1;
 
         int errorPosition
             = fullMatch
@@ -276,19 +548,30 @@ public final class Parse
                     ? null
                     : parse.errorCallStack;
 
+        if (event != null)
+            ParseEvents.endParse(event, parser,
+                end == Integer.MAX_VALUE ? -1 : end - start, fullMatch, errorPosition);
+        ParseEvents.memoStatistics(parse.memoLookups, parse.memoHits, parse.memoStores,
+            parse.memoArbiter != null ? parse.memoArbiter.evictions() : 0);
+        if (parse.options.statistics != null)
+            parse.options.statistics.record(System.nanoTime() - t0,
+                (end != Integer.MAX_VALUE ? end : parse.stream.lexed()) - start,
+                fullMatch, parse.memoHighWaterMark, parse.log.highWaterMark());
+
         return new ParseResult(
             success,
             fullMatch,
             matchSize,
             thrown,
             parser,
-            options,
+            parse.options,
             errorPosition,
             errorMessage,
             parse.stack,
             parse.stateData,
             errorCallStack,
-            parse.parseMetrics);
+            parse.parseMetrics,
+            parse.waste);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -323,12 +606,46 @@ public final class Parse
     /**
      * A generic method returning the size of the input that abstracts over whether this parse
      * is over a string or a list. Not affected by {@link #endOfInput}.
+     *
+     * <p>If the input is a {@link TokenStream}, its size is unknown until the end of the parse, and
+     * this returns {@code Integer.MAX_VALUE}.
      */
     public int inputLength()
     {
         return string != null
             ? string.length
-            : list.size();
+            : stream != null
+                ? Integer.MAX_VALUE
+                : list.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the metrics of {@code parser} for this parse, which are recorded without
+     * synchronization, as a parse runs on a single thread. They are merged into {@link
+     * #parseMetrics} at the end of the parse.
+     */
+    ParserMetrics localMetrics (Parser parser)
+    {
+        if (parser.id >= localMetrics.length)
+            localMetrics = Arrays.copyOf(localMetrics, Math.max(Parser.maxId(), parser.id + 1));
+        ParserMetrics metrics = localMetrics[parser.id];
+        if (metrics == null)
+            metrics = localMetrics[parser.id] = new ParserMetrics(parser);
+        return metrics;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code pos} is the end of the input, when the input ends at {@code end} (a value of
+     * {@link #endOfInput}). For a {@link TokenStream}, this checks if a token follows.
+     */
+    private boolean atEnd (int pos, int end)
+    {
+        return pos == end
+            || end == Integer.MAX_VALUE && stream != null && !stream.has(pos);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -354,6 +671,10 @@ public final class Parse
     public Object objectAt (int index)
     {
         assert list != null;
+        if (stream != null)
+            return stream.has(index)
+                ? stream.get(index)
+                : null;
         return index < list.size()
             ? list.get(index)
             : null;
@@ -456,4 +777,24 @@ public final class Parse
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records the whitespace segment from {@code start} to {@code end}, as though it was matched.
+     * Used to mirror the effects of a parser that ran on another parse ({@link Speculator}).
+     */
+    void setWhitespace (int start, int end)
+    {
+        final int whitespaceStart0 = whitespaceStart;
+        final int whitespaceEnd0 = whitespaceEnd;
+        log.apply(() -> {
+            whitespaceStart = start;
+            whitespaceEnd = end;
+            return () -> {
+                whitespaceStart = whitespaceStart0;
+                whitespaceEnd = whitespaceEnd0;
+            };
+        });
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
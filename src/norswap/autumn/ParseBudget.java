@@ -0,0 +1,240 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.function.IntConsumer;
+
+/**
+ * Limits the resources a parse may use ({@link ParseOptions#budget}), to protect against inputs
+ * that trigger catastrophic backtracking in grammars with little memoization, or simply against
+ * inputs that are too large.
+ *
+ * <p>When a limit ({@link Limit}) is exceeded, or when the parse is {@link CancellationToken
+ * cancelled}, the parse ends by throwing a {@link BudgetExceededException}, which is caught and
+ * reported as {@link ParseResult#budgetExceeded} (as well as {@link ParseResult#thrown}). The
+ * exception reports the parser that was invoked the most often, and the input position at which
+ * the most parsers were invoked: these usually point to the source of the problem.
+ *
+ * <p>The invocation limits are checked at each parser invocation. The other limits, the
+ * cancellation token and the progress callback are checked every {@link #CHECK_INTERVAL}
+ * invocations, so the parse may slightly overshoot the limits before being stopped.
+ *
+ * <p>Enforcing a budget costs a few memory writes per parser invocation, and a counter per input
+ * position. The {@link Speculation speculative} and {@link ParseOptions#refinement refinement}
+ * parses started by a parse share its deadline, cancellation token and invocation count (their
+ * invocations are added to the count every {@link #CHECK_INTERVAL} invocations), while the other
+ * limits apply to each of these parses separately. When parsing records ({@link
+ * Autumn#parseRecords}), each record gets its own budget, and so does the scan of a splitter
+ * parser, whose exceeded budget is reported as the result of a single record spanning the input.
+ *
+ * <p>Instances are created with {@link #builder()}. All limits are unbounded by default.
+ */
+public final class ParseBudget
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The limits that can end a parse, reported by {@link BudgetExceededException#limit}.
+     */
+    public enum Limit
+    {
+        /** {@link #maxInvocations} */
+        INVOCATIONS,
+        /** {@link #maxInvocationsPerPosition} */
+        INVOCATIONS_PER_POSITION,
+        /** {@link #timeout} */
+        DEADLINE,
+        /** {@link #maxLogSize} */
+        LOG_SIZE,
+        /** {@link #maxMemoEntries}, the number of memo entries held at once */
+        MEMO_ENTRIES,
+        /** {@link #cancellation} */
+        CANCELLED
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A token that can be used to cancel parses from another thread. A token can be shared between
+     * multiple parses, which are all cancelled at once.
+     */
+    public static final class CancellationToken
+    {
+        private volatile boolean cancelled;
+
+        /** Requests the parses using this token to stop. */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /** Whether {@link #cancel()} was called. */
+        public boolean cancelled() {
+            return cancelled;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Number of parser invocations between two checks of the limits that are not checked at each
+     * invocation.
+     */
+    public static final int CHECK_INTERVAL = 1024;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maximum number of parser invocations. */
+    public final long maxInvocations;
+
+    /** Maximum number of parser invocations at any single input position. */
+    public final int maxInvocationsPerPosition;
+
+    /** Maximum duration of the parse, in nanoseconds. */
+    public final long timeout;
+
+    /** Maximum size of the side effect log ({@link Parse#log}). */
+    public final int maxLogSize;
+
+    /**
+     * Maximum number of entries held at once by the memoizers of the parse ({@link
+     * Parse#memoEntries}). Entries evicted by bounded memoizers or cleared to stay within {@link
+     * ParseOptions#memoBudget} no longer count.
+     */
+    public final int maxMemoEntries;
+
+    /** If non-null, the parse ends when this token is cancelled. */
+    public final CancellationToken cancellation;
+
+    /**
+     * If non-null, called with the furthest input position at which a parser was invoked, whenever
+     * it has advanced since the last call (at most every {@link #CHECK_INTERVAL} invocations).
+     * Called on the parsing thread.
+     */
+    public final IntConsumer progress;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseBudget (
+        long maxInvocations, int maxInvocationsPerPosition, long timeout, int maxLogSize,
+        int maxMemoEntries, CancellationToken cancellation, IntConsumer progress)
+    {
+        this.maxInvocations = maxInvocations;
+        this.maxInvocationsPerPosition = maxInvocationsPerPosition;
+        this.timeout = timeout;
+        this.maxLogSize = maxLogSize;
+        this.maxMemoEntries = maxMemoEntries;
+        this.cancellation = cancellation;
+        this.progress = progress;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a budget builder, with all limits unbounded.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // =============================================================================================
+
+    /**
+     * See {@link ParseBudget}.
+     */
+    public static final class Builder
+    {
+        private long maxInvocations = Long.MAX_VALUE;
+        private int maxInvocationsPerPosition = Integer.MAX_VALUE;
+        private long timeout = Long.MAX_VALUE;
+        private int maxLogSize = Integer.MAX_VALUE;
+        private int maxMemoEntries = Integer.MAX_VALUE;
+        private CancellationToken cancellation = null;
+        private IntConsumer progress = null;
+
+        private Builder() {}
+
+        private static void checkPositive (long limit, String name)
+        {
+            if (limit <= 0)
+                throw new IllegalArgumentException(name + " must be positive: " + limit);
+        }
+
+        /**
+         * Sets the {@link ParseBudget#maxInvocations} limit.
+         */
+        public Builder maxInvocations (long limit)
+        {
+            checkPositive(limit, "maxInvocations");
+            maxInvocations = limit;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#maxInvocationsPerPosition} limit.
+         */
+        public Builder maxInvocationsPerPosition (int limit)
+        {
+            checkPositive(limit, "maxInvocationsPerPosition");
+            maxInvocationsPerPosition = limit;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#timeout} limit.
+         */
+        public Builder timeout (Duration timeout)
+        {
+            checkPositive(timeout.toNanos(), "timeout");
+            this.timeout = timeout.toNanos();
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#maxLogSize} limit.
+         */
+        public Builder maxLogSize (int limit)
+        {
+            checkPositive(limit, "maxLogSize");
+            maxLogSize = limit;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#maxMemoEntries} limit.
+         */
+        public Builder maxMemoEntries (int limit)
+        {
+            checkPositive(limit, "maxMemoEntries");
+            maxMemoEntries = limit;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#cancellation} token.
+         */
+        public Builder cancellation (CancellationToken token)
+        {
+            cancellation = token;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseBudget#progress} callback.
+         */
+        public Builder progress (IntConsumer callback)
+        {
+            progress = callback;
+            return this;
+        }
+
+        /**
+         * Builds the budget.
+         */
+        public ParseBudget get()
+        {
+            return new ParseBudget(maxInvocations, maxInvocationsPerPosition, timeout, maxLogSize,
+                maxMemoEntries, cancellation, progress);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,84 @@
+package norswap.autumn;
+
+/**
+ * Hooks through which parses report JDK Flight Recorder events.
+ *
+ * <p>This is the Java 8 version of the class, which does nothing. The Autumn JAR is a multi-release
+ * JAR whose Java 11+ section ({@code META-INF/versions/11}, built from {@code src-java11}) holds
+ * another version of this class, which emits the events:
+ *
+ * <ul>
+ *     <li>{@code norswap.autumn.Parse}: one event per parse, with the parser, input length,
+ *     duration, success and error offset.</li>
+ *     <li>{@code norswap.autumn.SlowRule}: the invocations of named rules ({@link Parser#rule()})
+ *     that took longer than the threshold set in the recording settings (10 ms by default).</li>
+ *     <li>{@code norswap.autumn.MemoStatistics}: a periodic event (every second by default) with
+ *     the number of memo lookups, hits, stores and evictions in the parses that completed during
+ *     the period.</li>
+ * </ul>
+ *
+ * <p>When the events are not enabled in the running recording (or when no recording is running),
+ * the hooks reduce to a check, except for the invocation of rules, which are only checked when the
+ * {@code SlowRule} event was enabled when the parse started ({@link Parse#ruleEvents}).
+ */
+final class ParseEvents
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseEvents() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called before a parse starts, returns an event to pass to {@link #endParse}, or null if
+     * parse events are not enabled.
+     */
+    static Object beginParse() {
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a parse using {@code parser} completes, with the event returned by {@link
+     * #beginParse()}.
+     */
+    static void endParse (Object event, Parser parser, int inputLength, boolean success,
+                          int errorOffset) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the invocations of rules should be reported by the parse that is about to start.
+     */
+    static boolean ruleEventsEnabled() {
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called before the invocation of a named rule, if {@link Parse#ruleEvents} is set. Returns
+     * an event to pass to {@link #endRule}, or null if rule events are not enabled.
+     */
+    static Object beginRule() {
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when the invocation of a named rule completes, with the event returned by {@link
+     * #beginRule()}.
+     */
+    static void endRule (Object event, Parser parser, int start, int end, boolean success) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when a parse completes, with its memoization statistics.
+     */
+    static void memoStatistics (int lookups, int hits, int stores, int evictions) {}
+
+    // ---------------------------------------------------------------------------------------------
+}
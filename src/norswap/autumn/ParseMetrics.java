@@ -4,19 +4,89 @@ import java.time.Duration;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A set of per-parser performance metrics ({@link ParserMetrics}), which are collected
  * when a parse is running in tracing mode ({@link ParseOptions#trace}).
  *
- * <p>Currently just a wrapper around a {@code Map[Parser, ParserMetrics]}, along with a useful
- * {@code toString()} method that sorts the parser by self time.
+ * <p>This object is thread-safe, and can be shared between parses running concurrently (see
+ * {@link ParseOptions#metrics}). Each parse records its metrics in its own table, without
+ * synchronization, and merges them into this object when it ends. The aggregated counters are
+ * {@link LongAdder}s, so that concurrent merges do not contend with one another.
+ *
+ * <p>The metrics are read through {@link #metrics()} and {@link #get(Parser)}, which return
+ * snapshots, and by a useful {@code toString()} method that sorts the parser by self time.
  */
 public final class ParseMetrics
 {
     // ---------------------------------------------------------------------------------------------
 
-    public final Map<Parser, ParserMetrics> metrics = new HashMap<>();
+    private static final class Counters
+    {
+        final LongAdder selfTime = new LongAdder();
+        final LongAdder totalTime = new LongAdder();
+        final LongAdder invocations = new LongAdder();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ConcurrentHashMap<Parser, Counters> counters = new ConcurrentHashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the metrics of a parse (see {@link Parse#localMetrics(Parser)}) to the aggregate.
+     */
+    void merge (ParserMetrics[] metrics)
+    {
+        for (ParserMetrics m: metrics) {
+            if (m == null) continue;
+            Counters c = counters.get(m.parser);
+            if (c == null)
+                c = counters.computeIfAbsent(m.parser, k -> new Counters());
+            c.selfTime.add(m.selfTime);
+            c.totalTime.add(m.totalTime);
+            c.invocations.add(m.invocations);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static ParserMetrics snapshot (Parser parser, Counters counters)
+    {
+        ParserMetrics metrics = new ParserMetrics(parser);
+        metrics.selfTime = counters.selfTime.sum();
+        metrics.totalTime = counters.totalTime.sum();
+        metrics.invocations = counters.invocations.sum();
+        return metrics;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot of the metrics of all the parsers that were invoked.
+     *
+     * <p>If parses end while the snapshot is taken, it may include only part of their metrics.
+     */
+    public Map<Parser, ParserMetrics> metrics()
+    {
+        HashMap<Parser, ParserMetrics> map = new HashMap<>();
+        counters.forEach((parser, counters) -> map.put(parser, snapshot(parser, counters)));
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot of the metrics of the given parser, or null if it was never invoked.
+     */
+    public ParserMetrics get (Parser parser)
+    {
+        Counters c = counters.get(parser);
+        return c == null ? null : snapshot(parser, c);
+    }
 
     // ---------------------------------------------------------------------------------------------
 
@@ -25,13 +95,11 @@ public final class ParseMetrics
         StringBuilder b = new StringBuilder(String.format("%40s | %-16s | %-16s | %s\n",
             "PARSER", "SELF TIME", "TOTAL TIME", "INVOCATIONS"));
 
-        metrics.entrySet().stream()
-            .sorted(Comparator.comparingLong(
-                (Map.Entry<Parser, ParserMetrics> it) -> it.getValue().selfTime).reversed())
-            .forEach(it -> {
-                ParserMetrics v = it.getValue();
+        metrics().values().stream()
+            .sorted(Comparator.comparingLong((ParserMetrics it) -> it.selfTime).reversed())
+            .forEach(v -> {
                 b.append(String.format("%40s | %-16s | %-16s | %,d\n",
-                    it.getKey(),
+                    v.parser,
                     Duration.ofNanos(v.selfTime),
                     Duration.ofNanos(v.totalTime),
                     v.invocations));
@@ -1,7 +1,12 @@
 package norswap.autumn;
 
+import norswap.autumn.actions.StackAction;
+import norswap.autumn.memo.MemoArbiter;
+import norswap.autumn.parsers.Bounded;
+import norswap.autumn.parsers.Collect;
 import norswap.autumn.positions.Span;
 import java.util.HashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
 import static norswap.utils.Util.cast;
@@ -18,8 +23,7 @@ import static norswap.utils.Util.cast;
  * ParseOptionsBuilder#get()} to create the option set.
  *
  * <p>Instances may usually be reused, but beware that {@link #metrics} return an object that is
- * shared accross parses. For one, this object is not thread-safe, and for two, sharing it might not
- * be what you want.
+ * shared accross parses. This object is thread-safe, but sharing it might not be what you want.
  *
  * <p>The canonical documentation for an option is the field through which it is accessible in
  * {@link ParseOptions}.
@@ -35,7 +39,17 @@ import static norswap.utils.Util.cast;
  *     <li>{@link #trace} = {@code false}</li>
  *     <li>{@link #recordCallStack} = {@code false}</li>
  *     <li>{@link #wellFormednessCheck} = {@code true}</li>
+ *     <li>{@link #trackWhitespace} = {@code true}</li>
+ *     <li>{@link #recognizeOnly} = {@code false}</li>
+ *     <li>{@link #memoBudget} = {@code Integer.MAX_VALUE}</li>
+ *     <li>{@link #speculation} = {@code null}</li>
+ *     <li>{@link #refinement} = {@code null}</li>
  *     <li>{@link #metrics} = {@code null}</li>
+ *     <li>{@link #traceExporter} = {@code null}</li>
+ *     <li>{@link #profiler} = {@code null}</li>
+ *     <li>{@link #trackWaste} = {@code false}</li>
+ *     <li>{@link #statistics} = {@code null}</li>
+ *     <li>{@link #budget} = {@code null}</li>
  * </ul>
  *
  * <p>The code ensures that if {@link #trace} is true/false, its corresponding {@link #metrics}
@@ -44,6 +58,9 @@ import static norswap.utils.Util.cast;
  * <p>If {@link #trace} is set to true while the corresponding {@link #metrics} object is null, it
  * will be assigned a default value ({@link ParseMetrics}'s default constructor).
  *
+ * <p>Setting {@link #traceExporter} to a non-null value also sets {@link #trace} to true, while
+ * setting {@link #trace} to false sets {@link #traceExporter} to null.
+ *
  * <p>If multiple conflicting builder method calls occur, the last call always takes precedence!
  */
 public final class ParseOptions
@@ -53,7 +70,8 @@ public final class ParseOptions
     /**
      * Indicates whether the parse traces its execution. This records performance metrics for each
      * parser (see {@link ParserMetrics}) into {@link Parse#parseMetrics}. Enabling this flag does
-     * slow down the execution considerably (around x2 in our initial tests).
+     * slow down the execution considerably (around x2 in our initial tests). See {@link #profiler}
+     * for a cheaper alternative.
      */
     public final boolean trace;
 
@@ -89,15 +107,123 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Indicates whether the parse should only recognize the input, without building any value.
+     * In this mode, {@link Collect} parsers (and the operators of expression parsers) do not run
+     * their action or manipulate the value stack, unless the action is {@link
+     * StackAction#required() required} (i.e. it influences the success of the parse, like a {@link
+     * Grammar.rule#filter filter}). The parse succeeds or fails exactly as it would otherwise, but
+     * {@link ParseResult#valueStack} will usually be empty.
+     *
+     * <p>See also {@link Grammar.rule#recognize()} to enable this mode for a sub-parser only.
+     *
+     * <p>False by default.
+     */
+    public final boolean recognizeOnly;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The maximum number of entries held at once by all the memoizers used during a parse. When
+     * the budget is exceeded, the least valuable memoizers are cleared (see {@link MemoArbiter}).
+     * This bounds the memory used for memoization, at the cost of re-parsing some input.
+     *
+     * <p>{@code Integer.MAX_VALUE} by default, meaning there is no budget. Must be positive.
+     */
+    public final int memoBudget;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, worker threads run some memoized rules ahead of the main parse, at likely
+     * boundaries in the input, and the main parse uses their results as memoization hits (see
+     * {@link Speculation} and {@link Speculator}). Experimental, intended for very large inputs.
+     *
+     * <p>Null by default.
+     */
+    public final Speculation speculation;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, the parse is preceded by a recognition pass that skips the fine parsers of
+     * {@link Bounded#parallel parallel} {@link Bounded} parsers, and submits them to this executor
+     * instead. The main parse then uses the results of these fine parses (see {@link Refiner}).
+     * Experimental, intended for large inputs made of many bounded regions.
+     *
+     * <p>Null by default.
+     */
+    public final Executor refinement;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * If non-null, specifies a function returning a {@link ParseMetrics} object that will receive
      * the trace measurements made during the parse. You can aggregate measurements over multiple
-     * parses by returning the same {@link ParseMetrics}.
+     * parses (including concurrent ones) by returning the same {@link ParseMetrics}.
      */
     public final Supplier<ParseMetrics> metrics;
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If non-null (which implies {@link #trace}), the tree of rule invocations is exported to this
+     * exporter, as collapsed stacks or Chrome trace events. See {@link TraceExporter}. Rejected by
+     * {@link Autumn#parseAll} and {@link Autumn#parseRecords}, which run concurrent parses.
+     *
+     * <p>Null by default.
+     */
+    public final TraceExporter traceExporter;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, the parse maintains the stack of the parsers it is invoking, which this profiler
+     * samples periodically to estimate the time spent in each parser. This is much cheaper than
+     * {@link #trace} (which takes precedence if set), but less precise. See {@link
+     * SamplingProfiler}.
+     *
+     * <p>Null by default.
+     */
+    public final SamplingProfiler profiler;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse measures the work discarded by backtracking, per parser and per
+     * input position (see {@link BacktrackWaste}), made available in {@link
+     * ParseResult#backtrackWaste}. This slows down the parse and uses memory proportional to the
+     * number of parser invocations.
+     *
+     * <p>False by default.
+     */
+    public final boolean trackWaste;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, the number, input size, outcome and latency of the parse are recorded in these
+     * statistics, which can be shared between parses (typically all the parses using a grammar) and
+     * published through a {@link ParseStatistics.Registry}. This costs a few counter updates per
+     * parse. See {@link ParseStatistics}.
+     *
+     * <p>Null by default.
+     */
+    public final ParseStatistics statistics;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, limits the resources the parse may use (invocations, time, memory), and allows
+     * it to be cancelled. A parse that exceeds its budget ends with {@link
+     * ParseResult#budgetExceeded} set. See {@link ParseBudget}.
+     *
+     * <p>Null by default.
+     */
+    public final ParseBudget budget;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * A map contain user-defined options.
      */
@@ -116,14 +242,25 @@ public final class ParseOptions
 
     private ParseOptions
         (boolean trace, boolean recordCallStack, boolean wellFormednessCheck,
-         boolean trackWhitespace,
-         Supplier<ParseMetrics> metrics, HashMap<Object, Object> customOptions)
+         boolean trackWhitespace, boolean recognizeOnly, int memoBudget, Speculation speculation,
+         Executor refinement, Supplier<ParseMetrics> metrics, TraceExporter traceExporter,
+         SamplingProfiler profiler, boolean trackWaste, ParseStatistics statistics,
+         ParseBudget budget, HashMap<Object, Object> customOptions)
     {
         this.trace = trace;
         this.recordCallStack = recordCallStack;
         this.wellFormednessCheck = wellFormednessCheck;
         this.trackWhitespace = trackWhitespace;
+        this.recognizeOnly = recognizeOnly;
+        this.memoBudget = memoBudget;
+        this.speculation = speculation;
+        this.refinement = refinement;
         this.metrics = metrics;
+        this.traceExporter = traceExporter;
+        this.profiler = profiler;
+        this.trackWaste = trackWaste;
+        this.statistics = statistics;
+        this.budget = budget;
         this.customOptions = customOptions;
     }
 
@@ -168,6 +305,42 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Enables/disables the {@link ParseOptions#recognizeOnly} option.
+     */
+    public static ParseOptionsBuilder recognizeOnly (boolean enabled) {
+        return new ParseOptionsBuilder().recognizeOnly(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#memoBudget} option.
+     */
+    public static ParseOptionsBuilder memoBudget (int entries) {
+        return new ParseOptionsBuilder().memoBudget(entries);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#speculation} option.
+     */
+    public static ParseOptionsBuilder speculation (Speculation speculation) {
+        return new ParseOptionsBuilder().speculation(speculation);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#refinement} option.
+     */
+    public static ParseOptionsBuilder refinement (Executor executor) {
+        return new ParseOptionsBuilder().refinement(executor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Sets the {@link ParseOptions#metrics} option and sets {@link ParseOptions#trace}
      * to {@code metrics != null}.
@@ -178,6 +351,52 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Sets the {@link ParseOptions#traceExporter} option, enabling {@link ParseOptions#trace} if
+     * {@code exporter} is non-null.
+     */
+    public static ParseOptionsBuilder traceExporter (TraceExporter exporter) {
+        return new ParseOptionsBuilder().traceExporter(exporter);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#profiler} option.
+     */
+    public static ParseOptionsBuilder profiler (SamplingProfiler profiler) {
+        return new ParseOptionsBuilder().profiler(profiler);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#trackWaste} option.
+     */
+    public static ParseOptionsBuilder trackWaste (boolean enabled) {
+        return new ParseOptionsBuilder().trackWaste(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#statistics} option.
+     */
+    public static ParseOptionsBuilder statistics (ParseStatistics statistics) {
+        return new ParseOptionsBuilder().statistics(statistics);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the {@link ParseOptions#budget} option.
+     */
+    public static ParseOptionsBuilder budget (ParseBudget budget) {
+        return new ParseOptionsBuilder().budget(budget);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a parse options builder with the default options (see {@link ParseOptions}).
      */
@@ -205,7 +424,16 @@ public final class ParseOptions
         private boolean recordCallStack = false;
         private boolean wellFormednessCheck = true;
         private boolean trackWhitespace = true;
+        private boolean recognizeOnly = false;
+        private int memoBudget = Integer.MAX_VALUE;
+        private Speculation speculation = null;
+        private Executor refinement = null;
         private Supplier<ParseMetrics> metrics = null;
+        private TraceExporter traceExporter = null;
+        private SamplingProfiler profiler = null;
+        private boolean trackWaste = false;
+        private ParseStatistics statistics = null;
+        private ParseBudget budget = null;
         private final HashMap<Object, Object> customOptions = new HashMap<>();
 
         private ParseOptionsBuilder() {}
@@ -227,7 +455,10 @@ public final class ParseOptions
         public ParseOptionsBuilder trace (boolean enabled)
         {
             trace = enabled;
-            if (!enabled) metrics = null;
+            if (!enabled) {
+                metrics = null;
+                traceExporter = null;
+            }
             else if (metrics == null) metrics = ParseMetrics::new;
             return this;
         }
@@ -259,6 +490,44 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Enables/disables the {@link ParseOptions#recognizeOnly} option.
+         */
+        public ParseOptionsBuilder recognizeOnly (boolean enabled)
+        {
+            recognizeOnly = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#memoBudget} option.
+         */
+        public ParseOptionsBuilder memoBudget (int entries)
+        {
+            if (entries <= 0)
+                throw new IllegalArgumentException("memoBudget must be positive: " + entries);
+            memoBudget = entries;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#speculation} option.
+         */
+        public ParseOptionsBuilder speculation (Speculation speculation)
+        {
+            this.speculation = speculation;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#refinement} option.
+         */
+        public ParseOptionsBuilder refinement (Executor executor)
+        {
+            this.refinement = executor;
+            return this;
+        }
+
         /**
          * Sets the {@link ParseOptions#metrics} option and sets {@link ParseOptions#trace}
          * to {@code metrics != null}.
@@ -270,13 +539,62 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Sets the {@link ParseOptions#traceExporter} option, enabling {@link ParseOptions#trace}
+         * if {@code exporter} is non-null.
+         */
+        public ParseOptionsBuilder traceExporter (TraceExporter exporter)
+        {
+            if (exporter != null) trace(true);
+            this.traceExporter = exporter;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#profiler} option.
+         */
+        public ParseOptionsBuilder profiler (SamplingProfiler profiler)
+        {
+            this.profiler = profiler;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#trackWaste} option.
+         */
+        public ParseOptionsBuilder trackWaste (boolean enabled)
+        {
+            trackWaste = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#statistics} option.
+         */
+        public ParseOptionsBuilder statistics (ParseStatistics statistics)
+        {
+            this.statistics = statistics;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ParseOptions#budget} option.
+         */
+        public ParseOptionsBuilder budget (ParseBudget budget)
+        {
+            this.budget = budget;
+            return this;
+        }
+
         /**
          * Builds the set of options.
          */
         public ParseOptions get()
         {
             return new ParseOptions(trace, recordCallStack, wellFormednessCheck,
-                trackWhitespace, metrics, customOptions);
+                trackWhitespace, recognizeOnly, memoBudget, speculation, refinement, metrics,
+                traceExporter, profiler, trackWaste, statistics, budget,
+                customOptions);
         }
     }
 
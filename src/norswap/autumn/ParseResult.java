@@ -120,6 +120,23 @@ public final class ParseResult
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The work discarded by backtracking, if the {@link ParseOptions#trackWaste} option was
+     * specified, null otherwise.
+     */
+    public final BacktrackWaste backtrackWaste;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If the parse was ended because it exceeded its {@link ParseOptions#budget} (or was
+     * cancelled), the exception that ended it (also available as {@link #thrown}), which reports
+     * the exceeded limit, as well as the hottest parser and input position. Null otherwise.
+     */
+    public final BudgetExceededException budgetExceeded;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The value at the top of the value stack if the parse was successful and the value stack
      * is non-empty, null otherwise.
@@ -146,7 +163,8 @@ public final class ParseResult
         ArrayStack<?> valueStack,
         Map<Object, Object> parseStates,
         ParserCallStack errorCallStack,
-        ParseMetrics parseMetrics)
+        ParseMetrics parseMetrics,
+        BacktrackWaste backtrackWaste)
     {
         this.success = success;
         this.fullMatch = fullMatch;
@@ -160,10 +178,14 @@ public final class ParseResult
         this.parseStates = parseStates;
         this.errorCallStack = errorCallStack;
         this.parseMetrics = parseMetrics;
+        this.backtrackWaste = backtrackWaste;
+        this.budgetExceeded = thrown instanceof BudgetExceededException
+            ? (BudgetExceededException) thrown
+            : null;
 
         // Do not make this an assertion, as the parsing failure may provide information as to
-        // why this happens.
-        if (!success && !valueStack.isEmpty())
+        // why this happens. A parse stopped by its budget is interrupted at an arbitrary point.
+        if (!success && !valueStack.isEmpty() && budgetExceeded == null)
             System.err.println("Parse failed, but value stack is not empty: " + valueStack);
     }
 
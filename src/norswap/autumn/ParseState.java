@@ -1,5 +1,6 @@
 package norswap.autumn;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import static norswap.utils.Util.cast;
@@ -32,35 +33,22 @@ import static norswap.utils.Util.cast;
  * in the {@link Parse} object is necessary because parsers are not tied to a particular parse and
  * can be reused.
  *
- * <p>This class caches a (parse, thread) pair. It's possible for multiple parse on different
- * threads to use this kind of parse state (with different instances of {@code Data} and {@link
- * Parse}!), but this class will cache the state of a single thread, while the other thread will
- * fall back on querying {@link Parse#stateData} on access. The cached thread is selected
- * non-deterministically (it's a race). After the parse that owns the cache completes, the cache is
- * evicted, enabling other threads, or another parse on the same thread, to take ownership of the
- * cache.
- *
- * <p>If for performance reasons you really require parse state caching for every thread, give each
- * thread his own copy of the parser.
+ * <p>Lookups are sped up by a small direct-mapped cache held by each {@link Parse} ({@link
+ * Parse#stateCache}), in which each instance of this class has a fixed slot. Since the cache
+ * belongs to the parse, it is safe to use the same parse state (and the same parsers) for multiple
+ * parses running concurrently on different threads.
  */
 public class ParseState<Data>
 {
     // ---------------------------------------------------------------------------------------------
 
-    private class Cached
-    {
-        final Parse parse;
-        final Data data;
-
-        Cached (Parse parse) {
-            this.parse = parse;
-            this.data = getOrInitData(parse);
-        }
-    }
+    /** Used to assign {@link #slot}s. */
+    private static final AtomicInteger instances = new AtomicInteger();
 
     // ---------------------------------------------------------------------------------------------
 
-    private Cached cached;
+    /** Index of the key of this parse state in {@link Parse#stateCache} (the data follows it). */
+    private final int slot = (instances.getAndIncrement() & Parse.STATE_CACHE_SIZE - 1) << 1;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -97,7 +85,6 @@ public class ParseState<Data>
             data = init.get();
             if (data == null) throw new Error("state initialized to null");
             parse.stateData.put(key, data);
-            parse.parseStates.add(this);
         }
         return data;
     }
@@ -109,28 +96,14 @@ public class ParseState<Data>
      */
     public Data data (Parse parse)
     {
-        // There are race conditions on cached, but ultimately a single cache entry will
-        // prevail, with other threads forced to the slow path. The semantics of the function
-        // is preserved during races.
-
-        Cached c = cached;
-        if (c == null)
-            cached = c = new Cached(parse);
-        return c.parse == parse
-            ? c.data
-            : getOrInitData(parse); // slow path
-    }
+        Object[] cache = parse.stateCache;
+        if (cache[slot] == this)
+            return cast(cache[slot + 1]);
 
-    // ---------------------------------------------------------------------------------------------
-
-    /**
-     * Discard the cached parse state data. Automatically called after a parse in order to enable
-     * another thread to cache his data.
-     */
-    void discardCache (Parse parse)
-    {
-        if (cached != null && cached.parse == parse)
-            cached = null;
+        Data data = getOrInitData(parse);
+        cache[slot] = this;
+        cache[slot + 1] = data;
+        return data;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -0,0 +1,383 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms describing the parses run with the {@link
+ * ParseOptions#statistics} option: number of parses and failures, amount of input parsed,
+ * throughput, latency percentiles (overall and per input size bucket), and the high-water marks of
+ * the memoization and side effect log of a single parse.
+ *
+ * <p>Unlike {@link ParseMetrics}, these statistics are cheap to maintain (a few counter updates per
+ * parse), and can be left on in production. The intended use is to create one object per grammar
+ * (or per kind of input), share it between all the parses that use the grammar, and publish it
+ * through a {@link Registry}, such as {@link JmxRegistry}.
+ *
+ * <p>Input is measured in the units of the parse: code points for a string input, tokens for a list
+ * input. For a {@link norswap.autumn.positions.TokenStream}, this is the number of tokens lexed by
+ * the parse.
+ *
+ * <p>Latencies are recorded in {@link Histogram}s, whose percentiles are within about 3% of the
+ * exact value. A parse fails if it does not match the whole input (including when it throws).
+ *
+ * <p>This object is thread-safe, and can be shared between parses running concurrently. Values read
+ * while parses end may include only part of their results.
+ */
+public final class ParseStatistics
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A pluggable registry through which statistics are published, e.g. to a monitoring system.
+     * {@link JmxRegistry} publishes them as JMX MBeans. Other registries can poll {@link
+     * #snapshot()}, or the individual accessors.
+     */
+    public interface Registry
+    {
+        /**
+         * Publishes {@code statistics} under the given name.
+         */
+        void register (String name, ParseStatistics statistics);
+
+        /**
+         * Stops publishing the statistics registered under the given name.
+         */
+        void unregister (String name);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A histogram of positive values (in practice, durations in nanoseconds), in the style of HDR
+     * histograms: values are counted in buckets whose width is proportional to their magnitude,
+     * such that every value in a bucket is within 1/32 (about 3%) of its bounds. This takes a fixed
+     * amount of memory (15KB) regardless of the range of values.
+     *
+     * <p>The histogram is thread-safe.
+     */
+    public static final class Histogram
+    {
+        /** log2 of the number of buckets for each power of two. */
+        private static final int SUB_BITS = 5;
+        private static final int SUB = 1 << SUB_BITS;
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) * SUB);
+        private final LongAdder count = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private static int index (long value)
+        {
+            if (value < 2 * SUB) return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return shift * SUB + (int) (value >>> shift);
+        }
+
+        /** Returns the highest value counted in the bucket with the given index. */
+        private static long highest (int index)
+        {
+            if (index < 2 * SUB) return index;
+            int shift = index / SUB - 1;
+            long sub = index % SUB + SUB;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        /**
+         * Adds a value to the histogram. Negative values are counted as 0.
+         */
+        public void record (long value)
+        {
+            value = Math.max(value, 0);
+            counts.incrementAndGet(index(value));
+            count.increment();
+            max.accumulate(value);
+        }
+
+        /**
+         * Returns the number of recorded values.
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the largest recorded value, or 0 if there are none.
+         */
+        public long max() {
+            return max.get();
+        }
+
+        /**
+         * Returns (an upper bound on) the value below which {@code percentile} percent of the
+         * recorded values fall, or 0 if there are none. e.g. {@code percentile(99.9)}.
+         */
+        public long percentile (double percentile)
+        {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("percentile not in [0, 100]: " + percentile);
+            long total = count();
+            if (total == 0) return 0;
+            long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length(); ++i) {
+                seen += counts.get(i);
+                if (seen >= target)
+                    return Math.min(highest(i), max());
+            }
+            return max();
+        }
+
+        /**
+         * Discards all the recorded values.
+         */
+        public void reset()
+        {
+            for (int i = 0; i < counts.length(); ++i)
+                counts.set(i, 0);
+            count.reset();
+            max.reset();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Upper bounds (exclusive) of the input size buckets for which latencies are recorded
+     * separately ({@link #latencies(int)}): the last bucket holds the inputs of at least a million
+     * units.
+     */
+    private static final long[] SIZE_BOUNDS = { 1_000, 10_000, 100_000, 1_000_000, Long.MAX_VALUE };
+
+    private static final String[] SIZE_LABELS = { "<1K", "<10K", "<100K", "<1M", ">=1M" };
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder inputUnits = new LongAdder();
+    private final LongAdder parseTime = new LongAdder();
+    private final LongAccumulator memoHighWaterMark = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator logHighWaterMark = new LongAccumulator(Math::max, 0);
+
+    private final Histogram latencies = new Histogram();
+    private final Histogram[] latenciesBySize = new Histogram[SIZE_BOUNDS.length];
+    {
+        for (int i = 0; i < latenciesBySize.length; ++i)
+            latenciesBySize[i] = new Histogram();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records a parse that took {@code nanos} nanoseconds over {@code units} units of input, during
+     * which its memoizers held at most {@code memoEntries} entries at once and the side effect log
+     * reached {@code logSize} entries.
+     */
+    void record (long nanos, long units, boolean success, long memoEntries, long logSize)
+    {
+        parses.increment();
+        if (!success) failures.increment();
+        inputUnits.add(units);
+        parseTime.add(nanos);
+        memoHighWaterMark.accumulate(memoEntries);
+        logHighWaterMark.accumulate(logSize);
+        latencies.record(nanos);
+        int bucket = 0;
+        while (units >= SIZE_BOUNDS[bucket]) ++bucket;
+        latenciesBySize[bucket].record(nanos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of parses.
+     */
+    public long parses() {
+        return parses.sum();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of parses that did not match their whole input.
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the total amount of input of the parses, in code points or tokens.
+     */
+    public long inputUnits() {
+        return inputUnits.sum();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the total duration of the parses, in nanoseconds.
+     */
+    public long parseTime() {
+        return parseTime.sum();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of input units (code points or tokens) parsed per second of parse time,
+     * or 0 if no time was recorded. Concurrent parses do not add up: this is the throughput of a
+     * single parsing thread.
+     */
+    public double throughput()
+    {
+        long time = parseTime();
+        return time == 0 ? 0 : inputUnits() * 1e9 / time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the highest number of entries held at once by the memoizers of a single parse ({@link
+     * Parse#memoHighWaterMark}). Entries replaced or evicted by the memoizers (e.g. to honor {@link
+     * ParseOptions#memoBudget}) do not count.
+     */
+    public long memoHighWaterMark() {
+        return memoHighWaterMark.get();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the highest size reached by the side effect log ({@link Parse#log}) in a single
+     * parse.
+     */
+    public long logHighWaterMark() {
+        return logHighWaterMark.get();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the histogram of parse latencies, in nanoseconds.
+     */
+    public Histogram latencies() {
+        return latencies;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the histogram of the latencies of the parses whose input size falls in the given
+     * bucket (in {@code [0, sizeBuckets())}), in nanoseconds.
+     */
+    public Histogram latencies (int sizeBucket) {
+        return latenciesBySize[sizeBucket];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of input size buckets (see {@link #latencies(int)}).
+     */
+    public int sizeBuckets() {
+        return SIZE_BOUNDS.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a label describing the input sizes of the given bucket (e.g. {@code "<10K"}).
+     */
+    public String sizeBucketLabel (int sizeBucket) {
+        return SIZE_LABELS[sizeBucket];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a snapshot of the statistics as a map from metric names to values, for registries
+     * that export flat metrics. Durations are in nanoseconds. The percentiles are named {@code
+     * latency.p50}, {@code latency.p99} and {@code latency.p999}, and e.g. {@code
+     * latency.<10K.p99} for an input size bucket.
+     */
+    public Map<String, Number> snapshot()
+    {
+        LinkedHashMap<String, Number> map = new LinkedHashMap<>();
+        map.put("parses", parses());
+        map.put("failures", failures());
+        map.put("input_units", inputUnits());
+        map.put("parse_time", parseTime());
+        map.put("throughput", throughput());
+        map.put("memo_high_water_mark", memoHighWaterMark());
+        map.put("log_high_water_mark", logHighWaterMark());
+        putPercentiles(map, "latency.", latencies);
+        for (int i = 0; i < latenciesBySize.length; ++i)
+            putPercentiles(map, "latency." + SIZE_LABELS[i] + ".", latenciesBySize[i]);
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void putPercentiles (Map<String, Number> map, String prefix, Histogram h)
+    {
+        map.put(prefix + "p50", h.percentile(50));
+        map.put(prefix + "p99", h.percentile(99));
+        map.put(prefix + "p999", h.percentile(99.9));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Discards all the statistics collected so far.
+     */
+    public void reset()
+    {
+        parses.reset();
+        failures.reset();
+        inputUnits.reset();
+        parseTime.reset();
+        memoHighWaterMark.reset();
+        logHighWaterMark.reset();
+        latencies.reset();
+        for (Histogram histogram: latenciesBySize)
+            histogram.reset();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("parses: %,d (%,d failures)\n", parses(), failures()));
+        b.append(String.format("input: %,d units in %s (%,.0f units/s)\n",
+            inputUnits(), Duration.ofNanos(parseTime()), throughput()));
+        b.append(String.format("high-water marks: %,d memo entries, %,d log entries\n",
+            memoHighWaterMark(), logHighWaterMark()));
+        b.append(String.format("%10s | %-10s | %-16s | %-16s | %s\n",
+            "INPUT SIZE", "PARSES", "P50", "P99", "P99.9"));
+        appendRow(b, "all", latencies);
+        for (int i = 0; i < latenciesBySize.length; ++i)
+            if (latenciesBySize[i].count() > 0)
+                appendRow(b, SIZE_LABELS[i], latenciesBySize[i]);
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void appendRow (StringBuilder b, String label, Histogram h)
+    {
+        b.append(String.format("%10s | %,-10d | %-16s | %-16s | %s\n",
+            label, h.count(),
+            Duration.ofNanos(h.percentile(50)),
+            Duration.ofNanos(h.percentile(99)),
+            Duration.ofNanos(h.percentile(99.9))));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,5 +1,7 @@
 package norswap.autumn;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * The parent class for all parsers.
  *
@@ -17,7 +19,8 @@ package norswap.autumn;
  * logic. In particular, it automatically restores {@link Parse#pos} and {@link Parse#log} in
  * case of error ({@code doparse} returns false), as well as update {@link Parse#error} (or not,
  * depending on {@link #excludeErrors}). It also handles the logic for some options such
- * as {@link ParseOptions#recordCallStack} and {@link ParseOptions#trace}.
+ * as {@link ParseOptions#recordCallStack}, {@link ParseOptions#trace}, {@link
+ * ParseOptions#profiler} and {@link ParseOptions#trackWaste}.
  *
  * <p>The requirement on {@link #doparse(Parse)} are then that it returns the appropriate truth
  * value and updates {@link Parse#pos} if successful. It's also important that any global state
@@ -42,6 +45,10 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    private Parser substitute;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Whether to exclude errors (failure to match) from this parser and all its sub-parsers from
      * being used as the furthest error ({@link Parse#error}).
@@ -50,6 +57,27 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    private boolean frozen = false;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    /**
+     * A unique identifier for the parser, allocated densely from 0 in order of creation. Used to
+     * index per-parse tables ({@link Parse#localMetrics(Parser)}).
+     */
+    final int id = ids.getAndIncrement();
+
+    /**
+     * Returns an upper bound on the {@link #id} of the parsers created so far.
+     */
+    static int maxId() {
+        return ids.get();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The name of the rule this parser is assigned to, if any, or null.
      */
@@ -62,9 +90,13 @@ public abstract class Parser
     /**
      * Sets the name of the rule this parser is assigned to.
      * This may be called at most once, or an error will occur.
+     *
+     * @throws IllegalStateException if the parser is {@link #frozen()}.
      */
     public void setRule (String rule)
     {
+        if (frozen)
+            throw new IllegalStateException("cannot set the rule name of a frozen parser");
         if (this.rule != null)
             throw new Error("rule name already set");
         this.rule = rule;
@@ -72,6 +104,62 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The parser whose {@link #doparse} method is run in lieu of this parser's own, if any, or
+     * null.
+     */
+    public final Parser substitute() {
+        return substitute;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the parser whose {@link #doparse} method will be run in lieu of this parser's own
+     * (the bookkeeping logic of {@link #parse} still applies). The substitute must be equivalent to
+     * this parser: match the same input and have the same side effects.
+     *
+     * <p>This allows swapping in an optimized implementation (e.g. a compiled automaton, see {@link
+     * norswap.autumn.visitors.RegexCompiler}) without having to rebuild the parser graph, as other
+     * parsers (and grammar fields or lambdas) may hold references to this parser.
+     *
+     * <p>Parser walkers and visitors are not affected: they still see this parser and its children.
+     * Use null to remove the substitute.
+     *
+     * @throws IllegalStateException if the parser is {@link #frozen()}.
+     */
+    public void setSubstitute (Parser substitute)
+    {
+        if (frozen)
+            throw new IllegalStateException("cannot set the substitute of a frozen parser");
+        this.substitute = substitute;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@link #freeze()} has been called on this parser.
+     */
+    public final boolean frozen() {
+        return frozen;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Marks this parser as frozen: its rule name and substitute can no longer be changed. Parsers
+     * that compute some state lazily during their first invocation override this method to compute
+     * it ahead of time (and call the super method), so that frozen parsers are never mutated by a
+     * parse.
+     *
+     * <p>Called on all the parsers of a grammar by {@link Grammar#freeze()}.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Override this method to implement the parsing logic.
      *
@@ -106,15 +194,31 @@ public abstract class Parser
             return tracingParse(parse);
 
         int pos0 = parse.pos;
+        if (parse.guard != null)
+            parse.guard.invoked(this, pos0);
         int log0 = parse.log.size();
         int err0 = parse.error;
         String errmsg0 = parse.errorMessage;
         ParserCallStack stk0 = parse.errorCallStack;
+        SamplingProfiler.Stack samples = parse.samples;
+        int depth0 = samples != null ? samples.push(this) : 0;
+        BacktrackWaste waste = parse.waste;
+        int mark0 = waste != null ? waste.mark() : 0;
 
         if (parse.options.recordCallStack)
             parse.callStack.push(this, pos0);
 
-        boolean result = doparse(parse);
+        Object event = parse.ruleEvents && rule != null ? ParseEvents.beginRule() : null;
+
+        boolean result = substitute == null
+            ? doparse(parse)
+            : substitute.doparse(parse);
+
+        if (event != null)
+            ParseEvents.endRule(event, this, pos0, parse.pos, result);
+
+        if (samples != null)
+            samples.depth = depth0;
 
         if (excludeErrors) {
             parse.error = err0;
@@ -125,9 +229,14 @@ public abstract class Parser
         if (result) {
             if (parse.options.recordCallStack)
                 parse.callStack.pop();
+            if (waste != null)
+                waste.matched(this, mark0, pos0, parse.pos);
             return true;
         }
 
+        if (waste != null)
+            waste.discard(mark0, pos0);
+
         if (!excludeErrors && parse.error <= pos0) {
             parse.error = pos0;
             //noinspection StringEquality
@@ -159,22 +268,33 @@ public abstract class Parser
         long time0 = System.nanoTime();
 
         int trace0 = parse.traceTimings.size();
-        ParserMetrics metrics
-            = parse.parseMetrics.metrics.computeIfAbsent(this, k -> new ParserMetrics(this));
+        ParserMetrics metrics = parse.localMetrics(this);
         ++ metrics.invocations;
         ++ metrics.recursiveInvocations;
 
         long time1 = System.nanoTime();
 
         int pos0 = parse.pos;
+        if (parse.guard != null)
+            parse.guard.invoked(this, pos0);
         int log0 = parse.log.size();
         int err0 = parse.error;
         ParserCallStack stk0 = parse.errorCallStack;
+        BacktrackWaste waste = parse.waste;
+        int mark0 = waste != null ? waste.mark() : 0;
 
         if (parse.options.recordCallStack)
             parse.callStack.push(this, pos0);
 
-        boolean result = doparse(parse);
+        TraceExporter exporter = parse.options.traceExporter;
+        boolean exported = exporter != null && exporter.enter(this, pos0);
+
+        boolean result = substitute == null
+            ? doparse(parse)
+            : substitute.doparse(parse);
+
+        if (exported)
+            exporter.exit(parse.pos, result);
 
         if (excludeErrors) {
             parse.error = err0;
@@ -184,8 +304,13 @@ public abstract class Parser
         if (result) {
             if (parse.options.recordCallStack)
                 parse.callStack.pop();
+            if (waste != null)
+                waste.matched(this, mark0, pos0, parse.pos);
         }
         else {
+            if (waste != null)
+                waste.discard(mark0, pos0);
+
             if (!excludeErrors && parse.error <= pos0) {
                 parse.error = pos0;
                 if (parse.options.recordCallStack)
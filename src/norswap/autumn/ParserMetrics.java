@@ -6,7 +6,8 @@ import java.time.Duration;
  * A set of performance metrics linked to a parser, produced in tracing mode ({@link
  * ParseOptions#trace}).
  *
- * <p>Multiple {@link ParserMetrics} are aggregated within a single {@link ParseMetrics}.
+ * <p>Multiple {@link ParserMetrics} are aggregated within a single {@link ParseMetrics}. The
+ * instances it returns are snapshots, which are not updated by later parses.
  *
  * <p>Field are public for convenience but should not be written.
  */
@@ -48,7 +49,7 @@ public final class ParserMetrics
     /**
      * Total number of invocations of the parser.
      */
-    public int invocations = 0;
+    public long invocations = 0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -117,7 +117,9 @@ public interface ParserVisitor
     void visit (Memo parser);
     void visit (Not parser);
     void visit (ObjectPredicate parser);
+    void visit (OperatorTable parser);
     void visit (Optional parser);
+    void visit (Regex parser);
     void visit (Repeat parser);
     void visit (RightExpression parser);
     void visit (Sequence parser);
@@ -0,0 +1,122 @@
+package norswap.autumn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results obtained from parsing an input made of independent records, returned by one of the
+ * {@link Autumn} {@code .parseRecords} methods.
+ *
+ * <p>This holds the result of each record ({@link #records}) and its extent within the input, as
+ * well as a merged view: whether all records were fully matched, the values produced by all the
+ * records (in input order), and the first error. All positions (including those in the individual
+ * {@link ParseResult}s) are offsets into the whole input.
+ */
+public final class RecordParseResult
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The result of parsing each record, in input order.
+     */
+    public final List<ParseResult> records;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final int[] starts;
+    private final int[] ends;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether every record was fully matched by the record parser.
+     */
+    public final boolean success;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Index of the first record that wasn't fully matched, or -1 if {@link #success}.
+     */
+    public final int firstFailure;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The error offset ({@link ParseResult#errorOffset}) of the first record that wasn't fully
+     * matched, or -1 if {@link #success}.
+     */
+    public final int errorOffset;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The error message ({@link ParseResult#errorMessage}) of the first record that wasn't fully
+     * matched, or null if {@link #success}.
+     */
+    public final String errorMessage;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The contents of the value stacks of all the records that were fully matched, concatenated
+     * in input order (bottom of each stack first).
+     */
+    public final List<Object> values;
+
+    // ---------------------------------------------------------------------------------------------
+
+    RecordParseResult (List<ParseResult> records, int[] starts, int[] ends)
+    {
+        this.records = Collections.unmodifiableList(records);
+        this.starts = starts;
+        this.ends = ends;
+
+        int failure = -1;
+        ArrayList<Object> values = new ArrayList<>();
+        for (int i = 0; i < records.size(); ++i) {
+            ParseResult result = records.get(i);
+            if (result.fullMatch)
+                values.addAll(result.valueStack);
+            else if (failure < 0)
+                failure = i;
+        }
+
+        this.firstFailure = failure;
+        this.success = failure < 0;
+        this.errorOffset = failure < 0 ? -1 : records.get(failure).errorOffset;
+        this.errorMessage = failure < 0 ? null : records.get(failure).errorMessage;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the offset of the start of the i-th record in the input.
+     */
+    public int start (int i) {
+        return starts[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the offset one past the end of the i-th record in the input.
+     */
+    public int end (int i) {
+        return ends[i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the result of the first record that wasn't fully matched, or null if {@link
+     * #success}.
+     */
+    public ParseResult failure() {
+        return firstFailure < 0 ? null : records.get(firstFailure);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
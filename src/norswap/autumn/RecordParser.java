@@ -0,0 +1,213 @@
+package norswap.autumn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Implements {@link Autumn#parseRecords}: parses an input made of independent records in
+ * parallel, on a {@link ForkJoinPool}.
+ *
+ * <p>The input is split recursively in halves, each of which becomes a fork/join task, until
+ * the parts are smaller than {@link #GRAIN} code points. Because idle workers steal the pending
+ * halves of busy workers, a few oversized records do not hold up the other parts of the input.
+ *
+ * <p>With a delimiter predicate, the split points are found by scanning for a delimiter from the
+ * middle of the range, so that the input is never scanned sequentially as a whole. With a
+ * splitter parser, the extent of the records is first determined sequentially by running the
+ * splitter, then the records are split in halves of roughly equal size.
+ *
+ * <p>Each record is parsed on its own {@link Parse} object whose input is the whole input, but
+ * whose initial position and end of input are those of the record: positions reported in the
+ * results are therefore absolute offsets into the input.
+ */
+final class RecordParser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Size (in code points) under which a part of the input is not split further. */
+    static final int GRAIN = 1 << 16;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parser parser;
+    private final int[] input;
+    private final ParseOptions options;
+
+    // ---------------------------------------------------------------------------------------------
+
+    RecordParser (Parser parser, String input, ParseOptions options)
+    {
+        this.parser = parser;
+        this.input = input.codePoints().toArray();
+        this.options = options;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Record
+    {
+        final int start, end;
+        final ParseResult result;
+
+        Record (int start, int end, ParseResult result) {
+            this.start = start;
+            this.end = end;
+            this.result = result;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Record parse (int start, int end) {
+        return new Record(start, end, Parse.execute(parser, new Parse(input, options, start, end)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static RecordParseResult merge (ArrayList<Record> records)
+    {
+        ArrayList<ParseResult> results = new ArrayList<>(records.size());
+        int[] starts = new int[records.size()];
+        int[] ends = new int[records.size()];
+        for (int i = 0; i < starts.length; ++i) {
+            Record record = records.get(i);
+            results.add(record.result);
+            starts[i] = record.start;
+            ends[i] = record.end;
+        }
+        return new RecordParseResult(results, starts, ends);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the records separated by the code points matching {@code delimiter}. Delimiters are
+     * not part of the records, and empty records are skipped.
+     */
+    RecordParseResult run (IntPredicate delimiter, ForkJoinPool pool) {
+        return merge(pool.invoke(new DelimitedTask(delimiter, 0, input.length)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the records whose extent is given by successive matches of {@code splitter}. If the
+     * splitter fails or matches nothing, the rest of the input is the last record.
+     *
+     * <p>If the scan exceeds the {@link ParseOptions#budget budget}, no record is parsed, and the
+     * result holds a single record spanning the input, whose result reports the exceeded budget.
+     */
+    RecordParseResult run (Parser splitter, ForkJoinPool pool)
+    {
+        Parse parse = new Parse(input, options, 0, input.length);
+        ArrayList<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+
+        try {
+            for (int pos = 0; pos < input.length; ) {
+                parse.pos = pos;
+                pos = splitter.parse(parse) && parse.pos > pos ? parse.pos : input.length;
+                parse.log.rollback(0);
+                bounds.add(pos);
+            }
+        } catch (BudgetExceededException e) {
+            parse.log.rollback(0);
+            ParseResult result = new ParseResult(false, false, -1, e, splitter, options,
+                parse.pos, e.getMessage(), parse.stack, parse.stateData, null, null, null);
+            ArrayList<Record> records = new ArrayList<>();
+            records.add(new Record(0, input.length, result));
+            return merge(records);
+        }
+
+        int[] offsets = bounds.stream().mapToInt(Integer::intValue).toArray();
+        return merge(pool.invoke(new SplitTask(offsets, 0, offsets.length - 1)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the records within {@code [from, to)}, where {@code from} is the start of the input
+     * or follows a delimiter, and {@code to} is the end of the input or follows a delimiter.
+     */
+    private final class DelimitedTask extends RecursiveTask<ArrayList<Record>>
+    {
+        private final IntPredicate delimiter;
+        private final int from, to;
+
+        DelimitedTask (IntPredicate delimiter, int from, int to) {
+            this.delimiter = delimiter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected ArrayList<Record> compute()
+        {
+            if (to - from > GRAIN) {
+                int split = from + (to - from) / 2;
+                while (split < to && !delimiter.test(input[split])) ++split;
+                if (++split < to) {
+                    DelimitedTask left = new DelimitedTask(delimiter, from, split);
+                    left.fork();
+                    ArrayList<Record> right = new DelimitedTask(delimiter, split, to).compute();
+                    ArrayList<Record> records = left.join();
+                    records.addAll(right);
+                    return records;
+                }
+            }
+
+            ArrayList<Record> records = new ArrayList<>();
+            int start = from;
+            for (int i = from; i < to; ++i) {
+                if (!delimiter.test(input[i])) continue;
+                if (i > start) records.add(parse(start, i));
+                start = i + 1;
+            }
+            if (to > start) records.add(parse(start, to));
+            return records;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the records {@code lo} (inclusive) to {@code hi} (exclusive), where record {@code i}
+     * spans {@code [offsets[i], offsets[i+1])}.
+     */
+    private final class SplitTask extends RecursiveTask<ArrayList<Record>>
+    {
+        private final int[] offsets;
+        private final int lo, hi;
+
+        SplitTask (int[] offsets, int lo, int hi) {
+            this.offsets = offsets;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override protected ArrayList<Record> compute()
+        {
+            if (hi - lo > 1 && offsets[hi] - offsets[lo] > GRAIN) {
+                int middle = offsets[lo] + (offsets[hi] - offsets[lo]) / 2;
+                int split = Arrays.binarySearch(offsets, lo + 1, hi, middle);
+                if (split < 0) split = -split - 1;
+                split = Math.min(split, hi - 1);
+                SplitTask left = new SplitTask(offsets, lo, split);
+                left.fork();
+                ArrayList<Record> right = new SplitTask(offsets, split, hi).compute();
+                ArrayList<Record> records = left.join();
+                records.addAll(right);
+                return records;
+            }
+
+            ArrayList<Record> records = new ArrayList<>(hi - lo);
+            for (int i = lo; i < hi; ++i)
+                records.add(parse(offsets[i], offsets[i + 1]));
+            return records;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,269 @@
+package norswap.autumn;
+
+import norswap.autumn.memo.SpeculativeEntry;
+import norswap.autumn.parsers.Bounded;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the fine parsers of {@link Bounded#parallel parallel} {@link Bounded} parsers on other
+ * threads, for a parse configured with {@link ParseOptions#refinement} ({@link Parse#refiner}).
+ *
+ * <p>Before the main parse, the refiner runs a recognition pass ({@link Parse#recognizeOnly}) over
+ * the input, in which parallel bounded parsers match their coarse parser, then skip their fine
+ * parser, assuming it matches the whole span. Instead, the fine parse is submitted to the
+ * executor, where it runs on its own {@link Parse} object restricted to the span, with the
+ * whitespace and error state the recognition pass had at that point.
+ *
+ * <p>During the main parse, when a parallel bounded parser has matched its coarse parser, it asks
+ * the refiner for the result of its fine parser ({@link #refine}), waiting for it if necessary (or
+ * running it itself if no thread has picked it up yet). As for {@link Speculator}, the result is
+ * only used if the main parse would provably end up in the same state by running the fine parser
+ * itself: same span, same whitespace and error state when starting the fine parser, and a full
+ * match of the span. The values are spliced on the stack of the main parse, in input order.
+ * Otherwise, the fine parser is run normally.
+ *
+ * <p>The recognition pass costs about as much as the parts of the grammar outside the fine
+ * parsers. This pays off when the fine parsers do most of the work (e.g. method bodies skipped by
+ * matching balanced braces, then parsed fully).
+ *
+ * <p>The recognition pass runs on its own {@link Parse} object, whose {@link
+ * Parse#baseRecognizeOnly base mode} is recognition-only: memo parsers are used as usual, with
+ * tables separate from those of the main parse.
+ *
+ * <p>The parsers are {@link Grammar#freeze(Parser) frozen} before the recognition pass, which is
+ * skipped if no parallel bounded parser is reachable. Refinement is not used when the input is a
+ * list, or when {@link ParseOptions#trace} or {@link ParseOptions#recordCallStack} is set.
+ */
+public final class Refiner
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parse main;
+    private final Executor executor;
+
+    /** Fine parses submitted by the recognition pass and not yet consumed by the main parse. */
+    private final HashMap<Key, Task> tasks = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    Refiner (Parse main, Executor executor)
+    {
+        this.main = main;
+        this.executor = executor;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether refinement can be used for a parse with the given options and input.
+     */
+    static boolean applicable (ParseOptions options, int[] string)
+    {
+        return options.refinement != null
+            && string != null
+            && !options.trace
+            && !options.recordCallStack;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Key
+    {
+        final Bounded bounded;
+        final int start;
+
+        Key (Bounded bounded, int start) {
+            this.bounded = bounded;
+            this.start = start;
+        }
+
+        @Override public boolean equals (Object o) {
+            return o instanceof Key && ((Key) o).bounded == bounded && ((Key) o).start == start;
+        }
+
+        @Override public int hashCode() {
+            return System.identityHashCode(bounded) * 31 + start;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Task extends FutureTask<SpeculativeEntry>
+    {
+        final int end, whitespaceStart, whitespaceEnd, error;
+        final String errorMessage;
+
+        Task (Parse main, Bounded bounded, int start, int end, int whitespaceStart,
+              int whitespaceEnd, int error, String errorMessage)
+        {
+            super(() -> fine(main, bounded, start, end, whitespaceStart, whitespaceEnd,
+                error, errorMessage));
+            this.end = end;
+            this.whitespaceStart = whitespaceStart;
+            this.whitespaceEnd = whitespaceEnd;
+            this.error = error;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the recognition pass with {@code parser}, submitting the fine parses.
+     */
+    void prepass (Parser parser)
+    {
+        Grammar.freeze(parser);
+        if (!reachesParallel(parser))
+            return;
+
+        Parse parse = new Parse(main, this);
+        parse.pos = main.pos;
+        parse.endOfInput = main.endOfInput;
+        try {
+            parser.parse(parse);
+        } catch (Throwable t) {
+            // the main parse will run into the same problem (including an exceeded budget, as
+            // the guard of the recognition pass shares its deadline and invocation count)
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a {@link Bounded#parallel parallel} {@link Bounded} parser is reachable from {@code
+     * parser}, directly or through substitutes.
+     */
+    private static boolean reachesParallel (Parser parser)
+    {
+        boolean[] found = { false };
+        new ParserWalker() {
+            @Override protected void work (Parser parser, State state) {
+                if (state != State.BEFORE || found[0]) return;
+                if (parser instanceof Bounded && ((Bounded) parser).parallel)
+                    found[0] = true;
+                else if (parser.substitute() != null)
+                    walk(parser.substitute());
+            }
+        }.walk(parser);
+        return found[0];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Cancels the fine parses that were not consumed by the main parse.
+     */
+    void stop()
+    {
+        for (Task task: tasks.values())
+            task.cancel(false);
+        tasks.clear();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@code bounded} after matching its coarse parser, with the position of {@code
+     * parse} reset to the start of the span and its end of input set to the end of the span.
+     *
+     * <p>In the recognition pass, submits the fine parse, moves to the end of the span and returns
+     * true. In the main parse, if a usable result is available, applies its effects to the parse
+     * and returns true, otherwise returns false.
+     */
+    public boolean refine (Bounded bounded, Parse parse)
+    {
+        int start = parse.pos;
+        int end = parse.endOfInput;
+        Key key = new Key(bounded, start);
+
+        if (parse != main) {
+            if (!tasks.containsKey(key)) {
+                Task task = new Task(main, bounded, start, end, parse.whitespaceStart,
+                    parse.whitespaceEnd, parse.error, parse.errorMessage);
+                try {
+                    executor.execute(task);
+                    tasks.put(key, task);
+                } catch (RejectedExecutionException e) {
+                    // the main parse will run the fine parser itself
+                }
+            }
+            parse.pos = end;
+            return true;
+        }
+
+        Task task = tasks.remove(key);
+        if (task == null
+                || task.end != end
+                || task.whitespaceStart != parse.whitespaceStart
+                || task.whitespaceEnd != parse.whitespaceEnd
+                || task.error != parse.error
+                || !Objects.equals(task.errorMessage, parse.errorMessage)
+                || parse.recognizeOnly != parse.baseRecognizeOnly)
+            return false;
+
+        task.run(); // no-op if already started on another thread
+        SpeculativeEntry entry;
+        try {
+            entry = task.get();
+        } catch (ExecutionException | CancellationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (entry.endPosition != end)
+            return false;
+
+        parse.error = entry.error;
+        parse.errorMessage = entry.errorMessage;
+        parse.pos = end;
+        for (Object value: entry.values)
+            parse.stack.push(value);
+        if (entry.whitespaceEnd >= 0)
+            parse.setWhitespace(entry.whitespaceStart, entry.whitespaceEnd);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the fine parser of {@code bounded} over {@code [start, end)}, on a new parse starting
+     * in the given whitespace and error state.
+     */
+    private static SpeculativeEntry fine (
+        Parse main, Bounded bounded, int start, int end, int whitespaceStart, int whitespaceEnd,
+        int error, String errorMessage)
+    {
+        Parse parse = new Parse(main);
+        parse.pos = start;
+        parse.endOfInput = end;
+        parse.whitespaceStart = whitespaceStart;
+        parse.whitespaceEnd = whitespaceEnd;
+        parse.error = error;
+        parse.errorMessage = errorMessage;
+
+        boolean success = bounded.fine.parse(parse);
+
+        boolean wsChanged =
+            parse.whitespaceStart != whitespaceStart || parse.whitespaceEnd != whitespaceEnd;
+        return new SpeculativeEntry(
+            bounded, start,
+            success ? parse.pos : -1,
+            success ? parse.stack.toArray() : new Object[0],
+            start,
+            wsChanged ? parse.whitespaceStart : -1,
+            wsChanged ? parse.whitespaceEnd : -1,
+            parse.error,
+            parse.errorMessage);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
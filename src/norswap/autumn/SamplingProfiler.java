@@ -0,0 +1,226 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A low-overhead alternative to {@link ParseOptions#trace}, enabled by {@link
+ * ParseOptions#profiler}: estimates the self and total time of each parser by sampling the parsers
+ * being invoked at regular intervals.
+ *
+ * <p>Each parse using the profiler maintains a stack of the parsers it is currently invoking, which
+ * costs a couple of memory writes per invocation. While a parse runs, a daemon thread owned by the
+ * profiler periodically looks at its stack: the parser at the top of the stack is charged the time
+ * elapsed since the previous sample as self time, and each parser on the stack is charged the same
+ * time as total time (only once if it recurses).
+ *
+ * <p>The sampling thread reads the stacks without synchronization, so that the parses are not
+ * slowed down. Samples may therefore be slightly off, and the estimates are only meaningful when
+ * the parses run for many sampling intervals. Time spent in a parse outside of any parser (e.g. in
+ * the well-formedness check) is not accounted for.
+ *
+ * <p>The profiler can be shared between multiple parses, including concurrent ones, whose samples
+ * are aggregated. The estimates are retrieved as a {@link ParseMetrics} ({@link #metrics()}), whose
+ * {@code toString()} method prints the same table as for tracing. Invocations are not counted, and
+ * are reported as 0.
+ *
+ * <p>The sampling thread is parked while no parse is running. Call {@link #close()} to stop it. It
+ * is started again if the profiler is used afterwards.
+ */
+public final class SamplingProfiler implements AutoCloseable
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The interval between two samples, in nanoseconds.
+     */
+    public final long interval;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The stacks of the running parses. */
+    private final Set<Stack> stacks = ConcurrentHashMap.newKeySet();
+
+    /** Maps parsers to their self and total time estimates. Guarded by {@code this}. */
+    private final HashMap<Parser, long[]> times = new HashMap<>();
+
+    /** Guarded by {@code this}. */
+    private Thread thread;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a profiler that samples the running parses at the given interval.
+     */
+    public SamplingProfiler (Duration interval)
+    {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("sampling interval must be positive: " + interval);
+        this.interval = interval.toNanos();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a profiler that samples the running parses every millisecond.
+     */
+    public SamplingProfiler() {
+        this(Duration.ofMillis(1));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The stack of the parsers invoked by a parse, maintained by {@link Parser#parse}.
+     */
+    static final class Stack
+    {
+        Parser[] parsers = new Parser[64];
+        int depth;
+
+        /**
+         * Pushes {@code parser} on the stack, returning the depth before the push, to which the
+         * stack is reset when the parser returns.
+         */
+        int push (Parser parser)
+        {
+            int depth0 = depth;
+            if (depth0 == parsers.length)
+                parsers = Arrays.copyOf(parsers, depth0 * 2);
+            parsers[depth0] = parser;
+            depth = depth0 + 1;
+            return depth0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Registers the stack of a parse that is about to run.
+     */
+    void register (Stack stack)
+    {
+        stacks.add(stack);
+        synchronized (this) {
+            if (thread != null) {
+                LockSupport.unpark(thread); // in case it is idle
+                return;
+            }
+            thread = new Thread(this::sample, "autumn-sampling-profiler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Unregisters the stack of a parse that has ended.
+     */
+    void unregister (Stack stack) {
+        stacks.remove(stack);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The loop of the sampling thread, which parks until a stack is registered whenever there are
+     * none.
+     */
+    private void sample()
+    {
+        Thread current = Thread.currentThread();
+        long last = System.nanoTime();
+        while (true) {
+            if (stacks.isEmpty()) {
+                LockSupport.park(this);
+                last = System.nanoTime();
+                synchronized (this) {
+                    if (thread != current) return;
+                }
+                continue;
+            }
+            LockSupport.parkNanos(interval);
+            long now = System.nanoTime();
+            long elapsed = now - last;
+            last = now;
+            synchronized (this) {
+                if (thread != current) return;
+                for (Stack stack: stacks)
+                    sample(stack, elapsed);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void sample (Stack stack, long elapsed)
+    {
+        Parser[] parsers = stack.parsers;
+        int depth = Math.min(stack.depth, parsers.length);
+        if (depth <= 0) return;
+
+        Parser top = parsers[depth - 1];
+        if (top != null)
+            times.computeIfAbsent(top, k -> new long[2])[0] += elapsed;
+
+        outer: for (int i = 0; i < depth; ++i) {
+            Parser parser = parsers[i];
+            if (parser == null) continue;
+            for (int j = 0; j < i; ++j)
+                if (parsers[j] == parser) continue outer;
+            times.computeIfAbsent(parser, k -> new long[2])[1] += elapsed;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the time estimates for the parsers sampled so far.
+     */
+    public synchronized ParseMetrics metrics()
+    {
+        ParserMetrics[] metrics = new ParserMetrics[times.size()];
+        int i = 0;
+        for (Map.Entry<Parser, long[]> entry: times.entrySet()) {
+            ParserMetrics m = metrics[i++] = new ParserMetrics(entry.getKey());
+            m.selfTime = entry.getValue()[0];
+            m.totalTime = entry.getValue()[1];
+        }
+        ParseMetrics result = new ParseMetrics();
+        result.merge(metrics);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Discards the estimates collected so far.
+     */
+    public synchronized void reset() {
+        times.clear();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Stops the sampling thread.
+     */
+    @Override public void close()
+    {
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+        }
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,143 @@
+package norswap.autumn;
+
+import norswap.autumn.parsers.Memo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configures speculative parallel parsing ({@link ParseOptions#speculation}): worker threads run
+ * some memoized rules ahead of the main parse, at likely boundaries of the input found by a cheap
+ * scan, and the main parse uses their results as memoization hits. See {@link Speculator} for
+ * the details.
+ *
+ * <p>Only rules built with {@link Grammar.rule#memo()} (or a variant) and without a context
+ * extractor can be used. By listing a rule here, you declare that its result depends only on the
+ * input and the position where it is invoked — not on parse state or on the values already on
+ * the stack — and that its only side effects are pushing values on the stack and recording
+ * whitespace. Results that do not meet this requirement may differ from those of a sequential
+ * parse.
+ *
+ * <p>This feature is experimental, and only pays off for large inputs with enough cores.
+ */
+public final class Speculation
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Finds the positions at which the speculative rules are tried.
+     */
+    @FunctionalInterface
+    public interface Boundaries
+    {
+        /**
+         * Returns the first boundary in {@code [from, to)} within {@code input} (an array of code
+         * points, as in {@link Parse#string}), or -1 if there is none.
+         */
+        int next (int[] input, int from, int to);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value for {@link #capacity}. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Default value for {@link #window}. */
+    public static final int DEFAULT_WINDOW = 1 << 20;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Finds the positions at which {@link #rules} are tried. */
+    public final Boundaries boundaries;
+
+    /** The rules run ahead of the main parse, at each boundary. */
+    public final List<Memo> rules;
+
+    /** Number of worker threads. */
+    public final int workers;
+
+    /** Approximate number of results that can await consumption by the main parse. */
+    public final int capacity;
+
+    /** How far (in code points) the workers may run ahead of the main parse. */
+    public final int window;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new speculation configuration.
+     *
+     * @throws IllegalArgumentException if one of the rules is not a {@link Memo} parser without
+     * context extractor.
+     */
+    public Speculation (
+        Boundaries boundaries, int workers, int capacity, int window, Grammar.rule... rules)
+    {
+        if (workers < 1)
+            throw new IllegalArgumentException("at least one worker is required");
+
+        ArrayList<Memo> memos = new ArrayList<>();
+        for (Grammar.rule rule: rules) {
+            Parser parser = rule.getParser();
+            if (!(parser instanceof Memo) || ((Memo) parser).contextExtractor != null)
+                throw new IllegalArgumentException(
+                    "not a memoized rule without context extractor: " + parser);
+            memos.add((Memo) parser);
+        }
+
+        this.boundaries = boundaries;
+        this.workers = workers;
+        this.capacity = capacity;
+        this.window = window;
+        this.rules = Collections.unmodifiableList(memos);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new speculation configuration using one worker per available processor (minus one
+     * for the main parse, but at least one), and the default {@link #capacity} and {@link #window}.
+     */
+    public Speculation (Boundaries boundaries, Grammar.rule... rules)
+    {
+        this(boundaries, Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            DEFAULT_CAPACITY, DEFAULT_WINDOW, rules);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the code point is a whitespace character, in the sense of {@link #after(String)}.
+     */
+    static boolean blank (int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns boundaries that are the positions of the first non-whitespace character following
+     * one of the characters of {@code delimiters} (e.g. {@code ",["} for the elements of JSON
+     * arrays), only skipping spaces, tabs and line breaks in between.
+     */
+    public static Boundaries after (String delimiters)
+    {
+        int[] delims = delimiters.codePoints().toArray();
+        return (input, from, to) -> {
+            int last = from - 1;
+            while (last >= 0 && blank(input[last])) --last;
+            int prev = last >= 0 ? input[last] : -1;
+
+            for (int i = from; i < to; ++i) {
+                int c = input[i];
+                if (blank(c)) continue;
+                for (int d: delims)
+                    if (prev == d) return i;
+                prev = c;
+            }
+            return -1;
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
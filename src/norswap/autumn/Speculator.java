@@ -0,0 +1,242 @@
+package norswap.autumn;
+
+import norswap.autumn.memo.SpeculationTable;
+import norswap.autumn.memo.SpeculativeEntry;
+import norswap.autumn.parsers.Memo;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the speculative part of a parse configured with {@link ParseOptions#speculation} ({@link
+ * Parse#speculator}).
+ *
+ * <p>The input is split in chunks of {@link #CHUNK} code points, which the worker threads claim in
+ * order. For each {@link Speculation#boundaries boundary} in its chunk, a worker runs each of the
+ * {@link Speculation#rules} on its own {@link Parse} object (sharing the input of the main parse),
+ * and publishes the result in a {@link SpeculationTable}. Workers skip the parts of the input
+ * the main parse has already gone past, and wait when they are more than {@link
+ * Speculation#window} code points ahead of it.
+ *
+ * <p>When a {@link Memo} parser misses in its memoizer, it asks the speculator for a result
+ * ({@link #consume}). A result is only used if the main parse would provably end up in the same
+ * state by running the parser itself: same leading whitespace at the start position, and an error
+ * position that doesn't tie with that of the main parse (in which case the error message that
+ * would prevail is unclear). The values are pushed on the stack of the main parse, and the result
+ * is memoized as usual.
+ *
+ * <p>Speculation is not used when the input is a list, or when {@link ParseOptions#trace} or
+ * {@link ParseOptions#recordCallStack} is set.
+ */
+public final class Speculator
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returned by {@link #consume} when no usable result is available. */
+    public static final int NONE = -1;
+
+    /** Returned by {@link #consume} when the parser is known to fail. */
+    public static final int FAILURE = 0;
+
+    /** Returned by {@link #consume} when the result of the parser was applied. */
+    public static final int SUCCESS = 1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of code points in the chunks claimed by the workers. */
+    public static final int CHUNK = 4096;
+
+    /** Time a worker waits before checking if the main parse has caught up, in nanoseconds. */
+    private static final long PAUSE = 100_000;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parse main;
+    private final Speculation speculation;
+    private final SpeculationTable table;
+    private final Thread[] threads;
+
+    /** Start of the next chunk to claim. */
+    private final AtomicInteger next = new AtomicInteger();
+
+    /** Last position at which the main parse asked for a result. */
+    private final AtomicInteger progress = new AtomicInteger();
+
+    private volatile boolean stopped;
+
+    // ---------------------------------------------------------------------------------------------
+
+    Speculator (Parse main, Speculation speculation)
+    {
+        this.main = main;
+        this.speculation = speculation;
+        this.table = new SpeculationTable(speculation.capacity);
+        this.threads = new Thread[speculation.workers];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(this::work, "autumn-speculation-" + i);
+            threads[i].setDaemon(true);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether speculation can be used for a parse with the given options and input.
+     */
+    static boolean applicable (ParseOptions options, int[] string)
+    {
+        return options.speculation != null
+            && string != null
+            && !options.trace
+            && !options.recordCallStack;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    void start()
+    {
+        for (Thread thread: threads)
+            thread.start();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Signals the workers to stop. A worker finishes the rule it is running before stopping.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called by {@code memo} at the current position of {@code parse} (the main parse), after
+     * missing in its memoizer. If a usable result is available, applies its effects to the parse
+     * and returns {@link #SUCCESS} or {@link #FAILURE}, otherwise returns {@link #NONE}.
+     */
+    public int consume (Memo memo, Parse parse)
+    {
+        int pos0 = parse.pos;
+        progress.lazySet(pos0);
+
+        if (parse.endOfInput != parse.string.length)
+            return NONE;
+
+        SpeculativeEntry entry = table.take(memo, pos0);
+        if (entry == null
+                || entry.leadingWhitespaceStart != parse.leadingWhitespaceStart()
+                || entry.error >= 0 && entry.error == parse.error)
+            return NONE;
+
+        if (entry.error > parse.error) {
+            parse.error = entry.error;
+            parse.errorMessage = entry.errorMessage;
+        }
+
+        if (!entry.succeeded())
+            return FAILURE;
+
+        parse.pos = entry.endPosition;
+        for (Object value: entry.values)
+            parse.stack.push(value);
+        if (entry.whitespaceEnd >= 0)
+            parse.setWhitespace(entry.whitespaceStart, entry.whitespaceEnd);
+        return SUCCESS;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void work()
+    {
+        int length = main.string.length;
+        while (!stopped)
+        {
+            int from = next.getAndAdd(CHUNK);
+            if (from >= length) return;
+            int to = Math.min(from + CHUNK, length);
+            if (to <= progress.get()) continue;
+
+            while (!stopped && from - progress.get() > speculation.window)
+                LockSupport.parkNanos(PAUSE);
+
+            speculate(from, to);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the speculative rules at each boundary within {@code [from, to)}.
+     */
+    private void speculate (int from, int to)
+    {
+        int[] input = main.string;
+        Parse parse = new Parse(main);
+
+        for (int pos = speculation.boundaries.next(input, from, to);
+                pos >= 0 && !stopped;
+                pos = pos + 1 < to ? speculation.boundaries.next(input, pos + 1, to) : -1)
+        {
+            if (pos < progress.get()) continue;
+
+            for (Memo rule: speculation.rules) {
+                SpeculativeEntry entry;
+                try {
+                    entry = run(parse, rule, pos);
+                } catch (BudgetExceededException e) {
+                    // the budget is shared with the main parse, which will stop as well
+                    stopped = true;
+                    return;
+                } catch (Throwable t) {
+                    // the rule is not context-free after all (e.g. it pops values it didn't push)
+                    parse = new Parse(main);
+                    continue;
+                }
+                // if dropped, later entries may still find room
+                table.publish(entry, progress.get());
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs {@code rule} at {@code pos} in {@code parse} (a worker parse), then restores the parse
+     * to its initial state and returns the result.
+     */
+    private static SpeculativeEntry run (Parse parse, Memo rule, int pos)
+    {
+        int[] input = parse.string;
+
+        // Assume that the whitespace before the position was matched as such.
+        int leading = pos;
+        if (parse.options.trackWhitespace)
+            while (leading > 0 && Speculation.blank(input[leading - 1])) --leading;
+
+        parse.pos = pos;
+        parse.error = -1;
+        parse.errorMessage = null;
+        parse.whitespaceStart = leading < pos ? leading : -1;
+        parse.whitespaceEnd = leading < pos ? pos : -1;
+        int wsStart0 = parse.whitespaceStart;
+        int wsEnd0 = parse.whitespaceEnd;
+
+        boolean success = rule.child.parse(parse);
+
+        boolean wsChanged = parse.whitespaceStart != wsStart0 || parse.whitespaceEnd != wsEnd0;
+        SpeculativeEntry entry = new SpeculativeEntry(
+            rule, pos,
+            success ? parse.pos : -1,
+            success ? parse.stack.toArray() : new Object[0],
+            leading,
+            wsChanged ? parse.whitespaceStart : -1,
+            wsChanged ? parse.whitespaceEnd : -1,
+            parse.error,
+            parse.errorMessage);
+
+        parse.log.rollback(0);
+        return entry;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
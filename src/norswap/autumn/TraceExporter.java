@@ -0,0 +1,256 @@
+package norswap.autumn;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Exports the tree of rule invocations of traced parses ({@link ParseOptions#trace}), set with
+ * {@link ParseOptions#traceExporter}, in one of two formats ({@link Format}): collapsed stacks, for
+ * flame graph tools, or Chrome trace events, for trace viewers.
+ *
+ * <p>Only parsers with a rule name ({@link Parser#rule()}) appear in the exported tree: the time
+ * spent in other parsers is attributed to the closest enclosing rule. The root parser of a parse
+ * always appears, under its {@code toString()} representation if it has no rule name.
+ *
+ * <p>Trace events are written as the invocations complete, so the tree is never held in memory.
+ * Collapsed stacks are aggregated by call path, then written when the exporter is closed: memory
+ * use is proportional to the number of distinct paths from the root to a rule, not to the number
+ * of invocations.
+ *
+ * <p>An exporter may be used for multiple successive parses, but not for concurrent parses. It
+ * must be {@link #close() closed} to complete the output. {@link IOException}s are rethrown as
+ * {@link UncheckedIOException}s.
+ */
+public final class TraceExporter implements AutoCloseable
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public enum Format
+    {
+        /**
+         * One line per call path, made of the rule names on the path separated by semicolons,
+         * followed by a space and the self time of the last rule on the path, in nanoseconds. This
+         * is the input format of flame graph tools (e.g. {@code flamegraph.pl}).
+         */
+        COLLAPSED,
+
+        /**
+         * A JSON array of Chrome trace events (as understood by {@code chrome://tracing} or
+         * Perfetto), with one complete event ({@code "ph": "X"}) per rule invocation. The
+         * arguments of each event are the start and end position of the invocation (the end is -1
+         * if the invocation failed).
+         */
+        CHROME
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final Format format;
+    private final Writer out;
+
+    /** Timestamps are relative to this time, in nanoseconds. */
+    private final long origin = System.nanoTime();
+
+    private boolean first = true;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Frame
+    {
+        final String name;
+        final int start;
+        final long time;
+        final Node node;
+        long children;
+
+        Frame (String name, int start, long time, Node node) {
+            this.name = name;
+            this.start = start;
+            this.time = time;
+            this.node = node;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A call path, for {@link Format#COLLAPSED}. */
+    private static final class Node
+    {
+        final String name;
+        final HashMap<String, Node> children = new HashMap<>();
+        long self;
+
+        Node (String name) {
+            this.name = name;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ArrayList<Frame> stack = new ArrayList<>();
+    private final Node root = new Node(null);
+
+    // ---------------------------------------------------------------------------------------------
+
+    public TraceExporter (Writer out, Format format)
+    {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+        this.format = format;
+        if (format == Format.CHROME)
+            write("[\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates an exporter writing to the given file (in UTF-8).
+     */
+    public TraceExporter (Path path, Format format) throws IOException {
+        this(Files.newBufferedWriter(path, StandardCharsets.UTF_8), format);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void write (String string)
+    {
+        try {
+            out.write(string);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when {@code parser} is invoked at {@code pos}. Returns true if a frame was pushed, in
+     * which case {@link #exit} must be called when the invocation completes.
+     */
+    boolean enter (Parser parser, int pos)
+    {
+        String name = parser.rule();
+        if (name == null) {
+            if (!stack.isEmpty()) return false;
+            name = parser.toString();
+        }
+        Node node = null;
+        if (format == Format.COLLAPSED) {
+            Node parent = stack.isEmpty() ? root : stack.get(stack.size() - 1).node;
+            node = parent.children.computeIfAbsent(name, Node::new);
+        }
+        stack.add(new Frame(name, pos, System.nanoTime(), node));
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called when the invocation of the parser of the top frame completes, ending at {@code pos}
+     * if successful.
+     */
+    void exit (int pos, boolean success)
+    {
+        long now = System.nanoTime();
+        Frame frame = stack.remove(stack.size() - 1);
+        long total = now - frame.time;
+        if (!stack.isEmpty())
+            stack.get(stack.size() - 1).children += total;
+
+        if (format == Format.COLLAPSED) {
+            frame.node.self += total - frame.children;
+            return;
+        }
+
+        StringBuilder b = new StringBuilder(128);
+        if (!first) b.append(",\n");
+        first = false;
+        b.append("{\"name\":\"");
+        escape(b, frame.name);
+        b.append("\",\"ph\":\"X\",\"ts\":");
+        micros(b, frame.time - origin);
+        b.append(",\"dur\":");
+        micros(b, total);
+        b.append(",\"pid\":1,\"tid\":").append(Thread.currentThread().getId());
+        b.append(",\"args\":{\"start\":").append(frame.start);
+        b.append(",\"end\":").append(success ? pos : -1).append("}}");
+        write(b.toString());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Called at the end of a parse, to complete the frames of the invocations that were
+     * interrupted by an exception.
+     */
+    void endParse()
+    {
+        while (!stack.isEmpty())
+            exit(-1, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void micros (StringBuilder b, long nanos)
+    {
+        b.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) b.append('0');
+        if (fraction < 10)  b.append('0');
+        b.append(fraction);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void escape (StringBuilder b, String string)
+    {
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\')
+                b.append('\\').append(c);
+            else if (c < 0x20)
+                b.append(String.format("\\u%04x", (int) c));
+            else
+                b.append(c);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void writeCollapsed (Node node, String path)
+    {
+        for (Node child: node.children.values()) {
+            String name = child.name.replace(';', ':').replace(' ', '_');
+            String subpath = path == null ? name : path + ";" + name;
+            if (child.self > 0)
+                write(subpath + " " + child.self + "\n");
+            writeCollapsed(child, subpath);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Completes the output and closes the underlying writer.
+     */
+    @Override public void close()
+    {
+        if (format == Format.COLLAPSED)
+            writeCollapsed(root, null);
+        else
+            write("\n]\n");
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -31,6 +31,10 @@ import static norswap.utils.Util.cast;
  * fields javadoc for the full list. In particular, {@link #$} should be null if the child parser
  * invocation that underlies the action failed. {@link #leadingWhitespaceStart} and {@link
  * #trailingWhitespaceStart} also have specific requirements.
+ *
+ * <p>The fields are public for convenience but should not be written. They are only reassigned
+ * when a context object is reused by {@link #apply}, which only happens for actions that do not
+ * {@link StackAction#retainsContext() retain their context}.
  */
 public final class ActionContext
 {
@@ -50,21 +54,21 @@ public final class ActionContext
      * <p>Will be null if the child parser failed but the action is executed anyway (see {@link
      * Collect#actionOnFail}).
      */
-    public final Object[] $;
+    public Object[] $;
 
     // ---------------------------------------------------------------------------------------------
 
     /**
      * Input position before the execution of the child parser.
      */
-    public final int pos0;
+    public int pos0;
 
     // ---------------------------------------------------------------------------------------------
 
     /**
      * {@link Parse#log} size before the execution of the underlying child parser.
      */
-    public final int size0;
+    public int size0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -74,7 +78,7 @@ public final class ActionContext
      * ParseOptions#trackWhitespace} disabled). Can be set even if the child parser failed,
      * however.
      */
-    public final int leadingWhitespaceStart;
+    public int leadingWhitespaceStart;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -83,7 +87,7 @@ public final class ActionContext
      * parse.pos}, and {@code == parse.pos} if no such whitespace exist, the child parser failed, or
      * the information is not provided ({@link ParseOptions#trackWhitespace} disabled).
      */
-    public final int trailingWhitespaceStart;
+    public int trailingWhitespaceStart;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -100,6 +104,55 @@ public final class ActionContext
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Applies {@code action} to a context built from the other parameters (as per the
+     * constructor), and returns the result of the action.
+     *
+     * <p>If the action does not {@link StackAction#retainsContext() retain its context}, the
+     * context object is taken from {@link Parse#actionContexts} (and created on first use) instead
+     * of being allocated. There is one such object per nesting level of action applications, so
+     * an action can safely trigger another action.
+     */
+    public static boolean apply (StackAction action, Parse parse, Object[] items, int pos0,
+            int size0, int leadingWhitespaceStart, int trailingWhitespaceStart)
+    {
+        if (action.retainsContext())
+            return action.apply(new ActionContext(
+                parse, items, pos0, size0, leadingWhitespaceStart, trailingWhitespaceStart));
+
+        int depth = parse.actionDepth;
+        ActionContext context;
+
+        if (depth == parse.actionContexts.size()) {
+            context = new ActionContext(
+                parse, items, pos0, size0, leadingWhitespaceStart, trailingWhitespaceStart);
+            parse.actionContexts.add(context);
+        }
+        else {
+            context = parse.actionContexts.get(depth);
+            context.$ = items;
+            context.pos0 = pos0;
+            context.size0 = size0;
+            context.leadingWhitespaceStart = leadingWhitespaceStart;
+            context.trailingWhitespaceStart = trailingWhitespaceStart;
+        }
+
+        parse.actionDepth = depth + 1;
+        try {
+            return action.apply(context);
+        }
+        finally {
+            parse.actionDepth = depth;
+            // don't keep garbage alive
+            context.$ = null;
+            context.span = null;
+            context.str = null;
+            context.list = null;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * True iff the child parser suceeded.
      *
@@ -30,8 +30,9 @@ import norswap.autumn.parsers.RightExpression;
  * <p>Autumn itself supplies a few of stack actions: the {@link Collect}, {@link LeftExpression} and
  * {@link RightExpression} parsers.
  *
- * <p>To execute the action, consumers must construct an {@link ActionContext} object. Refer
- * to its javadoc for more details.
+ * <p>To execute the action, consumers must construct an {@link ActionContext} object, or call
+ * {@link ActionContext#apply}, which reuses context objects when possible. Refer to its javadoc for
+ * more details.
  *
  * <p>Stack action consumer <b>must</b> call the action's {@link #apply(ActionContext)} method,
  * not {@code action} or another sub-interface method.</p>
@@ -43,6 +44,18 @@ import norswap.autumn.parsers.RightExpression;
  *
  * <p>This return value exists for the benefit of the {@link StackPredicate} sub-interface.
  * Other sub-interfaces always return {@code true}.
+ *
+ * <h2>Allocation</h2>
+ *
+ * <p>By default, consumers copy the items collected from the stack into the {@link
+ * ActionContext#$} array, and allocate a fresh context for every application of the action. Actions
+ * that can do without can say so by overriding {@link #usesItems()} and {@link #retainsContext()}
+ * (this requires an explicit class, as lambdas cannot override default methods).
+ *
+ * <h2>Recognition-Only Mode</h2>
+ *
+ * <p>When {@link Parse#recognizeOnly} is set, consumers do not call actions that are not {@link
+ * #required()}, and leave the stack untouched instead.
  */
 public interface StackAction
 {
@@ -52,4 +65,32 @@ public interface StackAction
      * more information.
      */
     boolean apply (ActionContext context);
+
+    /**
+     * Whether the action reads the collected items (true by default). If false, consumers that
+     * do not pop the items from the stack will not copy them, and {@link ActionContext#$} will be
+     * empty (but non-null if the child parser succeeded).
+     */
+    default boolean usesItems() {
+        return true;
+    }
+
+    /**
+     * Whether the action may keep a reference to its {@link ActionContext} after returning (true
+     * by default) — for instance in a {@link SideEffect}, whose application or reversal can happen
+     * much later. If false, consumers may reuse the context object for subsequent applications.
+     */
+    default boolean retainsContext() {
+        return true;
+    }
+
+    /**
+     * Whether the action is semantically required (false by default): whether it can influence
+     * the success of the parse, either directly (like a {@link StackPredicate}) or by changing some
+     * state that other parsers depend on. Consumers skip actions that are not required in
+     * recognition-only mode ({@link Parse#recognizeOnly}).
+     */
+    default boolean required() {
+        return false;
+    }
 }
\ No newline at end of file
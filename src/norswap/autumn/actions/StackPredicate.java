@@ -19,4 +19,11 @@ public interface StackPredicate extends StackAction
     }
 
     boolean test (ActionContext context);
+
+    /**
+     * Returns true: predicates control the success of their consumer.
+     */
+    @Override default boolean required() {
+        return true;
+    }
 }
@@ -0,0 +1,157 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.Memo;
+import norswap.autumn.positions.LineMap;
+
+/**
+ * A {@link Memoizer} that wraps another memoizer ({@link #delegate}), and switches it on or off
+ * depending on how useful it turns out to be for the current input.
+ *
+ * <p>The invocations of the {@link Memo} parser are observed in windows of {@link #WINDOW} calls.
+ * While the memoizer is enabled, we count how many lookups hit an entry. While it is disabled
+ * ({@link #enabled} returns false, and the {@code Memo} parser runs its child directly), we count
+ * how many invocations occur at a recently seen position, i.e. how many lookups would have hit. At
+ * the end of each window, the memoizer is enabled if the ratio of (potential) hits to invocations
+ * is at least {@link #threshold}, and disabled otherwise.
+ *
+ * <p>Entries memoized while the memoizer was enabled remain valid while it is disabled, and are
+ * used again when it is re-enabled.
+ *
+ * <p>A {@link Session} can be shared between the memoizers of multiple parses (typically, all the
+ * parses performed with the same parser), in which case each parse starts in the state in which
+ * the last decision left the memoizer.
+ */
+public final class AdaptiveMemoizer implements Memoizer
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Remembers whether the memoizer should start enabled, across parses.
+     */
+    public static final class Session {
+        volatile boolean enabled = true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of invocations after which we decide whether to enable the memoizer. */
+    public static final int WINDOW = 256;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value for {@link #threshold}. */
+    public static final double DEFAULT_THRESHOLD = 0.1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of recently seen positions tracked while the memoizer is disabled. */
+    private static final int RECENT = 64;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The memoizer that is switched on or off. */
+    public final Memoizer delegate;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Minimum ratio of hits to invocations for the memoizer to be enabled. */
+    public final double threshold;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Session session;
+
+    private boolean enabled;
+    private int calls;
+    private int hits;
+
+    /** Direct-mapped table of positions (+1) seen while disabled. */
+    private final int[] recent = new int[RECENT];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new adaptive memoizer wrapping {@code delegate}. {@code session} may be null, in
+     * which case the memoizer starts enabled.
+     */
+    public AdaptiveMemoizer (Memoizer delegate, Session session, double threshold)
+    {
+        this.delegate = delegate;
+        this.session = session;
+        this.threshold = threshold;
+        this.enabled = session == null || session.enabled;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the memoizer is currently enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean enabled (Parser parser, int pos)
+    {
+        if (++calls == WINDOW) {
+            enabled = hits >= threshold * calls;
+            if (session != null) session.enabled = enabled;
+            calls = 0;
+            hits = 0;
+        }
+
+        if (enabled)
+            return true;
+
+        int slot = pos & (RECENT - 1);
+        if (recent[slot] == pos + 1)
+            ++hits;
+        else
+            recent[slot] = pos + 1;
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void memoize (MemoEntry entry) {
+        delegate.memoize(entry);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public MemoEntry get (Parser parser, int pos, Object ctx)
+    {
+        MemoEntry entry = delegate.get(parser, pos, ctx);
+        if (entry != null) ++hits;
+        return entry;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int size() {
+        return delegate.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void clear() {
+        delegate.clear();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString (LineMap map) {
+        return (enabled ? "enabled " : "disabled ") + delegate.toString(map);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String listing (LineMap map) {
+        return delegate.listing(map);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
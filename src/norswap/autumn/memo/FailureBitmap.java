@@ -0,0 +1,59 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.parsers.Memo;
+import java.util.Arrays;
+
+/**
+ * The set of input positions at which a memoized parser is known to fail, stored as a bitmap.
+ *
+ * <p>Used by {@link Memo} (when {@link Memo#failureBitmap} is set) to record failures without
+ * allocating a {@link MemoEntry} for each of them, and without filling its {@link Memoizer} with
+ * them. The bitmap is allocated lazily in pages of {@link #PAGE_BITS} positions, so that a parser
+ * that is only tried over a part of the input only pays for that part.
+ *
+ * <p>Instances are stored per-parse, within a {@link norswap.autumn.ParseState}.
+ */
+public final class FailureBitmap
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Log2 of the number of positions covered by a page. */
+    private static final int PAGE_SHIFT = 12;
+
+    /** Number of positions covered by a page. */
+    public static final int PAGE_BITS = 1 << PAGE_SHIFT;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private long[][] pages = new long[0][];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a failure was recorded at {@code pos}.
+     */
+    public boolean contains (int pos)
+    {
+        int page = pos >>> PAGE_SHIFT;
+        if (page >= pages.length || pages[page] == null)
+            return false;
+        return (pages[page][(pos & PAGE_BITS - 1) >>> 6] & 1L << pos) != 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records a failure at {@code pos}.
+     */
+    public void add (int pos)
+    {
+        int page = pos >>> PAGE_SHIFT;
+        if (page >= pages.length)
+            pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+        if (pages[page] == null)
+            pages[page] = new long[PAGE_BITS >>> 6];
+        pages[page][(pos & PAGE_BITS - 1) >>> 6] |= 1L << pos;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
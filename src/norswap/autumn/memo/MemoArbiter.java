@@ -0,0 +1,141 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.parsers.Memo;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Enforces {@link ParseOptions#memoBudget} for a single parse, by keeping track of the number of
+ * entries held by all the memoizers used during the parse ({@link Parse#memoArbiter}).
+ *
+ * <p>{@link Memo} parsers report the hits they get from a memoizer ({@link #hit(Memoizer)}) and the
+ * entries they add to it ({@link #added(Memoizer)}). The first report registers the memoizer. When
+ * the total number of entries exceeds the budget, the arbiter clears the memoizers that got the
+ * least hits per entry since they were last cleared, until the total is within the budget again.
+ * Only memoizers that report their {@link Memoizer#size() size} are accounted for.
+ *
+ * <p>Clearing a memoizer never changes the result of the parse, only its speed.
+ */
+public final class MemoArbiter
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Stats
+    {
+        final Memoizer memoizer;
+        int size;
+        long hits;
+
+        Stats (Memoizer memoizer) {
+            this.memoizer = memoizer;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maximum number of entries held by all memoizers at once. */
+    public final int budget;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final IdentityHashMap<Memoizer, Stats> stats = new IdentityHashMap<>();
+
+    /** Registered memoizers, in registration order. */
+    private final ArrayList<Stats> all = new ArrayList<>();
+
+    private long total = 0;
+
+    private int evictions = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public MemoArbiter (int budget) {
+        this.budget = budget;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Stats stats (Memoizer memoizer)
+    {
+        Stats stats = this.stats.get(memoizer);
+        if (stats == null) {
+            stats = new Stats(memoizer);
+            this.stats.put(memoizer, stats);
+            all.add(stats);
+        }
+        return stats;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that a lookup in {@code memoizer} returned an entry.
+     */
+    public void hit (Memoizer memoizer) {
+        ++ stats(memoizer).hits;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records that an entry was added to {@code memoizer}, evicting entries from the least valuable
+     * memoizers if this exceeds the budget.
+     */
+    public void added (Memoizer memoizer)
+    {
+        Stats stats = stats(memoizer);
+        int size = memoizer.size();
+        total += size - stats.size;
+        stats.size = size;
+
+        while (total > budget && evict()) {}
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Clears the memoizer with the lowest ratio of hits to entries, returning false if there was
+     * nothing to clear.
+     */
+    private boolean evict()
+    {
+        Stats victim = null;
+        for (Stats stats: all)
+            if (stats.size > 0 && (victim == null
+                    || stats.hits * victim.size < victim.hits * stats.size))
+                victim = stats;
+
+        if (victim == null)
+            return false;
+
+        int size0 = victim.size;
+        victim.memoizer.clear();
+        victim.size = victim.memoizer.size();
+        victim.hits = 0;
+        total -= size0 - victim.size;
+        ++ evictions;
+        return victim.size < size0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of entries currently held by the registered memoizers.
+     */
+    public long total() {
+        return total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of times a memoizer was cleared to stay within the budget.
+     */
+    public int evictions() {
+        return evictions;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -26,6 +26,8 @@ public final class MemoCache implements Memoizer
 
     private int next = 0;
 
+    private int size = 0;
+
     // ---------------------------------------------------------------------------------------------
 
     /**
@@ -56,6 +58,7 @@ public final class MemoCache implements Memoizer
     @Override public void memoize (MemoEntry entry)
     {
         // fills next slot (unoccupied or oldest added)
+        if (entries[next] == null) ++size;
         hashes[next] = Memoizer.hash(matchParser, entry);
         entries[next] = entry;
         if (++next == numSlots) next = 0;
@@ -63,6 +66,22 @@ public final class MemoCache implements Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public int size() {
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void clear()
+    {
+        Arrays.fill(hashes, 0);
+        Arrays.fill(entries, null);
+        next = 0;
+        size = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public MemoEntry get (Parser parser, int pos, Object ctx)
     {
         int hash = Memoizer.hash(matchParser, parser, pos, ctx);
@@ -126,6 +126,22 @@ public final class MemoTable implements Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public int size() {
+        return occupied;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void clear()
+    {
+        hashes = new long[8];
+        entries = new MemoEntry[8];
+        occupied = 0;
+        maxDisplacement = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public MemoEntry get (Parser parser, int pos, Object ctx)
     {
         int hash = Memoizer.hash(matchParser, parser, pos, ctx);
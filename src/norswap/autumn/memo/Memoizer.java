@@ -1,6 +1,7 @@
 package norswap.autumn.memo;
 
 import norswap.autumn.positions.LineMap;
+import norswap.autumn.ParseOptions;
 import norswap.autumn.Parser;
 import norswap.autumn.parsers.Memo;
 import java.util.Objects;
@@ -76,6 +77,38 @@ public interface Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the memoizer should be used for an invocation of {@code parser} at {@code pos}. If
+     * false, the {@link Memo} parser runs its child directly, without consulting or updating the
+     * memoizer. Returns true by default.
+     *
+     * <p>This is called exactly once for each invocation of the {@code Memo} parser, and lets
+     * memoizers switch themselves off when they are not helpful (see {@link AdaptiveMemoizer}).
+     */
+    default boolean enabled (Parser parser, int pos) {
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of entries held by the memoizer, for the purpose of enforcing {@link
+     * ParseOptions#memoBudget}. Memoizers that return 0 (the default) are not accounted for.
+     */
+    default int size() {
+        return 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Removes all entries from the memoizer. Called by {@link MemoArbiter} to enforce {@link
+     * ParseOptions#memoBudget}. Does nothing by default.
+     */
+    default void clear() {}
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a textual representation of the content of the memoizer (on a single line),
      * converting the input positions using {@code map} (can be null, in which case plain offsets
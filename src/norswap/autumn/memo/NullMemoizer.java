@@ -18,6 +18,10 @@ public final class NullMemoizer implements Memoizer
         return null; // we have nothing
     }
 
+    @Override public boolean enabled (Parser parser, int pos) {
+        return false; // don't bother building entries
+    }
+
     @Override public String toString (LineMap map) {
         return super.toString();
     }
@@ -0,0 +1,63 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.parsers.Lookahead;
+import norswap.autumn.parsers.Not;
+import java.util.Arrays;
+
+/**
+ * Caches the result (success or failure) of a single predicate parser ({@link Not} or {@link
+ * Lookahead}) at each input position.
+ *
+ * <p>Unlike a {@link Memoizer}, this does not store side effects or end positions: a predicate
+ * always ends at its initial position, and its results are only stored when it leaves no side
+ * effects. This lets us store the results in a pair of bitsets: one that says whether a result is
+ * known for a position, and one that holds the result.
+ *
+ * <p>Instances are stored per-parse, within a {@link norswap.autumn.ParseState}.
+ */
+public final class PredicateCache
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Returned by {@link #get(int)} when no result is known for a position. */
+    public static final int UNKNOWN = -1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private long[] known = new long[0];
+    private long[] success = new long[0];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns 1 if the predicate is known to succeed at {@code pos}, 0 if it is known to fail, or
+     * {@link #UNKNOWN}.
+     */
+    public int get (int pos)
+    {
+        int word = pos >>> 6;
+        if (word >= known.length || (known[word] & 1L << pos) == 0)
+            return UNKNOWN;
+        return (int) (success[word] >>> pos) & 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records the result of the predicate at {@code pos}.
+     */
+    public void put (int pos, boolean result)
+    {
+        int word = pos >>> 6;
+        if (word >= known.length) {
+            int size = Math.max(word + 1, known.length * 2);
+            known = Arrays.copyOf(known, size);
+            success = Arrays.copyOf(success, size);
+        }
+        known[word] |= 1L << pos;
+        if (result)
+            success[word] |= 1L << pos;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,95 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.Parser;
+import norswap.autumn.Speculator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity, lock-free table of {@link SpeculativeEntry}, keyed by (parser, position),
+ * through which the worker threads of a {@link Speculator} hand results to the main parse.
+ *
+ * <p>The table uses open addressing with a bounded number of probes. Entries are inserted and
+ * removed by compare-and-swap: workers {@link #publish} entries, and the main parse {@link #take}s
+ * them, leaving a tombstone that can be reused by a later entry. Entries for positions the main
+ * parse has moved past are reused in the same way. When no free slot is found within the probe
+ * limit, the entry is dropped — losing a speculative result only means the main parse has to do
+ * the work itself.
+ *
+ * <p>Each (parser, position) pair must be published at most once.
+ */
+public final class SpeculationTable
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maximum number of slots inspected by an operation. */
+    private static final int MAX_PROBES = 16;
+
+    /** Marks a slot whose entry has been taken. */
+    private static final SpeculativeEntry TAKEN =
+        new SpeculativeEntry(null, -1, -1, null, -1, -1, -1, -1, null);
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final AtomicReferenceArray<SpeculativeEntry> slots;
+    private final int mask;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a table that can hold about {@code capacity} entries (rounded up to a power of two).
+     */
+    public SpeculationTable (int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int index (Parser parser, int pos)
+    {
+        int h = (System.identityHashCode(parser) * 31 + pos) * 0x9E3779B9;
+        return (h ^ h >>> 16) & mask;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Inserts the entry, returning false if it was dropped for lack of space. Entries whose
+     * position is before {@code progress} (the position of the main parse) are considered stale,
+     * and their slots can be taken over.
+     */
+    public boolean publish (SpeculativeEntry entry, int progress)
+    {
+        int i = index(entry.parser, entry.startPosition);
+        for (int n = 0; n < MAX_PROBES; ++n, i = i + 1 & mask) {
+            SpeculativeEntry slot = slots.get(i);
+            boolean free = slot == null || slot == TAKEN || slot.startPosition < progress;
+            if (free && slots.compareAndSet(i, slot, entry))
+                return true;
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Removes and returns the entry for the given parser and position, or returns null if there is
+     * none (yet).
+     */
+    public SpeculativeEntry take (Parser parser, int pos)
+    {
+        int i = index(parser, pos);
+        for (int n = 0; n < MAX_PROBES; ++n, i = i + 1 & mask) {
+            SpeculativeEntry slot = slots.get(i);
+            if (slot == null)
+                return null;
+            if (slot.parser == parser && slot.startPosition == pos)
+                return slots.compareAndSet(i, slot, TAKEN) ? slot : null;
+        }
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
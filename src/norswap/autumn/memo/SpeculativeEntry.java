@@ -0,0 +1,80 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.Parser;
+import norswap.autumn.Refiner;
+import norswap.autumn.Speculator;
+
+/**
+ * The result of running a parser ahead of the main parse, on another thread, as published in a
+ * {@link SpeculationTable} by a {@link Speculator}, or computed by a {@link Refiner}.
+ *
+ * <p>Unlike a {@link MemoEntry}, this does not hold side effects (which are bound to the parse
+ * that produced them), but the values the parser pushed on the value stack. It also holds the
+ * whitespace and error state that the main parse needs to mirror in order to end up in the same
+ * state as if it had run the parser itself.
+ *
+ * <p>A failure is characterized by a -1 {@link #endPosition} and no values.
+ */
+public final class SpeculativeEntry
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The parser that generated this result. */
+    public final Parser parser;
+
+    /** The start position of the match. */
+    public final int startPosition;
+
+    /** The end position of the match, or -1 if the parser failed. */
+    public final int endPosition;
+
+    /** The values pushed on the value stack by the parser (bottom first). */
+    public final Object[] values;
+
+    /**
+     * The start of the leading whitespace that was assumed at {@link #startPosition} (or {@link
+     * #startPosition} itself if no leading whitespace was assumed).
+     */
+    public final int leadingWhitespaceStart;
+
+    /** Start of the last whitespace segment recorded by the parser, or -1 if none. */
+    public final int whitespaceStart;
+
+    /** End of the last whitespace segment recorded by the parser, or -1 if none. */
+    public final int whitespaceEnd;
+
+    /** Position of the furthest error encountered by the parser, or -1 if none. */
+    public final int error;
+
+    /** Message associated with {@link #error}, if any. */
+    public final String errorMessage;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public SpeculativeEntry (
+        Parser parser, int startPosition, int endPosition, Object[] values,
+        int leadingWhitespaceStart, int whitespaceStart, int whitespaceEnd,
+        int error, String errorMessage)
+    {
+        this.parser = parser;
+        this.startPosition = startPosition;
+        this.endPosition = endPosition;
+        this.values = values;
+        this.leadingWhitespaceStart = leadingWhitespaceStart;
+        this.whitespaceStart = whitespaceStart;
+        this.whitespaceEnd = whitespaceEnd;
+        this.error = error;
+        this.errorMessage = errorMessage;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true iff the entry indicates a successful parser invocation.
+     */
+    public boolean succeeded() {
+        return endPosition >= 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -39,10 +39,6 @@ public final class Around extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    private final Parser insideThenAround;
-
-    // ---------------------------------------------------------------------------------------------
-
     /**
      * This parser will matches at least {@code min} repetitions of {@code around}, separated by
      * matches for {@code inside}. If {@code exact} is true, will match exactly {@code min}
@@ -56,7 +52,6 @@ public final class Around extends Parser
         this.trailing = trailing;
         this.around = around;
         this.inside = inside;
-        this.insideThenAround = new Sequence(inside, around);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -68,11 +63,11 @@ public final class Around extends Parser
                 inside.parse(parse);
             return min == 0;
         }
-        for (int i = 0; i < min - 1; ++i)
-            if (!insideThenAround.parse(parse))
-                return false;
-        if (!exact)
-            while (insideThenAround.parse(parse)) ;
+        int count = 1;
+        while ((!exact || count < min) && insideThenAround(parse))
+            ++ count;
+        if (count < min)
+            return false;
         if (trailing)
             inside.parse(parse);
         return true;
@@ -80,6 +75,37 @@ public final class Around extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Matches {@code seq(inside, around)}, with the same bookkeeping as {@link Parser#parse} would
+     * perform for a {@link Sequence} parser, but without the overhead of a separate parser
+     * invocation.
+     */
+    private boolean insideThenAround (Parse parse)
+    {
+        int pos0 = parse.pos;
+        int log0 = parse.log.size();
+        String errmsg0 = parse.errorMessage();
+
+        if (inside.parse(parse) && around.parse(parse))
+            return true;
+
+        if (parse.error <= pos0) {
+            parse.error = pos0;
+            //noinspection StringEquality
+            if (parse.errorMessage() == errmsg0 && errmsg0 != null)
+                parse.setErrorMessage(null);
+            if (parse.options.recordCallStack)
+                parse.errorCallStack = parse.callStack.clone();
+        }
+
+        parse.pos = pos0;
+        if (parse.log.size() > log0)
+            parse.log.rollback(log0);
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -1,7 +1,9 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
 import norswap.autumn.Parser;
+import norswap.autumn.Refiner;
 import norswap.autumn.ParserVisitor;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,6 +26,9 @@ import java.util.function.Predicate;
  * this parser, so unless you've set it yourself, errors ncountered during its invocation will count
  * towards the furthest error. The changes it makes to the context are also <b>not</b> undone before
  * calling {@link #fine}.
+ *
+ * <p>If {@link #parallel} is set and the parse is run with {@link ParseOptions#refinement}, the
+ * {@link #fine} parser may be run ahead of time on another thread (see {@link Refiner}).
  */
 public final class Bounded extends Parser
 {
@@ -41,11 +46,27 @@ public final class Bounded extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    public Bounded (Parser coarse, Parser fine, Predicate<Parse> fallback)
+    /**
+     * Whether {@link #fine} may be run on another thread, on its own {@link Parse} object. By
+     * setting this, you declare that the result of {@link #fine} depends only on the input span
+     * it is run on, and not on the parse state or on the values already on the stack.
+     */
+    public final boolean parallel;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Bounded (Parser coarse, Parser fine, Predicate<Parse> fallback, boolean parallel)
     {
         this.coarse = coarse;
         this.fine = fine;
         this.fallback = fallback;
+        this.parallel = parallel;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Bounded (Parser coarse, Parser fine, Predicate<Parse> fallback) {
+        this(coarse, fine, fallback, false);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -64,7 +85,8 @@ public final class Bounded extends Parser
         parse.endOfInput = end1;
         parse.pos = pos0;
 
-        boolean success = fine.parse(parse);
+        boolean success = parallel && parse.refiner != null && parse.refiner.refine(this, parse)
+            || fine.parse(parse);
         parse.endOfInput = end0;
 
         if (success && parse.pos == end1)
@@ -4,6 +4,7 @@ import norswap.autumn.Grammar;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import norswap.autumn.regex.CharSet;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -37,14 +38,35 @@ public final class CharPredicate extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The set of characters matched by {@link #predicate}, if known, or null. This is used to
+     * compile the parser to a {@link norswap.autumn.regex.DFA} more efficiently.
+     */
+    public final CharSet set;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Creates a new parser that matches a single character that satisfies {@code predicate}.
      * {@code name} is used as display name for this parser.
      */
     public CharPredicate (String name, IntPredicate predicate)
+    {
+        this(name, predicate, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser that matches a single character that satisfies {@code predicate}, which
+     * must match exactly the characters in {@code set} (if non-null). {@code name} is used as
+     * display name for this parser.
+     */
+    public CharPredicate (String name, IntPredicate predicate, CharSet set)
     {
         this.name = name;
         this.predicate = predicate;
+        this.set = set;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -84,7 +106,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate any()
     {
-        return new CharPredicate("<any char>", it -> it != 0);
+        return new CharPredicate("<any char>", it -> it != 0, CharSet.single(0).complement());
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -99,7 +121,7 @@ public final class CharPredicate extends Parser
             : "" + ((char) c >> 16) + ((char) c & 0x0000FFFF);
 
         String name = "[" + escapeQuotedSection(chars) + "]";
-        return new CharPredicate(name, it -> it == c);
+        return new CharPredicate(name, it -> it == c, CharSet.single(c));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -111,7 +133,8 @@ public final class CharPredicate extends Parser
     {
         String str = escapeQuotedSection(start + "-" + end);
         return new CharPredicate("[" + str + "]", it ->
-            start <= it && it <= end);
+            start <= it && it <= end,
+            start <= end ? CharSet.range(start, end) : CharSet.EMPTY);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -122,7 +145,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate set (String chars)
     {
         return new CharPredicate("[" + escapeQuotedSection(chars) + "]", it ->
-            chars.indexOf(it) >= 0); // indexOf also works with code points
+            chars.indexOf(it) >= 0, // indexOf also works with code points
+            CharSet.of(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -135,7 +159,7 @@ public final class CharPredicate extends Parser
     	String s = new String(chars, 0, chars.length);
     	Arrays.sort(chars);
         return new CharPredicate("[" + escapeQuotedSection(s) + "]", it ->
-        Arrays.binarySearch(chars, it) >= 0);
+        Arrays.binarySearch(chars, it) >= 0, CharSet.of(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -146,7 +170,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate alpha()
     {
         return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z');
+            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z',
+            CharSet.ranges('A', 'Z', 'a', 'z'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -157,7 +182,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate alphanum()
     {
         return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z' || '0' <= it && it <= '9');
+            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z' || '0' <= it && it <= '9',
+            CharSet.ranges('0', '9', 'A', 'Z', 'a', 'z'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -168,7 +194,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate digit()
     {
         return new CharPredicate("<digit>", it ->
-            '0' <= it && it <= '9');
+            '0' <= it && it <= '9',
+            CharSet.range('0', '9'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -180,7 +207,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate hexDigit()
     {
         return new CharPredicate("<hex digit>", it ->
-            '0' <= it && it <= '9' || 'a' <= it && it <= 'f' || 'A' <= it && it <= 'F');
+            '0' <= it && it <= '9' || 'a' <= it && it <= 'f' || 'A' <= it && it <= 'F',
+            CharSet.ranges('0', '9', 'A', 'F', 'a', 'f'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -191,7 +219,8 @@ public final class CharPredicate extends Parser
     public static CharPredicate octalDigit()
     {
         return new CharPredicate("<octal digit>", it ->
-            '0' <= it && it <= '7');
+            '0' <= it && it <= '7',
+            CharSet.range('0', '7'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -22,6 +22,10 @@ import java.util.Collections;
  *
  * <p>The {@code lookback} constructor parameter enables getting additional items from the stack
  * to be prepended to the collected items. See {@link #lookback} for more details.
+ *
+ * <p>In recognition-only mode ({@link Parse#recognizeOnly}), the parser does not run its action
+ * and leaves the stack untouched, unless the action is {@link #required}. In that case, the child
+ * parser is run in normal mode, so that the action can access the items it pushes.
  */
 public final class Collect extends Parser
 {
@@ -70,8 +74,27 @@ public final class Collect extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the action must run even in recognition-only mode ({@link Parse#recognizeOnly}).
+     * Defaults to {@link StackAction#required()}.
+     *
+     * <p>Note that in recognition-only mode, any items from the {@link #lookback} were not pushed
+     * on the stack.
+     */
+    public final boolean required;
+
+    // ---------------------------------------------------------------------------------------------
+
     public Collect (String name, Parser child,
                     int lookback, boolean actionOnFail, boolean pop, StackAction action)
+    {
+        this(name, child, lookback, actionOnFail, pop, action.required(), action);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Collect (String name, Parser child, int lookback,
+                    boolean actionOnFail, boolean pop, boolean required, StackAction action)
     {
         if (lookback < 0)
             throw new IllegalArgumentException("negative lookback");
@@ -81,6 +104,7 @@ public final class Collect extends Parser
         this.lookback = lookback;
         this.pop = pop;
         this.actionOnFail = actionOnFail;
+        this.required = required;
         this.action = action;
     }
 
@@ -90,27 +114,47 @@ public final class Collect extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /** Shared by all actions that collect no items (it can't be mutated). */
+    private static final Object[] NO_ITEMS = new Object[0];
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public boolean doparse (Parse parse)
     {
+        boolean recognizeOnly = parse.recognizeOnly;
+
+        if (recognizeOnly && !required)
+            return child.parse(parse) || actionOnFail;
+
         int pos0 = parse.pos;
         int size0 = parse.stack.size();
         int leadingWhitespaceStart = parse.leadingWhitespaceStart();
 
-        boolean result = child.parse(parse);
+        boolean result;
+        parse.recognizeOnly = false;
+        try {
+            result = child.parse(parse);
+        } finally {
+            parse.recognizeOnly = recognizeOnly;
+        }
 
         if (!result && !actionOnFail)
             return false;
 
-        Object[] items = result
-            ? pop
-                ? parse.stack.popFrom(size0 - lookback)
-                : parse.stack.peekFrom(size0 - lookback, Object[]::new)
-            : null;
+        Object[] items = !result
+            ? null
+            : parse.stack.size() == size0 - lookback
+                ? NO_ITEMS // nothing to pop or copy
+                : pop
+                    ? parse.stack.popFrom(size0 - lookback)
+                    : action.usesItems()
+                        ? parse.stack.peekFrom(size0 - lookback, Object[]::new)
+                        : NO_ITEMS;
 
         int trailingWhitespaceStart = parse.trailingWhitespaceStart(pos0);
 
-        return action.apply(new ActionContext(
-            parse, items, pos0, size0, leadingWhitespaceStart, trailingWhitespaceStart));
+        return ActionContext.apply(action,
+            parse, items, pos0, size0, leadingWhitespaceStart, trailingWhitespaceStart);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -22,6 +22,9 @@ import java.util.function.Supplier;
  * <p>Beware that it is unsafe to print this parser whenever its supplier is unable to provide
  * a correct parser yet (typically because the referenced parser hasn't been initialized yet).
  *
+ * <p>The child is resolved by {@link #freeze()}, after which the parser is safe to use from
+ * multiple threads.
+ *
  * <p>Build with {@link Grammar#lazy(Supplier)}.
  */
 public final class LazyParser extends Parser
@@ -32,7 +35,7 @@ public final class LazyParser extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    private Parser parser;
+    private volatile Parser parser;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -52,6 +55,14 @@ public final class LazyParser extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void freeze()
+    {
+        child();
+        super.freeze();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public boolean doparse (Parse parse)
     {
         return child().parse(parse);
@@ -8,7 +8,6 @@ import norswap.autumn.actions.StackAction;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -67,6 +66,15 @@ public final class LeftExpression extends Parser
     /** Whether a left operand can match on its own (false), or an operator is required (true). */
     public final boolean operatorRequired;
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether one of the steps is {@link StackAction#required() required}. If so, the parser runs
+     * in normal mode even in recognition-only mode ({@link Parse#recognizeOnly}), as the step needs
+     * the operands to be on the stack (like {@link Collect} for its child).
+     */
+    private final boolean stepRequired;
+
     // ---------------------------------------------------------------------------------------------
     
     public LeftExpression (
@@ -87,22 +95,46 @@ public final class LeftExpression extends Parser
         this.infixSteps = infixSteps;
         this.suffixSteps = suffixSteps;
         this.operatorRequired = operatorRequired;
+        this.stepRequired = anyRequired(infixSteps) || anyRequired(suffixSteps);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether one of the steps is {@link StackAction#required() required}. Also used by {@link
+     * RightExpression} and {@link OperatorTable}.
+     */
+    static boolean anyRequired (StackAction[] steps)
+    {
+        for (StackAction step: steps)
+            if (step.required()) return true;
+        return false;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override public boolean doparse (Parse parse)
+    {
+        if (!parse.recognizeOnly || !stepRequired)
+            return match(parse);
+
+        parse.recognizeOnly = false;
+        try {
+            return match(parse);
+        } finally {
+            parse.recognizeOnly = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean match (Parse parse)
     {
         final int pos0  = parse.pos;
         final int stack0 = parse.stack.size();
         final int whitespace0 = parse.leadingWhitespaceStart();
         int count = 0;
 
-        final Consumer<StackAction> applyStep = (step) ->
-            step.apply(new ActionContext(
-                parse, parse.stack.popFrom(stack0), pos0, stack0,
-                whitespace0, parse.trailingWhitespaceStart(pos0)));
-        
         if (!left.parse(parse))
             return false;
         
@@ -116,7 +148,7 @@ public final class LeftExpression extends Parser
                 if (infixes[i].parse(parse))
                     if (right.parse(parse)) {
                         ++count;
-                        applyStep.accept(infixSteps[i]);
+                        applyStep(parse, infixSteps[i], pos0, stack0, whitespace0);
                         continue outer;
                     }
                     else {
@@ -127,7 +159,7 @@ public final class LeftExpression extends Parser
             for (int i = 0; i < suffixes.length; ++i)
                 if (suffixes[i].parse(parse)) {
                     ++ count;
-                    applyStep.accept(suffixSteps[i]);
+                    applyStep(parse, suffixSteps[i], pos0, stack0, whitespace0);
                     continue outer;
                 }
 
@@ -139,6 +171,19 @@ public final class LeftExpression extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    private static void applyStep (
+        Parse parse, StackAction step, int pos0, int stack0, int whitespace0)
+    {
+        if (parse.recognizeOnly && !step.required())
+            return;
+
+        ActionContext.apply(step,
+            parse, parse.stack.popFrom(stack0), pos0, stack0,
+            whitespace0, parse.trailingWhitespaceStart(pos0));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -5,9 +5,16 @@ import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
 import norswap.autumn.SideEffect;
+import norswap.autumn.regex.CharSet;
+import norswap.autumn.visitors.VisitorFirstParsers;
+import norswap.autumn.visitors.VisitorNullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.function.IntPredicate;
 
 import static norswap.utils.Strings.joinArray;
 
@@ -15,6 +22,14 @@ import static norswap.utils.Strings.joinArray;
  * Matches the same thing as its longest matching child, or fails if none succeed.
  * In case of a tie, matches like the earliest longest matching child.
  *
+ * <p>When matching a string, the non-nullable children that cannot consume the current character
+ * (as determined by their FIRST sets) are not tried at all, since they are bound to fail. The
+ * furthest error position is the same as if they had been tried.
+ *
+ * <p>The side effects of the longest match are normally recorded, undone, then re-applied once all
+ * children have been tried. However, if the longest match is obtained by the last child that
+ * remains to be tried, its side effects are simply left in place.
+ *
  * <p>Build with {@link Grammar#longest(Object...)}
  */
 public final class Longest extends Parser
@@ -25,6 +40,27 @@ public final class Longest extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * For each ASCII character, the indices of the children that may consume it first. Computed
+     * lazily, and shared by all threads once published.
+     */
+    private volatile int[][] asciiCandidates;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * For each child, a predicate that is true for the characters the child may consume first.
+     * Computed alongside {@link #asciiCandidates}.
+     */
+    private IntPredicate[] firstChars;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The indices of all children. */
+    private final int[] all;
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public List<Parser> children() {
         return Collections.unmodifiableList(Arrays.asList(children));
     }
@@ -34,6 +70,17 @@ public final class Longest extends Parser
     public Longest (Parser... children)
     {
         this.children = children;
+        this.all = new int[children.length];
+        for (int i = 0; i < all.length; ++i) all[i] = i;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void freeze()
+    {
+        if (asciiCandidates == null)
+            computeCandidates();
+        super.freeze();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -42,17 +89,27 @@ public final class Longest extends Parser
     {
         int pos0 = parse.pos;
         int log0 = parse.log.size();
+        int[] candidates = candidates(parse);
+
+        if (candidates.length < children.length)
+            reportPruned(parse, candidates);
 
         int maxPos = pos0;
         List<SideEffect> delta = null;
 
-        for (Parser child: children)
+        for (int i = 0; i < candidates.length; ++i)
         {
-            boolean success = child.parse(parse);
+            boolean success = children[candidates[i]].parse(parse);
             if (success) {
                 if (parse.pos > maxPos) {
+                    // Last candidate: leave its side effects in place.
+                    if (i == candidates.length - 1)
+                        return true;
+
                     maxPos = parse.pos;
-                    delta = parse.log.delta(log0);
+                    delta = parse.log.size() == log0
+                        ? Collections.emptyList()
+                        : parse.log.delta(log0);
                 }
 
                 parse.pos = pos0;
@@ -70,6 +127,153 @@ public final class Longest extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns the indices of the children that may consume the character at the current position,
+     * in order, or the indices of all children if the input is not a string or if we are at the
+     * end of the input.
+     */
+    private int[] candidates (Parse parse)
+    {
+        if (parse.string == null || parse.pos >= parse.endOfInput)
+            return all;
+
+        int[][] ascii = asciiCandidates;
+        if (ascii == null)
+            ascii = computeCandidates();
+
+        int c = parse.string[parse.pos];
+        if (c < 128)
+            return ascii[c];
+
+        int[] candidates = new int[children.length];
+        int size = 0;
+        for (int i = 0; i < children.length; ++i)
+            if (firstChars[i].test(c))
+                candidates[size++] = i;
+        return size == children.length ? all : Arrays.copyOf(candidates, size);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The children that were not tried would have failed at the initial position: record the error
+     * they would have reported.
+     */
+    private void reportPruned (Parse parse, int[] candidates)
+    {
+        int pos0 = parse.pos;
+        if (parse.error > pos0) return;
+
+        Parser pruned = null;
+        for (int i = 0, j = 0; i < children.length; ++i)
+            if (j < candidates.length && candidates[j] == i) ++j;
+            else if (!children[i].excludeErrors) pruned = children[i];
+
+        if (pruned == null) return;
+        parse.error = pos0;
+        if (parse.errorMessage() != null)
+            parse.setErrorMessage(null);
+        if (parse.options.recordCallStack) {
+            parse.callStack.push(pruned, pos0);
+            parse.errorCallStack = parse.callStack.clone();
+            parse.callStack.pop();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int[][] computeCandidates()
+    {
+        VisitorFirstParsers visitor = new VisitorFirstParsers(new VisitorNullable());
+        IntPredicate[] firstChars = new IntPredicate[children.length];
+        for (int i = 0; i < children.length; ++i)
+            // Nullable children may succeed without consuming, which affects error reporting.
+            firstChars[i] = visitor.nullable(children[i])
+                ? c -> true
+                : firstChars(children[i], visitor);
+
+        int[][] ascii = new int[128][];
+        int[] candidates = new int[children.length];
+        for (int c = 0; c < 128; ++c) {
+            int size = 0;
+            for (int i = 0; i < children.length; ++i)
+                if (firstChars[i].test(c))
+                    candidates[size++] = i;
+            ascii[c] = size == children.length ? all : Arrays.copyOf(candidates, size);
+        }
+
+        this.firstChars = firstChars;
+        this.asciiCandidates = ascii;
+        return ascii;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a predicate that is true for every character that {@code parser} may consume first
+     * (and possibly for others), by walking the transitive closure of its FIRST set.
+     *
+     * <p>Parsers that do not belong to this package, primitive parsers and object predicates may
+     * consume any character.
+     *
+     * <p>Also used by {@link OperatorTable}.
+     */
+    static IntPredicate firstChars (Parser parser, VisitorFirstParsers visitor)
+    {
+        CharSet set = CharSet.EMPTY;
+        ArrayList<IntPredicate> predicates = new ArrayList<>();
+        HashSet<Parser> visited = new HashSet<>();
+        ArrayDeque<Parser> queue = new ArrayDeque<>();
+        queue.add(parser);
+
+        while (!queue.isEmpty())
+        {
+            Parser p = queue.poll();
+            if (!visited.add(p))
+                continue;
+
+            if (p.getClass().getPackage() != Longest.class.getPackage()
+                    || p instanceof AbstractPrimitive
+                    || p instanceof ObjectPredicate)
+                return c -> true;
+
+            if (p instanceof CharPredicate) {
+                CharPredicate pred = (CharPredicate) p;
+                if (pred.set != null)
+                    set = set.union(pred.set);
+                else
+                    predicates.add(pred.predicate);
+            }
+            else if (p instanceof StringMatch && ((StringMatch) p).codepoints.length > 0)
+                set = set.union(CharSet.single(((StringMatch) p).codepoints[0]));
+            else if (p instanceof StringChoice) {
+                for (String string: ((StringChoice) p).strings)
+                    if (!string.isEmpty())
+                        set = set.union(CharSet.single(string.codePointAt(0)));
+            }
+            else if (p instanceof Regex)
+                predicates.add(((Regex) p).dfa::mayStartWith);
+            else if (p instanceof RightExpression || p instanceof OperatorTable)
+                // Their FIRST sets assume well-formedness, be conservative.
+                for (Parser child: p.children()) queue.add(child);
+            else
+                queue.addAll(visitor.firsts(p));
+        }
+
+        if (predicates.isEmpty())
+            return set::contains;
+
+        CharSet chars = set;
+        IntPredicate[] preds = predicates.toArray(new IntPredicate[0]);
+        return c -> {
+            if (chars.contains(c)) return true;
+            for (IntPredicate pred: preds) if (pred.test(c)) return true;
+            return false;
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
@@ -1,15 +1,27 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import norswap.autumn.memo.PredicateCache;
 import java.util.Collections;
 
 /**
  * Succeeds if its child succeed, but does not advance the input position (all other side effects
  * of the child are retained).
  *
- * <p>Build with {@link norswap.autumn.Grammar.rule#ahead()}
+ * <p>If {@link #cached} is true, the result of the parser at each input position is cached in a
+ * {@link PredicateCache}, and the child is not run again at a position where its result is known.
+ * This is only correct if the child's result doesn't depend on anything but the input (e.g. not on
+ * the value stack or on some {@link ParseState}). Results are only cached when reusing them
+ * doesn't change the outcome of the parse: successes that leave no side effects and do not fail
+ * anywhere within the child (the furthest error is before the initial position), and failures
+ * whose furthest error (without custom message) is at the initial position. The cache is bypassed
+ * within a {@link Bounded} parser and when recording call stacks.
+ *
+ * <p>Build with {@link norswap.autumn.Grammar.rule#ahead()} or {@link
+ * norswap.autumn.Grammar.rule#cached_ahead()}
  */
 public final class Lookahead extends Parser
 {
@@ -19,9 +31,28 @@ public final class Lookahead extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    public Lookahead (Parser child)
+    /**
+     * Whether the result of the parser is cached for each input position.
+     */
+    public final boolean cached;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseState<PredicateCache> cache;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Lookahead (Parser child) {
+        this(child, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Lookahead (Parser child, boolean cached)
     {
         this.child = child;
+        this.cached = cached;
+        this.cache = cached ? new ParseState<>(new Object(), PredicateCache::new) : null;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -29,11 +60,28 @@ public final class Lookahead extends Parser
     @Override public boolean doparse (Parse parse)
     {
         int pos0 = parse.pos;
+        PredicateCache cache = this.cache == null
+                || parse.endOfInput != parse.inputLength()
+                || parse.options.recordCallStack
+            ? null
+            : this.cache.data(parse);
+
+        if (cache != null) {
+            int result = cache.get(pos0);
+            if (result != PredicateCache.UNKNOWN)
+                return result == 1;
+        }
+
+        int log0 = parse.log.size();
         if (child.parse(parse)) {
             parse.pos = pos0;
+            if (cache != null && parse.error < pos0 && parse.log.size() == log0)
+                cache.put(pos0, true);
             return true;
         }
         // parse.pos has already been reset
+        if (cache != null && parse.error == pos0 && parse.errorMessage() == null)
+            cache.put(pos0, false);
         return false;
     }
 
@@ -52,7 +100,7 @@ public final class Lookahead extends Parser
     // ---------------------------------------------------------------------------------------------
 
     @Override public String toStringFull() {
-        return "lookahead(" + child + ")";
+        return (cached ? "cached_ahead(" : "lookahead(") + child + ")";
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -2,10 +2,12 @@ package norswap.autumn.parsers;
 
 import norswap.autumn.Grammar.rule;
 import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
 import norswap.autumn.SideEffect;
+import norswap.autumn.Speculator;
 import norswap.autumn.memo.*;
 import java.util.Collections;
 import java.util.function.Function;
@@ -33,7 +35,30 @@ import java.util.function.Function;
  *
  * <p>If the function is null, no context comparisons are performed.
  *
- * <p>Build with {@link rule#memo(int)} or {@link rule#memo(int, Function)}.
+ * <p>If {@link #failureBitmap} is set, failures are not handed to the memoizer. Instead, they are
+ * recorded in a per-parse {@link FailureBitmap}, which is consulted before the memoizer. Only
+ * successes then cause {@link MemoEntry} objects to be allocated. Since the failures are then
+ * remembered for the whole parse, this should only be enabled when the memoizer isn't shared with
+ * other parsers (as the memoizer could otherwise answer for another parser) and when there is no
+ * context extractor. Failures that occur while the end of input is narrowed ({@link
+ * Parse#endOfInput}, e.g. by {@link Bounded}) are not recorded, and the bitmap is not consulted.
+ *
+ * <p>The memoizer can also decline to be used for some invocations ({@link
+ * Memoizer#enabled(Parser, int)}), in which case the child is run directly. This is notably used
+ * by {@link AdaptiveMemoizer} to switch memoization off when it doesn't pay off.
+ *
+ * <p>The total number of entries held by the memoizers of a parse can be bounded with {@link
+ * ParseOptions#memoBudget}, in which case memoizers may be cleared during the parse.
+ *
+ * <p>If the parse is {@link ParseOptions#speculation speculative}, a missing result may be supplied
+ * by the {@link Speculator} instead of running the child.
+ *
+ * <p>Memoized results are only valid for the recognition mode of the parse ({@link
+ * Parse#baseRecognizeOnly}). When a sub-parse runs in the other mode (see {@link Recognize}),
+ * the memoizer is neither consulted nor updated.
+ *
+ * <p>Build with {@link rule#memo(int)} or {@link rule#memo(int, Function)}. These methods enable
+ * the failure bitmap when no context extractor is supplied.
  */
 public final class Memo extends Parser
 {
@@ -51,24 +76,67 @@ public final class Memo extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether failures are recorded in a {@link FailureBitmap} rather than in the memoizer.
+     */
+    public final boolean failureBitmap;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseState<FailureBitmap> failures;
+
+    // ---------------------------------------------------------------------------------------------
+
     public Memo (
         Parser child, ParseState<Memoizer> memoizer, Function<Parse, Object> contextExtractor)
+    {
+        this(child, memoizer, contextExtractor, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Memo (
+        Parser child, ParseState<Memoizer> memoizer, Function<Parse, Object> contextExtractor,
+        boolean failureBitmap)
     {
         this.child = child;
         this.memoizer = memoizer;
         this.contextExtractor = contextExtractor;
+        this.failureBitmap = failureBitmap;
+        this.failures = failureBitmap
+            ? new ParseState<>(new Object(), FailureBitmap::new)
+            : null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override protected boolean doparse (Parse parse)
     {
-        Object ctx = contextExtractor != null ? contextExtractor.apply(parse) : null;
+        if (parse.recognizeOnly != parse.baseRecognizeOnly)
+            return child.parse(parse);
+
         Memoizer memo = memoizer.data(parse);
+        if (!memo.enabled(child, parse.pos))
+            return child.parse(parse);
+
+        // Failures under a narrowed end of input (see Bounded) may not hold for the whole input.
+        boolean bounded = parse.endOfInput != parse.inputLength();
+        FailureBitmap failures = this.failures == null || bounded
+            ? null
+            : this.failures.data(parse);
+        if (failures != null && failures.contains(parse.pos))
+            return false;
+
+        Object ctx = contextExtractor != null ? contextExtractor.apply(parse) : null;
         MemoEntry entry = memo.get(child, parse.pos, ctx);
+        ++ parse.memoLookups;
 
         if (entry != null)
         {
+            ++ parse.memoHits;
+            if (parse.memoArbiter != null)
+                parse.memoArbiter.hit(memo);
+
             if (!entry.succeeded())
                 return false;
 
@@ -79,11 +147,31 @@ public final class Memo extends Parser
 
         int pos0 = parse.pos;
         int log0 = parse.log.size();
+        int speculated = parse.speculator != null && contextExtractor == null
+            ? parse.speculator.consume(this, parse)
+            : Speculator.NONE;
+        boolean success = speculated == Speculator.NONE
+            ? child.parse(parse)
+            : speculated == Speculator.SUCCESS;
+
+        if (!success && this.failures != null) {
+            if (failures != null)
+                failures.add(pos0);
+            return false;
+        }
 
-        entry = new MemoEntry(
-            child.parse(parse), child, pos0, parse.pos, parse.log.delta(log0), ctx);
+        entry = new MemoEntry(success, child, pos0, parse.pos, parse.log.delta(log0), ctx);
 
+        int size0 = memo.size();
         memo.memoize(entry);
+        ++ parse.memoStores;
+        parse.memoEntries += memo.size() - size0;
+        if (parse.memoArbiter != null) {
+            parse.memoArbiter.added(memo);
+            parse.memoEntries = (int) parse.memoArbiter.total();
+        }
+        if (parse.memoEntries > parse.memoHighWaterMark)
+            parse.memoHighWaterMark = parse.memoEntries;
         return entry.succeeded();
     }
 
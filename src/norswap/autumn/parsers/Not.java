@@ -1,15 +1,23 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserCallStack;
 import norswap.autumn.ParserVisitor;
+import norswap.autumn.memo.PredicateCache;
 import java.util.Collections;
 
 /**
  * Succeeds only if its child fails.
  *
- * <p>Build with {@link norswap.autumn.Grammar.rule#not()}
+ * <p>If {@link #cached} is true, the result of the parser at each input position is cached in a
+ * {@link PredicateCache}, and the child is never run twice at the same position. This is only
+ * correct if the child's result doesn't depend on anything but the input (e.g. not on the value
+ * stack or on some {@link ParseState}). The cache is bypassed within a {@link Bounded} parser.
+ *
+ * <p>Build with {@link norswap.autumn.Grammar.rule#not()} or {@link
+ * norswap.autumn.Grammar.rule#cached_not()}
  */
 public final class Not extends Parser
 {
@@ -19,15 +27,45 @@ public final class Not extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    public Not (Parser child)
+    /**
+     * Whether the result of the parser is cached for each input position.
+     */
+    public final boolean cached;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseState<PredicateCache> cache;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Not (Parser child) {
+        this(child, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public Not (Parser child, boolean cached)
     {
         this.child = child;
+        this.cached = cached;
+        this.cache = cached ? new ParseState<>(new Object(), PredicateCache::new) : null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override public boolean doparse (Parse parse)
     {
+        int pos0 = parse.pos;
+        PredicateCache cache = this.cache == null || parse.endOfInput != parse.inputLength()
+            ? null
+            : this.cache.data(parse);
+
+        if (cache != null) {
+            int result = cache.get(pos0);
+            if (result != PredicateCache.UNKNOWN)
+                return result == 1;
+        }
+
         int err0 = parse.error;
         String errmsg0 = parse.errorMessage();
         ParserCallStack stk0 = parse.errorCallStack;
@@ -39,6 +77,8 @@ public final class Not extends Parser
         if (parse.errorMessage() != errmsg0)
             parse.setErrorMessage(errmsg0);
         parse.errorCallStack = stk0;
+        if (cache != null)
+            cache.put(pos0, success);
         return success;
     }
 
@@ -57,7 +97,7 @@ public final class Not extends Parser
     // ---------------------------------------------------------------------------------------------
 
     @Override public String toStringFull() {
-        return "not(" + child + ")";
+        return (cached ? "cached_not(" : "not(") + child + ")";
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -0,0 +1,490 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.actions.ActionContext;
+import norswap.autumn.actions.StackAction;
+import norswap.autumn.visitors.VisitorFirstParsers;
+import norswap.autumn.visitors.VisitorNullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Matches a whole hierarchy of infix, prefix and suffix operators with different precedences and
+ * associativities, using precedence climbing.
+ *
+ * <p>The table is made of {@link #levels}, ordered from the tightest-binding to the
+ * loosest-binding. Each level is either left-associative (with infix and suffix operators) or
+ * right-associative (with infix and prefix operators). An operator table matches exactly the same
+ * input as the equivalent nesting of {@link LeftExpression} and {@link RightExpression} parsers
+ * (the operand of the first level being {@link #operand}, and the operand of each subsequent level
+ * being the expression of the previous level), tries the operators in the same order, and applies
+ * the same steps.
+ *
+ * <p>However, instead of descending through all the levels for every operand, the operator table
+ * parses the operand once, then dispatches on the operator that follows it: when matching a
+ * string, a single lookup on the current character (based on the FIRST sets of the operators, as
+ * in {@link Longest}) yields the operators that may match, in order, across all the levels that
+ * may still apply. The other operators are not tried at all, and the furthest error position is
+ * the same as if they had been tried. Prefix operators are dispatched in the same way before the
+ * operand. After matching an operator at a given level, the levels with tighter precedence are
+ * never tried again for the same sub-expression. Right-associative operators and prefix operators
+ * still recurse, but only once per operator (and not once per level).
+ *
+ * <p>For each operator, the step action will act as though the match started at the position
+ * where the sub-expression the operator applies to started (this is the start of the whole
+ * expression, except for the right-hand side of infix operators and the operand of prefix
+ * operators).
+ *
+ * <p>Unlike {@link LeftExpression} and {@link RightExpression}, operator tables do not support
+ * requiring an operator to match.
+ */
+public final class OperatorTable extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A level of the operator table: a set of operators with the same precedence and
+     * associativity.
+     */
+    public static final class Level
+    {
+        /** Whether the operators of this level are left-associative. */
+        public final boolean leftAssociative;
+
+        /** Infix operators. */
+        public final Parser[] infixes;
+
+        /** Stack actions associated with the corresponding infix operators in {@link #infixes}. */
+        public final StackAction[] infixSteps;
+
+        /** Suffix operators if {@link #leftAssociative}, prefix operators otherwise. */
+        public final Parser[] affixes;
+
+        /** Stack actions associated with the corresponding operators in {@link #affixes}. */
+        public final StackAction[] affixSteps;
+
+        public Level (
+            boolean leftAssociative,
+            Parser[] infixes, StackAction[] infixSteps,
+            Parser[] affixes, StackAction[] affixSteps)
+        {
+            assert infixes.length == infixSteps.length;
+            assert affixes.length == affixSteps.length;
+
+            this.leftAssociative = leftAssociative;
+            this.infixes = infixes;
+            this.infixSteps = infixSteps;
+            this.affixes = affixes;
+            this.affixSteps = affixSteps;
+        }
+
+        @Override public String toString()
+        {
+            return String.format("%s(infixes=%s, %s=%s)",
+                leftAssociative ? "left" : "right",
+                Arrays.toString(infixes),
+                leftAssociative ? "suffixes" : "prefixes",
+                Arrays.toString(affixes));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The operand of the operators of the first (tightest) level. */
+    public final Parser operand;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Levels of the table, ordered from the tightest-binding to the loosest-binding. */
+    public final Level[] levels;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether one of the steps is {@link StackAction#required() required}. If so, the parser runs
+     * in normal mode even in recognition-only mode ({@link Parse#recognizeOnly}), as the step needs
+     * the operands to be on the stack (like {@link Collect} for its child).
+     */
+    private final boolean stepRequired;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The operators that may appear at a given point of an expression (before or after an
+     * operand), flattened across levels in the order in which they are tried, and indexed by the
+     * characters they may start with.
+     */
+    private static final class Dispatch
+    {
+        /** The operators, in the order in which they are tried. */
+        final Parser[] operators;
+
+        /** The step of each operator. */
+        final StackAction[] steps;
+
+        /** The level of each operator. */
+        final int[] levels;
+
+        /** Whether each operator is an infix operator (vs. a prefix or suffix operator). */
+        final boolean[] infix;
+
+        /**
+         * {@code from[j]} is the index of the first operator of level {@code j}, or of the first
+         * operator of a level tried after {@code j} if it has no operators.
+         */
+        final int[] from;
+
+        /** {@code reporting[i]} is the number of operators before {@code i} that report errors. */
+        final int[] reporting;
+
+        /** For each ASCII character, the indices of the operators that may start with it. */
+        final int[][] ascii;
+
+        /** For each operator, a predicate true for the characters it may start with. */
+        final IntPredicate[] firstChars;
+
+        /** The indices of all operators. */
+        final int[] all;
+
+        Dispatch (ArrayList<Parser> operators, ArrayList<StackAction> steps,
+                  ArrayList<Integer> levels, ArrayList<Boolean> infix, int[] from)
+        {
+            int size = operators.size();
+            this.operators = operators.toArray(new Parser[0]);
+            this.steps = steps.toArray(new StackAction[0]);
+            this.levels = new int[size];
+            this.infix = new boolean[size];
+            this.reporting = new int[size + 1];
+            this.all = new int[size];
+            for (int i = 0; i < size; ++i) {
+                this.levels[i] = levels.get(i);
+                this.infix[i] = infix.get(i);
+                this.reporting[i + 1] = reporting[i] + (this.operators[i].excludeErrors ? 0 : 1);
+                this.all[i] = i;
+            }
+            this.from = from;
+
+            VisitorFirstParsers visitor = new VisitorFirstParsers(new VisitorNullable());
+            firstChars = new IntPredicate[size];
+            for (int i = 0; i < size; ++i)
+                firstChars[i] = visitor.nullable(this.operators[i])
+                    ? c -> true
+                    : Longest.firstChars(this.operators[i], visitor);
+
+            ascii = new int[128][];
+            int[] candidates = new int[size];
+            for (int c = 0; c < 128; ++c) {
+                int n = 0;
+                for (int i = 0; i < size; ++i)
+                    if (firstChars[i].test(c))
+                        candidates[n++] = i;
+                ascii[c] = n == size ? all : Arrays.copyOf(candidates, n);
+            }
+        }
+
+        /**
+         * Returns the indices of the operators that may match at the current position, in order,
+         * or the indices of all operators if the input is not a string or if we are at the end of
+         * the input.
+         */
+        int[] candidates (Parse parse)
+        {
+            if (parse.string == null || parse.pos >= parse.endOfInput)
+                return all;
+
+            int c = parse.string[parse.pos];
+            if (c < 128)
+                return ascii[c];
+
+            int[] candidates = new int[operators.length];
+            int n = 0;
+            for (int i = 0; i < operators.length; ++i)
+                if (firstChars[i].test(c))
+                    candidates[n++] = i;
+            return n == operators.length ? all : Arrays.copyOf(candidates, n);
+        }
+
+        /**
+         * The operators in {@code [start, end)} that are not among {@code candidates} would have
+         * failed at {@code pos0} if they had been tried: record the error they would have reported
+         * (as in {@link Longest}).
+         */
+        void reportPruned (Parse parse, int pos0, int[] candidates, int start, int end)
+        {
+            if (candidates == all || parse.error > pos0) return;
+
+            int tried = 0;
+            for (int i: candidates)
+                if (i >= start && i < end && !operators[i].excludeErrors)
+                    ++tried;
+            if (reporting[end] - reporting[start] == tried) return;
+
+            Parser pruned = null;
+            for (int i = start, j = 0; i < end && pruned == null; ++i) {
+                while (j < candidates.length && candidates[j] < i) ++j;
+                if ((j == candidates.length || candidates[j] != i) && !operators[i].excludeErrors)
+                    pruned = operators[i];
+            }
+
+            parse.error = pos0;
+            if (parse.errorMessage() != null)
+                parse.setErrorMessage(null);
+            if (parse.options.recordCallStack) {
+                parse.callStack.push(pruned, pos0);
+                parse.errorCallStack = parse.callStack.clone();
+                parse.callStack.pop();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Prefix operators, from the loosest level to the tightest. Computed lazily alongside {@link
+     * #suffixes}, and shared by all threads once published.
+     */
+    private volatile Dispatch prefixes;
+
+    /** Infix and suffix operators, from the tightest level to the loosest. */
+    private Dispatch suffixes;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public OperatorTable (Parser operand, Level[] levels)
+    {
+        assert operand != null;
+        this.operand = operand;
+        this.levels = levels;
+        boolean stepRequired = false;
+        for (Level level: levels)
+            stepRequired |= LeftExpression.anyRequired(level.infixSteps)
+                || LeftExpression.anyRequired(level.affixSteps);
+        this.stepRequired = stepRequired;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void freeze()
+    {
+        if (prefixes == null)
+            computeDispatch();
+        super.freeze();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Dispatch computeDispatch()
+    {
+        ArrayList<Parser> operators = new ArrayList<>();
+        ArrayList<StackAction> steps = new ArrayList<>();
+        ArrayList<Integer> levelIndices = new ArrayList<>();
+        ArrayList<Boolean> infix = new ArrayList<>();
+
+        // from[j + 1]: index of the first prefix operator of a level <= j
+        int[] from = new int[levels.length + 1];
+        for (int j = levels.length - 1; j >= 0; --j) {
+            from[j + 1] = operators.size();
+            Level level = levels[j];
+            if (level.leftAssociative) continue;
+            for (int i = 0; i < level.affixes.length; ++i) {
+                operators.add(level.affixes[i]);
+                steps.add(level.affixSteps[i]);
+                levelIndices.add(j);
+                infix.add(false);
+            }
+        }
+        from[0] = operators.size();
+        Dispatch prefixes = new Dispatch(operators, steps, levelIndices, infix, from);
+
+        operators.clear(); steps.clear(); levelIndices.clear(); infix.clear();
+        from = new int[levels.length + 1];
+        for (int j = 0; j < levels.length; ++j) {
+            from[j] = operators.size();
+            Level level = levels[j];
+            for (int i = 0; i < level.infixes.length; ++i) {
+                operators.add(level.infixes[i]);
+                steps.add(level.infixSteps[i]);
+                levelIndices.add(j);
+                infix.add(true);
+            }
+            if (!level.leftAssociative) continue;
+            for (int i = 0; i < level.affixes.length; ++i) {
+                operators.add(level.affixes[i]);
+                steps.add(level.affixSteps[i]);
+                levelIndices.add(j);
+                infix.add(false);
+            }
+        }
+        from[levels.length] = operators.size();
+        this.suffixes = new Dispatch(operators, steps, levelIndices, infix, from);
+        this.prefixes = prefixes;
+        return prefixes;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean doparse (Parse parse)
+    {
+        Dispatch prefixes = this.prefixes;
+        if (prefixes == null)
+            prefixes = computeDispatch();
+        if (!parse.recognizeOnly || !stepRequired)
+            return climb(parse, prefixes, suffixes, levels.length - 1);
+
+        parse.recognizeOnly = false;
+        try {
+            return climb(parse, prefixes, suffixes, levels.length - 1);
+        } finally {
+            parse.recognizeOnly = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Matches an expression whose operators all belong to levels {@code 0} to {@code max}
+     * (inclusive). If {@code max} is -1, only matches an operand.
+     */
+    private boolean climb (Parse parse, Dispatch prefixes, Dispatch suffixes, int max)
+    {
+        final int pos0 = parse.pos;
+        final int log0 = parse.log.size();
+        final int stack0 = parse.stack.size();
+        final int whitespace0 = parse.leadingWhitespaceStart();
+
+        // Levels below `min` can't apply to the expression matched so far.
+        int min = -1;
+
+        // Prefix operators of levels <= max.
+        int start = prefixes.from[max + 1];
+        int end = prefixes.operators.length;
+        if (start < end)
+        {
+            int[] candidates = prefixes.candidates(parse);
+            int matched = end;
+
+            for (int i: candidates) {
+                if (i < start) continue;
+                if (prefixes.operators[i].parse(parse))
+                    if (climb(parse, prefixes, suffixes, prefixes.levels[i])) {
+                        matched = i;
+                        break;
+                    }
+                    else {
+                        parse.pos = pos0;
+                        parse.log.rollback(log0);
+                    }
+            }
+
+            prefixes.reportPruned(parse, pos0, candidates, start, matched);
+            if (matched < end) {
+                applyStep(parse, prefixes.steps[matched], pos0, stack0, whitespace0);
+                min = prefixes.levels[matched] + 1;
+            }
+        }
+
+        if (min < 0) {
+            if (!operand.parse(parse))
+                return false;
+            min = 0;
+        }
+
+        // Infix and suffix operators of levels in [min, max].
+        while (min <= max)
+        {
+            start = suffixes.from[min];
+            end = suffixes.from[max + 1];
+            if (start == end) break;
+
+            int pos1 = parse.pos;
+            int log1 = parse.log.size();
+            int[] candidates = suffixes.candidates(parse);
+            int matched = end;
+
+            for (int i: candidates) {
+                if (i < start) continue;
+                if (i >= end) break;
+                Parser operator = suffixes.operators[i];
+                if (!suffixes.infix[i]) {
+                    if (operator.parse(parse)) {
+                        matched = i;
+                        break;
+                    }
+                    continue;
+                }
+                int j = suffixes.levels[i];
+                if (operator.parse(parse))
+                    if (climb(parse, prefixes, suffixes, levels[j].leftAssociative ? j - 1 : j)) {
+                        matched = i;
+                        break;
+                    }
+                    else {
+                        parse.pos = pos1;
+                        parse.log.rollback(log1);
+                    }
+            }
+
+            suffixes.reportPruned(parse, pos1, candidates, start, matched);
+
+            if (matched == end)
+                break;
+
+            applyStep(parse, suffixes.steps[matched], pos0, stack0, whitespace0);
+            int j = suffixes.levels[matched];
+            min = suffixes.infix[matched] && !levels[j].leftAssociative ? j + 1 : j;
+        }
+
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void applyStep (
+        Parse parse, StackAction step, int pos0, int stack0, int whitespace0)
+    {
+        if (parse.recognizeOnly && !step.required())
+            return;
+
+        ActionContext.apply(step,
+            parse, parse.stack.popFrom(stack0), pos0, stack0,
+            whitespace0, parse.trailingWhitespaceStart(pos0));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Order: operand, then for each level: infix operators, prefix or suffix operators.
+     */
+    @Override public List<Parser> children()
+    {
+        ArrayList<Parser> children = new ArrayList<>();
+        children.add(operand);
+        for (Level level: levels) {
+            children.addAll(Arrays.asList(level.infixes));
+            children.addAll(Arrays.asList(level.affixes));
+        }
+        return Collections.unmodifiableList(children);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull() {
+        return String.format("OperatorTable(operand=%s, levels=%s)",
+            operand, Arrays.toString(levels));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
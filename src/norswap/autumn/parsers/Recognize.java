@@ -0,0 +1,42 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.actions.StackAction;
+
+/**
+ * Matches its child in recognition-only mode ({@link Parse#recognizeOnly}): the {@link Collect}
+ * parsers and expression parsers within the child do not run their actions (unless {@link
+ * StackAction#required() required}) and leave the value stack untouched. Parsers with a required
+ * action match in normal mode, so that the action gets its items.
+ *
+ * <p>This is useful to avoid building values that will be discarded anyway, typically in the body
+ * of a {@link Not} or of a {@link Lookahead} parser.
+ *
+ * <p>Build with {@link norswap.autumn.Grammar.rule#recognize()}
+ */
+public final class Recognize extends AbstractWrapper
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public Recognize (Parser child) {
+        super("recognize", child);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        if (parse.recognizeOnly)
+            return child.parse(parse);
+
+        parse.recognizeOnly = true;
+        try {
+            return child.parse(parse);
+        } finally {
+            parse.recognizeOnly = false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,140 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.regex.DFA;
+import norswap.autumn.regex.RegexNode;
+import norswap.autumn.regex.RegexSyntax;
+import java.util.Collections;
+
+import static norswap.autumn.util.ParserStringsUtil.escapeQuotedSection;
+
+/**
+ * Matches a regular expression within {@link Parse#string}, using a {@link DFA} compiled when the
+ * parser is constructed.
+ *
+ * <p>Matching never backtracks: the automaton scans the input once and runs in time linear in the
+ * length of the input it examines, no matter how the expression is written. This makes it a good
+ * fit for lexical rules (numbers, string literals, comments, ...) that would otherwise be expressed
+ * as combinations of many small parsers.
+ *
+ * <p>See {@link RegexSyntax} for the supported syntax. The automaton works over code points, not
+ * UTF-16 chars. Two semantics are available:
+ *
+ * <ul>
+ *     <li>longest-match semantics ({@link Grammar#regex(String)}): the parser matches the
+ *     longest prefix of the input that matches the expression, like a lexer would.</li>
+ *     <li>PEG semantics ({@link Grammar#regex_peg(String)}): alternatives are ordered ({@code
+ *     a|ab} never matches {@code ab}) and repetitions are greedy and possessive ({@code a*a} never
+ *     matches), exactly like the equivalent combination of {@link Choice}, {@link Repeat}, etc.
+ *     </li>
+ * </ul>
+ *
+ * <p>On failure (or when matching stops early), the furthest position where the input diverged
+ * from the expression is recorded as the parse error, like the equivalent combination of parsers
+ * would.
+ *
+ * <p>Build with {@link Grammar#regex(String)} or {@link Grammar#regex_peg(String)}.
+ */
+public final class Regex extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The display name for this parser, if {@link #setRule(String)} hasn't been called.
+     */
+    public final String name;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final DFA dfa;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The expression the automaton was compiled from, if known, or null.
+     */
+    public final RegexNode regex;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser matching {@code pattern}, with PEG semantics if {@code peg} is true, or
+     * longest-match semantics otherwise.
+     */
+    public Regex (String pattern, boolean peg)
+    {
+        this.name = String.format("%s([%s])", peg ? "regex_peg" : "regex",
+            escapeQuotedSection(pattern));
+        this.regex = RegexSyntax.parse(pattern);
+        this.dfa = DFA.compile(regex, peg);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser running the given automaton. {@code name} is used as display name for
+     * this parser.
+     */
+    public Regex (String name, DFA dfa)
+    {
+        this(name, null, dfa);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser running the given automaton, which was compiled from {@code regex}
+     * (if non-null). {@code name} is used as display name for this parser.
+     */
+    public Regex (String name, RegexNode regex, DFA dfa)
+    {
+        this.name = name;
+        this.regex = regex;
+        this.dfa = dfa;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        assert parse.string != null;
+        long result = dfa.match(parse.string, parse.pos, parse.endOfInput);
+
+        int failure = DFA.failure(result);
+        if (failure > parse.error) {
+            parse.error = failure;
+            if (parse.errorMessage() != null)
+                parse.setErrorMessage(null);
+            if (parse.options.recordCallStack)
+                parse.errorCallStack = parse.callStack.clone();
+        }
+
+        int end = DFA.matchEnd(result);
+        if (end < 0) return false;
+        parse.pos = end;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Iterable<Parser> children() {
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull() {
+        return name;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
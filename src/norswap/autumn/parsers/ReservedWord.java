@@ -0,0 +1,350 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
+import norswap.autumn.Parser;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Matches a given reserved word (if {@link #word} is non-null) or any reserved word (otherwise) by
+ * classifying the identifier-shaped lexeme at the current position against a {@link Table} of
+ * reserved words.
+ *
+ * <p>The lexeme is the longest sequence of characters satisfying {@link Table#idPart} starting at
+ * the current position. It is scanned once, looked up in the table using a perfect hash, and the
+ * result is cached, so that all reserved word parsers (and the identifier parser) tried at the
+ * same position answer in constant time.
+ *
+ * <p>These parsers are installed by {@link Grammar} as the {@link Parser#setSubstitute(Parser)
+ * substitute} of the parsers returned by {@link Grammar#reserved(String)} and of {@link
+ * Grammar#any_reserved_word}, when {@link Grammar#id_part} is a {@link CharPredicate}. In that
+ * case, they match exactly the same input as {@code seq(word, id_part.not()).word()} and {@code
+ * seq(stringChoice(reserved words), id_part.not())}, and report the same furthest error
+ * position.
+ */
+public final class ReservedWord extends AbstractPrimitive
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A set of reserved words, all of whose characters satisfy {@link #idPart}.
+     *
+     * <p>Words can be added with {@link #add(String)} until the first parse that uses the table.
+     * The table is then frozen and its perfect hash computed.
+     */
+    public static final class Table
+    {
+        /** Matches the characters that may occur within an identifier. */
+        public final IntPredicate idPart;
+
+        private final ArrayList<String> words = new ArrayList<>();
+        private final HashSet<String> wordSet = new HashSet<>();
+        private volatile Frozen frozen;
+
+        /** Caches the last classified lexeme, for each parse. */
+        private final ParseState<Lexeme> lexeme = new ParseState<>(new Object(), Lexeme::new);
+
+        public Table (IntPredicate idPart) {
+            this.idPart = idPart;
+        }
+
+        /**
+         * Adds a word to the table, returning true if it is now part of the table. Returns false
+         * if the word contains characters that do not satisfy {@link #idPart}, or if the table was
+         * already frozen.
+         */
+        public synchronized boolean add (String word)
+        {
+            if (wordSet.contains(word))
+                return true;
+            if (frozen != null || word.isEmpty() || !word.codePoints().allMatch(idPart))
+                return false;
+            words.add(word);
+            wordSet.add(word);
+            return true;
+        }
+
+        /**
+         * Whether the table contains all the given words.
+         */
+        public synchronized boolean containsAll (List<String> words) {
+            return wordSet.containsAll(words);
+        }
+
+        /**
+         * Returns the lexeme starting at the current position of {@code parse}, classified against
+         * the table. The returned object is reused and must not be retained.
+         */
+        public Lexeme classify (Parse parse)
+        {
+            assert parse.string != null;
+            Lexeme lexeme = this.lexeme.data(parse);
+
+            if (lexeme.start == parse.pos && lexeme.bound == parse.endOfInput)
+                return lexeme;
+
+            Frozen frozen = frozen();
+            int[] string = parse.string;
+            int end = parse.pos;
+            int hash = 0;
+
+            while (end < parse.endOfInput && idPart.test(string[end]))
+                hash = 31 * hash + string[end++];
+
+            lexeme.start = parse.pos;
+            lexeme.bound = parse.endOfInput;
+            lexeme.end = end;
+            lexeme.kind = frozen.lookup(string, parse.pos, end, hash);
+            return lexeme;
+        }
+
+        /**
+         * Returns the index of the word in the frozen table, or -1 if it isn't part of it.
+         */
+        int index (String word) {
+            return frozen().words.indexOf(word);
+        }
+
+        private Frozen frozen()
+        {
+            Frozen frozen = this.frozen;
+            if (frozen != null) return frozen;
+            synchronized (this) {
+                if (this.frozen == null)
+                    this.frozen = new Frozen(words);
+                return this.frozen;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The result of {@link Table#classify(Parse)}.
+     */
+    public static final class Lexeme
+    {
+        /** Start of the lexeme, or -1 if no lexeme has been classified yet. */
+        public int start = -1;
+
+        /** The value of {@link Parse#endOfInput} when the lexeme was scanned. */
+        public int bound;
+
+        /** End of the lexeme (exclusive). Equal to {@link #start} if the lexeme is empty. */
+        public int end;
+
+        /** Index of the reserved word matching the lexeme, or -1 if there isn't any. */
+        public int kind;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The perfect hash of a frozen table: each word is assigned a slot, computed from the
+     * (polynomial) hash of its code points. We look for a multiplier that maps every word to a
+     * distinct slot. If we don't find one (e.g. if two words have the same hash), we fall back on
+     * linear probing.
+     */
+    private static final class Frozen
+    {
+        final List<String> words;
+        final int[][] codepoints;
+        final int[] hashes;
+        final int[] slots;
+        final int shift;
+        final int multiplier;
+        final boolean perfect;
+
+        Frozen (List<String> words)
+        {
+            this.words = new ArrayList<>(words);
+            codepoints = words.stream().map(w -> w.codePoints().toArray()).toArray(int[][]::new);
+            hashes = Arrays.stream(codepoints).mapToInt(Frozen::hash).toArray();
+
+            int bits = 1;
+            while (1 << bits < 2 * codepoints.length) ++bits;
+
+            int[] slots = null;
+            int multiplier = 0x9E3779B9;
+
+            search: for (int b = bits; b < bits + 4; ++b)
+                for (int i = 0; i < 256; ++i) {
+                    multiplier = 0x9E3779B9 * (2 * i + 1);
+                    slots = place(b, multiplier, false);
+                    if (slots != null) {
+                        bits = b;
+                        break search;
+                    }
+                }
+
+            this.perfect = slots != null;
+            if (!perfect) {
+                multiplier = 0x9E3779B9;
+                slots = place(bits, multiplier, true);
+            }
+
+            this.slots = slots;
+            this.shift = 32 - bits;
+            this.multiplier = multiplier;
+        }
+
+        private static int hash (int[] codepoints)
+        {
+            int hash = 0;
+            for (int c: codepoints) hash = 31 * hash + c;
+            return hash;
+        }
+
+        /**
+         * Returns the slots array, filled with word indices (-1 for empty slots), or null if
+         * not {@code probe} and two words map to the same slot.
+         */
+        private int[] place (int bits, int multiplier, boolean probe)
+        {
+            int mask = (1 << bits) - 1;
+            int[] slots = new int[1 << bits];
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < hashes.length; ++i) {
+                int slot = (hashes[i] * multiplier) >>> (32 - bits);
+                while (slots[slot] >= 0) {
+                    if (!probe) return null;
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i;
+            }
+            return slots;
+        }
+
+        int lookup (int[] string, int start, int end, int hash)
+        {
+            int mask = slots.length - 1;
+            for (int slot = (hash * multiplier) >>> shift; ; slot = (slot + 1) & mask) {
+                int i = slots[slot];
+                if (i < 0)
+                    return -1;
+                if (hashes[i] == hash && equal(codepoints[i], string, start, end))
+                    return i;
+                if (perfect)
+                    return -1;
+            }
+        }
+
+        private static boolean equal (int[] word, int[] string, int start, int end)
+        {
+            if (word.length != end - start)
+                return false;
+            for (int i = 0; i < word.length; ++i)
+                if (word[i] != string[start + i])
+                    return false;
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The table against which lexemes are classified. */
+    public final Table table;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The reserved word to match, or null to match any reserved word in {@link #table}. */
+    public final String word;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If non-null, the whitespace parser matched after the reserved word (as in {@link
+     * TrailingWhitespace}).
+     */
+    public final Parser whitespace;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final int[] codepoints;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Index of {@link #word} in the frozen table (-1 if absent), or -2 if not yet computed. */
+    private int index = -2;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ReservedWord (Table table, String word, Parser whitespace)
+    {
+        super(word == null ? "any_reserved_word" : "reserved(" + word + ")", false);
+        this.table = table;
+        this.word = word;
+        this.whitespace = whitespace;
+        this.codepoints = word == null ? null : word.codePoints().toArray();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void freeze()
+    {
+        table.frozen();
+        if (word != null && index == -2)
+            index = table.index(word);
+        super.freeze();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        Lexeme lexeme = table.classify(parse);
+
+        if (word == null) {
+            if (lexeme.kind < 0) return false;
+            succeed(parse, lexeme.end);
+            return true;
+        }
+
+        if (index == -2)
+            index = table.index(word);
+
+        int length = codepoints.length;
+        boolean match = index >= 0
+            ? lexeme.kind == index
+            : lexeme.end - lexeme.start == length && parse.match(parse.pos, codepoints);
+
+        if (match) {
+            succeed(parse, lexeme.end);
+            return true;
+        }
+
+        // The original parser fails after the word, on `id_part.not()`.
+        if (lexeme.end - lexeme.start > length && parse.match(parse.pos, codepoints))
+            failAfter(parse, parse.pos + length);
+
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void succeed (Parse parse, int end)
+    {
+        parse.pos = end;
+        if (whitespace != null && whitespace.parse(parse))
+            parse.setWhitespaceFrom(end);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void failAfter (Parse parse, int position)
+    {
+        if (parse.error > position) return;
+        parse.error = position;
+        if (parse.errorMessage() != null)
+            parse.setErrorMessage(null);
+        if (parse.options.recordCallStack)
+            parse.errorCallStack = parse.callStack.clone();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -8,7 +8,6 @@ import norswap.autumn.actions.StackAction;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -74,6 +73,15 @@ public final class RightExpression extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether one of the steps is {@link StackAction#required() required}. If so, the parser runs
+     * in normal mode even in recognition-only mode ({@link Parse#recognizeOnly}), as the step needs
+     * the operands to be on the stack (like {@link Collect} for its child).
+     */
+    private final boolean stepRequired;
+
+    // ---------------------------------------------------------------------------------------------
+
     public RightExpression (
         Parser left, Parser right,
         Parser[] infixes, StackAction[] infixSteps,
@@ -92,30 +100,42 @@ public final class RightExpression extends Parser
         this.infixSteps = infixSteps;
         this.prefixSteps = prefixSteps;
         this.operatorRequired = operatorRequired;
+        this.stepRequired = LeftExpression.anyRequired(infixSteps)
+            || LeftExpression.anyRequired(prefixSteps);
     }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override
     protected boolean doparse (Parse parse)
+    {
+        if (!parse.recognizeOnly || !stepRequired)
+            return match(parse);
+
+        parse.recognizeOnly = false;
+        try {
+            return match(parse);
+        } finally {
+            parse.recognizeOnly = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean match (Parse parse)
     {
         final int pos0 = parse.pos;
         final int size0 = parse.stack.size();
         final int whitespace0 = parse.leadingWhitespaceStart();
         final int log0 = parse.log.size();
 
-        Consumer<StackAction> applyStep = step ->
-            step.apply(new ActionContext(
-                parse, parse.stack.popFrom(size0), pos0, size0,
-                whitespace0, parse.trailingWhitespaceStart(pos0)));
-
         for (int i = 0; i < prefixes.length; ++i) {
             if (prefixes[i].parse(parse)) {
                 boolean oldRecursive = parse.rightRecursive;
                 parse.rightRecursive = true;
-                if (doparse(parse)) {
+                if (match(parse)) {
                     parse.rightRecursive = oldRecursive;
-                    applyStep.accept(prefixSteps[i]);
+                    applyStep(parse, prefixSteps[i], pos0, size0, whitespace0);
                     return true;
                 } else {
                     parse.rightRecursive = oldRecursive;
@@ -132,9 +152,9 @@ public final class RightExpression extends Parser
                 if (infixes[i].parse(parse)) {
                     boolean oldRecursive = parse.rightRecursive;
                     parse.rightRecursive = true;
-                    if (doparse(parse)) {
+                    if (match(parse)) {
                         parse.rightRecursive = oldRecursive;
-                        applyStep.accept(infixSteps[i]);
+                        applyStep(parse, infixSteps[i], pos0, size0, whitespace0);
                         return true;
                     } else {
                         parse.rightRecursive = oldRecursive;
@@ -153,6 +173,19 @@ public final class RightExpression extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    private static void applyStep (
+        Parse parse, StackAction step, int pos0, int size0, int whitespace0)
+    {
+        if (parse.recognizeOnly && !step.required())
+            return;
+
+        ActionContext.apply(step,
+            parse, parse.stack.popFrom(size0), pos0, size0,
+            whitespace0, parse.trailingWhitespaceStart(pos0));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void accept (ParserVisitor visitor) {
         visitor.visit(this);
     }
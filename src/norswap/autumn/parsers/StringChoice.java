@@ -3,6 +3,7 @@ package norswap.autumn.parsers;
 import norswap.autumn.Grammar;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
 import norswap.utils.data.wrappers.Slot;
 import norswap.utils.multimap.MultiMap;
 import java.util.ArrayList;
@@ -126,6 +127,10 @@ public class StringChoice extends Parser
         return false;
     }
 
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
     @Override public Iterable<Parser> children () {
         return Collections.emptyList();
     }
@@ -150,6 +150,16 @@ public final class Span
 
     // ---------------------------------------------------------------------------------------------
 
+    private void checkBounds (List<?> input)
+    {
+        if (!(input instanceof TokenStream))
+            checkBounds(end, input.size());
+        else if (end > 0 && !((TokenStream<?>) input).has(end - 1))
+            checkBounds(end, ((TokenStream<?>) input).lexed());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the string spanned by this span in the given input, which is a string <b>that does
      * not contain any {@link Character#isSurrogate(char) surrogate character}</b> (said otherwise,
@@ -210,7 +220,7 @@ public final class Span
      * Returns the sublist spanned by this span in the given input.
      */
     public <T> List<T> get (List<T> input) {
-        checkBounds(end, input.size());
+        checkBounds(input);
        return new ArrayList<>(input.subList(start, end));
     }
 
@@ -223,7 +233,7 @@ public final class Span
      * long as the returned list is reachable.
      */
     public <T> List<T> getSubsequence (List<T> input) {
-        checkBounds(end, input.size());
+        checkBounds(input);
         return input.subList(start, end);
     }
 
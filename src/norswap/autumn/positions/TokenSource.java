@@ -0,0 +1,22 @@
+package norswap.autumn.positions;
+
+import norswap.autumn.ChunkedLexer;
+
+/**
+ * A lexer that emits tokens one by one, as consumed by {@link TokenStream} and {@link
+ * ChunkedLexer}.
+ */
+public interface TokenSource<T extends Token>
+{
+    /**
+     * Returns the next token, or null at the end of the input.
+     */
+    T next();
+
+    /**
+     * Called by {@link ChunkedLexer} once lexing is complete, to indicate that only the tokens
+     * emitted by this source within the range {@code [from, to)} of the input were retained. May be
+     * used to discard diagnostics pertaining to the other tokens. Does nothing by default.
+     */
+    default void retain (int from, int to) {}
+}
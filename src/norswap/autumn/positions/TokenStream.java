@@ -0,0 +1,207 @@
+package norswap.autumn.positions;
+
+import norswap.autumn.Parse;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+import static norswap.utils.Util.cast;
+
+/**
+ * A list of tokens that are lexed on demand, as the list is accessed, from a {@link TokenSource}.
+ * It can be used as the input of a parse in place of a list of all the tokens of the input: the
+ * tokens are then lexed as the parse advances.
+ *
+ * <p>Tokens before a given index can be {@link #release released}, after which they can't be
+ * accessed anymore. If this is done at the points where the parse cannot backtrack anymore (e.g.
+ * after each top-level declaration), the memory used by the list is bounded by the span of input
+ * over which the parse can backtrack, instead of by the number of tokens. Accessing a released
+ * token throws an {@link IllegalStateException}, which ends the parse.
+ *
+ * <p>{@link #size()} lexes the whole input. When a parse runs over a token stream, {@link
+ * Parse#endOfInput} and {@link Parse#inputLength()} are {@code Integer.MAX_VALUE}, and the parse
+ * checks for the end of input using {@link #has(int)} instead.
+ *
+ * <p>The list is read-only, and not thread-safe.
+ */
+public final class TokenStream<T extends Token> extends AbstractList<T> implements RandomAccess
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final TokenSource<T> source;
+
+    /** Holds the tokens from index {@link #base} onwards, starting at {@link #head}. */
+    private Object[] buffer = new Object[256];
+
+    /** Index in {@link #buffer} of the first unreleased token. */
+    private int head;
+
+    /** Index in {@link #buffer} one past the last lexed token. */
+    private int tail;
+
+    /** Index in the list of the first unreleased token. */
+    private int base;
+
+    /** Whether the source has emitted all its tokens. */
+    private boolean exhausted;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public TokenStream (TokenSource<T> source) {
+        this.source = source;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Lexes the next token, returning false if the input is exhausted.
+     */
+    private boolean pull()
+    {
+        if (exhausted)
+            return false;
+
+        T token = source.next();
+        if (token == null) {
+            exhausted = true;
+            return false;
+        }
+
+        if (tail == buffer.length) {
+            int live = tail - head;
+            Object[] array = live * 2 <= buffer.length ? buffer : new Object[buffer.length * 2];
+            System.arraycopy(buffer, head, array, 0, live);
+            if (array == buffer) Arrays.fill(buffer, live, tail, null);
+            buffer = array;
+            head = 0;
+            tail = live;
+        }
+
+        buffer[tail++] = token;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true iff there is a token at the given index (lexing up to it if needed).
+     */
+    public boolean has (int index)
+    {
+        if (index < 0) return false;
+        while (index >= lexed() && pull());
+        return index < lexed();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public T get (int index)
+    {
+        if (index < base)
+            throw new IllegalStateException(
+                "token " + index + " was released (first available: " + base + ")");
+        if (!has(index))
+            throw new IndexOutOfBoundsException(
+                "index " + index + " is past the end of the token stream (size: " + lexed() + ")");
+        return cast(buffer[head + index - base]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of tokens in the input, lexing the whole input if needed.
+     */
+    @Override public int size()
+    {
+        while (pull());
+        return lexed();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of tokens lexed so far.
+     */
+    public int lexed() {
+        return base + tail - head;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true iff all the tokens have been lexed.
+     */
+    public boolean exhausted() {
+        return exhausted;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of the first token that hasn't been released.
+     */
+    public int released() {
+        return base;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Releases the tokens before {@code index} (or all the tokens lexed so far, if {@code index} is
+     * greater than {@link #lexed()}), which can't be accessed anymore.
+     */
+    public void release (int index)
+    {
+        int n = Math.min(index, lexed()) - base;
+        if (n <= 0) return;
+        Arrays.fill(buffer, head, head + n, null);
+        head += n;
+        base += n;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of the given range of tokens, lexing up to its end if needed.
+     */
+    @Override public List<T> subList (int fromIndex, int toIndex)
+    {
+        if (fromIndex > toIndex)
+            throw new IllegalArgumentException(fromIndex + " > " + toIndex);
+        if (fromIndex == toIndex)
+            return Collections.emptyList();
+        get(fromIndex);
+        get(toIndex - 1);
+        Object[] array = Arrays.copyOfRange(
+            buffer, head + fromIndex - base, head + toIndex - base);
+        return Collections.unmodifiableList(cast(Arrays.asList(array)));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an iterator over the tokens from the first unreleased token, lexing as the iteration
+     * advances.
+     */
+    @Override public Iterator<T> iterator()
+    {
+        return new Iterator<T>() {
+            int next = base;
+
+            @Override public boolean hasNext() {
+                return has(next);
+            }
+
+            @Override public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
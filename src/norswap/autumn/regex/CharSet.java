@@ -0,0 +1,261 @@
+package norswap.autumn.regex;
+
+import java.util.Arrays;
+
+import static norswap.autumn.util.StringsUtil.escape;
+
+/**
+ * An immutable set of unicode code points, represented as a sorted array of disjoint inclusive
+ * ranges.
+ *
+ * <p>Used to label the transitions of the automata built in this package. Unlike an opaque
+ * predicate, the ranges let us partition the code point space into classes of characters that
+ * the automaton cannot distinguish.
+ */
+public final class CharSet
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The largest unicode code point.
+     */
+    public static final int MAX = Character.MAX_CODE_POINT;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static final CharSet EMPTY = new CharSet(new int[0]);
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static final CharSet ALL = new CharSet(new int[] { 0, MAX });
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pairs of (low, high) inclusive bounds, sorted, non-overlapping and non-adjacent.
+     */
+    private final int[] ranges;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private CharSet (int[] ranges) {
+        this.ranges = ranges;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a set containing only {@code c}.
+     */
+    public static CharSet single (int c) {
+        return new CharSet(new int[] { c, c });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of code points in the inclusive [start, end] range.
+     */
+    public static CharSet range (int start, int end) {
+        return start > end ? EMPTY : new CharSet(new int[] { start, end });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of the given code points.
+     */
+    public static CharSet of (int... chars)
+    {
+        int[] ranges = new int[chars.length * 2];
+        for (int i = 0; i < chars.length; ++i)
+            ranges[2 * i] = ranges[2 * i + 1] = chars[i];
+        return normalize(ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of the code points in {@code string}.
+     */
+    public static CharSet of (String string) {
+        return of(string.codePoints().toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of the code points contained in at least one of the given pairs of inclusive
+     * bounds.
+     */
+    public static CharSet ranges (int... bounds)
+    {
+        if (bounds.length % 2 != 0)
+            throw new IllegalArgumentException("odd number of bounds");
+        return normalize(bounds.clone());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static CharSet normalize (int[] bounds)
+    {
+        int n = bounds.length / 2;
+        long[] pairs = new long[n];
+        for (int i = 0; i < n; ++i)
+            pairs[i] = (long) bounds[2 * i] << 32 | bounds[2 * i + 1];
+        Arrays.sort(pairs);
+
+        int[] out = new int[bounds.length];
+        int size = 0;
+        for (long pair: pairs) {
+            int lo = (int) (pair >>> 32);
+            int hi = (int) pair;
+            if (lo > hi) continue;
+            if (size > 0 && lo <= out[size - 1] + 1)
+                out[size - 1] = Math.max(out[size - 1], hi);
+            else {
+                out[size++] = lo;
+                out[size++] = hi;
+            }
+        }
+        return new CharSet(Arrays.copyOf(out, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public boolean contains (int c)
+    {
+        // binary search over range starts
+        int lo = 0, hi = ranges.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c < ranges[2 * mid])
+                hi = mid - 1;
+            else if (c > ranges[2 * mid + 1])
+                lo = mid + 1;
+            else
+                return true;
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of disjoint ranges in this set.
+     */
+    public int rangeCount() {
+        return ranges.length / 2;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the lower (inclusive) bound of the i-th range of this set.
+     */
+    public int low (int i) {
+        return ranges[2 * i];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the higher (inclusive) bound of the i-th range of this set.
+     */
+    public int high (int i) {
+        return ranges[2 * i + 1];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CharSet union (CharSet other)
+    {
+        int[] bounds = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, bounds, ranges.length, other.ranges.length);
+        return normalize(bounds);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CharSet complement()
+    {
+        int[] out = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0; // first code point not yet covered
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                out[size++] = next;
+                out[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= MAX) {
+            out[size++] = next;
+            out[size++] = MAX;
+        }
+        return new CharSet(Arrays.copyOf(out, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CharSet intersection (CharSet other) {
+        return complement().union(other.complement()).complement();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CharSet minus (CharSet other) {
+        return intersection(other.complement());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean equals (Object o) {
+        return o instanceof CharSet && Arrays.equals(ranges, ((CharSet) o).ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a representation of the set in the character class syntax accepted by {@link
+     * RegexSyntax}, e.g. {@code [a-z_]}.
+     */
+    @Override public String toString()
+    {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2) {
+            appendChar(b, ranges[i]);
+            if (ranges[i + 1] != ranges[i]) {
+                if (ranges[i + 1] != ranges[i] + 1) b.append('-');
+                appendChar(b, ranges[i + 1]);
+            }
+        }
+        return b.append(']').toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void appendChar (StringBuilder b, int c)
+    {
+        if ("\\]-^[".indexOf(c) >= 0)
+            b.append('\\').append((char) c);
+        else if (Character.isBmpCodePoint(c))
+            b.append(escape(String.valueOf((char) c)));
+        else
+            b.append(String.format("\\x{%x}", c));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,261 @@
+package norswap.autumn.regex;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A table-driven deterministic automaton over unicode code points, compiled from a {@link
+ * RegexNode}.
+ *
+ * <p>The code point space is partitioned into classes of characters that no transition of the
+ * automaton can tell apart, so that the transition table has one column per class rather than one
+ * per code point. ASCII characters are mapped to their class via a lookup table, other code points
+ * via a binary search. Opaque predicates (see {@link RegexNode.Chars#predicate}) are supported but
+ * each of them doubles the number of raw classes, so at most {@link #MAX_PREDICATES} of them can be
+ * used in a single automaton.
+ *
+ * <p>The automaton is built by a subset construction where each state is an ordered list of NFA
+ * threads. Each transition also carries an operation on a single <i>match register</i> holding the
+ * end of the current tentative match: it can set the register to the current position or clear it.
+ * In longest-match mode, the register is set whenever a thread accepts. In PEG mode, an accepting
+ * thread kills all lower-priority threads, and a tentative match can be revoked when a
+ * higher-priority thread commits to an alternative that supersedes it (e.g. in {@code
+ * ('0'|[0-9]+)}, the first alternative wins). The result is that matching never backtracks: it
+ * runs in time linear in the length of the match.
+ *
+ * <p>A few contrived PEG expressions would require tracking multiple tentative matches at once
+ * (e.g. {@code ((aa)*a)?}, which matches either nothing or an odd number of {@code a}): these are
+ * rejected at compile time, as are unbounded repetitions of expressions that can match the empty
+ * string (which would loop forever).
+ *
+ * <p>Build with {@link #compile(RegexNode, boolean)} or {@link #compile(String, boolean)}.
+ */
+public final class DFA
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of opaque predicates in a single automaton.
+     */
+    public static final int MAX_PREDICATES = 4;
+
+    /**
+     * Maximum number of states in a single automaton.
+     */
+    public static final int MAX_STATES = 10_000;
+
+    /**
+     * Maximum number of NFA threads tracked by a single state of an automaton.
+     */
+    public static final int MAX_THREADS = 64;
+
+    /**
+     * Maximum amount of work (in elementary steps) spent computing the transitions of a single
+     * state of an automaton.
+     */
+    public static final int MAX_STATE_WORK = 1_000_000;
+
+    // ---------------------------------------------------------------------------------------------
+
+    static final byte SET   = 1;
+    static final byte CLEAR = 2;
+    static final byte FAIL  = 4;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether this automaton has PEG semantics (as opposed to longest-match semantics).
+     */
+    public final boolean peg;
+
+    /**
+     * Whether this automaton can succeed without consuming any input.
+     */
+    public final boolean nullable;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Sorted starts of the code point regions. */
+    private final int[] regionStarts;
+
+    /** Opaque predicates whose results are part of the character classes. */
+    private final IntPredicate[] predicates;
+
+    /** Maps raw classes (region index and predicate mask) to columns. */
+    private final int[] columnOf;
+
+    /** Maps ASCII characters directly to columns. */
+    private final int[] asciiColumns;
+
+    /** Number of columns in the tables, including the end-of-input column (the last one). */
+    private final int columns;
+
+    /** Indexed by {@code state * columns + column}, -1 if the automaton stops. */
+    private final int[] transitions;
+
+    /** Indexed by {@code state * columns + column}, combination of {@link #SET}, {@link #CLEAR}
+     * and {@link #FAIL}. */
+    private final byte[] ops;
+
+    // ---------------------------------------------------------------------------------------------
+
+    DFA (boolean peg, int[] regionStarts, IntPredicate[] predicates, int[] columnOf, int columns,
+         int[] transitions, byte[] ops)
+    {
+        this.peg = peg;
+        this.regionStarts = regionStarts;
+        this.predicates = predicates;
+        this.columnOf = columnOf;
+        this.columns = columns;
+        this.transitions = transitions;
+        this.ops = ops;
+
+        this.asciiColumns = new int[128];
+        for (int c = 0; c < 128; ++c)
+            asciiColumns[c] = columnOf[rawClassOf(c)];
+
+        boolean nullable = false;
+        for (int col = 0; col < columns; ++col)
+            nullable |= (ops[col] & SET) != 0;
+        this.nullable = nullable;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code regex} to an automaton, with PEG semantics if {@code peg} is true, or
+     * longest-match semantics otherwise.
+     *
+     * <p>Throws an {@link IllegalArgumentException} if the automaton would use more than {@link
+     * #MAX_PREDICATES} distinct opaque predicates, have more than {@link #MAX_STATES} states, track
+     * more than {@link #MAX_THREADS} threads in a state, need more than {@link #MAX_STATE_WORK}
+     * steps to build a state, or (in PEG mode) would need to track multiple tentative matches.
+     */
+    public static DFA compile (RegexNode regex, boolean peg) {
+        return new DFABuilder(new NFA(regex, peg)).build();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code pattern} (in the syntax accepted by {@link RegexSyntax}) to an automaton,
+     * with PEG semantics if {@code peg} is true, or longest-match semantics otherwise.
+     */
+    public static DFA compile (String pattern, boolean peg) {
+        return compile(RegexSyntax.parse(pattern), peg);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of states of the automaton.
+     */
+    public int stateCount() {
+        return transitions.length / columns;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of character classes the automaton distinguishes (including
+     * end-of-input).
+     */
+    public int classCount() {
+        return columns;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    int rawClassOf (int c)
+    {
+        int lo = 0, hi = regionStarts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (regionStarts[mid] <= c) lo = mid;
+            else hi = mid - 1;
+        }
+        int raw = lo << predicates.length;
+        for (int i = 0; i < predicates.length; ++i)
+            if (predicates[i].test(c))
+                raw |= 1 << i;
+        return raw;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int columnOf (int c) {
+        return c < 128 ? asciiColumns[c] : columnOf[rawClassOf(c)];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs the automaton over {@code input} from {@code start}, never reading at or past {@code
+     * end}.
+     *
+     * <p>The result packs two positions, which can be extracted with {@link #matchEnd(long)} and
+     * {@link #failure(long)}.
+     */
+    public long match (int[] input, int start, int end)
+    {
+        int eof = columns - 1;
+        int state = 0;
+        int result = -1;
+        int failure = -1;
+
+        for (int pos = start; ; ++pos)
+        {
+            int i = state * columns + (pos < end ? columnOf(input[pos]) : eof);
+            byte op = ops[i];
+            if ((op & SET) != 0)
+                result = pos;
+            else if ((op & CLEAR) != 0)
+                result = -1;
+            if ((op & FAIL) != 0)
+                failure = pos;
+            state = transitions[i];
+            if (state < 0) break;
+        }
+
+        return (long) failure << 32 | result & 0xFFFF_FFFFL;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the automaton may read past code point {@code c} when it is the first character of
+     * the input. If this returns false, the automaton can only match the empty string at a
+     * position where {@code c} occurs.
+     */
+    public boolean mayStartWith (int c) {
+        return transitions[columnOf(c)] >= 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Given the result of {@link #match}, returns the end of the match, or -1 if there was no match.
+     */
+    public static int matchEnd (long result) {
+        return (int) result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Given the result of {@link #match}, returns the furthest position at which a thread of the
+     * automaton failed (i.e. where the input diverged from some alternative), or -1 if no thread
+     * failed.
+     */
+    public static int failure (long result) {
+        return (int) (result >> 32);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return String.format("DFA(%s, %d states, %d classes)",
+            peg ? "peg" : "longest", stateCount(), columns);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
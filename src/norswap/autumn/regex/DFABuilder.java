@@ -0,0 +1,763 @@
+package norswap.autumn.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+/**
+ * Builds a {@link DFA} from a {@link NFA} via subset construction, where each DFA state is an
+ * ordered list of NFA threads (see {@link DFA} for the semantics).
+ *
+ * <p>In PEG mode, each thread also records the path of atomic group instances it went through,
+ * and for each whether it has exited it already (and via which exit). When a thread exits an
+ * instance, all threads that come after it (i.e. have a lower priority) and went through the same
+ * instance are killed — unless the exiting thread can itself still be killed by a higher-priority
+ * thread, in which case the cut stays pending. Accepting threads kill lower-priority threads in the
+ * same way. Dead threads whose exits still have pending cuts are kept until the cuts resolve.
+ * Instances that can no longer kill anything are dropped from the paths, which keeps the number of
+ * states finite in practice.
+ */
+final class DFABuilder
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Inst
+    {
+        final int group;
+
+        Inst (int group) {
+            this.group = group;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Thread
+    {
+        final int node;
+        final Inst[] path;
+        /** For each instance in the path, 0 if not exited yet, or a token identifying the exit. */
+        final int[] exits;
+        /** For accepting threads, whether they accepted at the current position. */
+        boolean fresh;
+
+        Thread (int node, Inst[] path, int[] exits) {
+            this.node = node;
+            this.path = path;
+            this.exits = exits;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class Key
+    {
+        final int[] array;
+
+        Key (int[] array) {
+            this.array = array;
+        }
+
+        @Override public boolean equals (Object o) {
+            return o instanceof Key && Arrays.equals(array, ((Key) o).array);
+        }
+
+        @Override public int hashCode() {
+            return Arrays.hashCode(array);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pseudo-node for threads that have accepted at a previous position. Such threads hold the
+     * current tentative match in PEG mode: they stay around until they are killed by a
+     * higher-priority thread (which clears the match register) or all other threads die.
+     */
+    private static final int ACCEPTED = -1;
+
+    /**
+     * Pseudo-node for threads that died after exiting a group instance. Such threads are kept
+     * around as long as their exit may kill other threads (see {@link #dominated}).
+     */
+    private static final int DEAD = -2;
+
+    private static final Inst[] NO_PATH = new Inst[0];
+    private static final int[] NO_EXITS = new int[0];
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final NFA.Node[] nodes;
+    private final int start;
+    private final boolean peg;
+    /** The EXIT node of each group, or -1. */
+    private final int[] exitNodes;
+    /** Memoizes {@link #consumesFirst(int)}: 0 if unknown, 1 if true, 2 if false. */
+    private final byte[] consumesFirst;
+
+    // Alphabet
+
+    private final int[] regionStarts;
+    private final IntPredicate[] predicates;
+    private final int[] columnOf;
+    /** Number of columns, excluding the end-of-input column. */
+    private final int charColumns;
+    /** matches[column][label] */
+    private final boolean[][] matches;
+    /** Label index for each node, or -1. */
+    private final int[] labelOf;
+    /** The column of code point 0, used to evaluate guards at the end of input. */
+    private final int zeroColumn;
+
+    // States
+
+    private final List<Key> states = new ArrayList<>();
+    private final Map<Key, Integer> stateIds = new HashMap<>();
+    private final List<int[]> transitionRows = new ArrayList<>();
+    private final List<byte[]> opRows = new ArrayList<>();
+
+    // Scratch state for the computation of a single transition
+
+    private List<Thread> out;
+    private boolean newFinal, fails;
+    private int tokens;
+    private final boolean[] marked;
+    /** Work spent on the transitions of the current state, see {@link #charge(int)}. */
+    private int work;
+
+    // ---------------------------------------------------------------------------------------------
+
+    DFABuilder (NFA nfa)
+    {
+        this.nodes = nfa.nodes;
+        this.start = nfa.start;
+        this.peg = nfa.peg;
+        this.marked = new boolean[nodes.length];
+
+        consumesFirst = new byte[nodes.length];
+        exitNodes = new int[nfa.groups];
+        Arrays.fill(exitNodes, -1);
+        for (int i = 0; i < nodes.length; ++i)
+            if (nodes[i].type == NFA.EXIT)
+                exitNodes[nodes[i].group] = i;
+
+        List<RegexNode.Chars> labels = new ArrayList<>();
+        IdentityHashMap<IntPredicate, Integer> predicateIds = new IdentityHashMap<>();
+        TreeSet<Integer> bounds = new TreeSet<>();
+        bounds.add(0);
+        labelOf = new int[nodes.length];
+
+        for (int i = 0; i < nodes.length; ++i)
+        {
+            RegexNode.Chars label = nodes[i].label;
+            labelOf[i] = -1;
+            if (label == null) continue;
+            labelOf[i] = labels.size();
+            labels.add(label);
+            for (int r = 0; r < label.set.rangeCount(); ++r) {
+                bounds.add(label.set.low(r));
+                if (label.set.high(r) < CharSet.MAX)
+                    bounds.add(label.set.high(r) + 1);
+            }
+            if (label.predicate != null)
+                predicateIds.putIfAbsent(label.predicate, predicateIds.size());
+        }
+
+        if (predicateIds.size() > DFA.MAX_PREDICATES)
+            throw new IllegalArgumentException(
+                "more than " + DFA.MAX_PREDICATES + " opaque character predicates");
+
+        regionStarts = bounds.stream().mapToInt(x -> x).toArray();
+        predicates = new IntPredicate[predicateIds.size()];
+        predicateIds.forEach((pred, id) -> predicates[id] = pred);
+
+        // Group raw classes (region + predicate mask) that all labels agree on.
+
+        int rawClasses = regionStarts.length << predicates.length;
+        columnOf = new int[rawClasses];
+        Map<BitSet, Integer> columns = new HashMap<>();
+        List<boolean[]> columnMatches = new ArrayList<>();
+
+        for (int raw = 0; raw < rawClasses; ++raw)
+        {
+            int rep = regionStarts[raw >>> predicates.length];
+            BitSet signature = new BitSet(labels.size());
+            boolean[] row = new boolean[labels.size()];
+            for (int l = 0; l < labels.size(); ++l) {
+                RegexNode.Chars label = labels.get(l);
+                boolean match = label.set.contains(rep);
+                if (match && label.predicate != null) {
+                    int bit = predicateIds.get(label.predicate);
+                    match = ((raw >>> bit & 1) == 1) != label.negated;
+                }
+                row[l] = match;
+                signature.set(l, match);
+            }
+            Integer column = columns.get(signature);
+            if (column == null) {
+                column = columns.size();
+                columns.put(signature, column);
+                columnMatches.add(row);
+            }
+            columnOf[raw] = column;
+        }
+
+        charColumns = columns.size();
+        matches = columnMatches.toArray(new boolean[0][]);
+
+        int zeroRaw = 0;
+        for (int i = 0; i < predicates.length; ++i)
+            if (predicates[i].test(0)) zeroRaw |= 1 << i;
+        zeroColumn = columnOf[zeroRaw];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    DFA build()
+    {
+        List<Thread> initial = new ArrayList<>();
+        initial.add(new Thread(start, NO_PATH, NO_EXITS));
+        intern(initial);
+
+        for (int s = 0; s < states.size(); ++s)
+        {
+            work = 0;
+            int[] transitions = new int[charColumns + 1];
+            byte[] ops = new byte[charColumns + 1];
+            for (int column = 0; column <= charColumns; ++column) {
+                long result = transition(decode(states.get(s)), column);
+                transitions[column] = (int) result;
+                ops[column] = (byte) (result >>> 32);
+            }
+            transitionRows.add(transitions);
+            opRows.add(ops);
+        }
+
+        int width = charColumns + 1;
+        int[] transitions = new int[states.size() * width];
+        byte[] ops = new byte[states.size() * width];
+        for (int s = 0; s < states.size(); ++s) {
+            System.arraycopy(transitionRows.get(s), 0, transitions, s * width, width);
+            System.arraycopy(opRows.get(s), 0, ops, s * width, width);
+        }
+
+        return new DFA(peg, regionStarts, predicates, columnOf, width, transitions, ops);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the transition from the state made of {@code threads} on {@code column} (the
+     * end-of-input column if equal to {@link #charColumns}), and returns the target state (-1 if
+     * none) in the lower 32 bits and the operation in the upper bits.
+     */
+    private long transition (List<Thread> threads, int column)
+    {
+        boolean eof = column == charColumns;
+        out = new ArrayList<>();
+        newFinal = fails = false;
+        Arrays.fill(marked, false);
+        boolean hadAccepted = false;
+
+        for (Thread thread: threads)
+        {
+            hadAccepted |= thread.node == ACCEPTED;
+            if (dominated(thread.path, thread.exits)) continue;
+            if (thread.node < 0)
+                out.add(thread);
+            else
+                closure(thread.node, thread.path, thread.exits, eof ? zeroColumn : column);
+        }
+
+        List<Thread> next = new ArrayList<>();
+        boolean running = false;
+        for (Thread thread: out)
+        {
+            if (thread.node < 0)
+                next.add(thread);
+            else if (!eof && matches[column][labelOf[thread.node]]) {
+                next.add(new Thread(nodes[thread.node].next, thread.path, thread.exits));
+                running = true;
+            }
+            else {
+                fails = true;
+                ghost(next, thread.path, thread.exits);
+            }
+        }
+
+        // Without running threads, there is nothing left to threaten the threads that committed
+        // to an alternative, so their cuts become definitive.
+        if (!running) next = settle(next);
+
+        byte op = 0;
+        if (peg) {
+            boolean fresh = false, old = false;
+            for (Thread thread: next)
+                if (thread.node == ACCEPTED) {
+                    if (thread.fresh) fresh = true;
+                    else old = true;
+                }
+            if (fresh && old)
+                throw new IllegalArgumentException("expression cannot be matched without "
+                    + "backtracking: it needs to track more than one tentative match");
+            if (fresh)
+                op = DFA.SET;
+            else if (hadAccepted && !old)
+                op = DFA.CLEAR;
+        }
+        else if (newFinal)
+            op = DFA.SET;
+
+        if (fails) op |= DFA.FAIL;
+        int target = running ? intern(normalize(next)) : -1;
+        return (long) op << 32 | target & 0xFFFF_FFFFL;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Follows all epsilon transitions from {@code node} (for a thread whose group path is {@code
+     * path} / {@code exits}), adding all the threads that need to consume a character (or are
+     * accepting, or dead but still relevant) to {@link #out}, in order of priority.
+     */
+    private void closure (int id, Inst[] path, int[] exits, int column)
+    {
+        if (dominated(path, exits)) return;
+        NFA.Node node = nodes[id];
+
+        switch (node.type)
+        {
+            case NFA.CHAR:
+                add(id, path, exits);
+                break;
+
+            case NFA.FINAL:
+                newFinal = true;
+                if (peg) {
+                    Thread thread = new Thread(ACCEPTED, path, exits);
+                    thread.fresh = true;
+                    out.add(thread);
+                }
+                break;
+
+            case NFA.SPLIT:
+                // In PEG mode, marks nodes on the current recursion path, to avoid looping on
+                // nullable repetitions. Otherwise, marks all visited nodes.
+                if (marked[id]) break;
+                marked[id] = true;
+                for (int target: node.targets)
+                    closure(target, path, exits, column);
+                if (peg) marked[id] = false;
+                break;
+
+            case NFA.GUARD:
+                if (matches[column][labelOf[id]] != node.negative)
+                    closure(node.next, path, exits, column);
+                else {
+                    fails = true;
+                    ghost(out, path, exits);
+                }
+                break;
+
+            case NFA.ENTER:
+                Inst[] path2 = Arrays.copyOf(path, path.length + 1);
+                path2[path.length] = new Inst(node.group);
+                closure(node.next, path2, Arrays.copyOf(exits, exits.length + 1), column);
+                break;
+
+            case NFA.EXIT:
+                int i = path.length - 1;
+                while (path[i].group != node.group || exits[i] != 0) --i;
+                int[] exits2 = exits.clone();
+                exits2[i] = ++tokens;
+                closure(node.next, path, exits2, column);
+                break;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds a dead thread to {@code threads} if it committed to the alternative of some group
+     * instance, as this alternative still needs to kill the lower-priority alternatives.
+     */
+    private static void ghost (List<Thread> threads, Inst[] path, int[] exits)
+    {
+        for (int exit: exits)
+            if (exit != 0) {
+                threads.add(new Thread(DEAD, path, exits));
+                return;
+            }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a thread with the given path, coming after all threads in {@link #out}, can be
+     * discarded.
+     *
+     * <p>This is the case if a thread in {@link #out} has accepted, or has exited an instance that
+     * the new thread went through (and didn't exit via the same exit) — unless the former thread
+     * could itself still be killed by a higher-priority thread, via an instance that the new thread
+     * didn't go through. In that case, the cut is only tentative and the new thread must be kept,
+     * as it might be revived.
+     */
+    private boolean dominated (Inst[] path, int[] exits)
+    {
+        for (int x = 0; x < out.size(); ++x)
+        {
+            charge(1);
+            Thread thread = out.get(x);
+            if (thread.node == ACCEPTED) {
+                if (threatsWithin(x, -1, path)) return true;
+                continue;
+            }
+            for (int a = 0; a < thread.path.length; ++a) {
+                if (thread.exits[a] == 0) continue;
+                int b = indexOf(path, thread.path[a]);
+                if (b >= 0 && exits[b] != thread.exits[a] && threatsWithin(x, a, path))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether all instances after index {@code a} in the path of thread {@code out[x]}, in which
+     * some running thread with higher priority hasn't exited yet, are included in {@code path}.
+     *
+     * <p>Instances whose exit leads straight to the exit of the instance at index {@code a} (or to
+     * acceptance, if {@code a} is -1) are disregarded: a thread killing {@code out[x]} through them
+     * takes over its cut immediately.
+     */
+    private boolean threatsWithin (int x, int a, Inst[] path)
+    {
+        Inst[] xpath = out.get(x).path;
+        int until = a < 0 ? -1 : xpath[a].group;
+        outer: for (int k = a + 1; k < xpath.length; ++k)
+        {
+            if (indexOf(path, xpath[k]) >= 0 || exitsInto(xpath[k].group, until)) continue;
+            for (int y = 0; y < x; ++y) {
+                Thread thread = out.get(y);
+                if (thread.node < 0) continue;
+                int i = indexOf(thread.path, xpath[k]);
+                if (i >= 0 && thread.exits[i] == 0) return false;
+            }
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a thread exiting {@code group} always goes on to exit {@code until} (or to accept, if
+     * {@code until} is -1) without consuming input, and without any of its higher-priority
+     * offshoots exiting a group first.
+     */
+    private boolean exitsInto (int group, int until)
+    {
+        int id = nodes[exitNodes[group]].next;
+        for (int steps = 0; steps < nodes.length; ++steps)
+        {
+            NFA.Node node = nodes[id];
+            switch (node.type) {
+                case NFA.FINAL:
+                    return true;
+                case NFA.EXIT:
+                    if (node.group == until) return true;
+                    id = node.next;
+                    break;
+                case NFA.ENTER:
+                    id = node.next;
+                    break;
+                case NFA.SPLIT:
+                    for (int i = 0; i < node.targets.length - 1; ++i)
+                        if (!consumesFirst(node.targets[i])) return false;
+                    id = node.targets[node.targets.length - 1];
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return false; // loop without input consumption
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether all epsilon paths from {@code id} consume a character (or fail a guard) before
+     * exiting a group or accepting. Memoized in {@link #consumesFirst}.
+     */
+    private boolean consumesFirst (int id)
+    {
+        if (consumesFirst[id] != 0)
+            return consumesFirst[id] == 1;
+
+        consumesFirst[id] = 2; // loops without input consumption yield false
+        NFA.Node node = nodes[id];
+        boolean result;
+        switch (node.type) {
+            case NFA.CHAR:
+                result = true;
+                break;
+            case NFA.GUARD:
+            case NFA.ENTER:
+                result = consumesFirst(node.next);
+                break;
+            case NFA.SPLIT:
+                result = true;
+                for (int target: node.targets)
+                    result &= consumesFirst(target);
+                break;
+            default:
+                result = false;
+        }
+        consumesFirst[id] = (byte) (result ? 1 : 2);
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int indexOf (Inst[] path, Inst inst)
+    {
+        charge(path.length + 1);
+        for (int i = 0; i < path.length; ++i)
+            if (path[i] == inst) return i;
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Accounts for {@code steps} units of work towards the computation of the transitions of the
+     * current state, throwing an exception if that exceeds {@link DFA#MAX_STATE_WORK}.
+     *
+     * <p>The size of the thread lists is already bounded by {@link DFA#MAX_THREADS}, but the
+     * pairwise comparisons of threads and of their paths are not.
+     */
+    private void charge (int steps)
+    {
+        work += steps;
+        if (work > DFA.MAX_STATE_WORK)
+            throw new IllegalArgumentException("automaton construction would take more than "
+                + DFA.MAX_STATE_WORK + " steps for a single state");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Removes the threads killed by definitive cuts from a list of threads where none is running.
+     */
+    private List<Thread> settle (List<Thread> threads)
+    {
+        out = new ArrayList<>();
+        for (Thread thread: threads)
+            if (!dominated(thread.path, thread.exits))
+                out.add(thread);
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds a thread to {@link #out}, unless a higher-priority thread on the same node exists that
+     * can only be killed by instances that would also kill the new thread, and whose exits
+     * kill everything the new thread's exits would.
+     */
+    private void add (int id, Inst[] path, int[] exits)
+    {
+        for (Thread thread: out)
+            if (thread.node == id && subsumes(thread, path, exits))
+                return;
+        out.add(new Thread(id, path, exits));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean subsumes (Thread thread, Inst[] path, int[] exits)
+    {
+        int found = 0;
+        for (int i = 0; i < thread.path.length; ++i) {
+            int j = indexOf(path, thread.path[i]);
+            if (j < 0 || exits[j] != thread.exits[i]) return false;
+            ++found;
+        }
+        // extra instances must not have been exited
+        for (int j = 0; j < path.length; ++j)
+            if (exits[j] != 0 && indexOf(thread.path, path[j]) < 0) return false;
+        return found == thread.path.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Drops group instances that can't kill any thread anymore from the thread paths, as well as
+     * dead threads that can't kill any thread anymore, and removes redundant threads.
+     *
+     * <p>An instance can still kill a thread if some running thread hasn't exited it yet, or if
+     * it was exited in different ways by different threads.
+     */
+    private List<Thread> normalize (List<Thread> threads)
+    {
+        while (true)
+        {
+            IdentityHashMap<Inst, Integer> tokenOf = new IdentityHashMap<>();
+            IdentityHashMap<Inst, Boolean> live = new IdentityHashMap<>();
+            for (Thread thread: threads)
+                for (int i = 0; i < thread.path.length; ++i) {
+                    Inst inst = thread.path[i];
+                    int token = thread.exits[i];
+                    if (token == 0 && thread.node >= 0) live.put(inst, true);
+                    Integer previous = tokenOf.putIfAbsent(inst, token);
+                    if (previous != null && previous != token) live.put(inst, true);
+                }
+
+            List<Thread> result = new ArrayList<>();
+            boolean changed = false;
+            for (int t = 0; t < threads.size(); ++t)
+            {
+                Thread thread = threads.get(t);
+                charge(thread.path.length + 1);
+                int size = 0;
+                for (Inst inst: thread.path)
+                    if (live.containsKey(inst)) ++size;
+
+                Inst[] path = new Inst[size];
+                int[] exits = new int[size];
+                size = 0;
+                for (int i = 0; i < thread.path.length; ++i)
+                    if (live.containsKey(thread.path[i])) {
+                        path[size] = thread.path[i];
+                        exits[size++] = thread.exits[i];
+                    }
+                changed |= size != thread.path.length;
+
+                if (thread.node == DEAD && !canKill(threads, t)) {
+                    changed = true;
+                    continue;
+                }
+                result.add(new Thread(thread.node, path, exits));
+            }
+            threads = result;
+            if (!changed) break;
+        }
+
+        out = new ArrayList<>();
+        for (Thread thread: threads)
+            if (thread.node < 0)
+                out.add(thread);
+            else
+                add(thread.node, thread.path, thread.exits);
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code threads[t]} exited an instance in a way that differs from a lower-priority
+     * thread going through the same instance.
+     */
+    private boolean canKill (List<Thread> threads, int t)
+    {
+        Thread thread = threads.get(t);
+        for (int a = 0; a < thread.path.length; ++a) {
+            if (thread.exits[a] == 0) continue;
+            for (int u = t + 1; u < threads.size(); ++u) {
+                Thread other = threads.get(u);
+                int b = indexOf(other.path, thread.path[a]);
+                if (b >= 0 && other.exits[b] != thread.exits[a]) return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the id of the state made of {@code threads}, registering it if necessary.
+     */
+    private int intern (List<Thread> threads)
+    {
+        if (threads.size() > DFA.MAX_THREADS)
+            throw new IllegalArgumentException(
+                "automaton state would track more than " + DFA.MAX_THREADS + " threads");
+
+        IdentityHashMap<Inst, Integer> ids = new IdentityHashMap<>();
+        Map<Integer, Integer> tokenIds = new HashMap<>();
+        tokenIds.put(0, 0);
+        int size = 0;
+        for (Thread thread: threads)
+            size += 2 + 3 * thread.path.length;
+
+        int[] array = new int[size];
+        int j = 0;
+        for (Thread thread: threads)
+        {
+            array[j++] = thread.node;
+            array[j++] = thread.path.length;
+            for (int i = 0; i < thread.path.length; ++i) {
+                Inst inst = thread.path[i];
+                Integer id = ids.get(inst);
+                if (id == null) ids.put(inst, id = ids.size());
+                array[j++] = id;
+                array[j++] = inst.group;
+                Integer token = tokenIds.get(thread.exits[i]);
+                if (token == null) tokenIds.put(thread.exits[i], token = tokenIds.size());
+                array[j++] = token;
+            }
+        }
+
+        Key key = new Key(array);
+        Integer id = stateIds.get(key);
+        if (id != null) return id;
+
+        if (states.size() == DFA.MAX_STATES)
+            throw new IllegalArgumentException(
+                "automaton would have more than " + DFA.MAX_STATES + " states");
+
+        states.add(key);
+        stateIds.put(key, states.size() - 1);
+        return states.size() - 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Rebuilds the threads of a state from its key, using fresh group instances. Also makes sure
+     * that new exit tokens won't clash with the existing ones.
+     */
+    private List<Thread> decode (Key key)
+    {
+        List<Thread> threads = new ArrayList<>();
+        Map<Integer, Inst> insts = new HashMap<>();
+        int[] array = key.array;
+        tokens = 0;
+
+        for (int j = 0; j < array.length; )
+        {
+            int node = array[j++];
+            int length = array[j++];
+            Inst[] path = new Inst[length];
+            int[] exits = new int[length];
+            for (int i = 0; i < length; ++i) {
+                int id = array[j++];
+                int group = array[j++];
+                path[i] = insts.computeIfAbsent(id, k -> new Inst(group));
+                exits[i] = array[j++];
+                tokens = Math.max(tokens, exits[i]);
+            }
+            threads.add(new Thread(node, path, exits));
+        }
+        return threads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,217 @@
+package norswap.autumn.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Thompson-style non-deterministic automaton built from a {@link RegexNode}, used as an
+ * intermediate step when building a {@link DFA}.
+ *
+ * <p>When built with PEG semantics, every ordered choice and repetition is bracketed by a pair of
+ * {@link #ENTER} / {@link #EXIT} nodes delimiting an <i>atomic group</i>: the first thread to exit
+ * an instance of the group kills every lower-priority thread that went through the same instance.
+ * This is what makes choices commit and repetitions possessive.
+ */
+final class NFA
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Consumes a character matching {@link Node#label}. */
+    static final int CHAR  = 0;
+    /** Epsilon transition to each of {@link Node#targets}, in order of priority. */
+    static final int SPLIT = 1;
+    /** Epsilon transition, taken only if the next character matches {@link Node#label}
+     * (xor {@link Node#negative}). */
+    static final int GUARD = 2;
+    /** Opens a new instance of atomic group {@link Node#group}. */
+    static final int ENTER = 3;
+    /** Exits the innermost instance of atomic group {@link Node#group}. */
+    static final int EXIT  = 4;
+    /** Accepting node. */
+    static final int FINAL = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Limit on the number of nodes, mostly to avoid blowing up on big bounded repetitions.
+     */
+    static final int MAX_NODES = 50_000;
+
+    // ---------------------------------------------------------------------------------------------
+
+    static final class Node
+    {
+        final int type;
+        int next = -1;
+        int[] targets;
+        RegexNode.Chars label;
+        boolean negative;
+        int group;
+
+        Node (int type) {
+            this.type = type;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    final boolean peg;
+    final Node[] nodes;
+    final int start;
+    final int groups;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final List<Node> building = new ArrayList<>();
+    private int groupCount = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    NFA (RegexNode regex, boolean peg)
+    {
+        this.peg = peg;
+        int fin = add(new Node(FINAL));
+        this.start = compile(regex, fin);
+        this.nodes = building.toArray(new Node[0]);
+        this.groups = groupCount;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int add (Node node)
+    {
+        if (building.size() == MAX_NODES)
+            throw new IllegalArgumentException("regular expression too large");
+        building.add(node);
+        return building.size() - 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int node (int type, int next)
+    {
+        Node node = new Node(type);
+        node.next = next;
+        return add(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int split (int... targets)
+    {
+        Node node = new Node(SPLIT);
+        node.targets = targets;
+        return add(node);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int group (int type, int group, int next)
+    {
+        int id = node(type, next);
+        building.get(id).group = group;
+        return id;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code regex} so that it continues to node {@code next}, and return its start node.
+     */
+    private int compile (RegexNode regex, int next)
+    {
+        if (regex instanceof RegexNode.Chars) {
+            int id = node(CHAR, next);
+            building.get(id).label = (RegexNode.Chars) regex;
+            return id;
+        }
+        else if (regex instanceof RegexNode.Guard) {
+            RegexNode.Guard guard = (RegexNode.Guard) regex;
+            int id = node(GUARD, next);
+            building.get(id).label = guard.test;
+            building.get(id).negative = guard.negative;
+            return id;
+        }
+        else if (regex instanceof RegexNode.Seq) {
+            List<RegexNode> items = ((RegexNode.Seq) regex).items;
+            for (int i = items.size() - 1; i >= 0; --i)
+                next = compile(items.get(i), next);
+            return next;
+        }
+        else if (regex instanceof RegexNode.Choice) {
+            List<RegexNode> alternatives = ((RegexNode.Choice) regex).alternatives;
+            int g = groupCount++;
+            int exit = peg ? group(EXIT, g, next) : next;
+            int[] targets = new int[alternatives.size()];
+            for (int i = 0; i < targets.length; ++i)
+                targets[i] = compile(alternatives.get(i), exit);
+            int split = split(targets);
+            return peg ? group(ENTER, g, split) : split;
+        }
+        else if (regex instanceof RegexNode.Repeat) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat) regex;
+            next = repeat.max == -1
+                ? star(repeat.child, next)
+                : optionals(repeat.child, repeat.max - repeat.min, next);
+            for (int i = 0; i < repeat.min; ++i)
+                next = compile(repeat.child, next);
+            return next;
+        }
+        else
+            throw new IllegalArgumentException("unknown regex node: " + regex.getClass());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int star (RegexNode child, int next)
+    {
+        // Would loop forever, just like the equivalent Repeat parser.
+        if (peg && nullable(child))
+            throw new IllegalArgumentException(
+                "unbounded repetition of an expression that can match the empty string");
+
+        int g = groupCount++;
+        int exit = peg ? group(EXIT, g, next) : next;
+        int loop = split();
+        int body = compile(child, loop);
+        building.get(loop).targets = new int[] { body, exit };
+        return peg ? group(ENTER, g, loop) : loop;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code regex} can succeed without consuming any input.
+     */
+    private static boolean nullable (RegexNode regex)
+    {
+        if (regex instanceof RegexNode.Chars)
+            return false;
+        if (regex instanceof RegexNode.Seq)
+            return ((RegexNode.Seq) regex).items.stream().allMatch(NFA::nullable);
+        if (regex instanceof RegexNode.Choice)
+            return ((RegexNode.Choice) regex).alternatives.stream().anyMatch(NFA::nullable);
+        if (regex instanceof RegexNode.Repeat) {
+            RegexNode.Repeat repeat = (RegexNode.Repeat) regex;
+            return repeat.min == 0 || nullable(repeat.child);
+        }
+        return true; // guard
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code count} nested optional occurences of {@code child}.
+     */
+    private int optionals (RegexNode child, int count, int next)
+    {
+        if (count == 0) return next;
+        int g = groupCount++;
+        int exit = peg ? group(EXIT, g, next) : next;
+        int body = compile(child, optionals(child, count - 1, exit));
+        int split = split(body, exit);
+        return peg ? group(ENTER, g, split) : split;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,222 @@
+package norswap.autumn.regex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Abstract syntax tree for the regular expressions that can be compiled to a {@link DFA}.
+ *
+ * <p>These trees can be obtained by parsing a pattern string with {@link RegexSyntax}, but they
+ * can also be built programmatically (e.g. from a subtree of parsers).
+ *
+ * <p>The same tree can be interpreted in two ways, selected at compile time (see {@link
+ * DFA#compile(RegexNode, boolean)}): either as a traditional regular expression where the longest
+ * match wins, or with PEG semantics where choices are ordered and commit to their first successful
+ * alternative and where repetitions are greedy and possessive.
+ */
+public abstract class RegexNode
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Matches the empty string.
+     */
+    public static final RegexNode EMPTY = new Seq(Collections.emptyList());
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Never matches.
+     */
+    public static final RegexNode FAIL = new Choice(Collections.emptyList());
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static Chars chars (CharSet set) {
+        return new Chars(set, null, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a node that matches a single character that is in {@code set} and for which {@code
+     * predicate} returns true (or false, if {@code negated} is true). {@code predicate} can be null,
+     * in which case only {@code set} is consulted.
+     */
+    public static Chars chars (CharSet set, IntPredicate predicate, boolean negated) {
+        return new Chars(set, predicate, negated);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static RegexNode string (String string)
+    {
+        int[] codepoints = string.codePoints().toArray();
+        RegexNode[] items = new RegexNode[codepoints.length];
+        for (int i = 0; i < codepoints.length; ++i)
+            items[i] = chars(CharSet.single(codepoints[i]));
+        return seq(items);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static RegexNode seq (RegexNode... items) {
+        return items.length == 1 ? items[0] : new Seq(Arrays.asList(items));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static RegexNode choice (RegexNode... alternatives) {
+        return alternatives.length == 1 ? alternatives[0] : new Choice(Arrays.asList(alternatives));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a node that matches {@code child} at least {@code min} times and at most {@code max}
+     * times, or an unbounded number of times if {@code max} is -1.
+     */
+    public static RegexNode repeat (RegexNode child, int min, int max)
+    {
+        if (min < 0 || max != -1 && max < min)
+            throw new IllegalArgumentException("invalid repetition bounds");
+        return new Repeat(child, min, max);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a node that matches the empty string if the next character matches (or does not
+     * match, if {@code negative} is true) {@code test}.
+     */
+    public static RegexNode guard (Chars test, boolean negative) {
+        return new Guard(test, negative);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Matches a single character.
+     */
+    public static final class Chars extends RegexNode
+    {
+        public final CharSet set;
+        public final IntPredicate predicate;
+        public final boolean negated;
+
+        private Chars (CharSet set, IntPredicate predicate, boolean negated) {
+            this.set = set;
+            this.predicate = predicate;
+            this.negated = negated;
+        }
+
+        /**
+         * Indicates whether this node matches the character {@code c}.
+         */
+        public boolean test (int c) {
+            return set.contains(c) && (predicate == null || predicate.test(c) != negated);
+        }
+
+        @Override public String toString() {
+            if (predicate == null && set.rangeCount() == 1 && set.low(0) == set.high(0))
+                return RegexSyntax.literal(set.low(0));
+            if (predicate == null)
+                return set.toString();
+            String pred = negated ? "<!opaque>" : "<opaque>";
+            return set.equals(CharSet.ALL) ? pred : set + "&" + pred;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static final class Seq extends RegexNode
+    {
+        public final List<RegexNode> items;
+
+        private Seq (List<RegexNode> items) {
+            this.items = items;
+        }
+
+        @Override public String toString()
+        {
+            StringBuilder b = new StringBuilder();
+            for (RegexNode item: items)
+                b.append(item instanceof Choice ? "(?:" + item + ")" : item.toString());
+            return b.toString();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static final class Choice extends RegexNode
+    {
+        public final List<RegexNode> alternatives;
+
+        private Choice (List<RegexNode> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override public String toString() {
+            if (alternatives.isEmpty()) return "[]";
+            StringBuilder b = new StringBuilder();
+            for (RegexNode alt: alternatives)
+                b.append(b.length() == 0 ? "" : "|").append(alt);
+            return b.toString();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static final class Repeat extends RegexNode
+    {
+        public final RegexNode child;
+        public final int min;
+        public final int max;
+
+        private Repeat (RegexNode child, int min, int max) {
+            this.child = child;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override public String toString()
+        {
+            String c = child instanceof Chars ? child.toString() : "(?:" + child + ")";
+            if (min == 0 && max == -1) return c + "*";
+            if (min == 1 && max == -1) return c + "+";
+            if (min == 0 && max == 1)  return c + "?";
+            if (max == -1)             return c + "{" + min + ",}";
+            if (min == max)            return c + "{" + min + "}";
+            return c + "{" + min + "," + max + "}";
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * One-character lookahead: matches the empty string if the next character (satisfies {@code
+     * test} xor {@code negative}).
+     */
+    public static final class Guard extends RegexNode
+    {
+        public final Chars test;
+        public final boolean negative;
+
+        private Guard (Chars test, boolean negative) {
+            this.test = test;
+            this.negative = negative;
+        }
+
+        @Override public String toString() {
+            return (negative ? "(?!" : "(?=") + test + ")";
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
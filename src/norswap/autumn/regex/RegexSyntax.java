@@ -0,0 +1,349 @@
+package norswap.autumn.regex;
+
+import norswap.autumn.util.StringsUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses a pattern string into a {@link RegexNode}.
+ *
+ * <p>The supported syntax is a subset of that of {@link java.util.regex.Pattern}, restricted to
+ * the constructs that can be compiled to a deterministic automaton:
+ *
+ * <ul>
+ *     <li>Literal characters, and escaped metacharacters (e.g. {@code \*}).</li>
+ *     <li>The escapes {@code \n \t \r \f \0 \xHH \x{H...H}}, as well as {@code \\uHHHH} (written
+ *     with two backslashes, as it would be in a Java string literal).</li>
+ *     <li>The predefined classes {@code \d \D \w \W \s \S} (ASCII-only, as in {@code Pattern}).</li>
+ *     <li>{@code .}, which matches any code point except {@code \n}.</li>
+ *     <li>Character classes such as {@code [a-z_]}, {@code [^"\\]} or {@code []} (which never
+ *     matches).</li>
+ *     <li>Groups {@code (...)} and {@code (?:...)} (both non-capturing), and alternation
+ *     {@code |}.</li>
+ *     <li>The quantifiers {@code * + ? {n} {n,} {n,m}}.</li>
+ *     <li>One-character lookaheads {@code (?=x)} and {@code (?!x)}, where {@code x} is a literal, an
+ *     escape, {@code .} or a character class.</li>
+ * </ul>
+ *
+ * <p>Backreferences, anchors, lazy and possessive quantifier suffixes and longer lookaheads are
+ * rejected with a {@link PatternSyntaxException}.
+ */
+public final class RegexSyntax
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String METACHARS = ".[]()|*+?{}\\^$";
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final CharSet DIGIT = CharSet.range('0', '9');
+    private static final CharSet WORD  = CharSet.ranges('0', '9', 'A', 'Z', '_', '_', 'a', 'z');
+    private static final CharSet SPACE = CharSet.of(" \t\n\u000B\f\r");
+    private static final CharSet DOT   = CharSet.single('\n').complement();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final String pattern;
+    private final int[] cps;
+    private int i = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexSyntax (String pattern) {
+        this.pattern = pattern;
+        this.cps = pattern.codePoints().toArray();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the given pattern, throwing a {@link PatternSyntaxException} if it is invalid or uses
+     * unsupported constructs.
+     */
+    public static RegexNode parse (String pattern)
+    {
+        RegexSyntax syntax = new RegexSyntax(pattern);
+        RegexNode node = syntax.alternation();
+        if (syntax.i < syntax.cps.length)
+            throw syntax.error("unmatched closing parenthesis");
+        return node;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a representation of {@code c} usable as a literal in a pattern.
+     */
+    public static String literal (int c)
+    {
+        if (METACHARS.indexOf(c) >= 0)
+            return "\\" + (char) c;
+        if (!Character.isBmpCodePoint(c))
+            return String.format("\\x{%x}", c);
+        return StringsUtil.escape(String.valueOf((char) c));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private PatternSyntaxException error (String description) {
+        return new PatternSyntaxException(description, pattern, i);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean more() {
+        return i < cps.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean peek (int c) {
+        return i < cps.length && cps[i] == c;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean accept (String s)
+    {
+        int[] expected = s.codePoints().toArray();
+        if (i + expected.length > cps.length) return false;
+        for (int j = 0; j < expected.length; ++j)
+            if (cps[i + j] != expected[j]) return false;
+        i += expected.length;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode alternation()
+    {
+        List<RegexNode> alternatives = new ArrayList<>();
+        alternatives.add(sequence());
+        while (accept("|"))
+            alternatives.add(sequence());
+        return RegexNode.choice(alternatives.toArray(new RegexNode[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode sequence()
+    {
+        List<RegexNode> items = new ArrayList<>();
+        while (more() && !peek('|') && !peek(')'))
+            items.add(quantified());
+        return RegexNode.seq(items.toArray(new RegexNode[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode quantified()
+    {
+        RegexNode atom = atom();
+        while (more())
+        {
+            int min, max;
+            if (accept("*"))      { min = 0; max = -1; }
+            else if (accept("+")) { min = 1; max = -1; }
+            else if (accept("?")) { min = 0; max = 1;  }
+            else if (peek('{'))   {
+                ++i;
+                min = number();
+                max = accept(",") ? (peek('}') ? -1 : number()) : min;
+                if (!accept("}")) throw error("unclosed repetition bounds");
+                if (max != -1 && max < min) throw error("illegal repetition bounds");
+            }
+            else break;
+
+            if (peek('?') || peek('+'))
+                throw error("lazy and possessive quantifiers are not supported");
+            if (atom instanceof RegexNode.Guard)
+                throw error("quantified lookahead");
+            atom = RegexNode.repeat(atom, min, max);
+        }
+        return atom;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int number()
+    {
+        int start = i;
+        long n = 0;
+        while (more() && '0' <= cps[i] && cps[i] <= '9') {
+            n = n * 10 + cps[i++] - '0';
+            if (n > Integer.MAX_VALUE) throw error("repetition bound too large");
+        }
+        if (start == i) throw error("expected a number");
+        return (int) n;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode atom()
+    {
+        if (accept("(?=") || accept("(?!")) {
+            boolean negative = cps[i - 1] == '!';
+            RegexNode.Chars test = singleChar();
+            if (!accept(")"))
+                throw error("lookaheads may only contain a single character or character class");
+            return RegexNode.guard(test, negative);
+        }
+        if (accept("(?:") || accept("(")) {
+            if (peek('?')) throw error("unsupported group construct");
+            RegexNode node = alternation();
+            if (!accept(")")) throw error("unclosed group");
+            return node;
+        }
+        if (peek('*') || peek('+') || peek('?') || peek('{'))
+            throw error("dangling quantifier");
+        if (peek('^') || peek('$'))
+            throw error("anchors are not supported");
+        return singleChar();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private RegexNode.Chars singleChar()
+    {
+        if (!more()) throw error("unexpected end of pattern");
+        if (accept("[")) return RegexNode.chars(charClass());
+        if (accept(".")) return RegexNode.chars(DOT);
+        if (accept("\\")) {
+            CharSet predefined = predefinedClass();
+            return RegexNode.chars(predefined != null ? predefined : CharSet.single(escape()));
+        }
+        if (METACHARS.indexOf(cps[i]) >= 0)
+            throw error("unexpected metacharacter");
+        return RegexNode.chars(CharSet.single(cps[i++]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the body of a character class, after the opening bracket.
+     */
+    private CharSet charClass()
+    {
+        boolean negated = accept("^");
+        CharSet set = CharSet.EMPTY;
+        while (!accept("]"))
+        {
+            if (!more()) throw error("unclosed character class");
+
+            if (accept("\\")) {
+                CharSet predefined = predefinedClass();
+                if (predefined != null) {
+                    set = set.union(predefined);
+                    continue;
+                }
+                --i; // backtrack to the escape for classMember()
+            }
+
+            int lo = classMember();
+            int hi = lo;
+            if (peek('-') && i + 1 < cps.length && cps[i + 1] != ']') {
+                ++i;
+                hi = classMember();
+                if (hi < lo) throw error("illegal character range");
+            }
+            set = set.union(CharSet.range(lo, hi));
+        }
+        return negated ? set.complement() : set;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int classMember()
+    {
+        if (!more()) throw error("unclosed character class");
+        if (accept("\\")) {
+            if (predefinedClass() != null)
+                throw error("predefined class used as a range bound");
+            return escape();
+        }
+        if (peek('['))
+            throw error("nested character classes are not supported");
+        return cps[i++];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the class letter of a predefined class after a backslash, or returns null (without
+     * consuming input) if the next character does not denote a predefined class.
+     */
+    private CharSet predefinedClass()
+    {
+        if (!more()) return null;
+        CharSet set;
+        switch (cps[i]) {
+            case 'd': set = DIGIT; break;
+            case 'D': set = DIGIT.complement(); break;
+            case 'w': set = WORD; break;
+            case 'W': set = WORD.complement(); break;
+            case 's': set = SPACE; break;
+            case 'S': set = SPACE.complement(); break;
+            default: return null;
+        }
+        ++i;
+        return set;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses an escape sequence after the backslash and returns the code point it denotes.
+     */
+    private int escape()
+    {
+        if (!more()) throw error("unfinished escape sequence");
+        int c = cps[i++];
+        switch (c) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case '0': return 0;
+            case 'u': return hex(4);
+            case 'x':
+                if (!accept("{")) return hex(2);
+                int start = i;
+                while (more() && !peek('}')) ++i;
+                if (!accept("}") || i - 1 == start) throw error("malformed \\x{...} escape");
+                i = start;
+                int cp = hex(-1);
+                ++i; // closing brace
+                if (cp > CharSet.MAX) throw error("code point out of range");
+                return cp;
+        }
+        if ('1' <= c && c <= '9')
+            throw error("backreferences are not supported");
+        if (Character.isLetterOrDigit(c))
+            throw error("unsupported escape sequence");
+        return c;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code digits} hexadecimal digits, or as many as available if {@code digits} is -1.
+     */
+    private int hex (int digits)
+    {
+        int value = 0;
+        int count = 0;
+        while (more() && (digits < 0 || count < digits)) {
+            int d = Character.digit(cps[i], 16);
+            if (d < 0) break;
+            if (value > CharSet.MAX) throw error("code point out of range");
+            value = value * 16 + d;
+            ++i; ++count;
+        }
+        if (count == 0 || digits > 0 && count < digits)
+            throw error("malformed hexadecimal escape");
+        return value;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
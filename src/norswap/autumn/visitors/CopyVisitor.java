@@ -238,16 +238,17 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
     @Override public void visit (Empty parser)              { registerCopy(parser, parser); }
     @Override public void visit (Fail parser)               { registerCopy(parser, parser); }
     @Override public void visit (ObjectPredicate parser)    { registerCopy(parser, parser); }
+    @Override public void visit (Regex parser)              { registerCopy(parser, parser); }
     @Override public void visit (StringChoice parser)       { registerCopy(parser, parser); }
 
     // ---------------------------------------------------------------------------------------------
 
     @Override public void visit (Lookahead parser) {
-        registerCopy(parser, new Lookahead(getCopy(parser.child)));
+        registerCopy(parser, new Lookahead(getCopy(parser.child), parser.cached));
     }
 
     @Override public void visit (Not parser) {
-        registerCopy(parser, new Not(getCopy(parser.child)));
+        registerCopy(parser, new Not(getCopy(parser.child), parser.cached));
     }
 
     @Override public void visit (Optional parser) {
@@ -265,13 +266,14 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
     @Override public void visit (Bounded parser)
     {
         registerCopy(parser,
-            new Bounded(getCopy(parser.coarse), getCopy(parser.fine), parser.fallback));
+            new Bounded(getCopy(parser.coarse), getCopy(parser.fine), parser.fallback,
+                parser.parallel));
     }
 
     @Override public void visit (Collect parser)
     {
         registerCopy(parser, new Collect(parser.name, getCopy(parser.child),
-            parser.lookback, parser.actionOnFail, parser.pop, parser.action));
+            parser.lookback, parser.actionOnFail, parser.pop, parser.required, parser.action));
     }
 
     @Override public void visit (LazyParser parser)
@@ -305,10 +307,26 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
             parser.operatorRequired));
     }
 
+    @Override public void visit (OperatorTable parser)
+    {
+        OperatorTable.Level[] levels = new OperatorTable.Level[parser.levels.length];
+
+        for (int i = 0; i < levels.length; ++i) {
+            OperatorTable.Level level = parser.levels[i];
+            levels[i] = new OperatorTable.Level(
+                level.leftAssociative,
+                map(level.infixes, witness, this::getCopy), level.infixSteps,
+                map(level.affixes, witness, this::getCopy), level.affixSteps);
+        }
+
+        registerCopy(parser, new OperatorTable(getCopy(parser.operand), levels));
+    }
+
     @Override public void visit (Memo parser)
     {
         registerCopy(parser,
-            new Memo(getCopy(parser.child), parser.memoizer, parser.contextExtractor));
+            new Memo(getCopy(parser.child), parser.memoizer, parser.contextExtractor,
+                parser.failureBitmap));
     }
 
     @Override public void visit (Repeat parser)
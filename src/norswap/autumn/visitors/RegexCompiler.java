@@ -0,0 +1,153 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Grammar;
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.Regex;
+import norswap.autumn.regex.DFA;
+import norswap.autumn.regex.RegexNode;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the maximal regular sub-graphs of a parser graph (in the sense of {@link VisitorRegex}:
+ * free of actions, context-sensitive predicates, memoization and recursion) and compiles each of
+ * them to a {@link DFA} with PEG semantics, which is then installed as the {@link
+ * Parser#setSubstitute(Parser) substitute} of the sub-graph's root parser.
+ *
+ * <p>Lexical rules such as numbers, string literals or comments typically end up compiled to a
+ * single automaton, while the parsers that carry actions (e.g. the {@code Collect} parser
+ * generated by {@code push}) stay in place and run the compiled automaton in lieu of their
+ * children.
+ *
+ * <p>The compiled parsers match exactly the same input as the originals. However, when a compiled
+ * parser fails, the recorded error position may be further than the one the original parsers
+ * would have recorded: a string match, for instance, always reports an error at its start
+ * position, while the automaton reports the first position where the input diverged. Compiled
+ * parsers also never appear in the parse call stack.
+ *
+ * <p>Sub-graphs containing a parser that already has a substitute (e.g. the {@link
+ * norswap.autumn.parsers.ReservedWord} parsers installed by {@link Grammar#reserved(String)} and
+ * {@link Grammar#any_reserved_word}) are not compiled as a whole, as this would bypass the existing
+ * substitute. Their other regular parts are still compiled.
+ *
+ * <p>Only use this on grammars that parse strings (not lists of objects).
+ *
+ * <p>Invoke through {@link #compile(Parser)} or {@link Grammar#compileRegularRules()}. Results are
+ * available in {@link #compiled} and {@link #rejected}, and summarized by {@link #report()}.
+ */
+public final class RegexCompiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Regular sub-graphs with less parsers than this are not compiled (3 by default): a single
+     * string match or character predicate is at least as fast as an automaton.
+     */
+    public int minSize = 3;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maps the parsers that were compiled to their substitute.
+     */
+    public final Map<Parser, Regex> compiled = new LinkedHashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maps the named parsers (see {@link Parser#rule()}) that could not be compiled to the reason
+     * why. Parsers that are part of a compiled sub-graph do not appear here.
+     */
+    public final Map<Parser, String> rejected = new LinkedHashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final VisitorRegex visitor = new VisitorRegex();
+    private final Set<Parser> visited = new HashSet<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the maximal regular sub-graphs reachable from {@code parser} (including {@code
+     * parser} itself). Can be called multiple times on different roots.
+     */
+    public void compile (Parser parser)
+    {
+        if (!visited.add(parser) || parser.substitute() != null)
+            return;
+
+        RegexNode regex = visitor.regex(parser);
+        String reason = null;
+
+        if (regex == null)
+            reason = visitor.reason(parser);
+        else if (size(parser, new HashSet<>()) < minSize)
+            reason = "too small to be worth compiling";
+        else if (hasSubstitute(parser, new HashSet<>()))
+            reason = "contains a parser that already has a substitute";
+        else try {
+            DFA dfa = DFA.compile(regex, true);
+            Regex substitute = new Regex("compiled(" + parser + ")", regex, dfa);
+            parser.setSubstitute(substitute);
+            compiled.put(parser, substitute);
+            return;
+        }
+        catch (IllegalArgumentException e) {
+            reason = e.getMessage();
+        }
+
+        if (parser.rule() != null)
+            rejected.put(parser, reason);
+
+        for (Parser child: parser.children())
+            compile(child);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int size (Parser parser, Set<Parser> seen)
+    {
+        if (!seen.add(parser)) return 0;
+        int size = 1;
+        for (Parser child: parser.children())
+            size += size(child, seen);
+        return size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether a parser reachable from {@code parser} (excluding {@code parser} itself) has a
+     * substitute.
+     */
+    private static boolean hasSubstitute (Parser parser, Set<Parser> seen)
+    {
+        if (!seen.add(parser)) return false;
+        for (Parser child: parser.children())
+            if (child.substitute() != null || hasSubstitute(child, seen))
+                return true;
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a human-readable report listing the compiled parsers (with the size of their
+     * automaton) and the named parsers that could not be compiled (with the reason why).
+     */
+    public String report()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("Compiled:\n");
+        compiled.forEach((parser, regex) ->
+            b.append("  ").append(parser).append(": ").append(regex.dfa).append("\n"));
+        b.append("Not compiled:\n");
+        rejected.forEach((parser, reason) ->
+            b.append("  ").append(parser).append(": ").append(reason).append("\n"));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -144,6 +144,10 @@ public final class VisitorFirstParsers implements ParserVisitor
         // empty
     }
 
+    @Override public void visit (Regex parser) {
+        // empty
+    }
+
     // ---------------------------------------------------------------------------------------------
 
     @Override public void visit (Collect parser) {
@@ -260,6 +264,29 @@ public final class VisitorFirstParsers implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (OperatorTable parser)
+    {
+        firsts.add(parser.operand);
+
+        for (OperatorTable.Level level: parser.levels)
+            if (!level.leftAssociative)
+                firsts.addAll(list(level.affixes));
+
+        if (!nullable(parser.operand))
+            return;
+
+        for (OperatorTable.Level level: parser.levels) {
+            firsts.addAll(list(level.infixes));
+            if (level.leftAssociative)
+                firsts.addAll(list(level.affixes));
+        }
+
+        // NOTE: As for RightExpression, nullable prefixes and nullable operand + one nullable infix
+        // are nullable repetition violations.
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (StringMatch parser) {
         if (parser.string.length() == 0 && parser.whitespace != null)
             firsts.add(parser.whitespace);
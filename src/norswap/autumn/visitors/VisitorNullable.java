@@ -244,6 +244,12 @@ public final class VisitorNullable extends ParserWalker implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (Regex parser) {
+        addIf(parser, parser.dfa.nullable);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (AbstractPrimitive parser) {
         addIf(parser, parser.nullable);
     }
@@ -305,4 +311,12 @@ public final class VisitorNullable extends ParserWalker implements ParserVisitor
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (OperatorTable parser)
+    {
+        if (nullable(parser.operand))
+            nullables.add(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -112,6 +112,7 @@ public final class VisitorNullableRepetition implements ParserVisitor
     @Override public void visit (Not parser)                { result = false; }
     @Override public void visit (ObjectPredicate parser)    { result = false; }
     @Override public void visit (Optional parser)           { result = false; }
+    @Override public void visit (Regex parser)              { result = false; }
     @Override public void visit (Sequence parser)           { result = false; }
     @Override public void visit (StringMatch parser)        { result = false; }
     @Override public void visit (StringChoice parser)       { result = false; }
@@ -172,4 +173,28 @@ public final class VisitorNullableRepetition implements ParserVisitor
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (OperatorTable parser)
+    {
+        boolean nullableOperand = nullable(parser.operand);
+
+        for (OperatorTable.Level level: parser.levels) {
+            for (Parser affix: level.affixes)
+                if (nullable(affix)) {
+                    result = true;
+                    return;
+                }
+
+            if (nullableOperand)
+                for (Parser infix: level.infixes)
+                    if (nullable(infix)) {
+                        result = true;
+                        return;
+                    }
+        }
+
+        result = false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
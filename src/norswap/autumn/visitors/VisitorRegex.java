@@ -0,0 +1,507 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.parsers.*;
+import norswap.autumn.regex.CharSet;
+import norswap.autumn.regex.RegexNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A visitor that translates parsers to equivalent regular expressions ({@link RegexNode}), to be
+ * compiled with PEG semantics. Not all parsers can be translated: those that are can be called
+ * <i>regular</i>.
+ *
+ * <p>To translate a parser, call {@link #regex(Parser)}, which returns null if the parser isn't
+ * regular. In that case, {@link #reason(Parser)} explains why.
+ *
+ * <p>A parser isn't regular if it (or one of its descendants) carries an action (e.g. {@link
+ * Collect}), is context-sensitive ({@link ContextPredicate}), is memoized ({@link Memo}), skips
+ * whitespace (whitespace information is tracked via side effects), excludes its errors, is
+ * recursive, or is a custom parser without a suitable overload. {@link Longest} and longest-match
+ * {@link Regex} parsers aren't regular in this sense either.
+ *
+ * <p>{@link Not} and {@link Lookahead} are supported when their child matches a single character.
+ * In addition, the idiom {@code seq(not(x), c)}, where {@code x} matches strings of at most two
+ * characters and {@code c} a single character (e.g. {@code seq(str("*&#47;").not(), any)}) is
+ * supported.
+ *
+ * <p>The visitor memoizes translations, and the translation of a parser is computed from the
+ * translations of its children.
+ *
+ * <p>To support custom parsers, provide an appropriate overload using {@link ParserVisitor#extend}.
+ * Also see {@link ParserVisitor}'s Javadoc.
+ *
+ * <p>Within the supplied overloads, you can request the translation of a sub-parser using {@link
+ * #child(Parser)}, which sets {@link #reason} and returns null if the sub-parser isn't regular. You
+ * should set {@link #result} to the translation of the parser, or leave it null and set {@link
+ * #reason} if it isn't regular.
+ *
+ * <p>This visitor is used by {@link RegexCompiler}.
+ */
+public final class VisitorRegex implements ParserVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static HashOverloads overloads = new HashOverloads(VisitorRegex.class);
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Overloads overloads() {
+        return overloads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The translation of the visited parser, or null if it isn't regular.
+     */
+    public RegexNode result;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@link #result} is null, the reason why the visited parser isn't regular.
+     */
+    public String reason;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final HashMap<Parser, RegexNode> regexes = new HashMap<>();
+    private final HashMap<Parser, String> reasons = new HashMap<>();
+    private final HashSet<Parser> inProgress = new HashSet<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the translation of the given parser, or null if it isn't regular (see {@link
+     * #reason(Parser)}).
+     */
+    public RegexNode regex (Parser parser)
+    {
+        if (regexes.containsKey(parser))
+            return regexes.get(parser);
+
+        if (!inProgress.add(parser)) {
+            // Any parser involved in a recursion isn't regular.
+            regexes.put(parser, null);
+            reasons.put(parser, describe(parser) + " is recursive");
+            return null;
+        }
+
+        RegexNode result0 = result;
+        String reason0 = reason;
+        result = null;
+        reason = null;
+
+        parser.accept(this);
+        RegexNode regex = result;
+        regexes.put(parser, regex);
+        if (regex == null)
+            reasons.put(parser, reason != null ? reason : describe(parser) + " isn't regular");
+
+        inProgress.remove(parser);
+        result = result0;
+        reason = reason0;
+        return regex;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@code parser} isn't regular, returns the reason why, otherwise null.
+     */
+    public String reason (Parser parser) {
+        regex(parser);
+        return reasons.get(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the translation of {@code child}, a sub-parser of the visited parser. If it isn't
+     * regular, sets {@link #reason} and returns null.
+     */
+    public RegexNode child (Parser child)
+    {
+        if (child.excludeErrors) {
+            reason = describe(child) + " excludes its errors";
+            return null;
+        }
+        RegexNode regex = regex(child);
+        if (regex == null)
+            reason = reasons.get(child);
+        return regex;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Shortcut to mark the visited parser as non-regular, with the reason "{@code parser} {@code
+     * why}".
+     */
+    public void reject (Parser parser, String why) {
+        reason = describe(parser) + " " + why;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String describe (Parser parser)
+    {
+        return parser.rule() != null
+            ? "rule " + parser.rule()
+            : "a " + parser.getClass().getSimpleName() + " parser";
+    }
+
+    // =============================================================================================
+
+    @Override public void defaultAction (Parser parser) {
+        reject(parser, "is a custom parser");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractChoice parser)     { defaultAction(parser); }
+    @Override public void visit (AbstractForwarding parser) { defaultAction(parser); }
+    @Override public void visit (AbstractPrimitive parser)  { defaultAction(parser); }
+    @Override public void visit (AbstractWrapper parser)    { defaultAction(parser); }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Bounded parser)          { reject(parser, "refines a parse"); }
+    @Override public void visit (Collect parser)          { reject(parser, "carries an action"); }
+    @Override public void visit (ContextPredicate parser) { reject(parser, "is contextual"); }
+    @Override public void visit (LeftExpression parser)   { reject(parser, "carries actions"); }
+    @Override public void visit (Longest parser)          { reject(parser, "is a longest match"); }
+    @Override public void visit (Memo parser)             { reject(parser, "is memoized"); }
+    @Override public void visit (ObjectPredicate parser)  { reject(parser, "matches objects"); }
+    @Override public void visit (OperatorTable parser)    { reject(parser, "carries actions"); }
+    @Override public void visit (RightExpression parser)  { reject(parser, "carries actions"); }
+
+    @Override public void visit (TrailingWhitespace parser) {
+        reject(parser, "skips whitespace");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Empty parser) { result = RegexNode.EMPTY; }
+    @Override public void visit (Fail parser)  { result = RegexNode.FAIL;  }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (CharPredicate parser)
+    {
+        // Parse#charAt returns 0 at the end of input, which such a predicate would consume.
+        if (parser.set != null ? parser.set.contains(0) : parser.predicate.test(0))
+            reject(parser, "matches the end of input");
+        else
+            result = parser.set != null
+                ? RegexNode.chars(parser.set)
+                : RegexNode.chars(CharSet.ALL, parser.predicate, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (StringMatch parser)
+    {
+        if (parser.whitespace != null)
+            reject(parser, "skips whitespace");
+        else
+            result = RegexNode.string(parser.string);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (StringChoice parser)
+    {
+        // Longest strings first, as the parser always matches the longest string it can.
+        String[] strings = parser.strings.clone();
+        Arrays.sort(strings, Comparator.comparingInt(s -> -s.codePointCount(0, s.length())));
+        RegexNode[] alternatives = new RegexNode[strings.length];
+        for (int i = 0; i < strings.length; ++i)
+            alternatives[i] = RegexNode.string(strings[i]);
+        result = RegexNode.choice(alternatives);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Regex parser)
+    {
+        if (!parser.dfa.peg)
+            reject(parser, "has longest-match semantics");
+        else if (parser.regex == null)
+            reject(parser, "has no known expression");
+        else
+            result = parser.regex;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (LazyParser parser) {
+        result = child(parser.child());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Optional parser)
+    {
+        RegexNode child = child(parser.child);
+        if (child != null)
+            result = RegexNode.repeat(child, 0, 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Repeat parser)
+    {
+        RegexNode child = child(parser.child);
+        if (child != null)
+            result = RegexNode.repeat(child, parser.min, parser.exact ? parser.min : -1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Around parser)
+    {
+        RegexNode around = child(parser.around);
+        RegexNode inside = around == null ? null : child(parser.inside);
+        if (inside == null) return;
+
+        RegexNode trailing = parser.trailing
+            ? RegexNode.repeat(inside, 0, 1)
+            : RegexNode.EMPTY;
+
+        int more = Math.max(parser.min - 1, 0);
+        RegexNode list = RegexNode.seq(around,
+            RegexNode.repeat(RegexNode.seq(inside, around), more, parser.exact ? more : -1),
+            trailing);
+
+        // When min == 0, the list can't fail once the first item is matched.
+        result = parser.min == 0
+            ? RegexNode.choice(list, trailing)
+            : list;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Choice parser)
+    {
+        List<RegexNode> alternatives = new ArrayList<>();
+        for (Parser child: parser.children()) {
+            RegexNode regex = child(child);
+            if (regex == null) return;
+            alternatives.add(regex);
+        }
+        result = RegexNode.choice(alternatives.toArray(new RegexNode[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Sequence parser)
+    {
+        List<Parser> children = new ArrayList<>();
+        parser.children().forEach(children::add);
+        List<RegexNode> items = new ArrayList<>();
+
+        for (int i = 0; i < children.size(); ++i)
+        {
+            Parser child = children.get(i);
+
+            if (child instanceof Not && i + 1 < children.size()) {
+                RegexNode regex = notThen((Not) child, children.get(i + 1));
+                if (regex != null) {
+                    items.add(regex);
+                    ++i;
+                    continue;
+                }
+            }
+
+            RegexNode regex = child(child);
+            if (regex == null) return;
+            items.add(regex);
+        }
+        result = RegexNode.seq(items.toArray(new RegexNode[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Lookahead parser)
+    {
+        RegexNode.Chars chars = singleChar(parser.child, 0);
+        if (chars != null)
+            result = RegexNode.guard(chars, false);
+        else
+            reject(parser, "looks ahead further than a single character");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Not parser)
+    {
+        RegexNode.Chars chars = singleChar(parser.child, 0);
+        if (chars != null)
+            result = RegexNode.guard(chars, true);
+        else
+            reject(parser, "looks ahead further than a single character");
+    }
+
+    // =============================================================================================
+
+    /**
+     * Returns a node equivalent to {@code seq(not, next)}, if {@code not}'s child only matches
+     * strings of one or two characters and {@code next} matches a known set of characters.
+     * Returns null otherwise.
+     */
+    private RegexNode notThen (Not not, Parser next)
+    {
+        if (not.excludeErrors || next.excludeErrors)
+            return null;
+
+        RegexNode.Chars nextChars = singleChar(next, 0);
+        List<CharSet[]> strings = strings(not.child, 0);
+        if (nextChars == null || nextChars.predicate != null || strings == null)
+            return null;
+
+        // Split the consumed characters into classes that behave uniformly w.r.t. the strings,
+        // then require each class to be followed by a character that doesn't complete a string.
+
+        List<CharSet> classes = new ArrayList<>();
+        classes.add(nextChars.set);
+        for (CharSet[] string: strings) {
+            List<CharSet> split = new ArrayList<>();
+            for (CharSet cls: classes) {
+                CharSet in = cls.intersection(string[0]);
+                CharSet out = cls.minus(string[0]);
+                if (!in.isEmpty()) split.add(in);
+                if (!out.isEmpty()) split.add(out);
+            }
+            classes = split;
+        }
+
+        List<RegexNode> alternatives = new ArrayList<>();
+        outer: for (CharSet cls: classes)
+        {
+            CharSet followers = CharSet.EMPTY;
+            for (CharSet[] string: strings) {
+                if (string[0].intersection(cls).isEmpty()) continue;
+                if (string.length == 1) continue outer;
+                followers = followers.union(string[1]);
+            }
+            alternatives.add(followers.isEmpty()
+                ? RegexNode.chars(cls)
+                : RegexNode.seq(RegexNode.chars(cls),
+                    RegexNode.guard(RegexNode.chars(followers), true)));
+        }
+        return RegexNode.choice(alternatives.toArray(new RegexNode[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@code parser} always matches a single character, returns a node matching the same
+     * characters, otherwise returns null.
+     *
+     * <p>At the end of input, such a node is tested against code point 0, in accordance with
+     * {@link norswap.autumn.Parse#charAt(int)}. Parsers that would match differently are excluded.
+     */
+    private RegexNode.Chars singleChar (Parser parser, int depth)
+    {
+        if (depth > 32)
+            return null;
+
+        if (parser instanceof CharPredicate) {
+            CharPredicate pred = (CharPredicate) parser;
+            return pred.set != null
+                ? RegexNode.chars(pred.set)
+                : RegexNode.chars(CharSet.ALL, pred.predicate, false);
+        }
+
+        if (parser instanceof LazyParser)
+            return singleChar(((LazyParser) parser).child(), depth + 1);
+
+        List<CharSet[]> strings = strings(parser, depth);
+        if (strings == null)
+            return null;
+
+        CharSet set = CharSet.EMPTY;
+        for (CharSet[] string: strings) {
+            if (string.length != 1) return null;
+            set = set.union(string[0]);
+        }
+        return RegexNode.chars(set);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * If {@code parser} only matches some strings of one or two characters (none of which is code
+     * point 0), returns these strings as sequences of character sets, otherwise returns null.
+     */
+    private List<CharSet[]> strings (Parser parser, int depth)
+    {
+        if (depth > 32 || parser.excludeErrors)
+            return null;
+
+        List<CharSet[]> strings = new ArrayList<>();
+
+        if (parser instanceof CharPredicate) {
+            CharSet set = ((CharPredicate) parser).set;
+            if (set == null || set.contains(0)) return null;
+            strings.add(new CharSet[] { set });
+        }
+        else if (parser instanceof StringMatch) {
+            StringMatch match = (StringMatch) parser;
+            if (match.whitespace != null || !addString(strings, match.string)) return null;
+        }
+        else if (parser instanceof StringChoice) {
+            for (String string: ((StringChoice) parser).strings)
+                if (!addString(strings, string)) return null;
+        }
+        else if (parser instanceof LazyParser) {
+            return strings(((LazyParser) parser).child(), depth + 1);
+        }
+        else if (parser instanceof Choice) {
+            for (Parser child: parser.children()) {
+                List<CharSet[]> sub = strings(child, depth + 1);
+                if (sub == null) return null;
+                strings.addAll(sub);
+            }
+        }
+        else if (parser instanceof Sequence) {
+            List<CharSet> sets = new ArrayList<>();
+            for (Parser child: parser.children()) {
+                List<CharSet[]> sub = strings(child, depth + 1);
+                if (sub == null || sub.size() != 1) return null;
+                sets.addAll(Arrays.asList(sub.get(0)));
+            }
+            if (sets.isEmpty() || sets.size() > 2) return null;
+            strings.add(sets.toArray(new CharSet[0]));
+        }
+        else
+            return null;
+
+        return strings;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static boolean addString (List<CharSet[]> strings, String string)
+    {
+        int[] codepoints = string.codePoints().toArray();
+        if (codepoints.length == 0 || codepoints.length > 2) return false;
+        CharSet[] sets = new CharSet[codepoints.length];
+        for (int i = 0; i < codepoints.length; ++i) {
+            if (codepoints[i] == 0) return false;
+            sets[i] = CharSet.single(codepoints[i]);
+        }
+        strings.add(sets);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
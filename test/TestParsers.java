@@ -1,20 +1,60 @@
+import norswap.autumn.Autumn;
+import norswap.autumn.BacktrackWaste;
 import norswap.autumn.Grammar;
+import norswap.autumn.Parse;
+import norswap.autumn.JmxRegistry;
+import norswap.autumn.ParseBudget;
+import norswap.autumn.ParseMetrics;
+import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
+import norswap.autumn.ParseStatistics;
 import norswap.autumn.ParseState;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserMetrics;
+import norswap.autumn.RecordParseResult;
+import norswap.autumn.SamplingProfiler;
+import norswap.autumn.Speculation;
 import norswap.autumn.TestFixture;
+import norswap.autumn.TraceExporter;
 import norswap.autumn.actions.ActionContext;
+import norswap.autumn.actions.StackPush;
+import norswap.autumn.memo.AdaptiveMemoizer;
+import norswap.autumn.memo.MemoArbiter;
 import norswap.autumn.memo.MemoEntry;
 import norswap.autumn.memo.MemoTable;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.memo.SpeculationTable;
+import norswap.autumn.memo.SpeculativeEntry;
 import norswap.autumn.parsers.*;
+import norswap.autumn.positions.LineMap;
+import norswap.autumn.positions.LineMapString;
+import norswap.autumn.positions.Token;
+import norswap.autumn.positions.TokenStream;
+import norswap.autumn.visitors.RegexCompiler;
+import norswap.autumn.visitors.VisitorRegex;
 import norswap.utils.Strings;
 import norswap.utils.Vanilla;
 import norswap.utils.data.wrappers.Slot;
 import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
@@ -310,6 +350,34 @@ public final class TestParsers extends Grammar
         prefix("a,a,a,a", 6);
         failure("a,a", 3);
         failure("a,a,", 4);
+
+        // error position: after the last separator
+        rule = character('a').sep(1, character(','));
+        prefix("a,b", 1);
+        assertEquals(result.errorOffset, 2);
+        rule = character('a').sep_exact(3, character(','));
+        failure("a,ab", 3);
+        rule = character('a').sep_trailing(2, character(','));
+        prefix("a,a,b", 4);
+        assertEquals(result.errorOffset, 4);
+
+        // the effects of a separator are undone if the next item fails
+        rule comma = character(',').push($ -> ",");
+        rule = a.sep(0, comma);
+        prefix("a,a,b", 3);
+        assertEquals(result.valueStack.size(), 3);
+        assertEquals(result.topValue(), "a");
+        rule = a.sep(3, comma);
+        failure("a,a,b", 4);
+        rule = a.sep_exact(2, comma);
+        prefix("a,a,a", 3);
+        assertEquals(result.valueStack.size(), 3);
+
+        // ... but not those of a trailing separator
+        rule = a.sep_trailing(0, comma);
+        prefix("a,a,b", 4);
+        assertEquals(result.valueStack.size(), 4);
+        assertEquals(result.topValue(), ",");
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -341,6 +409,233 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void longestTokens()
+    {
+        rule ident  = seq(alpha, alphanum.at_least(0)).push($ -> "id:" + $.str());
+        rule number = digit.at_least(1).push($ -> "num:" + $.str());
+        rule kw     = str("if").push($ -> "kw:if");
+        rule arrow  = str("->").push($ -> "arrow");
+        rule minus  = character('-').push($ -> "minus");
+
+        rule = longest(kw, ident, number, arrow, minus);
+        success("if", "kw:if");
+        success("iffy", "id:iffy");
+        success("x1", "id:x1");
+        success("42", "num:42");
+        success("->", "arrow");
+        success("-", "minus");
+        prefix("-1", 1);
+        failure("", 0);
+        failure("+", 0);
+        failure("é", 0);
+
+        rule = longest(kw, ident, number, arrow, minus).at_least(1);
+        success("if->x");
+        prefix("ifx+", 3);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void reservedWords()
+    {
+        id_part = alphanum;
+        rule _in  = reserved("in");
+        rule _int = reserved("int");
+        rule _if  = reserved("if");
+        rule iden = identifier(seq(alpha, alphanum.at_least(0))).push($ -> $.str());
+
+        AssertJUnit.assertTrue(_int.getParser().substitute() instanceof ReservedWord);
+
+        rule = _int;
+        success("int");
+        failure("in", 0);
+        failure("intx", 3);
+        prefix("int_", 3); // '_' isn't part of identifiers
+
+        rule = _in;
+        success("in");
+        failure("int", 2);
+
+        rule = seq(_if, character('('));
+        success("if(");
+        failure("iff(", 2);
+
+        rule = iden;
+        success("inx", "inx");
+        success("iff", "iff");
+        success("i", "i");
+        failure("in");
+        failure("int");
+
+        rule = choice(_if, _in, _int, iden);
+        success("int");
+        assertEquals(result.valueStack.size(), 0);
+        success("integer", "integer");
+
+        // reserved words that can't be classified as identifiers are matched as usual
+        rule r = reserved("a-b");
+        AssertJUnit.assertTrue(r.getParser().substitute() == null);
+        rule = r;
+        success("a-b");
+        failure("a-bc", 3);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void regex()
+    {
+        rule = regex("[0-9]+(?:\\.[0-9]+)?");
+        success("42");
+        success("4.2");
+        prefix("4.", 1);
+        prefix("4.2.", 3);
+        failure("");
+        failure("a", 0);
+
+        rule = regex_peg("[0-9]+(?:\\.[0-9]+)?");
+        success("4.2");
+        prefix("4.", 1);
+
+        // longest match vs ordered choice
+
+        rule = regex("a|ab");
+        success("ab");
+        rule = regex_peg("a|ab");
+        prefix("ab", 1);
+
+        // greedy & possessive repetition
+
+        rule = regex("a*a");
+        success("aaa");
+        rule = regex_peg("a*a");
+        failure("aaa", 3);
+
+        // tentative matches are revoked by higher-priority alternatives
+
+        rule = regex_peg("(?:ab)*a");
+        success("aba");
+        prefix("abac", 3);
+        failure("abab", 4);
+        failure("ab", 2);
+
+        // one-character lookaheads
+
+        rule = regex_peg("[a-z]+(?![0-9])");
+        success("abc");
+        failure("abc1", 3);
+
+        rule = seq(regex_peg("if(?![a-z])"), str(" x"));
+        success("if x");
+        failure("iff x", 2);
+
+        // pending cuts that pile up are rejected quickly instead of exhausting the state budget
+
+        String[] patterns = {
+            "(a(a+a)?)*",
+            "([ab](a+a)?)*",
+            "(([ab]{1,2}a*[ab]{1,2}|aa){1,2}[ab]{1,2}[ab]?)+[ab]*b",
+            "(((((a+[ab])|[ab]))+b)b*b*|b)",
+            "([ab]b+|a((a+a|[ab]))*)" };
+
+        for (String pattern: patterns) {
+            long start = System.nanoTime();
+            try {
+                regex_peg(pattern);
+            } catch (IllegalArgumentException e) {
+                // rejection is fine
+            }
+            AssertJUnit.assertTrue(pattern, System.nanoTime() - start < 5_000_000_000L);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void compileRegular()
+    {
+        rule number  = seq(digit.at_least(1), seq('.', digit.at_least(1)).opt());
+        rule comment = seq("/*", seq(str("*/").not(), any).at_least(0), "*/");
+        rule keyword = seq(choice("if", "in", "int"), not(alphanum));
+        Slot<rule> list = new Slot<>();
+        rule = choice(number.push($ -> $.str()), comment, keyword,
+            seq('(', lazy(() -> list.x), ')'));
+        list.x = rule.sep(0, ',');
+
+        RegexCompiler compiler = new RegexCompiler();
+        compiler.compile(rule.getParser());
+        AssertJUnit.assertNotNull(number.getParser().substitute());
+        AssertJUnit.assertNotNull(comment.getParser().substitute());
+        AssertJUnit.assertNotNull(keyword.getParser().substitute());
+        AssertJUnit.assertNull(rule.getParser().substitute());
+        AssertJUnit.assertTrue(
+            new VisitorRegex().reason(rule.getParser()).contains("carries an action"));
+
+        success("42");
+        success("4.2");
+        prefix("4.", 1);
+        success("/* a * b */");
+        failure("/* a *", 6);
+        success("if");
+        success("in");
+        failure("int", 2);
+        failure("ifx", 2);
+        success("(/**/,(),if)");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void compileRegularReservedWords()
+    {
+        // A separate grammar, so as not to register reserved words in this one.
+        class Words extends Grammar {
+            { id_part = alphanum; }
+            final rule _if  = reserved("if");
+            final rule _int = reserved("int");
+            final rule iden = identifier(seq(alpha, alphanum.at_least(0)));
+            final rule list = choice(_if, _int, iden).sep(1, ',');
+            @Override public rule root() { return list; }
+        }
+
+        Words grammar = new Words();
+        rule = grammar.list;
+        new RegexCompiler().compile(rule.getParser());
+
+        // the ReservedWord substitutes are kept, not bypassed by an enclosing automaton
+        AssertJUnit.assertTrue(grammar._int.getParser().substitute() instanceof ReservedWord);
+        Parser reservedWords = grammar.any_reserved_word.getParser();
+        AssertJUnit.assertNull(reservedWords.substitute());
+        AssertJUnit.assertTrue(
+            reservedWords.children().iterator().next().substitute() instanceof ReservedWord);
+        AssertJUnit.assertNull(grammar.iden.getParser().substitute());
+
+        success("if,int,iff,x1");
+        failure("if,in t", 5);
+        failure("int,", 4);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void compileRegularRulesLimits()
+    {
+        // The automaton for the repetition exceeds the construction limits: compilation gives up
+        // on it quickly and compiles what it can.
+        Grammar grammar = new Grammar() {
+            final rule a = character('a');
+            final rule root = seq(a, seq(a.at_least(1), a).opt()).at_least(0);
+            @Override public rule root() { return root; }
+        };
+
+        long start = System.nanoTime();
+        grammar.compileRegularRules();
+        AssertJUnit.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+
+        rule = grammar.root();
+        success("aaa");
+        success("");
+        failure("aab", 2);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void lookahead()
     {
         rule = seq(character('a').ahead(), character('a'));
@@ -454,6 +749,182 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void actionContexts()
+    {
+        ArrayList<ActionContext> contexts = new ArrayList<>();
+
+        StackPush transientPush = new StackPush() {
+            @Override public Object get (ActionContext $) {
+                contexts.add($);
+                return $.$.length + ":" + $.str();
+            }
+            @Override public boolean retainsContext() { return false; }
+        };
+
+        StackPush lightPush = new StackPush() {
+            @Override public Object get (ActionContext $) {
+                return $.$.length + ":" + $.str();
+            }
+            @Override public boolean usesItems() { return false; }
+        };
+
+        // contexts are reused between applications...
+        rule = seq(a, a.push(transientPush), a.push(transientPush));
+        success("aaa");
+        AssertJUnit.assertTrue(contexts.get(0) == contexts.get(1));
+        assertEquals(result.valueStack.peekBack(0), "1:a");
+
+        // ... unless the action retains them
+        contexts.clear();
+        rule = seq(a.collect(contexts::add), a.collect(contexts::add));
+        success("aa");
+        AssertJUnit.assertTrue(contexts.get(0) != contexts.get(1));
+        assertEquals(contexts.get(0).$[0], "a");
+
+        // items are not copied for actions that don't use them
+        rule = seq(a, a).push(lightPush, PEEK_ONLY);
+        success("aa");
+        assertEquals(result.valueStack.size(), 3);
+        assertEquals(result.topValue(), "0:aa");
+
+        // but are still popped if required (and then passed anyway, as popping copies them)
+        rule = seq(a, a).push(lightPush);
+        success("aa", "2:aa");
+
+        // built-in actions
+        rule = seq(a, str("b").as_val("b"), str("c").as_bool(), str("d").or_push_null());
+        success("abc");
+        assertEquals(result.valueStack.size(), 4);
+        assertEquals(result.valueStack.peekBack(2), "b");
+        assertEquals(result.valueStack.peekBack(1), true);
+        assertEquals(result.valueStack.peekBack(0), null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void recognizeOnly()
+    {
+        Slot<Integer> count = new Slot<>(0);
+        rule counted = a.collect($ -> count.x++, REQUIRED);
+
+        fixture.options = ParseOptions.recognizeOnly(true).get();
+
+        rule = seq(a, a).push($ -> $.$.length).as_list(Object.class);
+        success("aa");
+        assertEquals(result.valueStack.size(), 0);
+
+        // filters still run, on the items pushed by their child
+        rule = seq(a, a).filter($ -> $.$[1].equals("b"));
+        failure("aa");
+
+        // so do required actions
+        rule = seq(counted, b.as_bool());
+        success("ab");
+        AssertJUnit.assertTrue(count.x > 0);
+        assertEquals(result.valueStack.size(), 0);
+
+        // expression operators
+        rule = left_expression().operand(a).infix(str("+"), $ -> $.$[0] + "+" + $.$[1]);
+        success("a+a+a");
+        assertEquals(result.valueStack.size(), 0);
+
+        // expressions with required steps match in normal mode, so that steps get their operands
+        StackPush requiredStep = new StackPush() {
+            @Override public Object get (ActionContext $) {
+                return "(" + $.$[0] + $.$[1] + ")";
+            }
+            @Override public boolean required() {
+                return true;
+            }
+        };
+
+        rule = left_expression().operand(a).infix(str("+"), requiredStep);
+        success("a+a+a", "((aa)a)");
+        rule = right_expression().operand(a).infix(str("+"), requiredStep);
+        success("a+a+a", "(a(aa))");
+        rule = operator_table().operand(a)
+            .right_assoc().infix(str("^"), requiredStep)
+            .left_assoc().infix(str("+"), $ -> $.$[0] + "+" + $.$[1]);
+        success("a^a+a", "(aa)+a");
+
+        fixture.options = null;
+
+        // the mode is restored when the child of a recognize() parser throws
+        Parser thrower = seq(a, a).filter($ -> { throw new IllegalStateException(); })
+            .recognize().getParser();
+        rule recovering = rule(new Parser() {
+            @Override protected boolean doparse (Parse parse) {
+                int pos0 = parse.pos;
+                int log0 = parse.log.size();
+                try {
+                    return thrower.parse(parse);
+                } catch (IllegalStateException e) {
+                    parse.pos = pos0;
+                    parse.log.rollback(log0);
+                    return false;
+                }
+            }
+            @Override public Iterable<Parser> children() {
+                return Collections.singleton(thrower);
+            }
+            @Override public String toStringFull() {
+                return "recovering";
+            }
+        });
+        rule = choice(recovering, seq(a, a));
+        success("aa");
+        assertEquals(result.valueStack.size(), 2);
+
+        // recognition-only mode for a sub-parser
+        rule = seq(seq(a, b).recognize().ahead(), a, b);
+        success("ab");
+        assertEquals(result.valueStack.size(), 2);
+
+        // results memoized in recognition-only mode are not reused in normal mode
+        rule amemo = a.memo();
+        rule = seq(amemo.recognize().ahead(), amemo);
+        success("a");
+        assertEquals(result.valueStack.size(), 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void cachedPredicates()
+    {
+        Slot<Integer> count = new Slot<>(0);
+        rule x = cpred(c -> { ++count.x; return c == 'x'; });
+
+        rule = choice(seq(x.not(), a, a), seq(x.not(), a, b));
+        success("ab");
+        int uncached = count.x;
+
+        count.x = 0;
+        rule notx = x.cached_not();
+        rule = choice(seq(notx, a, a), seq(notx, a, b));
+        success("ab");
+        assertEquals((int) count.x, uncached / 2);
+        failure("xb", 0);
+
+        // lookahead results are reused across alternatives
+        rule ab = str("ab").cached_ahead();
+        rule = choice(seq(ab, a, a), seq(ab, a));
+        prefix("ab", 1);
+        failure("ac", 0);
+
+        rule aheadx = x.cached_ahead();
+        rule = choice(seq(aheadx, a), seq(aheadx, x, b));
+        success("xb");
+        failure("ab", 0);
+
+        // the cache is bypassed within a bounded parser
+        rule end = any.cached_not();
+        rule = seq(a.refine(seq(a, end)).exact(), end);
+        success("a");
+        failure("ab");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void backtracking()
     {
         rule = choice(seq(a,a), seq(character('a'), b));
@@ -643,6 +1114,832 @@ public final class TestParsers extends Grammar
         assertEquals(cntval.get(), 4);
         success("aaa");
         assertEquals(cntval.get(), 8);
+
+        // 6. Failures are remembered regardless of the number of entries, and report the same
+        // results and error positions as without memoization.
+
+        rule x = cpred(c -> c == 'x');
+        rule xmemo = x.memo(1);
+        rule plain = choice(seq(a, x), seq(x, a), seq(a, x, b), seq(a, b));
+        rule memoized = choice(seq(a, xmemo), seq(xmemo, a), seq(a, xmemo, b), seq(a, b));
+
+        for (String input: new String[] { "ab", "axb", "xa", "ac", "axc" })
+        {
+            ParseResult expected = Autumn.parse(plain, input, ParseOptions.get());
+            ParseResult actual = Autumn.parse(memoized, input, ParseOptions.get());
+            assertEquals(actual.success, expected.success);
+            assertEquals(actual.matchSize, expected.matchSize);
+            assertEquals(actual.errorOffset, expected.errorOffset);
+        }
+
+        rule = choice(seq(xmemo.ahead(), a), seq(not(xmemo), not(xmemo), a, xmemo));
+        failure("ab", 1);
+        success("ax");
+
+        // 7. Failures under a narrowed end of input are not remembered.
+
+        rule abmemo = seq(a, b).memo(1);
+        rule = choice(a.refine(abmemo).exact(), abmemo);
+        success("ab");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void adaptiveMemo()
+    {
+        AdaptiveMemoizer memo = new AdaptiveMemoizer(new MemoTable(false), null, 0.5);
+        AssertJUnit.assertTrue(memo.isEnabled());
+
+        // no hits: switches off
+        for (int i = 0; i < AdaptiveMemoizer.WINDOW; ++i)
+            if (memo.enabled(null, i))
+                memo.get(null, i, null);
+        AssertJUnit.assertFalse(memo.isEnabled());
+
+        // repeated invocations at the same positions: switches back on
+        for (int i = 0; i < AdaptiveMemoizer.WINDOW; ++i)
+            memo.enabled(null, i / 4);
+        AssertJUnit.assertTrue(memo.isEnabled());
+
+        // results are the same either way
+        rule amemo = a.adaptive_memo(3);
+        rule = choice(seq(amemo, b), seq(amemo, a)).at_least(1);
+        success("aaaa");
+        assertEquals(result.valueStack.size(), 4);
+        success("abaa");
+        assertEquals(result.valueStack.size(), 4);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void memoBudget()
+    {
+        MemoTable useful = new MemoTable(false);
+        MemoTable useless = new MemoTable(false);
+        MemoArbiter arbiter = new MemoArbiter(4);
+
+        for (int i = 0; i < 2; ++i) {
+            useful.memoize(new MemoEntry(false, null, i, -1, null, null));
+            arbiter.added(useful);
+            arbiter.hit(useful);
+            useless.memoize(new MemoEntry(false, null, i, -1, null, null));
+            arbiter.added(useless);
+        }
+        assertEquals(arbiter.total(), 4L);
+
+        // exceeding the budget clears the table with the fewest hits per entry
+        useful.memoize(new MemoEntry(false, null, 2, -1, null, null));
+        arbiter.added(useful);
+        assertEquals(useless.size(), 0);
+        assertEquals(useful.size(), 3);
+        assertEquals(arbiter.total(), 3L);
+        assertEquals(arbiter.evictions(), 1);
+
+        // results are the same within a budget
+        fixture.options = ParseOptions.memoBudget(1).get();
+        rule amemo = a.memo();
+        rule bmemo = b.memo();
+        rule = choice(seq(amemo, bmemo, a), seq(amemo, bmemo, b), seq(amemo, a)).at_least(1);
+        success("abbaa");
+        assertEquals(result.valueStack.size(), 5);
+
+        // memoizers are cleared during the parse to stay within the budget
+        AtomicInteger clears = new AtomicInteger();
+        Supplier<ParseState<Memoizer>> counting = () -> new ParseState<>(new Object(),
+            () -> new Memoizer() {
+                final MemoTable table = new MemoTable(false);
+                @Override public void memoize (MemoEntry entry) {
+                    table.memoize(entry);
+                }
+                @Override public MemoEntry get (Parser parser, int pos, Object ctx) {
+                    return table.get(parser, pos, ctx);
+                }
+                @Override public int size() {
+                    return table.size();
+                }
+                @Override public void clear() {
+                    clears.incrementAndGet();
+                    table.clear();
+                }
+                @Override public String toString (LineMap map) {
+                    return table.toString(map);
+                }
+                @Override public String listing (LineMap map) {
+                    return table.listing(map);
+                }
+            });
+        amemo = a.memo(counting.get());
+        bmemo = b.memo(counting.get());
+        rule = choice(seq(amemo, bmemo, a), seq(amemo, bmemo, b), seq(amemo, a)).at_least(1);
+        success("abbaa");
+        assertEquals(result.valueStack.size(), 5);
+        AssertJUnit.assertTrue(clears.get() > 0);
+        fixture.options = null;
+
+        // the budget must be positive
+        for (int budget: new int[] { 0, -1 }) {
+            boolean thrown = false;
+            try {
+                ParseOptions.memoBudget(budget);
+            } catch (IllegalArgumentException e) {
+                thrown = true;
+            }
+            AssertJUnit.assertTrue(thrown);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void speculation()
+    {
+        ws = str(" ").at_least(0);
+        rule item = digit.at_least(1).push($ -> Integer.valueOf($.str())).word().memo();
+        rule list = item.sep(0, word(",")).as_list(Integer.class);
+        ws = null;
+
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 20_000; ++i)
+            b.append(i).append(i % 3 == 0 ? ", " : ",");
+        String input = b.append(0).toString();
+        String broken = input.substring(0, 30_000) + "x" + input.substring(30_001);
+
+        ParseOptions sequential = ParseOptions.wellFormednessCheck(false).get();
+        ParseResult expected = Autumn.parse(list, input, sequential);
+        ParseResult expectedError = Autumn.parse(list, broken, sequential);
+        assertEquals(expected.fullMatch, true);
+        assertEquals(expectedError.fullMatch, false);
+
+        // small capacity and window, to exercise dropped results and waiting workers
+        Speculation speculation = new Speculation(Speculation.after(","), 2, 1 << 10, 1 << 14, item);
+
+        for (boolean trackWhitespace: new boolean[] { true, false }) {
+            ParseOptions options = ParseOptions.wellFormednessCheck(false)
+                .speculation(speculation)
+                .trackWhitespace(trackWhitespace)
+                .get();
+            ParseResult r = Autumn.parse(list, input, options);
+            assertEquals(r.fullMatch, true);
+            assertEquals(r.valueStack, expected.valueStack);
+            r = Autumn.parse(list, broken, options);
+            assertEquals(r.matchSize, expectedError.matchSize);
+            assertEquals(r.errorOffset, expectedError.errorOffset);
+            assertEquals(r.valueStack, expectedError.valueStack);
+        }
+
+        // a full table reclaims the slots of positions the main parse has moved past
+        SpeculationTable table = new SpeculationTable(16);
+        Parser parser = item.getParser();
+        for (int pos = 0; pos < 16; ++pos)
+            assertEquals(table.publish(speculative(parser, pos), 0), true);
+        assertEquals(table.publish(speculative(parser, 16), 0), false);
+        assertEquals(table.publish(speculative(parser, 16), 8), true);
+        assertEquals(table.take(parser, 16).startPosition, 16);
+        assertEquals(table.take(parser, 15).startPosition, 15);
+
+        // only memoized rules without context extractor can be used
+        boolean thrown = false;
+        try { new Speculation(Speculation.after(","), list); }
+        catch (IllegalArgumentException e) { thrown = true; }
+        assertEquals(thrown, true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static SpeculativeEntry speculative (Parser parser, int pos) {
+        return new SpeculativeEntry(parser, pos, pos + 1, new Object[0], pos, -1, -1, -1, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void refinement()
+    {
+        ws = str(" ").at_least(0);
+        rule number = digit.at_least(1).push($ -> Integer.valueOf($.str())).word();
+        rule body = seq(word("{"), number.at_least(0), word("}")).as_list(Integer.class);
+        rule block = seq('{', cpred(c -> c != '}').at_least(0), '}').word()
+            .refine(body).parallel().exact();
+        rule name = cpred(Character::isLetter).at_least(1).push($ -> $.str()).word();
+        rule blocks = seq(ws, seq(name, block).at_least(0)).as_list(Object.class);
+        ws = null;
+
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 2_000; ++i)
+            b.append(i % 2 == 0 ? "f { " : "g {").append(i).append(' ').append(i + 1).append("} ");
+        String input = b.toString();
+        String broken = input.substring(0, 10_000) + "x" + input.substring(10_001);
+
+        ParseOptions sequential = ParseOptions.wellFormednessCheck(false).get();
+        ParseResult expected = Autumn.parse(blocks, input, sequential);
+        ParseResult expectedError = Autumn.parse(blocks, broken, sequential);
+        assertEquals(expected.fullMatch, true);
+        assertEquals(expectedError.fullMatch, false);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> { submitted.incrementAndGet(); pool.execute(task); };
+        try {
+            for (boolean trackWhitespace: new boolean[] { true, false }) {
+                ParseOptions options = ParseOptions.wellFormednessCheck(false)
+                    .refinement(executor)
+                    .trackWhitespace(trackWhitespace)
+                    .get();
+                submitted.set(0);
+                ParseResult r = Autumn.parse(blocks, input, options);
+                assertEquals(submitted.get(), 2_000);
+                assertEquals(r.fullMatch, true);
+                assertEquals(r.valueStack, expected.valueStack);
+                r = Autumn.parse(blocks, broken, options);
+                assertEquals(r.matchSize, expectedError.matchSize);
+                assertEquals(r.errorOffset, expectedError.errorOffset);
+                assertEquals(r.valueStack, expectedError.valueStack);
+            }
+
+            // memoization applies during the recognition pass (this grammar is exponential
+            // without it), and the fine parsers are only run once, on behalf of the main parse
+            AtomicInteger bodies = new AtomicInteger();
+            ws = str(" ").at_least(0);
+            rule counted = body.collect($ -> { bodies.incrementAndGet(); $.push($.$[0]); });
+            rule entry = seq(name, seq('{', cpred(c -> c != '}').at_least(0), '}').word()
+                .refine(counted).parallel().exact()).memo();
+            Slot<rule> list = new Slot<>();
+            list.x = choice(
+                seq(entry, lazy(() -> list.x), word(";")),
+                seq(entry, lazy(() -> list.x)),
+                empty).memo();
+            rule entries = seq(ws, list.x).as_list(Object.class);
+            ws = null;
+
+            b.setLength(0);
+            for (int i = 0; i < 200; ++i)
+                b.append("f { ").append(i).append(" } ");
+            input = b.toString();
+
+            expected = Autumn.parse(entries, input, sequential);
+            bodies.set(0);
+            submitted.set(0);
+            ParseOptions options = ParseOptions.wellFormednessCheck(false)
+                .refinement(executor).get();
+            ParseResult r = Autumn.parse(entries, input, options);
+            assertEquals(r.fullMatch, true);
+            assertEquals(r.valueStack, expected.valueStack);
+            assertEquals(submitted.get(), 200);
+            assertEquals(bodies.get(), 200);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseAll()
+    {
+        Grammar grammar = new Grammar() {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', lazy(() -> this.value).sep(0, ','), ']')
+                .as_list(Object.class);
+            final rule value = choice(number, list);
+            @Override public rule root() { return value; }
+        };
+
+        ArrayList<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 200; ++i)
+            inputs.add(i % 10 == 9 ? "[" + i + "," : "[" + i + ",[" + i + "]]");
+
+        AtomicIntegerArray calls = new AtomicIntegerArray(inputs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<ParseResult> results;
+        try {
+            results = Autumn.parseAll(grammar.root(), inputs, ParseOptions.get(), executor,
+                (r, i) -> calls.incrementAndGet(i));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(results.size(), inputs.size());
+        for (int i = 0; i < inputs.size(); ++i) {
+            ParseResult expected = Autumn.parse(grammar.root(), inputs.get(i), ParseOptions.get());
+            assertEquals(results.get(i).fullMatch, expected.fullMatch);
+            assertEquals(results.get(i).errorOffset, expected.errorOffset);
+            assertEquals(results.get(i).valueStack, expected.valueStack);
+            assertEquals(calls.get(i), 1);
+        }
+
+        // the grammar was frozen
+        assertEquals(grammar.frozen(), true);
+        assertEquals(grammar.root().getParser().frozen(), true);
+        boolean thrown = false;
+        try { grammar.root().getParser().setSubstitute(null); }
+        catch (IllegalStateException e) { thrown = true; }
+        assertEquals(thrown, true);
+
+        // a trace exporter cannot be shared by concurrent parses
+        ParseOptions exported = ParseOptions
+            .traceExporter(new TraceExporter(new StringWriter(), TraceExporter.Format.COLLAPSED))
+            .get();
+        thrown = false;
+        try { Autumn.parseAll(grammar.root(), inputs, exported, Runnable::run); }
+        catch (IllegalArgumentException e) { thrown = true; }
+        assertEquals(thrown, true);
+        thrown = false;
+        try { Autumn.parseRecords(grammar.root(), "[1]", c -> c == '\n', exported,
+            ForkJoinPool.commonPool()); }
+        catch (IllegalArgumentException e) { thrown = true; }
+        assertEquals(thrown, true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void sharedMetrics()
+    {
+        Grammar grammar = new Grammar() {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', lazy(() -> this.value).sep(0, ','), ']')
+                .as_list(Object.class);
+            final rule value = choice(number, list);
+            @Override public rule root() { return value; }
+        };
+
+        ArrayList<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 500; ++i)
+            inputs.add(i % 10 == 9 ? "[" + i + "," : "[" + i + ",[" + i + "]]");
+
+        ParseMetrics shared = new ParseMetrics();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Autumn.parseAll(grammar.root(), inputs, ParseOptions.metrics(() -> shared).get(),
+                executor, null);
+        } finally {
+            executor.shutdown();
+        }
+
+        ParseMetrics sequential = new ParseMetrics();
+        ParseOptions options = ParseOptions.metrics(() -> sequential).get();
+        for (String input: inputs)
+            Autumn.parse(grammar.root(), input, options);
+
+        Map<Parser, ParserMetrics> expected = sequential.metrics();
+        Map<Parser, ParserMetrics> actual = shared.metrics();
+        assertEquals(actual.keySet(), expected.keySet());
+        for (Parser parser: expected.keySet())
+            assertEquals(actual.get(parser).invocations, expected.get(parser).invocations);
+
+        Parser root = grammar.root().getParser();
+        assertEquals(shared.get(root).invocations, expected.get(root).invocations);
+        assertEquals(shared.get(root).invocations >= inputs.size(), true);
+        assertEquals(shared.get(root).totalTime >= shared.get(root).selfTime, true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void samplingProfiler()
+    {
+        Grammar grammar = new Grammar() {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', lazy(() -> this.value).sep(0, ','), ']')
+                .as_list(Object.class);
+            final rule value = choice(number, list);
+            @Override public rule root() { return value; }
+        };
+
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < 10_000; ++i) b.append(i).append(",[").append(i).append("],");
+        String input = b.append("0]").toString();
+
+        Parser root = grammar.root().getParser();
+        ParseOptions options;
+        ParserMetrics metrics = null;
+        try (SamplingProfiler profiler = new SamplingProfiler(Duration.ofNanos(100_000))) {
+            options = ParseOptions.profiler(profiler).get();
+            // sampling is not deterministic: parse until the root has been sampled
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (metrics == null && System.nanoTime() < deadline) {
+                ParseResult result = Autumn.parse(grammar.root(), input, options);
+                assertEquals(result.fullMatch, true);
+                metrics = profiler.metrics().get(root);
+            }
+            AssertJUnit.assertNotNull(metrics);
+            assertEquals(metrics.totalTime > 0, true);
+            assertEquals(metrics.invocations, 0L);
+            for (ParserMetrics m: profiler.metrics().metrics().values())
+                assertEquals(m.selfTime <= m.totalTime, true);
+
+            profiler.reset();
+            assertEquals(profiler.metrics().metrics().isEmpty(), true);
+
+            // the sampling thread parks (without timeout) while no parse is running
+            boolean parked = false;
+            deadline = System.nanoTime() + 1_000_000_000L;
+            while (!parked && System.nanoTime() < deadline) {
+                for (Thread thread: Thread.getAllStackTraces().keySet())
+                    if (thread.getName().equals("autumn-sampling-profiler")
+                            && thread.getState() == Thread.State.WAITING)
+                        parked = true;
+                Thread.yield();
+            }
+            AssertJUnit.assertTrue(parked);
+        }
+
+        // same results as without the profiler
+        ParseResult expected = Autumn.parse(grammar.root(), input, ParseOptions.get());
+        ParseResult actual = Autumn.parse(grammar.root(), input, options);
+        assertEquals(actual.valueStack, expected.valueStack);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void backtrackWaste()
+    {
+        class WasteGrammar extends Grammar {
+            final rule ab = str("ab");
+            final rule word = ab.at_least(1);
+            final rule line = choice(seq(word, '!'), seq(word, '?'), seq(word, '.'));
+            final rule lines = line.sep(0, '\n');
+            @Override public rule root() { return lines; }
+        }
+        WasteGrammar grammar = new WasteGrammar();
+        String input = "ab!\nabab.\nab?";
+
+        ParseResult result = Autumn.parse(grammar.root(), input, ParseOptions.trackWaste(true).get());
+        assertEquals(result.fullMatch, true);
+        BacktrackWaste waste = result.backtrackWaste;
+        Parser word = grammar.word.getParser();
+
+        // "abab" is discarded twice on the second line, "ab" once on the third line
+        assertEquals(waste.discarded(word), 3L);
+        assertEquals(waste.wasted(word), 10L);
+        assertEquals(waste.wasted(grammar.line.getParser()), 0L);
+        assertEquals(waste.ranking().contains(word), true);
+
+        // the matches of "ab" were folded into those of word, which are charged instead
+        assertEquals(waste.discarded(grammar.ab.getParser()), 0L);
+        assertEquals(waste.ranking().contains(grammar.line.getParser()), false);
+
+        int[] rescans = new int[input.length()];
+        for (int i = 0; i < rescans.length; ++i) rescans[i] = waste.rescans(i);
+        assertEquals(rescans, new int[] {0, 0, 0, 0, 2, 2, 2, 2, 0, 0, 1, 1, 0});
+        assertEquals(waste.heatmap(new LineMapString(input)),
+            "line,rescans,max\n1,0,0\n2,8,2\n3,2,1\n");
+
+        // no effect on the parse
+        ParseResult expected = Autumn.parse(grammar.root(), input, ParseOptions.get());
+        assertEquals(result.valueStack, expected.valueStack);
+        assertEquals(expected.backtrackWaste, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void traceExport()
+    {
+        class ListGrammar extends Grammar {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', lazy(() -> this.value).sep(0, ','), ']')
+                .as_list(Object.class);
+            final rule value = choice(number, list);
+            @Override public rule root() { return value; }
+        }
+        ListGrammar grammar = new ListGrammar();
+        String input = "[1,[2,[3]],4]";
+
+        StringWriter collapsed = new StringWriter();
+        StringWriter chrome = new StringWriter();
+        ParseResult result;
+        try (TraceExporter exporter = new TraceExporter(collapsed, TraceExporter.Format.COLLAPSED)) {
+            result = Autumn.parse(grammar, input, ParseOptions.traceExporter(exporter).get());
+            assertEquals(result.fullMatch, true);
+        }
+        try (TraceExporter exporter = new TraceExporter(chrome, TraceExporter.Format.CHROME)) {
+            Autumn.parse(grammar, input, ParseOptions.traceExporter(exporter).get());
+        }
+
+        HashMap<String, Long> stacks = new HashMap<>();
+        for (String line: collapsed.toString().split("\n")) {
+            int space = line.lastIndexOf(' ');
+            stacks.put(line.substring(0, space), Long.parseLong(line.substring(space + 1)));
+        }
+        assertEquals(stacks.containsKey("value;list;value;list;value;list;value;number"), true);
+        assertEquals(stacks.containsKey("value;list;value;list;value;list;value;list"), false);
+        for (String stack: stacks.keySet())
+            assertEquals(stack.startsWith("value"), true);
+
+        // one event per invocation of a rule
+        String events = chrome.toString();
+        assertEquals(events.startsWith("[\n"), true);
+        assertEquals(events.endsWith("\n]\n"), true);
+        Parser number = grammar.number.getParser();
+        int count = events.split("\"name\":\"number\"", -1).length - 1;
+        assertEquals((long) count, result.parseMetrics.get(number).invocations);
+        assertEquals(events.contains("\"name\":\"value\",\"ph\":\"X\""), true);
+        assertEquals(events.contains("\"args\":{\"start\":0,\"end\":13}"), true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseStatistics() throws Exception
+    {
+        class ListGrammar extends Grammar {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', number.sep(0, ','), ']').as_list(Object.class);
+            @Override public rule root() { return list; }
+        }
+        ListGrammar grammar = new ListGrammar();
+        ParseStatistics statistics = new ParseStatistics();
+        ParseOptions options = ParseOptions.statistics(statistics).get();
+
+        StringBuilder large = new StringBuilder("[0");
+        for (int i = 1; i < 1000; ++i) large.append(',').append(i);
+        large.append(']');
+
+        assertEquals(Autumn.parse(grammar, "[1,2,3]", options).fullMatch, true);
+        assertEquals(Autumn.parse(grammar, "[1,2,", options).fullMatch, false);
+        assertEquals(Autumn.parse(grammar, large.toString(), options).fullMatch, true);
+
+        assertEquals(statistics.parses(), 3L);
+        assertEquals(statistics.failures(), 1L);
+        assertEquals(statistics.inputUnits(), 7L + 5L + large.length());
+        assertEquals(statistics.latencies(0).count(), 2L);
+        assertEquals(statistics.latencies(1).count(), 1L);
+        // one push per number, then a pop and a push for the list
+        assertEquals(statistics.logHighWaterMark(), 1002L);
+        assertEquals(statistics.throughput() > 0, true);
+
+        // the memo high-water mark counts the entries held at once, not the entries stored
+        class MemoGrammar extends Grammar {
+            final rule number = digit.at_least(1).push($ -> $.str()).memo();
+            final rule list = seq('[', number.sep(0, ','), ']').as_list(Object.class);
+            @Override public rule root() { return list; }
+        }
+        MemoGrammar memoGrammar = new MemoGrammar();
+        ParseStatistics memoStatistics = new ParseStatistics();
+        assertEquals(Autumn.parse(memoGrammar, large.toString(),
+            ParseOptions.statistics(memoStatistics).get()).fullMatch, true);
+        assertEquals(memoStatistics.memoHighWaterMark(), 1000L);
+        memoStatistics.reset();
+        assertEquals(Autumn.parse(memoGrammar, large.toString(),
+            ParseOptions.statistics(memoStatistics).memoBudget(10).get()).fullMatch, true);
+        assertEquals(memoStatistics.memoHighWaterMark() > 0, true);
+        assertEquals(memoStatistics.memoHighWaterMark() <= 10, true);
+
+        ParseStatistics.Histogram latencies = statistics.latencies();
+        assertEquals(latencies.percentile(50) <= latencies.percentile(99.9), true);
+        assertEquals(latencies.percentile(99.9), latencies.max());
+
+        ParseStatistics.Histogram histogram = new ParseStatistics.Histogram();
+        for (long i = 1; i <= 100_000; ++i) histogram.record(i * 1000);
+        long median = histogram.percentile(50);
+        assertEquals(median >= 50_000_000L && median <= 50_000_000L * 33 / 32, true);
+        assertEquals(histogram.percentile(100), 100_000_000L);
+
+        JmxRegistry registry = new JmxRegistry();
+        registry.register("lists", statistics);
+        try {
+            Object parses = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(JmxRegistry.objectName("lists"), "Parses");
+            assertEquals(parses, 3L);
+        } finally {
+            registry.unregister("lists");
+        }
+
+        statistics.reset();
+        assertEquals(statistics.parses(), 0L);
+        assertEquals(statistics.snapshot().get("latency.p99"), 0L);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseBudget()
+    {
+        // Exponential backtracking: each level retries the next one with the second alternative.
+        class NestedGrammar extends Grammar {
+            final rule nested = choice(
+                seq('(', lazy(() -> this.nested), ')'),
+                seq('(', lazy(() -> this.nested), ']'),
+                'x');
+            final rule root = seq(nested, '!');
+            final rule block = seq('{', cpred(c -> c != '}').at_least(0), '}')
+                .refine(seq('{', digit.at_least(0), '}')).parallel().exact();
+            final rule refined = choice(root, block);
+            @Override public rule root() { return root; }
+        }
+        NestedGrammar grammar = new NestedGrammar();
+        String input = Strings.repeat('(', 40) + "y";
+        Parser nested = grammar.nested.getParser();
+
+        ParseResult result = Autumn.parse(grammar, input, ParseOptions
+            .budget(ParseBudget.builder().maxInvocations(100_000).get()).get());
+        assertEquals(result.fullMatch, false);
+        assertEquals(result.thrown, result.budgetExceeded);
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.INVOCATIONS);
+        assertEquals(result.budgetExceeded.invocations, 100_001L);
+        assertEquals(result.budgetExceeded.hottestParser, nested);
+        assertEquals(result.budgetExceeded.hottestPosition > 0, true);
+        assertEquals(result.budgetExceeded.hottestPosition
+            <= result.budgetExceeded.furthestPosition, true);
+
+        result = Autumn.parse(grammar, input, ParseOptions
+            .budget(ParseBudget.builder().maxInvocationsPerPosition(1000).get()).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.INVOCATIONS_PER_POSITION);
+
+        result = Autumn.parse(grammar, input, ParseOptions
+            .budget(ParseBudget.builder().timeout(Duration.ofMillis(10)).get()).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.DEADLINE);
+
+        ParseBudget.CancellationToken token = new ParseBudget.CancellationToken();
+        ArrayList<Integer> progress = new ArrayList<>();
+        result = Autumn.parse(grammar, input, ParseOptions.budget(ParseBudget.builder()
+            .cancellation(token)
+            .progress(pos -> { progress.add(pos); token.cancel(); })
+            .get()).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.CANCELLED);
+        assertEquals(progress.size(), 1);
+        assertEquals((int) progress.get(0), result.budgetExceeded.furthestPosition);
+
+        // the recognition pass of the refinement shares the deadline of the parse
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            long start = System.nanoTime();
+            result = Autumn.parse(grammar.refined, input, ParseOptions
+                .refinement(pool)
+                .budget(ParseBudget.builder().timeout(Duration.ofMillis(50)).get()).get());
+            assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.DEADLINE);
+            AssertJUnit.assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        } finally {
+            pool.shutdown();
+        }
+
+        // budgets do not affect parses that stay within them
+        String small = "((x)]!";
+        ParseBudget budget = ParseBudget.builder()
+            .maxInvocations(1000)
+            .maxInvocationsPerPosition(100)
+            .timeout(Duration.ofMinutes(1))
+            .maxLogSize(10)
+            .maxMemoEntries(10)
+            .get();
+        result = Autumn.parse(grammar, small, ParseOptions.budget(budget).get());
+        assertEquals(result.fullMatch, true);
+        assertEquals(result.budgetExceeded, null);
+
+        class ListGrammar extends Grammar {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule list = seq('[', number.sep(0, ','), ']').as_list(Object.class);
+            @Override public rule root() { return list; }
+        }
+        StringBuilder large = new StringBuilder("[0");
+        for (int i = 1; i < 10_000; ++i) large.append(',').append(i);
+        large.append(']');
+        result = Autumn.parse(new ListGrammar(), large.toString(), ParseOptions
+            .budget(ParseBudget.builder().maxLogSize(5000).get()).get());
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.LOG_SIZE);
+
+        // memo entries are counted while they are held, not each time one is stored
+        class MemoListGrammar extends Grammar {
+            final rule number = digit.at_least(1).push($ -> $.str());
+            final rule cached = seq('[', number.memo(4).sep(0, ','), ']');
+            final rule tabled = seq('[', number.memo().sep(0, ','), ']');
+            @Override public rule root() { return cached; }
+        }
+        MemoListGrammar memoGrammar = new MemoListGrammar();
+        ParseOptions memoBudget = ParseOptions
+            .budget(ParseBudget.builder().maxMemoEntries(100).get()).get();
+        result = Autumn.parse(memoGrammar.cached, large.toString(), memoBudget);
+        assertEquals(result.fullMatch, true);
+        assertEquals(result.budgetExceeded, null);
+        result = Autumn.parse(memoGrammar.tabled, large.toString(), memoBudget);
+        assertEquals(result.budgetExceeded.limit, ParseBudget.Limit.MEMO_ENTRIES);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parseRecords()
+    {
+        class RecordGrammar extends Grammar {
+            final rule numbers = digit.at_least(1).push($ -> $.str()).sep(1, ',');
+            final rule line = seq(numbers, opt('\n'));
+            final rule retried = choice(seq(numbers, '!'), numbers);
+            final rule splitter = seq(cpred(c -> c != '\n').at_least(1), opt('\n'));
+            @Override public rule root() { return numbers; }
+        }
+        RecordGrammar grammar = new RecordGrammar();
+
+        // large enough to be split in several tasks
+        StringBuilder b = new StringBuilder();
+        ArrayList<Integer> lineStarts = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            lineStarts.add(b.length());
+            b.append(i == 12_345 ? "1,,2" : i + "," + (i + 1)).append('\n');
+        }
+        String input = b.toString();
+        String[] lines = input.split("\n");
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        RecordParseResult byDelimiter, bySplitter;
+        try {
+            byDelimiter = Autumn.parseRecords(
+                grammar.root(), input, c -> c == '\n', ParseOptions.get(), pool);
+
+            // each record tracks its own waste, in memory proportional to the record
+            RecordParseResult tracked = Autumn.parseRecords(
+                grammar.retried, input, c -> c == '\n', ParseOptions.trackWaste(true).get(), pool);
+            assertEquals(tracked.records.size(), lines.length);
+            BacktrackWaste waste = tracked.records.get(7).backtrackWaste;
+            assertEquals(waste.discarded(grammar.numbers.getParser()), 1L);
+            assertEquals(waste.rescans(lineStarts.get(7)), 1);
+            assertEquals(waste.rescans(lineStarts.get(8)), 0);
+            assertEquals(waste.rescans(0), 0);
+            bySplitter = Autumn.parseRecords(
+                grammar.line, input, grammar.splitter,
+                ParseOptions.get(), pool);
+
+            // the splitter scan is subject to the budget
+            RecordParseResult exceeded = Autumn.parseRecords(
+                grammar.line, input, grammar.splitter,
+                ParseOptions.budget(ParseBudget.builder().maxInvocations(10_000).get()).get(),
+                pool);
+            assertEquals(exceeded.success, false);
+            assertEquals(exceeded.records.size(), 1);
+            assertEquals(exceeded.records.get(0).budgetExceeded.limit,
+                ParseBudget.Limit.INVOCATIONS);
+        } finally {
+            pool.shutdown();
+        }
+
+        ArrayList<Object> values = new ArrayList<>();
+        for (int i = 0; i < lines.length; ++i)
+            if (i != 12_345)
+                values.addAll(Autumn.parse(grammar.root(), lines[i], ParseOptions.get()).valueStack);
+
+        ParseResult expected = Autumn.parse(grammar.root(), lines[12_345], ParseOptions.get());
+        for (RecordParseResult result: list(byDelimiter, bySplitter)) {
+            assertEquals(result.records.size(), lines.length);
+            assertEquals(result.start(7), (int) lineStarts.get(7));
+            assertEquals(result.success, false);
+            assertEquals(result.firstFailure, 12_345);
+            assertEquals(result.errorOffset, lineStarts.get(12_345) + expected.errorOffset);
+            assertEquals(result.values, values);
+        }
+        assertEquals(byDelimiter.end(7), lineStarts.get(8) - 1);
+        assertEquals(bySplitter.end(7), (int) lineStarts.get(8));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void tokenStream()
+    {
+        final class Word implements Token {
+            final int start; final String text;
+            Word (int start, String text) { this.start = start; this.text = text; }
+            @Override public int start() { return start; }
+            @Override public int end() { return start + text.length(); }
+        }
+
+        class WordGrammar extends Grammar {
+            rule tok (String text) {
+                return opred(o -> o != null && ((Word) o).text.equals(text));
+            }
+            final rule pair = choice(seq(tok("a"), tok("b")), seq(tok("a"), tok("c")))
+                .push($ -> ((Word) $.parse.list.get($.pos0 + 1)).text);
+            final rule pairs = pair.at_least(0);
+            final rule released = pair
+                .collect($ -> ((TokenStream<?>) $.parse.list).release($.parse.pos))
+                .at_least(0);
+            @Override public rule root() { return pairs; }
+        }
+        WordGrammar grammar = new WordGrammar();
+
+        Function<String, TokenStream<Word>> stream = input -> {
+            Scanner scanner = new Scanner(input);
+            AtomicInteger pos = new AtomicInteger();
+            return new TokenStream<>(() -> {
+                if (!scanner.hasNext()) return null;
+                String text = scanner.next();
+                return new Word(pos.getAndAdd(text.length() + 1), text);
+            });
+        };
+
+        for (String input: list("", "a b a c a c", "a b a d a c a b", "a b a")) {
+            List<Word> words = new ArrayList<>(stream.apply(input));
+            ParseResult expected = Autumn.parse(grammar.root(), words, ParseOptions.get());
+            ParseResult actual = Autumn.parse(grammar.root(), stream.apply(input), ParseOptions.get());
+            assertEquals(actual.fullMatch, expected.fullMatch);
+            assertEquals(actual.matchSize, expected.matchSize);
+            assertEquals(actual.errorOffset, expected.errorOffset);
+            assertEquals(actual.valueStack, expected.valueStack);
+        }
+
+        // tokens are only lexed as far as the parse looks
+        TokenStream<Word> words = stream.apply("a b a d a c a b a b a c");
+        assertEquals(Autumn.parse(grammar.root(), words, ParseOptions.get()).fullMatch, false);
+        assertEquals(words.lexed(), 4);
+        assertEquals(words.exhausted(), false);
+        assertEquals(words.size(), 12);
+
+        words = stream.apply("a b a c a c");
+        assertEquals(Autumn.parse(grammar.released, words, ParseOptions.get()).fullMatch, true);
+        assertEquals(words.released(), 6);
+        boolean thrown = false;
+        try { words.get(5); }
+        catch (IllegalStateException e) { thrown = true; }
+        assertEquals(thrown, true);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -749,6 +2046,100 @@ public final class TestParsers extends Grammar
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void testOperatorTable()
+    {
+        Slot<rule> expr = new Slot<>();
+
+        rule = operator_table()
+            .operand(a)
+            .left_assoc()
+                .suffix("!", $ -> "(" + $.$[0] + "!)")
+            .right_assoc()
+                .infix("^", $ -> "(" + $.$[0] + "^" + $.$[1] + ")")
+            .right_assoc()
+                .prefix("-", $ -> "(-" + $.$[0] + ")")
+            .left_assoc()
+                .infix("*", $ -> "(" + $.$[0] + "*" + $.$[1] + ")")
+                .infix("/", $ -> "(" + $.$[0] + "/" + $.$[1] + ")")
+            .left_assoc()
+                .infix("+", $ -> "(" + $.$[0] + "+" + $.$[1] + ")")
+                .infix("-", $ -> "(" + $.$[0] + "-" + $.$[1] + ")")
+            .right_assoc()
+                .ternary("?", lazy(() -> expr.x), ":",
+                    $ -> "(" + $.$[0] + "?" + $.$[1] + ":" + $.$[2] + ")");
+        expr.x = rule;
+
+        success("a");
+        success("a!", "(a!)");
+        success("a!!", "((a!)!)");
+        success("-a", "(-a)");
+        success("--a", "(-(-a))");
+        success("-a!", "(-(a!))");
+        success("a^a^a", "(a^(a^a))");
+        success("-a^a", "(-(a^a))");
+        prefix("a^-a");
+        success("a*a*a", "((a*a)*a)");
+        success("a*a/a", "((a*a)/a)");
+        success("a+a*a", "(a+(a*a))");
+        success("a*a+a", "((a*a)+a)");
+        success("a-a+a", "((a-a)+a)");
+        success("a--a", "(a-(-a))");
+        success("-a*-a", "((-a)*(-a))");
+        success("a+a*a^a!", "(a+(a*(a^(a!))))");
+        success("a?a:a", "(a?a:a)");
+        success("a?a:a?a:a", "(a?a:(a?a:a))");
+        success("a?a?a:a:a", "(a?(a?a:a):a)");
+        success("a+a?a*a:-a", "((a+a)?(a*a):(-a))");
+
+        prefix("a+", 1);
+        prefix("a?a", 1);
+        failure("-");
+        failure("!a");
+
+        // stack untouched without steps
+        rule = operator_table()
+            .operand(a)
+            .right_assoc()
+                .prefix("-")
+            .left_assoc()
+                .infix("+");
+
+        success("-a+a");
+        AssertJUnit.assertEquals(result.valueStack.size(), 2);
+
+        // only the operators that may start with the next character are tried
+        // (all of them at the end of the input)
+        rule star  = str("*");
+        rule slash = str("/");
+        rule plus  = str("+");
+        rule minus = str("-");
+        rule = operator_table()
+            .operand(a)
+            .right_assoc()
+                .prefix(minus)
+            .left_assoc()
+                .infix(star)
+                .infix(slash)
+            .left_assoc()
+                .infix(plus);
+
+        ParseResult r = Autumn.parse(rule, "a+a+a", ParseOptions.trace(true).get());
+        assertEquals(r.fullMatch, true);
+        assertEquals(r.parseMetrics.get(star.getParser()).invocations, 1L);
+        assertEquals(r.parseMetrics.get(slash.getParser()).invocations, 1L);
+        assertEquals(r.parseMetrics.get(minus.getParser()), null);
+        assertEquals(r.parseMetrics.get(plus.getParser()).invocations, 3L);
+
+        // ... but the error is the same as if the others had been tried
+        r = Autumn.parse(rule, "a*a+", ParseOptions.get());
+        assertEquals(r.matchSize, 3);
+        assertEquals(r.errorOffset, 4);
+        r = Autumn.parse(rule, "a%", ParseOptions.get());
+        assertEquals(r.errorOffset, 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void testBounded()
     {
         rule = seq(not('-'), any).at_least(3).as_val("coarse")
@@ -26,6 +26,11 @@ public class TestWellFormedness extends Grammar
 
     public rule nullableRepetitionRepetition = str("a").at_least(0).at_least(0);
 
+    public rule nullableSuffixTable = operator_table()
+        .operand("a")
+        .left_assoc()
+            .suffix(opt("b"));
+
     public rule anonymousLeftRecursive = choice(
         seq(lazy(() -> this.anonymousLeftRecursive), "a"),
         "a");
@@ -65,5 +70,9 @@ public class TestWellFormedness extends Grammar
         assertThrown(nullableRepetitionRepetition, "repetition of nullable repetition");
     }
 
+    @Test public void testNullableSuffixTable() {
+        assertThrown(nullableSuffixTable, "nullable suffix in an operator table");
+    }
+
     // ---------------------------------------------------------------------------------------------
 }
@@ -4,10 +4,13 @@ import norswap.autumn.Autumn;
 import norswap.autumn.Grammar;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
+import norswap.autumn.ParseStatistics;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserMetrics;
+import norswap.autumn.SamplingProfiler;
 import norswap.autumn.TestFixture;
 import norswap.autumn.ParseMetrics;
+import norswap.autumn.positions.TokenStream;
 import norswap.lang.java.JavaGrammar;
 import norswap.lang.java.JavaGrammarTokens;
 import norswap.lang.java.Lexer;
@@ -21,6 +24,7 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public final class Benchmark
     extends TestFixture // for diagnostics in case of failure!
@@ -28,13 +32,19 @@ public final class Benchmark
     // ---------------------------------------------------------------------------------------------
 
     private static final boolean DO_TRACE = false;
+    private static final boolean DO_PROFILE = false;
+    private static final boolean DO_STATISTICS = false;
     private static final boolean DO_RECORD = false;
     private static final boolean LOG_PERCENT = true;
+    private static final boolean PARALLEL_LEX = false; // "tokens" config only
+    private static final boolean LAZY_LEX = false; // "tokens" config only
     private static final int iterCount = 1;
 
     // ---------------------------------------------------------------------------------------------
 
     private final ParseMetrics parseMetrics = new ParseMetrics();
+    private final SamplingProfiler profiler = DO_PROFILE ? new SamplingProfiler() : null;
+    private final ParseStatistics statistics = DO_STATISTICS ? new ParseStatistics() : null;
     private final String config;
 
     // ---------------------------------------------------------------------------------------------
@@ -70,6 +80,8 @@ public final class Benchmark
             .recordCallStack(DO_RECORD)
             .metrics(() -> parseMetrics)
             .trace(DO_TRACE)
+            .profiler(profiler)
+            .statistics(statistics)
             .get();
 
         for (Path path: paths)
@@ -84,7 +96,11 @@ public final class Benchmark
 
             if (config.equals("tokens")) {
                 Lexer lexer = new Lexer(input);
-                List<Token> tokens = Arrays.asList(lexer.lex());
+                List<Token> tokens = LAZY_LEX
+                    ? new TokenStream<>(lexer)
+                    : Arrays.asList(PARALLEL_LEX
+                        ? lexer.lex(ForkJoinPool.commonPool())
+                        : lexer.lex());
                 result = Autumn.parse(grammar, tokens, options);
             } else {
                 result = Autumn.parse(grammar, input, options);
@@ -116,6 +132,11 @@ public final class Benchmark
         System.out.println("Total size in bytes: " + String.format("%,d", size));
         System.out.println("Code parsed in: " + Duration.ofNanos(time));
         if (DO_TRACE) System.out.println(parseMetrics);
+        if (DO_PROFILE) {
+            profiler.close();
+            System.out.println(profiler.metrics());
+        }
+        if (DO_STATISTICS) System.out.println(statistics);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -4,7 +4,10 @@ import norswap.lang.java.JavaGrammarTokens;
 import norswap.lang.java.Lexer;
 import norswap.lang.java.Token;
 import norswap.lang.java.ast.Literal;
+import org.testng.Assert;
+import org.testng.annotations.Test;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 public final class TestGrammarTokens extends TestGrammar {
 
@@ -18,6 +21,39 @@ public final class TestGrammarTokens extends TestGrammar {
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void chunkedLexing()
+    {
+        // comments and strings that span chunk boundaries, and a warning (illegal underscore)
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            b.append("int x").append(i).append(" = 1_000").append(i % 7 == 0 ? "_" : "").append(";\n");
+            if (i % 5 == 0) b.append("/* int y = 2;\n  String s = \"\n */ // z\n");
+            if (i % 3 == 0) b.append("String s = \"a\\n /* b\";\n\n");
+        }
+        String input = b.toString();
+
+        Lexer sequential = new Lexer(input);
+        Token[] expected = sequential.lex();
+        Lexer chunked = new Lexer(input);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Token[] actual;
+        try {
+            actual = chunked.lex(pool, 32);
+        } finally {
+            pool.shutdown();
+        }
+
+        Assert.assertEquals(actual.length, expected.length);
+        for (int i = 0; i < expected.length; ++i) {
+            Assert.assertEquals(actual[i].toString(), expected[i].toString());
+            Assert.assertEquals(actual[i].comments.size(), expected[i].comments.size());
+        }
+        Assert.assertEquals(chunked.warnings.size(), sequential.warnings.size());
+        Assert.assertEquals(chunked.warnings.get(0).position, sequential.warnings.get(0).position);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Because {@link JavaGrammar} and {@link JavaGrammarTokens} use different literal values in the AST,
      * we need to convert them when testing so that they end up comparing equivalent.